@@ -19,12 +19,15 @@ package com.android.emailcommon.internet;
 import com.android.emailcommon.TempDirectory;
 import com.android.emailcommon.mail.Body;
 import com.android.emailcommon.mail.MessagingException;
+import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.commons.io.IOUtils;
 
 import android.util.Base64;
 import android.util.Base64OutputStream;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -32,15 +35,94 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 
 /**
  * A Body that is backed by a temp file. The Body exposes a getOutputStream method that allows
  * the user to write to the temp file. After the write the body is available via getInputStream
  * and writeTo one time. After writeTo is called, or the InputStream returned from
  * getInputStream is closed the file is deleted and the Body should be considered disposed of.
+ * <p>
+ * Bodies written through getOutputStream that are no larger than the memory threshold (see
+ * {@link #setMemoryThreshold}) are kept in memory instead, and never touch the file system. The
+ * data is collected in a pooled buffer and only spilled to a temp file once it outgrows it.
  */
 public class BinaryTempFileBody implements Body {
+    /** Default size, in bytes, of the largest body kept in memory. */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 32 * 1024;
+    /** How many idle write buffers to keep for reuse. */
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    /** Guards the buffer pool, the threshold and the counters. */
+    private static final Object sLock = new Object();
+    private static final ArrayList<byte[]> sBufferPool = new ArrayList<byte[]>();
+    private static int sMemoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+    private static int sInMemoryCount;
+    private static long sInMemoryBytes;
+    private static int sSpillCount;
+    private static long sSpilledBytes;
+
     private File mFile;
+    /** The body, when it was small enough to be kept in memory. */
+    private byte[] mData;
+
+    /**
+     * Sets the size, in bytes, of the largest body that will be kept in memory rather than
+     * written to a temp file. 0 sends every body to a temp file.
+     */
+    public static void setMemoryThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("negative threshold: " + threshold);
+        }
+        synchronized (sLock) {
+            sMemoryThreshold = threshold;
+            sBufferPool.clear();
+        }
+    }
+
+    /**
+     * @return a summary of how many bodies, and how many bytes, were kept in memory or spilled
+     * to temp files so far
+     */
+    public static String getStats() {
+        synchronized (sLock) {
+            return "[BinaryTempFileBody inMemory=" + sInMemoryCount + " inMemoryBytes="
+                    + sInMemoryBytes + " spilled=" + sSpillCount + " spilledBytes="
+                    + sSpilledBytes + " threshold=" + sMemoryThreshold + "]";
+        }
+    }
+
+    @VisibleForTesting
+    static int getInMemoryCount() {
+        synchronized (sLock) {
+            return sInMemoryCount;
+        }
+    }
+
+    @VisibleForTesting
+    static int getSpillCount() {
+        synchronized (sLock) {
+            return sSpillCount;
+        }
+    }
+
+    private static byte[] obtainBuffer() {
+        synchronized (sLock) {
+            final int size = sBufferPool.size();
+            if (size > 0) {
+                return sBufferPool.remove(size - 1);
+            }
+            return new byte[sMemoryThreshold];
+        }
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        synchronized (sLock) {
+            if (buffer.length == sMemoryThreshold && sBufferPool.size() < MAX_POOLED_BUFFERS) {
+                sBufferPool.add(buffer);
+            }
+        }
+    }
 
     /**
      * An alternate way to put data into a BinaryTempFileBody is to simply supply an already-
@@ -49,16 +131,34 @@ public class BinaryTempFileBody implements Body {
      */
     public void setFile(String filePath) {
         mFile = new File(filePath);
+        mData = null;
     }
 
     public OutputStream getOutputStream() throws IOException {
-        mFile = File.createTempFile("body", null, TempDirectory.getTempDirectory());
-        mFile.deleteOnExit();
-        return new FileOutputStream(mFile);
+        mFile = null;
+        mData = null;
+        return new SpillingOutputStream();
+    }
+
+    /**
+     * @return the number of bytes in the body, or -1 if it has no data
+     */
+    public long getLength() {
+        if (mData != null) {
+            return mData.length;
+        }
+        return mFile != null ? mFile.length() : -1;
     }
 
     @Override
     public InputStream getInputStream() throws MessagingException {
+        if (mData != null) {
+            return new BinaryTempFileBodyInputStream(new ByteArrayInputStream(mData));
+        }
+        if (mFile == null) {
+            // never written, or kept in memory and already read
+            throw new MessagingException("Body has no data");
+        }
         try {
             return new BinaryTempFileBodyInputStream(new FileInputStream(mFile));
         }
@@ -69,12 +169,27 @@ public class BinaryTempFileBody implements Body {
 
     @Override
     public void writeTo(OutputStream out) throws IOException, MessagingException {
-        InputStream in = getInputStream();
         Base64OutputStream base64Out = new Base64OutputStream(
             out, Base64.CRLF | Base64.NO_CLOSE);
-        IOUtils.copy(in, base64Out);
+        if (mData != null) {
+            base64Out.write(mData);
+        } else {
+            InputStream in = getInputStream();
+            try {
+                IOUtils.copy(in, base64Out);
+            } finally {
+                in.close();
+            }
+        }
         base64Out.close();
-        mFile.delete();
+        dispose();
+    }
+
+    private void dispose() {
+        if (mFile != null) {
+            mFile.delete();
+        }
+        mData = null;
     }
 
     class BinaryTempFileBodyInputStream extends FilterInputStream {
@@ -85,7 +200,98 @@ public class BinaryTempFileBody implements Body {
         @Override
         public void close() throws IOException {
             super.close();
-            mFile.delete();
+            dispose();
+        }
+    }
+
+    /**
+     * Collects the body in a pooled buffer, and moves it to a temp file if it outgrows the
+     * buffer. Closing the stream makes the body available for reading.
+     */
+    private class SpillingOutputStream extends OutputStream {
+        private byte[] mBuffer = obtainBuffer();
+        private int mCount;
+        private OutputStream mFileOut;
+        private long mSpilledCount;
+        private boolean mClosed;
+
+        @Override
+        public void write(int b) throws IOException {
+            checkNotClosed();
+            if (mFileOut == null && mCount < mBuffer.length) {
+                mBuffer[mCount++] = (byte) b;
+                return;
+            }
+            spill();
+            mFileOut.write(b);
+            mSpilledCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkNotClosed();
+            if (mFileOut == null && len <= mBuffer.length - mCount) {
+                System.arraycopy(b, off, mBuffer, mCount, len);
+                mCount += len;
+                return;
+            }
+            spill();
+            mFileOut.write(b, off, len);
+            mSpilledCount += len;
+        }
+
+        private void checkNotClosed() throws IOException {
+            if (mClosed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        /**
+         * Moves whatever has been written so far to a new temp file, which receives all further
+         * writes.
+         */
+        private void spill() throws IOException {
+            if (mFileOut != null) {
+                return;
+            }
+            mFile = File.createTempFile("body", null, TempDirectory.getTempDirectory());
+            mFile.deleteOnExit();
+            mFileOut = new BufferedOutputStream(new FileOutputStream(mFile));
+            mFileOut.write(mBuffer, 0, mCount);
+            mSpilledCount = mCount;
+            releaseBuffer(mBuffer);
+            mBuffer = null;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (mFileOut != null) {
+                mFileOut.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (mFileOut != null) {
+                mFileOut.close();
+                synchronized (sLock) {
+                    sSpillCount++;
+                    sSpilledBytes += mSpilledCount;
+                }
+            } else {
+                mData = new byte[mCount];
+                System.arraycopy(mBuffer, 0, mData, 0, mCount);
+                releaseBuffer(mBuffer);
+                mBuffer = null;
+                synchronized (sLock) {
+                    sInMemoryCount++;
+                    sInMemoryBytes += mCount;
+                }
+            }
         }
     }
 }
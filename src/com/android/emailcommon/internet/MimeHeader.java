@@ -22,8 +22,17 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The header fields of a message or body part, in the order they were added. Fields are indexed
+ * by their lower case names, so looking up a header doesn't compare every field's name.
+ */
 public class MimeHeader {
     /**
      * Application specific header that contains Store specific information about an attachment.
@@ -48,22 +57,70 @@ public class MimeHeader {
         HEADER_ANDROID_ATTACHMENT_STORE_DATA
     };
 
+    /**
+     * The canonical lower case form of each header name seen so far, by the name as given, so
+     * that looking up a name that has been seen before allocates nothing, and every header with
+     * the same name shares one lower case string. Only the first {@link #MAX_FOLDED_NAMES} names
+     * are kept, so that messages with many made-up header names can't grow it without bound.
+     */
+    private static final ConcurrentHashMap<String, String> sFoldedNames =
+            new ConcurrentHashMap<String, String>();
+    private static final int MAX_FOLDED_NAMES = 1024;
+
+    private static final String[] WRITE_OMIT_KEYS = new String[WRITE_OMIT_FIELDS.length];
+    static {
+        for (int i = 0; i < WRITE_OMIT_FIELDS.length; i++) {
+            WRITE_OMIT_KEYS[i] = foldName(WRITE_OMIT_FIELDS[i]);
+        }
+    }
+
+    /** All fields, in the order they were added. */
     protected final ArrayList<Field> mFields = new ArrayList<Field>();
+    /**
+     * The first field with each lower case name. Each field links to the next one with the same
+     * name, so the fields with a name are found in order without looking at any others.
+     */
+    private final HashMap<String, Field> mFirstFields = new HashMap<String, Field>();
 
     public void clear() {
         mFields.clear();
+        mFirstFields.clear();
     }
 
     public String getFirstHeader(String name) throws MessagingException {
-        String[] header = getHeader(name);
-        if (header == null) {
-            return null;
-        }
-        return header[0];
+        final Field field = mFirstFields.get(foldName(name));
+        return field == null ? null : field.getValue();
     }
 
     public void addHeader(String name, String value) throws MessagingException {
-        mFields.add(new Field(name, value));
+        add(new Field(name, foldName(name), value));
+    }
+
+    /**
+     * Adds a header as it was read from a message, e.g. "Subject: Hello". The value is only cut
+     * out of the field and trimmed when it is asked for, since most of the headers of a typical
+     * message, such as Received and DKIM-Signature, never are. Fields without a colon are
+     * ignored.
+     */
+    public void addRawField(String field) {
+        final int colon = field.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+        final String name = field.substring(0, colon);
+        add(new Field(name, foldName(name), field, colon + 1));
+    }
+
+    private void add(Field field) {
+        mFields.add(field);
+        final Field first = mFirstFields.get(field.key);
+        if (first == null) {
+            field.last = field;
+            mFirstFields.put(field.key, field);
+        } else {
+            first.last.next = field;
+            first.last = field;
+        }
     }
 
     public void setHeader(String name, String value) throws MessagingException {
@@ -75,31 +132,43 @@ public class MimeHeader {
     }
 
     public String[] getHeader(String name) throws MessagingException {
-        ArrayList<String> values = new ArrayList<String>();
-        for (Field field : mFields) {
-            if (field.name.equalsIgnoreCase(name)) {
-                values.add(field.value);
-            }
-        }
-        if (values.size() == 0) {
+        final Field first = mFirstFields.get(foldName(name));
+        if (first == null) {
             return null;
         }
-        return values.toArray(new String[] {});
+        int count = 0;
+        for (Field field = first; field != null; field = field.next) {
+            count++;
+        }
+        final String[] values = new String[count];
+        int i = 0;
+        for (Field field = first; field != null; field = field.next) {
+            values[i++] = field.getValue();
+        }
+        return values;
     }
 
     public void removeHeader(String name) throws MessagingException {
-        ArrayList<Field> removeFields = new ArrayList<Field>();
-        for (Field field : mFields) {
-            if (field.name.equalsIgnoreCase(name)) {
-                removeFields.add(field);
+        final String key = foldName(name);
+        if (mFirstFields.remove(key) == null) {
+            return;
+        }
+        // compact the remaining fields in place
+        int kept = 0;
+        for (int i = 0, count = mFields.size(); i < count; i++) {
+            final Field field = mFields.get(i);
+            if (key == null ? field.key != null : !key.equals(field.key)) {
+                mFields.set(kept++, field);
             }
         }
-        mFields.removeAll(removeFields);
+        while (mFields.size() > kept) {
+            mFields.remove(mFields.size() - 1);
+        }
     }
 
     /**
      * Write header into String
-     * 
+     *
      * @return CR-NL separated header string except the headers in writeOmitFields
      * null if header is empty
      */
@@ -107,37 +176,124 @@ public class MimeHeader {
         if (mFields.size() == 0) {
             return null;
         }
-        StringBuilder builder = new StringBuilder();
-        for (Field field : mFields) {
-            if (!arrayContains(WRITE_OMIT_FIELDS, field.name)) {
-                builder.append(field.name + ": " + field.value + "\r\n");
-            }
+        final StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            // a StringWriter never throws
+            throw new AssertionError(e);
         }
-        return builder.toString();
+        return writer.toString();
     }
-    
+
     public void writeTo(OutputStream out) throws IOException, MessagingException {
         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), 1024);
+        writeTo(writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes each field as "name: value" and CR-NL, except the headers in WRITE_OMIT_FIELDS,
+     * without building any intermediate strings.
+     */
+    private void writeTo(Writer writer) throws IOException {
         for (Field field : mFields) {
-            if (!arrayContains(WRITE_OMIT_FIELDS, field.name)) {
-                writer.write(field.name + ": " + field.value + "\r\n");
+            if (!arrayContains(WRITE_OMIT_KEYS, field.key)) {
+                writer.write(field.name);
+                writer.write(": ");
+                field.writeValue(writer);
+                writer.write("\r\n");
             }
         }
-        writer.flush();
+    }
+
+    /**
+     * @return the lower case form of a header name, the same string for every header with that
+     * name
+     */
+    private static String foldName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String folded = sFoldedNames.get(name);
+        if (folded != null) {
+            return folded;
+        }
+        folded = name.toLowerCase(Locale.US);
+        // share the lower case string with the other spellings of the name
+        final String existing = sFoldedNames.get(folded);
+        if (existing != null) {
+            folded = existing;
+        } else if (sFoldedNames.size() < MAX_FOLDED_NAMES) {
+            sFoldedNames.putIfAbsent(folded, folded);
+        }
+        if (sFoldedNames.size() < MAX_FOLDED_NAMES) {
+            sFoldedNames.putIfAbsent(name, folded);
+        }
+        return folded;
     }
 
     private static class Field {
         final String name;
-        final String value;
+        /** The lower case name. */
+        final String key;
+        /** The value, once it has been cut out of {@link #raw}; may be null. */
+        private String value;
+        /**
+         * The whole field as it was read, if the value hasn't been cut out of it yet, and null
+         * otherwise.
+         */
+        private String raw;
+        private final int valueStart;
+        /** The next field with the same name. */
+        Field next;
+        /** The last field with the same name; only kept up to date in the first. */
+        Field last;
 
-        public Field(String name, String value) {
+        public Field(String name, String key, String value) {
             this.name = name;
+            this.key = key;
             this.value = value;
+            this.valueStart = 0;
+        }
+
+        public Field(String name, String key, String raw, int valueStart) {
+            this.name = name;
+            this.key = key;
+            this.raw = raw;
+            this.valueStart = valueStart;
+        }
+
+        String getValue() {
+            if (raw != null) {
+                value = raw.substring(valueStart).trim();
+                raw = null;
+            }
+            return value;
         }
-        
+
+        /** Writes the value, trimmed, straight from the raw field if it hasn't been cut out. */
+        void writeValue(Writer writer) throws IOException {
+            if (raw == null) {
+                // a null value is written as "null", as it always has been
+                writer.write(String.valueOf(value));
+                return;
+            }
+            int start = valueStart;
+            int end = raw.length();
+            // the same as String.trim()
+            while (start < end && raw.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && raw.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            writer.write(raw, start, end - start);
+        }
+
         @Override
         public String toString() {
-            return name + "=" + value;
+            return name + "=" + getValue();
         }
     }
 
@@ -31,6 +31,8 @@ import org.apache.james.mime4j.EOLConvertingInputStream;
 import org.apache.james.mime4j.MimeStreamParser;
 import org.apache.james.mime4j.field.DateTimeField;
 import org.apache.james.mime4j.field.Field;
+import org.apache.james.mime4j.field.datetime.DateTime;
+import org.apache.james.mime4j.field.datetime.FastDateTime;
 
 import android.text.TextUtils;
 
@@ -39,10 +41,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 import java.util.Stack;
+import java.util.TimeZone;
 import java.util.regex.Pattern;
 
 /**
@@ -73,14 +74,6 @@ public class MimeMessage extends Message {
     // Shared random source for generating local message-id values
     private static final java.util.Random sRandom = new java.util.Random();
 
-    // In MIME, en_US-like date format should be used. In other words "MMM" should be encoded to
-    // "Jan", not the other localized format like "Ene" (meaning January in locale es).
-    // This conversion is used when generating outgoing MIME messages. Incoming MIME date
-    // headers are parsed by org.apache.james.mime4j.field.DateTimeField which does not have any
-    // localization code.
-    private static final SimpleDateFormat DATE_FORMAT =
-        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
-
     // regex that matches content id surrounded by "<>" optionally.
     private static final Pattern REMOVE_OPTIONAL_BRACKETS = Pattern.compile("^<?([^>]+)>?$");
     // regex that matches end of line.
@@ -172,9 +165,7 @@ public class MimeMessage extends Message {
     public Date getSentDate() throws MessagingException {
         if (mSentDate == null) {
             try {
-                DateTimeField field = (DateTimeField)Field.parse("Date: "
-                        + MimeUtility.unfoldAndDecode(getFirstHeader("Date")));
-                mSentDate = field.getDate();
+                mSentDate = parseDate(getFirstHeader("Date"));
                 // TODO: We should make it more clear what exceptions can be thrown here,
                 // and whether they reflect a normal or error condition.
             } catch (Exception e) {
@@ -184,9 +175,7 @@ public class MimeMessage extends Message {
         if (mSentDate == null) {
             // If we still don't have a date, fall back to "Delivery-date"
             try {
-                DateTimeField field = (DateTimeField)Field.parse("Date: "
-                        + MimeUtility.unfoldAndDecode(getFirstHeader("Delivery-date")));
-                mSentDate = field.getDate();
+                mSentDate = parseDate(getFirstHeader("Delivery-date"));
                 // TODO: We should make it more clear what exceptions can be thrown here,
                 // and whether they reflect a normal or error condition.
             } catch (Exception e) {
@@ -196,9 +185,24 @@ public class MimeMessage extends Message {
         return mSentDate;
     }
 
+    /**
+     * Parses the value of a Date header. The usual layout is parsed directly, anything else by
+     * mime4j's date grammar.
+     */
+    private static Date parseDate(String header) {
+        final String value = MimeUtility.unfoldAndDecode(header);
+        final DateTime dateTime = FastDateTime.parse(value);
+        if (dateTime != null) {
+            return dateTime.getDate();
+        }
+        return ((DateTimeField) Field.parse("Date: " + value)).getDate();
+    }
+
     @Override
     public void setSentDate(Date sentDate) throws MessagingException {
-        setHeader("Date", DATE_FORMAT.format(sentDate));
+        // In MIME, en_US-like date format should be used. In other words "MMM" should be encoded
+        // to "Jan", not the other localized format like "Ene" (meaning January in locale es).
+        setHeader("Date", FastDateTime.format(sentDate, TimeZone.getDefault()));
         this.mSentDate = sentDate;
     }
 
@@ -579,11 +583,19 @@ public class MimeMessage extends Message {
         @Override
         public void field(String fieldData) {
             expect(Part.class);
-            try {
-                final String[] tokens = fieldData.split(":", 2);
-                ((Part)stack.peek()).addHeader(tokens[0], tokens[1].trim());
-            } catch (MessagingException me) {
-                throw new Error(me);
+            final Object part = stack.peek();
+            // let the header cut the value out of the field only if it's asked for
+            if (part instanceof MimeMessage) {
+                ((MimeMessage)part).getMimeHeaders().addRawField(fieldData);
+            } else if (part instanceof MimeBodyPart) {
+                ((MimeBodyPart)part).mHeader.addRawField(fieldData);
+            } else {
+                try {
+                    final String[] tokens = fieldData.split(":", 2);
+                    ((Part)part).addHeader(tokens[0], tokens[1].trim());
+                } catch (MessagingException me) {
+                    throw new Error(me);
+                }
             }
         }
 
@@ -28,6 +28,7 @@ import com.android.emailcommon.mail.Message;
 import com.android.emailcommon.mail.MessagingException;
 import com.android.emailcommon.mail.Multipart;
 import com.android.emailcommon.mail.Part;
+import com.android.mail.utils.MimeType;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.codec.EncoderUtil;
@@ -35,10 +36,10 @@ import org.apache.james.mime4j.decoder.DecoderUtil;
 import org.apache.james.mime4j.decoder.QuotedPrintableInputStream;
 import org.apache.james.mime4j.util.CharsetUtil;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -48,6 +49,7 @@ public class MimeUtility {
 
     public static final String MIME_TYPE_RFC822 = "message/rfc822";
     private final static Pattern PATTERN_CR_OR_LF = Pattern.compile("\r|\n");
+    private final static Charset US_ASCII = Charset.forName("US-ASCII");
 
     /**
      * Replace sequences of CRLF+WSP with WSP.  Tries to preserve original string
@@ -224,39 +226,34 @@ public class MimeUtility {
      */
     public static String getTextFromPart(Part part, boolean closeInput) {
         InputStream in = null;
-        ByteArrayOutputStream out = null;
         try {
             if (part != null && part.getBody() != null) {
                 in = part.getBody().getInputStream();
                 String mimeType = part.getMimeType();
                 if (mimeType != null && MimeUtility.mimeTypeMatches(mimeType, "text/*")) {
-                    /*
-                     * Now we read the part into a buffer for further processing. Because
-                     * the stream is now wrapped we'll remove any transfer encoding at this point.
-                     */
-                    out = new ByteArrayOutputStream();
-                    IOUtils.copy(in, out);
-
                     /*
                      * We've got a text part, so let's see if it needs to be processed further.
                      */
-                    String charset = getHeaderParameter(part.getContentType(), "charset");
-                    if (charset != null) {
+                    Charset charset = null;
+                    String charsetName = getHeaderParameter(part.getContentType(), "charset");
+                    if (charsetName != null) {
                         /*
                          * See if there is conversion from the MIME charset to the Java one.
+                         * This throws if the VM can't decode the charset.
                          */
-                        charset = CharsetUtil.toJavaCharset(charset);
+                        charset = CharsetUtil.lookupJavaCharset(charsetName);
                     }
                     /*
                      * No encoding, so use us-ascii, which is the standard.
                      */
                     if (charset == null) {
-                        charset = "ASCII";
+                        charset = US_ASCII;
                     }
                     /*
-                     * Convert and return as new String
+                     * Now we decode the part straight into a String. Because the stream is
+                     * now wrapped we'll remove any transfer encoding at this point.
                      */
-                    return out.toString(charset);
+                    return CharsetUtil.decode(in, charset, getDecodedSizeHint(part));
                 }
             }
 
@@ -275,7 +272,6 @@ public class MimeUtility {
              */
             Log.e(LOG_TAG, "Unable to getTextFromPart " + e.toString());
         } finally {
-            IOUtils.closeQuietly(out);
             if (closeInput) {
                 IOUtils.closeQuietly(in);
             }
@@ -283,6 +279,34 @@ public class MimeUtility {
         return null;
     }
 
+    /**
+     * @return at most how many characters the body of {@code part} decodes to, or roughly when
+     * only the size of the part is known, or 0 if unknown; the size of a part is that of its
+     * encoded body, as reported by the server
+     */
+    private static int getDecodedSizeHint(Part part) throws MessagingException {
+        final Body body = part.getBody();
+        if (body instanceof BinaryTempFileBody) {
+            // the body holds the decoded bytes, and no charset decodes a byte to more than one
+            // character, so this is a real bound
+            final long length = ((BinaryTempFileBody) body).getLength();
+            if (length >= 0) {
+                return (int) Math.min(length, Integer.MAX_VALUE);
+            }
+        }
+        final int size = part.getSize();
+        if (size <= 0) {
+            return 0;
+        }
+        final String[] encoding = part.getHeader(MimeHeader.HEADER_CONTENT_TRANSFER_ENCODING);
+        if (encoding != null
+                && "base64".equalsIgnoreCase(getHeaderParameter(encoding[0], null))) {
+            // base64 encodes 3 bytes as 4
+            return size / 4 * 3;
+        }
+        return size;
+    }
+
     /**
      * Returns true if the given mimeType matches the matchAgainst specification.  The comparison
      * ignores case and the matchAgainst string may include "*" for a wildcard (e.g. "image/*").
@@ -292,9 +316,7 @@ public class MimeUtility {
      * @return true if the mimeType matches
      */
     public static boolean mimeTypeMatches(String mimeType, String matchAgainst) {
-        Pattern p = Pattern.compile(matchAgainst.replaceAll("\\*", "\\.\\*"),
-                Pattern.CASE_INSENSITIVE);
-        return p.matcher(mimeType).matches();
+        return MimeType.matches(mimeType, matchAgainst);
     }
 
     /**
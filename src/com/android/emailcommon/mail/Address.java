@@ -29,6 +29,7 @@ import com.google.common.annotations.VisibleForTesting;
 import org.apache.james.mime4j.codec.EncoderUtil;
 import org.apache.james.mime4j.decoder.DecoderUtil;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
 
@@ -91,6 +92,11 @@ public class Address implements Parcelable {
 
     private static final String LOG_TAG = LogTag.getLogTag();
 
+    /** Enough for the senders and recipients of a good number of conversations. */
+    private static final int PARSED_ADDRESS_CACHE_SIZE = 512;
+    private static final AddressCache sParsedAddresses =
+            new AddressCache(PARSED_ADDRESS_CACHE_SIZE);
+
     @VisibleForTesting
     public Address(String address) {
         setAddress(address);
@@ -129,25 +135,69 @@ public class Address implements Parcelable {
         return mSimplifiedName;
     }
 
-    public static synchronized Address getEmailAddress(String rawAddress) {
+    /**
+     * Parses the first address in {@code rawAddress}, whose name and address may contain html
+     * entities.
+     * <p>
+     * Results are cached app wide, so the same {@link Address} may be returned to several
+     * callers, which must not modify it. Lookups of cached addresses don't block.
+     *
+     * @return the parsed address, or null if {@code rawAddress} is empty
+     */
+    public static Address getEmailAddress(String rawAddress) {
         if (TextUtils.isEmpty(rawAddress)) {
             return null;
         }
+        Address cached = sParsedAddresses.get(rawAddress);
+        if (cached == null) {
+            cached = parseEmailAddress(rawAddress);
+            sParsedAddresses.put(rawAddress, cached);
+        }
+        return cached;
+    }
+
+    private static Address parseEmailAddress(String rawAddress) {
         String name, address;
         final Rfc822Token[] tokens = Rfc822Tokenizer.tokenize(rawAddress);
         if (tokens.length > 0) {
             final String tokenizedName = tokens[0].getName();
-            name = tokenizedName != null ? Html.fromHtml(tokenizedName.trim()).toString()
-                    : "";
-            address = Html.fromHtml(tokens[0].getAddress()).toString();
+            name = tokenizedName != null ? fromHtml(tokenizedName.trim()) : "";
+            address = fromHtml(tokens[0].getAddress());
         } else {
             name = "";
-            address = rawAddress == null ?
-                    "" : Html.fromHtml(rawAddress).toString();
+            address = fromHtml(rawAddress);
         }
         return new Address(address, name);
     }
 
+    /**
+     * @return the text of {@code html}, as {@link Html#fromHtml} gives it. Names and addresses
+     * are almost always plain text, which is returned as is without running the html parser.
+     */
+    @VisibleForTesting
+    static String fromHtml(String html) {
+        final int length = html.length();
+        for (int i = 0; i < length; i++) {
+            final char c = html.charAt(i);
+            if (c == '<' || c == '>' || c == '&' || c == '\n' || c == '\r'
+                    || (c == ' ' && (i == 0 || html.charAt(i - 1) == ' '))) {
+                // markup, entities or whitespace that the parser would collapse
+                return Html.fromHtml(html).toString();
+            }
+        }
+        return html;
+    }
+
+    /** Writes how well the cache of {@link #getEmailAddress} is doing. */
+    public static void dumpCacheStats(PrintWriter writer) {
+        writer.println(sParsedAddresses);
+    }
+
+    @VisibleForTesting
+    static AddressCache getParsedAddressCache() {
+        return sParsedAddresses;
+    }
+
     public String getAddress() {
         return mAddress;
     }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.mail;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed addresses, by the raw string they were parsed from, that is shared by
+ * the whole app and never blocks a lookup.
+ * <p>
+ * Entries live in two generations. New entries go into the current generation, and entries found
+ * in the previous one are copied forward. Once the current generation is full it becomes the
+ * previous one, and whatever was not looked up since is dropped with the old previous generation.
+ * This keeps the addresses in use, like the senders of the open conversation, while holding at
+ * most twice the generation size.
+ */
+final class AddressCache {
+
+    private final int mGenerationSize;
+    private volatile ConcurrentHashMap<String, Address> mCurrent;
+    private volatile ConcurrentHashMap<String, Address> mPrevious;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * @param generationSize the number of entries after which the cache starts dropping the ones
+     * that have not been looked up recently
+     */
+    AddressCache(int generationSize) {
+        mGenerationSize = generationSize;
+        mCurrent = new ConcurrentHashMap<String, Address>();
+        mPrevious = new ConcurrentHashMap<String, Address>();
+    }
+
+    /** @return the address cached for {@code rawAddress}, or null */
+    Address get(String rawAddress) {
+        Address address = mCurrent.get(rawAddress);
+        if (address == null) {
+            address = mPrevious.get(rawAddress);
+            if (address == null) {
+                mMisses.incrementAndGet();
+                return null;
+            }
+            put(rawAddress, address);
+        }
+        mHits.incrementAndGet();
+        return address;
+    }
+
+    void put(String rawAddress, Address address) {
+        final ConcurrentHashMap<String, Address> current = mCurrent;
+        current.put(rawAddress, address);
+        if (current.size() >= mGenerationSize) {
+            synchronized (this) {
+                // another thread may have started a new generation already
+                if (mCurrent == current) {
+                    mPrevious = current;
+                    mCurrent = new ConcurrentHashMap<String, Address>();
+                }
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (this) {
+            mCurrent = new ConcurrentHashMap<String, Address>();
+            mPrevious = new ConcurrentHashMap<String, Address>();
+        }
+        mHits.set(0);
+        mMisses.set(0);
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        final long hits = mHits.get();
+        final long lookups = hits + mMisses.get();
+        return String.format("Address cache: %d lookups, %d%% hits, %d entries", lookups,
+                lookups == 0 ? 0 : hits * 100 / lookups, mCurrent.size() + mPrevious.size());
+    }
+}
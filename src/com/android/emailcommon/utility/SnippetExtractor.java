@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Makes short plain text snippets of message bodies, in a single pass over the text.
+ * <p>
+ * Runs of whitespace become a single space and runs of '-' or '=' (the rules of digests and
+ * signatures) a single character. With {@link #FLAG_STRIP_HTML}, tags are dropped along with the
+ * content of title, script, style, applet and head elements, and character entities are decoded.
+ * <p>
+ * Scanning stops as soon as the snippet is full, so the cost depends on the length of the
+ * snippet rather than that of the text. Nothing is allocated along the way other than the
+ * snippet itself: tag names and entities are matched where they are in the text, without taking
+ * substrings of it.
+ */
+public final class SnippetExtractor {
+
+    /** Drop tags and decode character entities. */
+    public static final int FLAG_STRIP_HTML = 1;
+    /** Drop leading and trailing whitespace rather than collapsing it to a single space. */
+    public static final int FLAG_TRIM = 2;
+
+    private static final char NON_BREAKING_SPACE_CHARACTER = (char) 160;
+
+    // Tags whose content must be stripped as well, in lower case
+    private static final String[] STRIP_TAGS =
+        new String[] {"title", "script", "style", "applet", "head"};
+
+    // All entities are <= 8 characters long, so that's how far we look for the ';'
+    private static final int MAX_ENTITY_LENGTH = 8;
+
+    /** HTML 4 character entity names, sorted, without the leading '&' */
+    private static final String[] ENTITY_NAMES;
+    /** The character for each of {@link #ENTITY_NAMES} */
+    private static final char[] ENTITY_VALUES;
+
+    static {
+        // HTML character entity references as defined in HTML 4
+        // see http://www.w3.org/TR/REC-html40/sgml/entities.html
+        final Map<String, Character> entities = new TreeMap<String, Character>();
+        entities.put("nbsp", '\u00A0');
+        entities.put("iexcl", '\u00A1');
+        entities.put("cent", '\u00A2');
+        entities.put("pound", '\u00A3');
+        entities.put("curren", '\u00A4');
+        entities.put("yen", '\u00A5');
+        entities.put("brvbar", '\u00A6');
+        entities.put("sect", '\u00A7');
+        entities.put("uml", '\u00A8');
+        entities.put("copy", '\u00A9');
+        entities.put("ordf", '\u00AA');
+        entities.put("laquo", '\u00AB');
+        entities.put("not", '\u00AC');
+        entities.put("shy", '\u00AD');
+        entities.put("reg", '\u00AE');
+        entities.put("macr", '\u00AF');
+        entities.put("deg", '\u00B0');
+        entities.put("plusmn", '\u00B1');
+        entities.put("sup2", '\u00B2');
+        entities.put("sup3", '\u00B3');
+        entities.put("acute", '\u00B4');
+        entities.put("micro", '\u00B5');
+        entities.put("para", '\u00B6');
+        entities.put("middot", '\u00B7');
+        entities.put("cedil", '\u00B8');
+        entities.put("sup1", '\u00B9');
+        entities.put("ordm", '\u00BA');
+        entities.put("raquo", '\u00BB');
+        entities.put("frac14", '\u00BC');
+        entities.put("frac12", '\u00BD');
+        entities.put("frac34", '\u00BE');
+        entities.put("iquest", '\u00BF');
+        entities.put("Agrave", '\u00C0');
+        entities.put("Aacute", '\u00C1');
+        entities.put("Acirc", '\u00C2');
+        entities.put("Atilde", '\u00C3');
+        entities.put("Auml", '\u00C4');
+        entities.put("Aring", '\u00C5');
+        entities.put("AElig", '\u00C6');
+        entities.put("Ccedil", '\u00C7');
+        entities.put("Egrave", '\u00C8');
+        entities.put("Eacute", '\u00C9');
+        entities.put("Ecirc", '\u00CA');
+        entities.put("Euml", '\u00CB');
+        entities.put("Igrave", '\u00CC');
+        entities.put("Iacute", '\u00CD');
+        entities.put("Icirc", '\u00CE');
+        entities.put("Iuml", '\u00CF');
+        entities.put("ETH", '\u00D0');
+        entities.put("Ntilde", '\u00D1');
+        entities.put("Ograve", '\u00D2');
+        entities.put("Oacute", '\u00D3');
+        entities.put("Ocirc", '\u00D4');
+        entities.put("Otilde", '\u00D5');
+        entities.put("Ouml", '\u00D6');
+        entities.put("times", '\u00D7');
+        entities.put("Oslash", '\u00D8');
+        entities.put("Ugrave", '\u00D9');
+        entities.put("Uacute", '\u00DA');
+        entities.put("Ucirc", '\u00DB');
+        entities.put("Uuml", '\u00DC');
+        entities.put("Yacute", '\u00DD');
+        entities.put("THORN", '\u00DE');
+        entities.put("szlig", '\u00DF');
+        entities.put("agrave", '\u00E0');
+        entities.put("aacute", '\u00E1');
+        entities.put("acirc", '\u00E2');
+        entities.put("atilde", '\u00E3');
+        entities.put("auml", '\u00E4');
+        entities.put("aring", '\u00E5');
+        entities.put("aelig", '\u00E6');
+        entities.put("ccedil", '\u00E7');
+        entities.put("egrave", '\u00E8');
+        entities.put("eacute", '\u00E9');
+        entities.put("ecirc", '\u00EA');
+        entities.put("euml", '\u00EB');
+        entities.put("igrave", '\u00EC');
+        entities.put("iacute", '\u00ED');
+        entities.put("icirc", '\u00EE');
+        entities.put("iuml", '\u00EF');
+        entities.put("eth", '\u00F0');
+        entities.put("ntilde", '\u00F1');
+        entities.put("ograve", '\u00F2');
+        entities.put("oacute", '\u00F3');
+        entities.put("ocirc", '\u00F4');
+        entities.put("otilde", '\u00F5');
+        entities.put("ouml", '\u00F6');
+        entities.put("divide", '\u00F7');
+        entities.put("oslash", '\u00F8');
+        entities.put("ugrave", '\u00F9');
+        entities.put("uacute", '\u00FA');
+        entities.put("ucirc", '\u00FB');
+        entities.put("uuml", '\u00FC');
+        entities.put("yacute", '\u00FD');
+        entities.put("thorn", '\u00FE');
+        entities.put("yuml", '\u00FF');
+        entities.put("fnof", '\u0192');
+        entities.put("Alpha", '\u0391');
+        entities.put("Beta", '\u0392');
+        entities.put("Gamma", '\u0393');
+        entities.put("Delta", '\u0394');
+        entities.put("Epsilon", '\u0395');
+        entities.put("Zeta", '\u0396');
+        entities.put("Eta", '\u0397');
+        entities.put("Theta", '\u0398');
+        entities.put("Iota", '\u0399');
+        entities.put("Kappa", '\u039A');
+        entities.put("Lambda", '\u039B');
+        entities.put("Mu", '\u039C');
+        entities.put("Nu", '\u039D');
+        entities.put("Xi", '\u039E');
+        entities.put("Omicron", '\u039F');
+        entities.put("Pi", '\u03A0');
+        entities.put("Rho", '\u03A1');
+        entities.put("Sigma", '\u03A3');
+        entities.put("Tau", '\u03A4');
+        entities.put("Upsilon", '\u03A5');
+        entities.put("Phi", '\u03A6');
+        entities.put("Chi", '\u03A7');
+        entities.put("Psi", '\u03A8');
+        entities.put("Omega", '\u03A9');
+        entities.put("alpha", '\u03B1');
+        entities.put("beta", '\u03B2');
+        entities.put("gamma", '\u03B3');
+        entities.put("delta", '\u03B4');
+        entities.put("epsilon", '\u03B5');
+        entities.put("zeta", '\u03B6');
+        entities.put("eta", '\u03B7');
+        entities.put("theta", '\u03B8');
+        entities.put("iota", '\u03B9');
+        entities.put("kappa", '\u03BA');
+        entities.put("lambda", '\u03BB');
+        entities.put("mu", '\u03BC');
+        entities.put("nu", '\u03BD');
+        entities.put("xi", '\u03BE');
+        entities.put("omicron", '\u03BF');
+        entities.put("pi", '\u03C0');
+        entities.put("rho", '\u03C1');
+        entities.put("sigmaf", '\u03C2');
+        entities.put("sigma", '\u03C3');
+        entities.put("tau", '\u03C4');
+        entities.put("upsilon", '\u03C5');
+        entities.put("phi", '\u03C6');
+        entities.put("chi", '\u03C7');
+        entities.put("psi", '\u03C8');
+        entities.put("omega", '\u03C9');
+        entities.put("thetasym", '\u03D1');
+        entities.put("upsih", '\u03D2');
+        entities.put("piv", '\u03D6');
+        entities.put("bull", '\u2022');
+        entities.put("hellip", '\u2026');
+        entities.put("prime", '\u2032');
+        entities.put("Prime", '\u2033');
+        entities.put("oline", '\u203E');
+        entities.put("frasl", '\u2044');
+        entities.put("weierp", '\u2118');
+        entities.put("image", '\u2111');
+        entities.put("real", '\u211C');
+        entities.put("trade", '\u2122');
+        entities.put("alefsym", '\u2135');
+        entities.put("larr", '\u2190');
+        entities.put("uarr", '\u2191');
+        entities.put("rarr", '\u2192');
+        entities.put("darr", '\u2193');
+        entities.put("harr", '\u2194');
+        entities.put("crarr", '\u21B5');
+        entities.put("lArr", '\u21D0');
+        entities.put("uArr", '\u21D1');
+        entities.put("rArr", '\u21D2');
+        entities.put("dArr", '\u21D3');
+        entities.put("hArr", '\u21D4');
+        entities.put("forall", '\u2200');
+        entities.put("part", '\u2202');
+        entities.put("exist", '\u2203');
+        entities.put("empty", '\u2205');
+        entities.put("nabla", '\u2207');
+        entities.put("isin", '\u2208');
+        entities.put("notin", '\u2209');
+        entities.put("ni", '\u220B');
+        entities.put("prod", '\u220F');
+        entities.put("sum", '\u2211');
+        entities.put("minus", '\u2212');
+        entities.put("lowast", '\u2217');
+        entities.put("radic", '\u221A');
+        entities.put("prop", '\u221D');
+        entities.put("infin", '\u221E');
+        entities.put("ang", '\u2220');
+        entities.put("and", '\u2227');
+        entities.put("or", '\u2228');
+        entities.put("cap", '\u2229');
+        entities.put("cup", '\u222A');
+        entities.put("int", '\u222B');
+        entities.put("there4", '\u2234');
+        entities.put("sim", '\u223C');
+        entities.put("cong", '\u2245');
+        entities.put("asymp", '\u2248');
+        entities.put("ne", '\u2260');
+        entities.put("equiv", '\u2261');
+        entities.put("le", '\u2264');
+        entities.put("ge", '\u2265');
+        entities.put("sub", '\u2282');
+        entities.put("sup", '\u2283');
+        entities.put("nsub", '\u2284');
+        entities.put("sube", '\u2286');
+        entities.put("supe", '\u2287');
+        entities.put("oplus", '\u2295');
+        entities.put("otimes", '\u2297');
+        entities.put("perp", '\u22A5');
+        entities.put("sdot", '\u22C5');
+        entities.put("lceil", '\u2308');
+        entities.put("rceil", '\u2309');
+        entities.put("lfloor", '\u230A');
+        entities.put("rfloor", '\u230B');
+        entities.put("lang", '\u2329');
+        entities.put("rang", '\u232A');
+        entities.put("loz", '\u25CA');
+        entities.put("spades", '\u2660');
+        entities.put("clubs", '\u2663');
+        entities.put("hearts", '\u2665');
+        entities.put("diams", '\u2666');
+        entities.put("quot", '\u0022');
+        entities.put("amp", '\u0026');
+        entities.put("lt", '\u003C');
+        entities.put("gt", '\u003E');
+        entities.put("OElig", '\u0152');
+        entities.put("oelig", '\u0153');
+        entities.put("Scaron", '\u0160');
+        entities.put("scaron", '\u0161');
+        entities.put("Yuml", '\u0178');
+        entities.put("circ", '\u02C6');
+        entities.put("tilde", '\u02DC');
+        entities.put("ensp", '\u2002');
+        entities.put("emsp", '\u2003');
+        entities.put("thinsp", '\u2009');
+        entities.put("zwnj", '\u200C');
+        entities.put("zwj", '\u200D');
+        entities.put("lrm", '\u200E');
+        entities.put("rlm", '\u200F');
+        entities.put("ndash", '\u2013');
+        entities.put("mdash", '\u2014');
+        entities.put("lsquo", '\u2018');
+        entities.put("rsquo", '\u2019');
+        entities.put("sbquo", '\u201A');
+        entities.put("ldquo", '\u201C');
+        entities.put("rdquo", '\u201D');
+        entities.put("bdquo", '\u201E');
+        entities.put("dagger", '\u2020');
+        entities.put("Dagger", '\u2021');
+        entities.put("permil", '\u2030');
+        entities.put("lsaquo", '\u2039');
+        entities.put("rsaquo", '\u203A');
+        entities.put("euro", '\u20AC');
+        // not in HTML 4, but common in mail
+        entities.put("apos", '\'');
+
+        // sorted, for binary search
+        ENTITY_NAMES = new String[entities.size()];
+        ENTITY_VALUES = new char[entities.size()];
+        int i = 0;
+        for (Map.Entry<String, Character> entry : entities.entrySet()) {
+            ENTITY_NAMES[i] = entry.getKey();
+            ENTITY_VALUES[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    private SnippetExtractor() {}
+
+    /**
+     * Makes a snippet of at most {@code maxLength} characters from {@code text}.
+     *
+     * @param text plain text, or html if {@code flags} has {@link #FLAG_STRIP_HTML}
+     * @param maxLength the most characters in the snippet
+     * @param flags {@link #FLAG_STRIP_HTML} and/or {@link #FLAG_TRIM}
+     * @return the snippet; empty if {@code text} is null or empty
+     */
+    public static String extract(CharSequence text, int maxLength, int flags) {
+        if (text == null || text.length() == 0) {
+            return "";
+        }
+        final boolean stripHtml = (flags & FLAG_STRIP_HTML) != 0;
+        final boolean trim = (flags & FLAG_TRIM) != 0;
+        final int length = text.length();
+        final char[] buffer = new char[maxLength];
+        int bufferCount = 0;
+        // Starting with space as the last character avoids leading whitespace
+        char last = trim ? ' ' : 0;
+
+        int i = 0;
+        while (i < length && bufferCount < maxLength) {
+            char c = text.charAt(i++);
+            if (stripHtml) {
+                if (c == '<' && i < length && isTagStart(text.charAt(i))) {
+                    i = skipTag(text, i);
+                    continue;
+                } else if (c == '&') {
+                    final long entity = decodeEntity(text, i);
+                    if (entity >= 0) {
+                        c = (char) entity;
+                        i = (int) (entity >>> 16);
+                    }
+                }
+            }
+
+            if (Character.isWhitespace(c) || (c == NON_BREAKING_SPACE_CHARACTER)) {
+                // The idea is to find the content in the message, not the whitespace, so we'll
+                // turn any combination of contiguous whitespace into a single space
+                if (last == ' ') {
+                    continue;
+                }
+                c = ' ';
+            } else if ((c == '-' || c == '=') && (last == c)) {
+                // Lots of messages (especially digests) have whole lines of --- or ===
+                continue;
+            }
+
+            buffer[bufferCount++] = c;
+            last = c;
+        }
+
+        if (trim && (bufferCount > 0) && (last == ' ')) {
+            bufferCount--;
+        }
+        return new String(buffer, 0, bufferCount);
+    }
+
+    /** Tags begin with <! or <- or </ or <letter */
+    /*package*/ static boolean isTagStart(char c) {
+        return c == '!' || c == '-' || c == '/' || Character.isLetter(c);
+    }
+
+    /**
+     * Skips a tag, along with the content of the element if it is one of {@link #STRIP_TAGS}.
+     *
+     * @param start the position just after the '<'
+     * @return the position just after the tag, or the length of the text if the tag, or the
+     * element whose content is stripped, doesn't end
+     */
+    /*package*/ static int skipTag(CharSequence text, int start) {
+        final int length = text.length();
+        final int tagEnd = indexOf(text, '>', start);
+        if (tagEnd < 0) {
+            return length;
+        }
+        final String stripTag = getStripTag(text, start);
+        if (stripTag == null || text.charAt(tagEnd - 1) == '/') {
+            return tagEnd + 1;
+        }
+        // Skip everything up to the end tag, then the end tag itself
+        for (int i = tagEnd + 1; i < length - 1; i++) {
+            if (text.charAt(i) == '<' && text.charAt(i + 1) == '/'
+                    && matchesIgnoreCase(text, i + 2, stripTag)) {
+                final int endTagEnd = indexOf(text, '>', i + 2);
+                return endTagEnd < 0 ? length : endTagEnd + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the one of {@link #STRIP_TAGS} that names the tag at {@code start}, or null if none
+     * does
+     */
+    private static String getStripTag(CharSequence text, int start) {
+        for (String stripTag : STRIP_TAGS) {
+            if (matchesIgnoreCase(text, start, stripTag)) {
+                final int end = start + stripTag.length();
+                if (end == text.length() || !Character.isLetterOrDigit(text.charAt(end))) {
+                    return stripTag;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesIgnoreCase(CharSequence text, int start, String lowerCase) {
+        final int length = lowerCase.length();
+        if (start + length > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, char c, int start) {
+        final int length = text.length();
+        for (int i = start; i < length; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a named or numeric character entity. An unknown name isn't decoded; a malformed
+     * number decodes to '?'.
+     *
+     * @param start the position just after the '&'
+     * @return -1 if there is no entity at {@code start}; otherwise the character, with the
+     * position just after the ';' shifted left by 16
+     */
+    /*package*/ static long decodeEntity(CharSequence text, int start) {
+        final int limit = Math.min(text.length(), start + MAX_ENTITY_LENGTH + 1);
+        int end = -1;
+        for (int i = start; i < limit; i++) {
+            if (text.charAt(i) == ';') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return -1;
+        }
+
+        final char c;
+        final int index = findEntityName(text, start, end);
+        if (index >= 0) {
+            c = ENTITY_VALUES[index];
+        } else if (end - start > 1 && text.charAt(start) == '#') {
+            // &#nn; means ascii nn (decimal) and &#xnn; means ascii nn (hex)
+            c = parseCharacterReference(text, start + 1, end);
+        } else {
+            return -1;
+        }
+        return ((long) (end + 1) << 16) | c;
+    }
+
+    /**
+     * Binary searches {@link #ENTITY_NAMES} for the text from {@code start} to {@code end}.
+     *
+     * @return the index of the name, or -1 if it isn't there
+     */
+    private static int findEntityName(CharSequence text, int start, int end) {
+        int lo = 0;
+        int hi = ENTITY_NAMES.length - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compare(ENTITY_NAMES[mid], text, start, end);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares like {@link String#compareTo}, without taking a substring of {@code text} */
+    private static int compare(String name, CharSequence text, int start, int end) {
+        final int length = Math.min(name.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            final int cmp = name.charAt(i) - text.charAt(start + i);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return name.length() - (end - start);
+    }
+
+    /** @return the character numbered from {@code start} to {@code end}, or '?' if malformed */
+    private static char parseCharacterReference(CharSequence text, int start, int end) {
+        int radix = 10;
+        if (text.charAt(start) == 'x' && end - start > 1) {
+            radix = 16;
+            start++;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = Character.digit(text.charAt(i), radix);
+            if (digit < 0) {
+                return '?';
+            }
+            value = value * radix + digit;
+        }
+        return (char) value;
+    }
+}
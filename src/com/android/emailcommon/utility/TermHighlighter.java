@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.TextUtils;
+import android.text.style.BackgroundColorSpan;
+
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+
+/**
+ * Highlights every occurrence of the terms of a search query, ignoring case.
+ * <p>
+ * The query is compiled once into an Aho-Corasick automaton, so that a text is searched for all
+ * of the terms at once in a single pass, however many terms there are. A highlighter can be
+ * reused for any number of texts, e.g. all of the messages of a conversation in search results,
+ * and is safe to use from several threads at once.
+ * <p>
+ * Overlapping and adjacent occurrences are highlighted as one. In html, only text is searched;
+ * tags, character entities and the content of title, script, style, applet and head elements
+ * are copied as they are, and an occurrence never spans them.
+ */
+public final class TermHighlighter {
+
+    private static final String HIGHLIGHT_START = "<span style=\"background-color: "
+            + TextUtilities.HIGHLIGHT_COLOR_STRING + "\">";
+    private static final String HIGHLIGHT_END = "</span>";
+
+    /** The characters on which each state has a transition, in lower case */
+    private final char[][] mKeys;
+    /** The state that each of {@link #mKeys} leads to */
+    private final int[][] mNext;
+    /** The state to fall back to from each state when there is no transition */
+    private final int[] mFail;
+    /** The length of the longest term that ends in each state, 0 if none does */
+    private final int[] mMatchLength;
+
+    /** A state of the automaton while it is being built */
+    private static final class Node {
+        final StringBuilder mKeys = new StringBuilder();
+        final ArrayList<Integer> mNext = new ArrayList<Integer>();
+        int mMatchLength;
+
+        int next(char c) {
+            final int i = mKeys.indexOf(String.valueOf(c));
+            return i < 0 ? -1 : mNext.get(i);
+        }
+    }
+
+    /**
+     * @param query the search terms, separated by whitespace
+     */
+    public TermHighlighter(String query) {
+        final ArrayList<Node> nodes = new ArrayList<Node>();
+        nodes.add(new Node());
+        if (query != null) {
+            final StringTokenizer st = new StringTokenizer(query);
+            while (st.hasMoreTokens()) {
+                final String term = st.nextToken();
+                int state = 0;
+                for (int i = 0; i < term.length(); i++) {
+                    final char c = Character.toLowerCase(term.charAt(i));
+                    int next = nodes.get(state).next(c);
+                    if (next < 0) {
+                        next = nodes.size();
+                        nodes.add(new Node());
+                        nodes.get(state).mKeys.append(c);
+                        nodes.get(state).mNext.add(next);
+                    }
+                    state = next;
+                }
+                nodes.get(state).mMatchLength = term.length();
+            }
+        }
+
+        final int count = nodes.size();
+        mKeys = new char[count][];
+        mNext = new int[count][];
+        mFail = new int[count];
+        mMatchLength = new int[count];
+        for (int i = 0; i < count; i++) {
+            final Node node = nodes.get(i);
+            mKeys[i] = node.mKeys.toString().toCharArray();
+            mNext[i] = new int[node.mNext.size()];
+            for (int j = 0; j < mNext[i].length; j++) {
+                mNext[i][j] = node.mNext.get(j);
+            }
+            mMatchLength[i] = node.mMatchLength;
+        }
+
+        // Fill in the fallbacks breadth first, so that a state's fallback, which is always
+        // shallower, is done before the state itself
+        final int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            final int state = queue[head++];
+            for (int j = 0; j < mKeys[state].length; j++) {
+                final char c = mKeys[state][j];
+                final int child = mNext[state][j];
+                if (state != 0) {
+                    mFail[child] = step(mFail[state], c);
+                    // a term that ends in the fallback also ends here
+                    mMatchLength[child] = Math.max(mMatchLength[child],
+                            mMatchLength[mFail[child]]);
+                }
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /** @return true if the query has no terms, so nothing is ever highlighted */
+    public boolean isEmpty() {
+        return mKeys[0].length == 0;
+    }
+
+    /**
+     * @return the state that {@code c} leads to from {@code state}, following fallbacks
+     */
+    private int step(int state, char c) {
+        while (true) {
+            final char[] keys = mKeys[state];
+            for (int j = 0; j < keys.length; j++) {
+                if (keys[j] == c) {
+                    return mNext[state][j];
+                }
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = mFail[state];
+        }
+    }
+
+    /** Receives the ranges of the text to highlight, in order */
+    private interface Highlights {
+        void add(int start, int end);
+    }
+
+    /**
+     * Finds the occurrences of the terms from {@code start} to {@code end}, and passes each run
+     * of overlapping or adjacent occurrences to {@code highlights}.
+     */
+    private void search(CharSequence text, int start, int end, Highlights highlights) {
+        // Occurrences are found in order of their ends, but a long one may reach back over
+        // shorter ones found before it, so runs are merged on a stack of {start, end} pairs
+        int[] runs = null;
+        int runCount = 0;
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            state = step(state, Character.toLowerCase(text.charAt(i)));
+            final int length = mMatchLength[state];
+            if (length == 0) {
+                continue;
+            }
+            int matchStart = i + 1 - length;
+            while (runCount > 0 && runs[runCount - 1] >= matchStart) {
+                matchStart = Math.min(matchStart, runs[runCount - 2]);
+                runCount -= 2;
+            }
+            if (runs == null) {
+                runs = new int[8];
+            } else if (runCount == runs.length) {
+                final int[] grown = new int[runs.length * 2];
+                System.arraycopy(runs, 0, grown, 0, runCount);
+                runs = grown;
+            }
+            runs[runCount++] = matchStart;
+            runs[runCount++] = i + 1;
+        }
+        for (int j = 0; j < runCount; j += 2) {
+            highlights.add(runs[j], runs[j + 1]);
+        }
+    }
+
+    /**
+     * @param text plain text
+     * @return the text with the terms highlighted by spans; the text itself if nothing is
+     * highlighted
+     */
+    public CharSequence highlightText(final CharSequence text) {
+        if (TextUtils.isEmpty(text) || isEmpty()) {
+            return text == null ? "" : text;
+        }
+        final Spannable[] spannable = new Spannable[1];
+        search(text, 0, text.length(), new Highlights() {
+            @Override
+            public void add(int start, int end) {
+                if (spannable[0] == null) {
+                    spannable[0] = new SpannableString(text);
+                }
+                spannable[0].setSpan(new BackgroundColorSpan(TextUtilities.HIGHLIGHT_COLOR_INT),
+                        start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        });
+        return spannable[0] != null ? spannable[0] : text;
+    }
+
+    /**
+     * @param html html text
+     * @return the html with the terms highlighted by span elements
+     */
+    public String highlightHtml(final String html) {
+        if (TextUtils.isEmpty(html) || isEmpty()) {
+            return html == null ? "" : html;
+        }
+        final StringBuilder out = new StringBuilder(html.length() + 64);
+        final int length = html.length();
+        // the text from runStart up to i is searched when the run ends
+        int runStart = 0;
+        int i = 0;
+        while (i < length) {
+            final char c = html.charAt(i);
+            int skipEnd = -1;
+            if (c == '<' && i + 1 < length && SnippetExtractor.isTagStart(html.charAt(i + 1))) {
+                skipEnd = SnippetExtractor.skipTag(html, i + 1);
+            } else if (c == '&') {
+                final long entity = SnippetExtractor.decodeEntity(html, i + 1);
+                if (entity >= 0) {
+                    skipEnd = (int) (entity >>> 16);
+                }
+            }
+            if (skipEnd < 0) {
+                i++;
+                continue;
+            }
+            appendHighlighted(html, runStart, i, out);
+            out.append(html, i, skipEnd);
+            i = skipEnd;
+            runStart = i;
+        }
+        appendHighlighted(html, runStart, length, out);
+        return out.toString();
+    }
+
+    /** Appends the text from {@code start} to {@code end}, highlighting any occurrences */
+    private void appendHighlighted(final String html, final int start, int end,
+            final StringBuilder out) {
+        final int[] lastOut = new int[] {start};
+        search(html, start, end, new Highlights() {
+            @Override
+            public void add(int highlightStart, int highlightEnd) {
+                out.append(html, lastOut[0], highlightStart);
+                out.append(HIGHLIGHT_START);
+                out.append(html, highlightStart, highlightEnd);
+                out.append(HIGHLIGHT_END);
+                lastOut[0] = highlightEnd;
+            }
+        });
+        out.append(html, lastOut[0], end);
+    }
+}
@@ -17,12 +17,15 @@
 
 package com.android.mail;
 
+import com.android.emailcommon.mail.Address;
+import com.android.mail.perf.Tracer;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
+import android.util.Log;
 import android.util.Pair;
 
 import java.io.FileDescriptor;
@@ -45,6 +48,13 @@ import java.util.Queue;
  * which is a class name, like "AbstractActivityController", which is a unique ID. Then, add to the
  * resulting buffer any information of interest at logging time. This is kept in a ring buffer,
  * which is overwritten with new information.
+ *
+ * While the service is running, latency tracing through {@link Tracer} is also turned on, and
+ * the latencies are included in the dump. Tracing records no user data, so unlike the logs it
+ * doesn't need {@link #DEBUG_ENABLED}: setting the log level of {@link #TRACING_TAG} to DEBUG
+ * (adb shell setprop log.tag.MailTracing DEBUG) starts the service in any build, and
+ * "adb shell dumpsys activity service MailLogService tracing on|off" turns tracing on or off
+ * while it runs.
  */
 public class MailLogService extends Service {
     /**
@@ -55,6 +65,11 @@ public class MailLogService extends Service {
     /** The tag which needs to be turned to DEBUG to get logging going. */
     protected static final String LOG_TAG = LogTag.getLogTag();
 
+    /** The tag which needs to be turned to DEBUG to get latency tracing going. */
+    public static final String TRACING_TAG = "MailTracing";
+    /** The dumpsys argument that turns tracing on or off, followed by "on" or "off". */
+    private static final String TRACING_ARG = "tracing";
+
     /**
      * A circular buffer of {@value #SIZE} lines.  To  insert into this buffer,
      * call the {@link #put(String)} method.  To retrieve the most recent logs,
@@ -121,6 +136,18 @@ public class MailLogService extends Service {
         return null;
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Tracer.setEnabled(true);
+    }
+
+    @Override
+    public void onDestroy() {
+        Tracer.setEnabled(false);
+        super.onDestroy();
+    }
+
     /**
      * Return the circular buffer associated with this tag, or create a new buffer if none is
      * currently associated.
@@ -145,6 +172,14 @@ public class MailLogService extends Service {
         return LogUtils.isLoggable(LOG_TAG, LogUtils.DEBUG);
     }
 
+    /**
+     * Return true if latency tracing has been asked for, whether or not {@link #DEBUG_ENABLED}.
+     * @return true if this service should run to collect latencies. False otherwise.
+     */
+    public static boolean isTracingRequested() {
+        return Log.isLoggable(TRACING_TAG, Log.DEBUG);
+    }
+
     /**
      * Add to the log for the tag given.
      * @param tag a unique tag to add the message to
@@ -163,6 +198,12 @@ public class MailLogService extends Service {
 
     @Override
     protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length == 2 && TRACING_ARG.equals(args[0])) {
+            Tracer.setEnabled("on".equals(args[1]));
+        }
+        // Latencies and cache counters hold no user data, so are dumped in every build
+        Tracer.dump(writer);
+        Address.dumpCacheStats(writer);
         if (!DEBUG_ENABLED) {
             return;
         }
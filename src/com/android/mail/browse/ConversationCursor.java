@@ -19,11 +19,9 @@ package com.android.mail.browse;
 
 import android.app.Activity;
 import android.content.ContentProvider;
-import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.CharArrayBuffer;
 import android.database.ContentObserver;
 import android.database.Cursor;
@@ -33,12 +31,12 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.os.RemoteException;
 import android.os.SystemClock;
 import android.support.v4.util.SparseArrayCompat;
 import android.text.TextUtils;
 
 import com.android.mail.content.ThreadSafeCursorWrapper;
+import com.android.mail.perf.Tracer;
 import com.android.mail.providers.Conversation;
 import com.android.mail.providers.Folder;
 import com.android.mail.providers.FolderList;
@@ -47,15 +45,16 @@ import com.android.mail.providers.UIProvider.ConversationListQueryParameters;
 import com.android.mail.providers.UIProvider.ConversationOperations;
 import com.android.mail.ui.ConversationListFragment;
 import com.android.mail.utils.DrawIdler;
+import com.android.mail.utils.LongIntHashMap;
 import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.NotificationActionUtils;
 import com.android.mail.utils.NotificationActionUtils.NotificationAction;
 import com.android.mail.utils.NotificationActionUtils.NotificationActionType;
+import com.android.mail.utils.SparseLongArray;
 import com.android.mail.utils.Utils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
@@ -87,11 +86,16 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
      * A sentinel value for the "index" of the deleted column; it's an int that is otherwise invalid
      */
     private static final int DELETED_COLUMN_INDEX = -1;
+    /** The bit representing {@link #DELETED_COLUMN} in {@link #mCachedColumnMasks} */
+    private static final long DELETED_COLUMN_BIT = 1L << 63;
+    /** The bit shared by all columns past the 62nd in {@link #mCachedColumnMasks} */
+    private static final long OVERFLOW_COLUMN_BIT = 1L << 62;
     /**
      * If a cached value within 10 seconds of a refresh(), preserve it. This time has been
      * chosen empirically (long enough for UI changes to propagate in any reasonable case)
      */
-    private static final long REQUERY_ALLOWANCE_TIME = 10000L;
+    @VisibleForTesting
+    static long sRequeryAllowanceTime = 10000L;
 
     /**
      * The index of the Uri whose data is reflected in the cached row. Updates/Deletes to this Uri
@@ -101,6 +105,40 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
     private static final boolean DEBUG_DUPLICATE_KEYS = true;
 
+    /**
+     * The columns, besides the id and uri keys, that a row version is computed from. Together
+     * they cover everything a {@link Conversation} is built from.
+     */
+    private static final int[] VERSION_INT_COLUMNS = {
+            UIProvider.CONVERSATION_HAS_ATTACHMENTS_COLUMN,
+            UIProvider.CONVERSATION_NUM_MESSAGES_COLUMN,
+            UIProvider.CONVERSATION_NUM_DRAFTS_COLUMN,
+            UIProvider.CONVERSATION_SENDING_STATE_COLUMN,
+            UIProvider.CONVERSATION_PRIORITY_COLUMN,
+            UIProvider.CONVERSATION_READ_COLUMN,
+            UIProvider.CONVERSATION_SEEN_COLUMN,
+            UIProvider.CONVERSATION_STARRED_COLUMN,
+            UIProvider.CONVERSATION_FLAGS_COLUMN,
+            UIProvider.CONVERSATION_PERSONAL_LEVEL_COLUMN,
+            UIProvider.CONVERSATION_IS_SPAM_COLUMN,
+            UIProvider.CONVERSATION_IS_PHISHING_COLUMN,
+            UIProvider.CONVERSATION_MUTED_COLUMN,
+            UIProvider.CONVERSATION_COLOR_COLUMN,
+            UIProvider.CONVERSATION_REMOTE_COLUMN
+    };
+    private static final int[] VERSION_STRING_COLUMNS = {
+            UIProvider.CONVERSATION_MESSAGE_LIST_URI_COLUMN,
+            UIProvider.CONVERSATION_SUBJECT_COLUMN,
+            UIProvider.CONVERSATION_SNIPPET_COLUMN,
+            UIProvider.CONVERSATION_ACCOUNT_URI_COLUMN,
+            UIProvider.CONVERSATION_SENDER_INFO_COLUMN,
+            UIProvider.CONVERSATION_BASE_URI_COLUMN
+    };
+    private static final int[] VERSION_BLOB_COLUMNS = {
+            UIProvider.CONVERSATION_INFO_COLUMN,
+            UIProvider.CONVERSATION_RAW_FOLDERS_COLUMN
+    };
+
     /** The resolver for the cursor instantiator's context */
     private final ContentResolver mResolver;
 
@@ -114,10 +152,21 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
     UnderlyingCursorWrapper mUnderlyingCursor;
     /** The new cursor obtained via a requery */
     private volatile UnderlyingCursorWrapper mRequeryCursor;
+    /** The difference between the current cursor and {@link #mRequeryCursor}, if known */
+    private ConversationCursorDiff mRequeryDiff;
     /** A mapping from Uri to updated ContentValues */
     private final HashMap<String, ContentValues> mCacheMap = new HashMap<String, ContentValues>();
     /** Cache map lock (will be used only very briefly - few ms at most) */
     private final Object mCacheMapLock = new Object();
+    /**
+     * For each underlying cursor position that has values in {@link #mCacheMap}, a bitmask of
+     * the cached columns (see {@link #columnBit(int)}). This lets the column getters rule out a
+     * cached value with a single bit test, without building a key or touching the map, which
+     * matters because they are called for every column of every row bound during a scroll.
+     * Guarded by {@link #mCacheMapLock} like {@link #mCacheMap}, including in the getters, and
+     * rebuilt whenever the underlying cursor changes.
+     */
+    private final SparseLongArray mCachedColumnMasks = new SparseLongArray();
     /** The listeners registered for this cursor */
     private final List<ConversationListener> mListeners = Lists.newArrayList();
     /**
@@ -251,17 +300,79 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         }
     }
 
-    public Set<Long> getConversationIds() {
-        return mUnderlyingCursor != null ? mUnderlyingCursor.conversationIds() : null;
+    /**
+     * Returns whether the underlying cursor contains the conversation with the given id, without
+     * adjusting for the cache (see {@link #getUnderlyingPosition(long)}).
+     */
+    public boolean containsUnderlyingConversation(long conversationId) {
+        return mUnderlyingCursor != null && mUnderlyingCursor.contains(conversationId);
     }
 
-    private static class UnderlyingRowData {
-        public final String innerUri;
-        public Conversation conversation;
+    /**
+     * Maps conversation uri strings to their row position, without boxing. Keys are not copied:
+     * the table only stores positions and compares candidates against the backing uri array,
+     * so the whole index costs a single int per slot.
+     */
+    private static final class UriPositionIndex {
+        private final String[] mUris;
+        /** Open-addressed table of (position + 1); 0 marks an empty slot. */
+        private final int[] mTable;
+        private final int mMask;
+        private int mSize;
+
+        UriPositionIndex(String[] uris) {
+            mUris = uris;
+            // keep the load factor at or below 0.5
+            int capacity = 8;
+            while ((capacity >> 1) <= uris.length) {
+                capacity <<= 1;
+            }
+            mTable = new int[capacity];
+            mMask = capacity - 1;
+        }
 
-        public UnderlyingRowData(String innerUri, Conversation conversation) {
-            this.innerUri = innerUri;
-            this.conversation = conversation;
+        /**
+         * Indexes the uri at the given position of the backing array.
+         *
+         * @return the position previously indexed for an equal uri, or -1 if there was none
+         */
+        int add(int position) {
+            final String uri = mUris[position];
+            int i = spread(uri.hashCode()) & mMask;
+            int slot;
+            while ((slot = mTable[i]) != 0) {
+                if (uri.equals(mUris[slot - 1])) {
+                    mTable[i] = position + 1;
+                    return slot - 1;
+                }
+                i = (i + 1) & mMask;
+            }
+            mTable[i] = position + 1;
+            mSize++;
+            return -1;
+        }
+
+        int get(String uri) {
+            if (uri == null) {
+                return -1;
+            }
+            int i = spread(uri.hashCode()) & mMask;
+            int slot;
+            while ((slot = mTable[i]) != 0) {
+                if (uri.equals(mUris[slot - 1])) {
+                    return slot - 1;
+                }
+                i = (i + 1) & mMask;
+            }
+            return -1;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
         }
     }
 
@@ -290,10 +401,15 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
             @Override
             public Void doInBackground(Void... param) {
+                final long start = Tracer.begin();
                 try {
                     Utils.traceBeginSection("backgroundCaching");
                     if (DEBUG) LogUtils.i(LOG_TAG, "in cache job pos=%s c=%s", mStartPos,
                             getWrappedCursor());
+                    if (mWindowedCaching) {
+                        cacheWindow();
+                        return null;
+                    }
                     final int count = getCount();
                     while (true) {
                         // It is possible for two instances of this loop to execute at once if
@@ -306,28 +422,64 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                             break;
                         }
 
-                        final UnderlyingRowData rowData = mRowCache.get(pos);
-                        if (rowData.conversation == null) {
-                            // We are running in a background thread.  Set the position to the row
-                            // we are interested in.
-                            if (moveToPosition(pos)) {
-                                rowData.conversation = new Conversation(
-                                        UnderlyingCursorWrapper.this);
-                            }
-                        }
+                        cacheRow(pos);
                         mCachePos = pos + 1;
                     }
                     System.gc();
                 } finally {
                     Utils.traceEndSection();
+                    Tracer.end(Tracer.PRELOAD_CURSOR, start);
                 }
                 return null;
             }
 
+            /**
+             * Caches the window of pages around {@link #mUiPage}, starting with the visible page
+             * and working outwards, so the rows the user is most likely to see next are ready
+             * first. Gives up early if the visible page moves; the next task will pick up the
+             * new window.
+             */
+            private void cacheWindow() {
+                final int page = mUiPage;
+                for (int distance = 0; distance <= CACHE_WINDOW_RADIUS; distance++) {
+                    if (!cachePage(page, page + distance)) {
+                        return;
+                    }
+                    if (distance > 0 && !cachePage(page, page - distance)) {
+                        return;
+                    }
+                }
+                mWindowPage = page;
+            }
+
+            /**
+             * @return false if caching should stop because the task was cancelled or the
+             * window moved away from {@code windowPage}
+             */
+            private boolean cachePage(int windowPage, int page) {
+                final int count = getCount();
+                final int end = Math.min((page + 1) * CACHE_PAGE_SIZE, count);
+                for (int pos = Math.max(0, page * CACHE_PAGE_SIZE); pos < end; pos++) {
+                    if (isCancelled() || mUiPage != windowPage) {
+                        return false;
+                    }
+                    cacheRow(pos);
+                }
+                return true;
+            }
+
             @Override
             protected void onPostExecute(Void result) {
                 mCacheLoaderTask = null;
-                LogUtils.i(LOG_TAG, "ConversationCursor caching complete pos=%s", mCachePos);
+                if (mWindowedCaching) {
+                    LogUtils.i(LOG_TAG, "ConversationCursor caching complete page=%s", mWindowPage);
+                    // The user may have moved on to another page while we were caching
+                    if (mDrawState == DrawIdler.STATE_IDLE) {
+                        resumeCaching();
+                    }
+                } else {
+                    LogUtils.i(LOG_TAG, "ConversationCursor caching complete pos=%s", mCachePos);
+                }
             }
 
         }
@@ -346,6 +498,17 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             }
         }
 
+        /**
+         * Folders with more rows than this only keep a window of pages around the visible
+         * position cached, rather than every conversation, so that memory held by cached
+         * conversations stays bounded no matter how large the folder is.
+         */
+        private static final int MAX_FULLY_CACHED_COUNT = 2000;
+        /** The number of rows in a page of the cache window */
+        private static final int CACHE_PAGE_SIZE = 50;
+        /** The number of pages cached on either side of the visible page */
+        private static final int CACHE_WINDOW_RADIUS = 4;
+
         // be polite by default; assume the device is initially busy and don't start pre-caching
         // until the idler connects and says we're idle
         private int mDrawState = DrawIdler.STATE_ACTIVE;
@@ -363,15 +526,41 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
          */
         private int mCachePos;
         private boolean mCachingEnabled;
+        /**
+         * If true, only the pages around the visible position are cached (see
+         * {@link #MAX_FULLY_CACHED_COUNT}), and {@link #mCachePos} is unused.
+         */
+        private final boolean mWindowedCaching;
+        /** The page containing the last position displayed by the UI. Written on the UI thread. */
+        private volatile int mUiPage = 0;
+        /** The page the cached window was last centered on, or -1 if none has been cached. */
+        private volatile int mWindowPage = -1;
         private final NewCursorUpdateObserver mCursorUpdateObserver;
         private boolean mUpdateObserverRegistered = false;
 
-        // Ideally these two objects could be combined into a Map from
+        // Ideally these two indices could be combined into a single map from
         // conversationId -> position, but the cached values uses the conversation
-        // uri as a key.
-        private final Map<String, Integer> mConversationUriPositionMap;
-        private final Map<Long, Integer> mConversationIdPositionMap;
-        private final List<UnderlyingRowData> mRowCache;
+        // uri as a key. Both are primitive open-addressed tables, as they are built for every
+        // row of the cursor on each refresh.
+        private final UriPositionIndex mConversationUriPositionIndex;
+        private final LongIntHashMap mConversationIdPositionMap;
+        /** The inner conversation uri of each row, indexed by position */
+        private final String[] mInnerUris;
+        /** The conversation id of each row, indexed by position */
+        private final long[] mConversationIds;
+        /**
+         * The version of each row, indexed by position, computed on demand by
+         * {@link #getRowVersions(int)}; {@link ConversationCursorDiff#UNKNOWN_VERSION} for the
+         * rows not computed yet
+         */
+        private volatile long[] mRowVersions;
+        /**
+         * The Conversation for each row, indexed by position. Filled in lazily by
+         * {@link CacheLoaderTask} and {@link #cacheConversation(Conversation)}, and emptied
+         * outside the cache window by {@link #moveCacheWindow(int)}. Guarded by itself, as the
+         * caching thread and the UI thread both write it.
+         */
+        private final Conversation[] mConversations;
 
         private boolean mCursorUpdated = false;
 
@@ -389,19 +578,23 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 mUpdateObserverRegistered = true;
             }
 
+            mWindowedCaching = result != null && result.getCount() > MAX_FULLY_CACHED_COUNT;
+
             final long start = SystemClock.uptimeMillis();
-            final Map<String, Integer> uriPositionMap;
-            final Map<Long, Integer> idPositionMap;
-            final UnderlyingRowData[] cache;
+            final UriPositionIndex uriPositionIndex;
+            final LongIntHashMap idPositionMap;
+            final String[] innerUris;
+            final long[] conversationIds;
             final int count;
             Utils.traceBeginSection("blockingCaching");
             if (super.moveToFirst()) {
                 count = super.getCount();
-                cache = new UnderlyingRowData[count];
+                innerUris = new String[count];
+                conversationIds = new long[count];
                 int i = 0;
 
-                uriPositionMap = Maps.newHashMapWithExpectedSize(count);
-                idPositionMap = Maps.newHashMapWithExpectedSize(count);
+                uriPositionIndex = new UriPositionIndex(innerUris);
+                idPositionMap = new LongIntHashMap(count);
 
                 do {
                     final String innerUriString;
@@ -410,49 +603,49 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                     innerUriString = super.getString(URI_COLUMN_INDEX);
                     convId = super.getLong(UIProvider.CONVERSATION_ID_COLUMN);
 
+                    innerUris[i] = innerUriString;
+                    conversationIds[i] = convId;
+                    final int prevUriPosition = uriPositionIndex.add(i);
+                    final int prevIdPosition = idPositionMap.put(convId, i);
+
                     if (DEBUG_DUPLICATE_KEYS) {
-                        if (uriPositionMap.containsKey(innerUriString)) {
+                        if (prevUriPosition >= 0) {
                             LogUtils.e(LOG_TAG, "Inserting duplicate conversation uri key: %s. " +
                                     "Cursor position: %d, iteration: %d map position: %d",
-                                    innerUriString, getPosition(), i,
-                                    uriPositionMap.get(innerUriString));
+                                    innerUriString, getPosition(), i, prevUriPosition);
                         }
-                        if (idPositionMap.containsKey(convId)) {
+                        if (prevIdPosition >= 0) {
                             LogUtils.e(LOG_TAG, "Inserting duplicate conversation id key: %d" +
                                     "Cursor position: %d, iteration: %d map position: %d",
-                                    convId, getPosition(), i, idPositionMap.get(convId));
+                                    convId, getPosition(), i, prevIdPosition);
                         }
                     }
-
-                    uriPositionMap.put(innerUriString, i);
-                    idPositionMap.put(convId, i);
-
-                    cache[i] = new UnderlyingRowData(
-                            innerUriString,
-                            null /* conversation */);
                 } while (super.moveToPosition(++i));
 
-                if (uriPositionMap.size() != count || idPositionMap.size() != count) {
+                if (uriPositionIndex.size() != count || idPositionMap.size() != count) {
                     if (DEBUG_DUPLICATE_KEYS)  {
                         throw new IllegalStateException("Unexpected map sizes: cursorN=" + count
-                                + " uriN=" + uriPositionMap.size() + " idN="
+                                + " uriN=" + uriPositionIndex.size() + " idN="
                                 + idPositionMap.size());
                     } else {
                         LogUtils.e(LOG_TAG, "Unexpected map sizes.  Cursor size: %d, " +
                                 "uri position map size: %d, id position map size: %d", count,
-                                uriPositionMap.size(), idPositionMap.size());
+                                uriPositionIndex.size(), idPositionMap.size());
                     }
                 }
             } else {
                 count = 0;
-                cache = new UnderlyingRowData[0];
-                uriPositionMap = Maps.newHashMap();
-                idPositionMap = Maps.newHashMap();
+                innerUris = new String[0];
+                conversationIds = new long[0];
+                uriPositionIndex = new UriPositionIndex(innerUris);
+                idPositionMap = new LongIntHashMap();
             }
-            mConversationUriPositionMap = Collections.unmodifiableMap(uriPositionMap);
-            mConversationIdPositionMap = Collections.unmodifiableMap(idPositionMap);
+            mConversationUriPositionIndex = uriPositionIndex;
+            mConversationIdPositionMap = idPositionMap;
 
-            mRowCache = Collections.unmodifiableList(Arrays.asList(cache));
+            mInnerUris = innerUris;
+            mConversationIds = conversationIds;
+            mConversations = new Conversation[count];
             final long end = SystemClock.uptimeMillis();
             LogUtils.i(LOG_TAG, "*** ConversationCursor pre-loading took %sms n=%s", (end-start),
                     count);
@@ -474,8 +667,11 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 throw new IllegalStateException("unexpected existing task: " + mCacheLoaderTask);
             }
 
-            if (mCachingEnabled && mCachePos < getCount()) {
-                mCacheLoaderTask = new CacheLoaderTask(mCachePos);
+            final boolean cacheIncomplete = mWindowedCaching ? mWindowPage != mUiPage
+                    : mCachePos < getCount();
+            if (mCachingEnabled && cacheIncomplete) {
+                mCacheLoaderTask = new CacheLoaderTask(
+                        mWindowedCaching ? mUiPage * CACHE_PAGE_SIZE : mCachePos);
                 mCacheLoaderTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
                 return true;
             }
@@ -497,40 +693,198 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         }
 
         public boolean contains(String uri) {
-            return mConversationUriPositionMap.containsKey(uri);
+            return mConversationUriPositionIndex.get(uri) >= 0;
         }
 
-        public Set<Long> conversationIds() {
-            return mConversationIdPositionMap.keySet();
+        public boolean contains(long conversationId) {
+            return mConversationIdPositionMap.containsKey(conversationId);
         }
 
         public int getPosition(long conversationId) {
-            final Integer position = mConversationIdPositionMap.get(conversationId);
-            return position != null ? position.intValue() : -1;
+            return mConversationIdPositionMap.get(conversationId, -1);
         }
 
         public int getPosition(String conversationUri) {
-            final Integer position = mConversationUriPositionMap.get(conversationUri);
-            return position != null ? position.intValue() : -1;
+            return mConversationUriPositionIndex.get(conversationUri);
         }
 
         public String getInnerUri() {
-            return mRowCache.get(getPosition()).innerUri;
+            return mInnerUris[getPosition()];
         }
 
         public Conversation getConversation() {
-            return mRowCache.get(getPosition()).conversation;
+            final int pos = getPosition();
+            synchronized (mConversations) {
+                return mConversations[pos];
+            }
+        }
+
+        /**
+         * Builds and caches the Conversation for a row if it is not already cached. Called on the
+         * caching thread.
+         */
+        private void cacheRow(int pos) {
+            synchronized (mConversations) {
+                if (mConversations[pos] != null) {
+                    return;
+                }
+            }
+            // We are running in a background thread.  Set the position to the row
+            // we are interested in.
+            if (moveToPosition(pos)) {
+                final Conversation conversation = new Conversation(UnderlyingCursorWrapper.this);
+                synchronized (mConversations) {
+                    // The window may have moved on while the conversation was being built
+                    if (mConversations[pos] == null && isInCacheWindow(pos, mUiPage)) {
+                        mConversations[pos] = conversation;
+                    }
+                }
+            }
         }
 
         public void cacheConversation(Conversation conversation) {
-            final UnderlyingRowData rowData = mRowCache.get(getPosition());
-            if (rowData.conversation == null) {
-                rowData.conversation = conversation;
+            final int pos = getPosition();
+            synchronized (mConversations) {
+                if (mConversations[pos] == null) {
+                    mConversations[pos] = conversation;
+                }
+            }
+        }
+
+        /** @return true if the row at {@code pos} is cached while the UI is at {@code page} */
+        private boolean isInCacheWindow(int pos, int page) {
+            return !mWindowedCaching
+                    || (pos >= (page - CACHE_WINDOW_RADIUS) * CACHE_PAGE_SIZE
+                            && pos < (page + CACHE_WINDOW_RADIUS + 1) * CACHE_PAGE_SIZE);
+        }
+
+        /**
+         * Returns the version of each row, indexed by position, computing them on first use.
+         * With windowed caching, only the rows in the cache window around {@code page} are read,
+         * as only those can be displayed or cached; the rest are left unknown. This reads rows
+         * of the cursor, so must not be called on the UI thread.
+         */
+        private long[] getRowVersions(int page) {
+            final int count = mConversationIds.length;
+            long[] versions = mRowVersions;
+            if (versions == null) {
+                versions = new long[count];
+                Arrays.fill(versions, ConversationCursorDiff.UNKNOWN_VERSION);
+            }
+            final int start = mWindowedCaching
+                    ? Math.max(0, (page - CACHE_WINDOW_RADIUS) * CACHE_PAGE_SIZE) : 0;
+            final int end = mWindowedCaching
+                    ? Math.min(count, (page + CACHE_WINDOW_RADIUS + 1) * CACHE_PAGE_SIZE) : count;
+            for (int i = start; i < end; i++) {
+                if (versions[i] == ConversationCursorDiff.UNKNOWN_VERSION) {
+                    if (!moveToPosition(i)) {
+                        break;
+                    }
+                    versions[i] = computeRowVersion();
+                }
+            }
+            mRowVersions = versions;
+            return versions;
+        }
+
+        private long computeRowVersion() {
+            long h = getLong(UIProvider.CONVERSATION_ORDER_KEY_COLUMN);
+            h = 31 * h + getLong(UIProvider.CONVERSATION_DATE_RECEIVED_MS_COLUMN);
+            for (int column : VERSION_INT_COLUMNS) {
+                h = 31 * h + getInt(column);
+            }
+            for (int column : VERSION_STRING_COLUMNS) {
+                final String value = getString(column);
+                h = 31 * h + (value != null ? value.hashCode() : 0);
+            }
+            for (int column : VERSION_BLOB_COLUMNS) {
+                h = 31 * h + Arrays.hashCode(getBlob(column));
+            }
+            return h != ConversationCursorDiff.UNKNOWN_VERSION ? h : h + 1;
+        }
+
+        /**
+         * Computes the difference between a previous snapshot and this one, and adopts the
+         * previous snapshot's cached {@link Conversation}s for all rows whose data is unchanged,
+         * so that background caching only has to build conversations that actually changed.
+         * These conversations hold only their row's data, without any values cached by the
+         * {@link ConversationCursor}, so they stay correct once those values are dropped.
+         * Must not be called on the UI thread.
+         *
+         * @return the difference, or null if the previous snapshot could no longer be read
+         */
+        private ConversationCursorDiff diffAgainst(UnderlyingCursorWrapper previous) {
+            // Start caching where the user is in the list, and compare the rows there. If the
+            // rows are unchanged, they are at the same positions in both snapshots.
+            final int page = previous.mUiPage;
+            if (mWindowedCaching) {
+                mUiPage = page;
+            }
+            final long[] previousVersions;
+            try {
+                if (previous.isClosed()) {
+                    return null;
+                }
+                previousVersions = previous.getRowVersions(page);
+            } catch (IllegalStateException e) {
+                // The previous cursor was closed out from under us
+                LogUtils.w(LOG_TAG, e, "Unable to diff against previous cursor");
+                return null;
             }
+            final ConversationCursorDiff diff = ConversationCursorDiff.compute(
+                    previous.mConversationIds, previousVersions,
+                    mConversationIds, getRowVersions(page));
+            final Conversation[] previousConversations;
+            synchronized (previous.mConversations) {
+                previousConversations = previous.mConversations.clone();
+            }
+            synchronized (mConversations) {
+                for (int i = 0; i < mConversations.length; i++) {
+                    if (diff.hasSameVersion(i)) {
+                        mConversations[i] = previousConversations[diff.getOldPosition(i)];
+                    }
+                }
+            }
+            return diff;
         }
 
         private void notifyConversationUIPositionChange() {
-            Utils.notifyCursorUIPositionChange(this, getPosition());
+            final int position = getPosition();
+            Utils.notifyCursorUIPositionChange(this, position);
+            if (mWindowedCaching) {
+                moveCacheWindow(position / CACHE_PAGE_SIZE);
+            }
+        }
+
+        /**
+         * Re-centers the cache window on the given page, releasing cached conversations that
+         * fall out of it. Must be called on the UI thread.
+         */
+        private void moveCacheWindow(int page) {
+            final int oldPage = mUiPage;
+            if (page == oldPage) {
+                return;
+            }
+            // Stop caching the old window; a row the task is still building is dropped by
+            // cacheRow() once it sees the new page
+            pauseCaching();
+            mUiPage = page;
+
+            final int count = mConversations.length;
+            final int oldStart = Math.max(0, (oldPage - CACHE_WINDOW_RADIUS) * CACHE_PAGE_SIZE);
+            final int oldEnd =
+                    Math.min(count, (oldPage + CACHE_WINDOW_RADIUS + 1) * CACHE_PAGE_SIZE);
+            synchronized (mConversations) {
+                for (int pos = oldStart; pos < oldEnd; pos++) {
+                    if (!isInCacheWindow(pos, page)) {
+                        mConversations[pos] = null;
+                    }
+                }
+            }
+
+            if (mDrawState == DrawIdler.STATE_IDLE) {
+                resumeCaching();
+            }
         }
 
         /**
@@ -578,7 +932,12 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
      * Runnable that performs the query on the underlying provider
      */
     private class RefreshTask extends AsyncTask<Void, Void, UnderlyingCursorWrapper> {
+        /** The cursor in use when the refresh started, which the result is diffed against */
+        private final UnderlyingCursorWrapper mPrevious;
+        private ConversationCursorDiff mDiff;
+
         private RefreshTask() {
+            mPrevious = mUnderlyingCursor;
         }
 
         @Override
@@ -590,6 +949,12 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             final UnderlyingCursorWrapper result = doQuery(false);
             // Make sure window is full
             result.getCount();
+            if (mPrevious != null && !isCancelled()) {
+                Utils.traceBeginSection("diff");
+                mDiff = result.diffAgainst(mPrevious);
+                Utils.traceEndSection();
+                LogUtils.d(LOG_TAG, "Refresh of %s: %s", mName, mDiff);
+            }
             return result;
         }
 
@@ -606,6 +971,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                     return;
                 }
                 mRequeryCursor = result;
+                mRequeryDiff = mDiff;
                 mRefreshReady = true;
                 if (DEBUG) {
                     LogUtils.i(LOG_TAG, "[Query done %s: %d]", mName, hashCode());
@@ -660,8 +1026,11 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
      * is locked during the reset, which will block the UI, but for only a very short time
      * (estimated at a few ms, but we can profile this; remember that the cache will usually
      * be empty or have a few entries)
+     *
+     * @return true if any cached values were dropped
      */
-    private void resetCursor(UnderlyingCursorWrapper newCursorWrapper) {
+    private boolean resetCursor(UnderlyingCursorWrapper newCursorWrapper) {
+        boolean cacheChanged = false;
         synchronized (mCacheMapLock) {
             // Walk through the cache
             final Iterator<Map.Entry<String, ContentValues>> iter =
@@ -675,7 +1044,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 boolean removed = false;
                 if (values != null) {
                     Long updateTime = values.getAsLong(UPDATE_TIME_COLUMN);
-                    if (updateTime != null && ((now - updateTime) < REQUERY_ALLOWANCE_TIME)) {
+                    if (updateTime != null && ((now - updateTime) < sRequeryAllowanceTime)) {
                         LogUtils.d(LOG_TAG, "IN resetCursor, keep recent changes to %s", key);
                         withinTimeWindow = true;
                     } else if (updateTime == null) {
@@ -701,6 +1070,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 // Remove the entry if it was time for an update or the item was deleted by the user.
                 if (!withinTimeWindow || removed) {
                     iter.remove();
+                    cacheChanged = true;
                 }
             }
 
@@ -709,6 +1079,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 close();
             }
             mUnderlyingCursor = newCursorWrapper;
+            rebuildCachedColumnMasks();
 
             mPosition = -1;
             mUnderlyingCursor.moveToPosition(mPosition);
@@ -728,6 +1099,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             }
         }
         if (DEBUG) LogUtils.i(LOG_TAG, "OUT resetCursor, this=%s", this);
+        return cacheChanged;
     }
 
     /**
@@ -938,6 +1310,11 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 } else if (!state && hasValue) {
                     mDeletedCount--;
                     map.remove(columnName);
+                    final int position = getUnderlyingPosition(uriString);
+                    if (position >= 0) {
+                        mCachedColumnMasks.put(position,
+                                mCachedColumnMasks.get(position) & ~DELETED_COLUMN_BIT);
+                    }
                     if (DEBUG) {
                         LogUtils.i(LOG_TAG, "Undeleted %s, decremented deleted count=%d", uriString,
                                 mDeletedCount);
@@ -954,20 +1331,90 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             }
             putInValues(map, columnName, value);
             map.put(UPDATE_TIME_COLUMN, System.currentTimeMillis());
+            final int position = getUnderlyingPosition(uriString);
+            if (position >= 0) {
+                mCachedColumnMasks.put(position,
+                        mCachedColumnMasks.get(position) | columnBit(columnName));
+            }
             if (DEBUG && (!columnName.equals(DELETED_COLUMN))) {
                 LogUtils.i(LOG_TAG, "Caching value for %s: %s", uriString, columnName);
             }
         }
     }
 
+    /**
+     * Returns the bit for a column in {@link #mCachedColumnMasks}. Columns past the 62nd share a
+     * bit, which only costs a map lookup for those columns when their row has cached values.
+     */
+    private static long columnBit(int columnIndex) {
+        if (columnIndex == DELETED_COLUMN_INDEX) {
+            return DELETED_COLUMN_BIT;
+        }
+        return columnIndex < 62 ? 1L << columnIndex : OVERFLOW_COLUMN_BIT;
+    }
+
+    /**
+     * @return the bit for a column name, or 0 if the column is not in the cursor and so can
+     * never be read by index
+     */
+    private long columnBit(String columnName) {
+        if (DELETED_COLUMN.equals(columnName)) {
+            return DELETED_COLUMN_BIT;
+        }
+        for (int i = 0; i < mColumnNames.length; i++) {
+            if (mColumnNames[i].equals(columnName)) {
+                return columnBit(i);
+            }
+        }
+        return 0;
+    }
+
+    private int getUnderlyingPosition(String uriString) {
+        return mUnderlyingCursor != null ? mUnderlyingCursor.getPosition(uriString) : -1;
+    }
+
+    /**
+     * Recomputes {@link #mCachedColumnMasks} from {@link #mCacheMap} for the positions of the
+     * current underlying cursor. Must be called with {@link #mCacheMapLock} held.
+     */
+    private void rebuildCachedColumnMasks() {
+        mCachedColumnMasks.clear();
+        for (Map.Entry<String, ContentValues> entry : mCacheMap.entrySet()) {
+            final int position = mUnderlyingCursor.getPosition(entry.getKey());
+            if (position < 0 || entry.getValue() == null) {
+                continue;
+            }
+            long mask = 0;
+            for (String columnName : entry.getValue().keySet()) {
+                mask |= columnBit(columnName);
+            }
+            mCachedColumnMasks.put(position, mask);
+        }
+    }
+
     /**
      * Get the cached value for the provided column; we special case -1 as the "deleted" column
      * @param columnIndex the index of the column whose cached value we want to retrieve
      * @return the cached value for this column, or null if there is none
      */
     private Object getCachedValue(int columnIndex) {
-        final String uri = mUnderlyingCursor.getInnerUri();
-        return getCachedValue(uri, columnIndex);
+        final int position = mUnderlyingCursor.getPosition();
+        synchronized (mCacheMapLock) {
+            if ((mCachedColumnMasks.get(position, 0) & columnBit(columnIndex)) == 0) {
+                return null;
+            }
+            return getCachedValue(mUnderlyingCursor.getInnerUri(), columnIndex);
+        }
+    }
+
+    /**
+     * @return whether any values are cached for the current row of the underlying cursor
+     */
+    private boolean hasCachedValues() {
+        final int position = mUnderlyingCursor.getPosition();
+        synchronized (mCacheMapLock) {
+            return mCachedColumnMasks.get(position, 0) != 0;
+        }
     }
 
     private Object getCachedValue(String uri, int columnIndex) {
@@ -1063,16 +1510,55 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             }
             return;
         }
+        final boolean unchanged;
         synchronized(mCacheMapLock) {
             if (DEBUG) {
                 LogUtils.i(LOG_TAG, "[sync() %s]", mName);
             }
             mRefreshTask = null;
             mRefreshReady = false;
-            resetCursor(mRequeryCursor);
+            // The extras carry the status, error and total count shown in the list footer
+            final boolean extrasChanged = !extrasEqual(
+                    mUnderlyingCursor != null ? mUnderlyingCursor.getExtras() : null,
+                    mRequeryCursor.getExtras());
+            final boolean cacheChanged = resetCursor(mRequeryCursor);
             mRequeryCursor = null;
+            final ConversationCursorDiff diff = mRequeryDiff;
+            mRequeryDiff = null;
+            // The rows, their order and their values are all exactly as already displayed, so
+            // there is nothing for listeners to rebind
+            unchanged = diff != null && diff.isEmpty() && !cacheChanged && !extrasChanged;
         }
-        notifyDataChanged();
+        if (unchanged) {
+            if (DEBUG) {
+                LogUtils.i(LOG_TAG, "[sync() %s; no changes]", mName);
+            }
+            handleNotificationActions();
+        } else {
+            notifyDataChanged();
+        }
+    }
+
+    /**
+     * @return true if both bundles hold the same keys with equal values; a value that doesn't
+     * implement equals, such as an array, is only equal to itself
+     */
+    @VisibleForTesting
+    static boolean extrasEqual(Bundle a, Bundle b) {
+        if (a == null || a.isEmpty()) {
+            return b == null || b.isEmpty();
+        }
+        if (b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (String key : a.keySet()) {
+            final Object value = a.get(key);
+            if (value == null ? b.get(key) != null || !b.containsKey(key)
+                    : !value.equals(b.get(key))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public boolean isRefreshRequired() {
@@ -1109,7 +1595,10 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
     public void disable() {
         close();
-        mCacheMap.clear();
+        synchronized (mCacheMapLock) {
+            mCacheMap.clear();
+            mCachedColumnMasks.clear();
+        }
         mListeners.clear();
         mUnderlyingCursor = null;
     }
@@ -1331,7 +1820,11 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         if (c == null) {
             // not pre-cached. fall back to just-in-time construction.
             c = new Conversation(this);
-            mUnderlyingCursor.cacheConversation(c);
+            // Only keep it if it was built from the underlying row alone, as the underlying
+            // cursor's conversations can outlive our cached values (see diffAgainst)
+            if (!hasCachedValues()) {
+                mUnderlyingCursor.cacheConversation(c);
+            }
         }
 
         return c;
@@ -1352,23 +1845,30 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
         // apply any cached values
         // but skip over any cached values that aren't part of the cursor projection
-        final ContentValues values = mCacheMap.get(mUnderlyingCursor.getInnerUri());
-        if (values != null) {
-            final ContentValues queryableValues = new ContentValues();
-            for (String key : values.keySet()) {
-                if (!mColumnNameSet.contains(key)) {
-                    continue;
+        ContentValues queryableValues = null;
+        synchronized (mCacheMapLock) {
+            final ContentValues values =
+                    mCachedColumnMasks.get(mUnderlyingCursor.getPosition(), 0) != 0
+                            ? mCacheMap.get(mUnderlyingCursor.getInnerUri()) : null;
+            if (values != null) {
+                for (String key : values.keySet()) {
+                    if (!mColumnNameSet.contains(key)) {
+                        continue;
+                    }
+                    if (queryableValues == null) {
+                        queryableValues = new ContentValues();
+                    }
+                    putInValues(queryableValues, key, values.get(key));
                 }
-                putInValues(queryableValues, key, values.get(key));
-            }
-            if (queryableValues.size() > 0) {
-                // copy-on-write to help ensure the underlying cached Conversation is immutable
-                // of course, any callers this method should also try not to modify them
-                // overmuch...
-                result = new Conversation(result);
-                result.applyCachedValues(queryableValues);
             }
         }
+        if (queryableValues != null) {
+            // copy-on-write to help ensure the underlying cached Conversation is immutable
+            // of course, any callers this method should also try not to modify them
+            // overmuch...
+            result = new Conversation(result);
+            result.applyCachedValues(queryableValues);
+        }
         return result;
     }
 
@@ -1424,6 +1924,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         public static String sUriPrefix;
         public static final String URI_SEPARATOR = "://";
         private ContentResolver mResolver;
+        private ConversationWritePipeline mWritePipeline;
 
         /**
          * Allows the implementing provider to specify the authority that should be used.
@@ -1436,6 +1937,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             AUTHORITY = getAuthority();
             sUriPrefix = "content://" + AUTHORITY + "/";
             mResolver = getContext().getContentResolver();
+            mWritePipeline = new ConversationWritePipeline(mResolver);
             return true;
         }
 
@@ -1449,7 +1951,7 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         @Override
         public Uri insert(Uri uri, ContentValues values) {
             insertLocal(uri, values);
-            return ProviderExecute.opInsert(mResolver, uri, values);
+            return ProviderExecute.opInsert(mResolver, mWritePipeline, uri, values);
         }
 
         @Override
@@ -1468,8 +1970,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
         }
 
         /**
-         * Quick and dirty class that executes underlying provider CRUD operations on a background
-         * thread.
+         * Quick and dirty class that executes underlying provider CRUD operations, either directly
+         * when off the UI thread or through the {@link ConversationWritePipeline}.
          */
         static class ProviderExecute implements Runnable {
             static final int DELETE = 0;
@@ -1488,10 +1990,13 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 mResolver = resolver;
             }
 
-            static Uri opInsert(ContentResolver resolver, Uri uri, ContentValues values) {
+            static Uri opInsert(ContentResolver resolver, ConversationWritePipeline pipeline,
+                    Uri uri, ContentValues values) {
                 ProviderExecute e = new ProviderExecute(INSERT, resolver, uri, values);
                 if (offUiThread()) return (Uri)e.go();
-                new Thread(e).start();
+                pipeline.enqueue(e.mUri.getAuthority(),
+                        Collections.singletonList(ConversationWritePipeline.Write.insert(
+                                e.mUri, values)));
                 return null;
             }
 
@@ -1597,8 +2102,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
 
         public int apply(Collection<ConversationOperation> ops,
                 ConversationCursor conversationCursor) {
-            final HashMap<String, ArrayList<ContentProviderOperation>> batchMap =
-                    new HashMap<String, ArrayList<ContentProviderOperation>>();
+            final HashMap<String, ArrayList<ConversationWritePipeline.Write>> batchMap =
+                    new HashMap<String, ArrayList<ConversationWritePipeline.Write>>();
             // Increment sequence count
             sSequence++;
 
@@ -1607,14 +2112,14 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             for (ConversationOperation op: ops) {
                 Uri underlyingUri = uriFromCachingUri(op.mUri);
                 String authority = underlyingUri.getAuthority();
-                ArrayList<ContentProviderOperation> authOps = batchMap.get(authority);
+                ArrayList<ConversationWritePipeline.Write> authOps = batchMap.get(authority);
                 if (authOps == null) {
-                    authOps = new ArrayList<ContentProviderOperation>();
+                    authOps = new ArrayList<ConversationWritePipeline.Write>();
                     batchMap.put(authority, authOps);
                 }
-                ContentProviderOperation cpo = op.execute(underlyingUri);
-                if (cpo != null) {
-                    authOps.add(cpo);
+                final ConversationWritePipeline.Write write = op.execute(underlyingUri);
+                if (write != null) {
+                    authOps.add(write);
                 }
                 // Keep track of whether our operations require recalibrating the cursor position
                 if (op.mRecalibrateRequired) {
@@ -1633,24 +2138,11 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             // Send changes to underlying provider
             final boolean notUiThread = offUiThread();
             for (final String authority: batchMap.keySet()) {
-                final ArrayList<ContentProviderOperation> opList = batchMap.get(authority);
+                final ArrayList<ConversationWritePipeline.Write> writes = batchMap.get(authority);
                 if (notUiThread) {
-                    try {
-                        mResolver.applyBatch(authority, opList);
-                    } catch (RemoteException e) {
-                    } catch (OperationApplicationException e) {
-                    }
+                    mWritePipeline.applyNow(authority, writes);
                 } else {
-                    new Thread(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                mResolver.applyBatch(authority, opList);
-                            } catch (RemoteException e) {
-                            } catch (OperationApplicationException e) {
-                            }
-                        }
-                    }).start();
+                    mWritePipeline.enqueue(authority, writes);
                 }
             }
             return sSequence;
@@ -1748,12 +2240,12 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
             mMostlyDead = conv.isMostlyDead();
         }
 
-        private ContentProviderOperation execute(Uri underlyingUri) {
+        private ConversationWritePipeline.Write execute(Uri underlyingUri) {
             Uri uri = underlyingUri.buildUpon()
                     .appendQueryParameter(UIProvider.SEQUENCE_QUERY_PARAMETER,
                             Integer.toString(sSequence))
                     .build();
-            ContentProviderOperation op = null;
+            ConversationWritePipeline.Write op = null;
             switch(mType) {
                 case UPDATE:
                     if (mLocalDeleteOnUpdate) {
@@ -1763,21 +2255,18 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                         mRecalibrateRequired = false;
                     }
                     if (!mMostlyDead) {
-                        op = ContentProviderOperation.newUpdate(uri)
-                                .withValues(mValues)
-                                .build();
+                        op = ConversationWritePipeline.Write.update(uri, mValues);
                     } else {
                         sProvider.commitMostlyDead(mConversation, ConversationCursor.this);
                     }
                     break;
                 case MOSTLY_DESTRUCTIVE_UPDATE:
                     sProvider.setMostlyDead(mConversation, ConversationCursor.this, mUndoCallback);
-                    op = ContentProviderOperation.newUpdate(uri).withValues(mValues).build();
+                    op = ConversationWritePipeline.Write.update(uri, mValues);
                     break;
                 case INSERT:
                     sProvider.insertLocal(mUri, mValues);
-                    op = ContentProviderOperation.newInsert(uri)
-                            .withValues(mValues).build();
+                    op = ConversationWritePipeline.Write.insert(uri, mValues);
                     break;
                 // Destructive actions below!
                 // "Mostly" operations are reflected globally, but not locally, except to set
@@ -1785,23 +2274,21 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 case DELETE:
                     sProvider.deleteLocal(mUri, ConversationCursor.this, mUndoCallback);
                     if (!mMostlyDead) {
-                        op = ContentProviderOperation.newDelete(uri).build();
+                        op = ConversationWritePipeline.Write.delete(uri);
                     } else {
                         sProvider.commitMostlyDead(mConversation, ConversationCursor.this);
                     }
                     break;
                 case MOSTLY_DELETE:
                     sProvider.setMostlyDead(mConversation,ConversationCursor.this, mUndoCallback);
-                    op = ContentProviderOperation.newDelete(uri).build();
+                    op = ConversationWritePipeline.Write.delete(uri);
                     break;
                 case ARCHIVE:
                     sProvider.deleteLocal(mUri, ConversationCursor.this, mUndoCallback);
                     if (!mMostlyDead) {
                         // Create an update operation that represents archive
-                        op = ContentProviderOperation.newUpdate(uri).withValue(
-                                ConversationOperations.OPERATION_KEY,
-                                ConversationOperations.ARCHIVE)
-                                .build();
+                        op = ConversationWritePipeline.Write.operation(uri,
+                                ConversationOperations.ARCHIVE);
                     } else {
                         sProvider.commitMostlyDead(mConversation, ConversationCursor.this);
                     }
@@ -1809,9 +2296,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                 case MOSTLY_ARCHIVE:
                     sProvider.setMostlyDead(mConversation, ConversationCursor.this, mUndoCallback);
                     // Create an update operation that represents archive
-                    op = ContentProviderOperation.newUpdate(uri).withValue(
-                            ConversationOperations.OPERATION_KEY, ConversationOperations.ARCHIVE)
-                            .build();
+                    op = ConversationWritePipeline.Write.operation(uri,
+                            ConversationOperations.ARCHIVE);
                     break;
                 case MUTE:
                     if (mLocalDeleteOnUpdate) {
@@ -1819,9 +2305,8 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                     }
 
                     // Create an update operation that represents mute
-                    op = ContentProviderOperation.newUpdate(uri).withValue(
-                            ConversationOperations.OPERATION_KEY, ConversationOperations.MUTE)
-                            .build();
+                    op = ConversationWritePipeline.Write.operation(uri,
+                            ConversationOperations.MUTE);
                     break;
                 case REPORT_SPAM:
                 case REPORT_NOT_SPAM:
@@ -1832,33 +2317,29 @@ public final class ConversationCursor implements Cursor, ConversationCursorOpera
                             ConversationOperations.REPORT_NOT_SPAM;
 
                     // Create an update operation that represents report spam
-                    op = ContentProviderOperation.newUpdate(uri).withValue(
-                            ConversationOperations.OPERATION_KEY, operation).build();
+                    op = ConversationWritePipeline.Write.operation(uri, operation);
                     break;
                 case REPORT_PHISHING:
                     sProvider.deleteLocal(mUri, ConversationCursor.this, mUndoCallback);
 
                     // Create an update operation that represents report phishing
-                    op = ContentProviderOperation.newUpdate(uri).withValue(
-                            ConversationOperations.OPERATION_KEY,
-                            ConversationOperations.REPORT_PHISHING).build();
+                    op = ConversationWritePipeline.Write.operation(uri,
+                            ConversationOperations.REPORT_PHISHING);
                     break;
                 case DISCARD_DRAFTS:
                     sProvider.deleteLocal(mUri, ConversationCursor.this, mUndoCallback);
 
                     // Create an update operation that represents discarding drafts
-                    op = ContentProviderOperation.newUpdate(uri).withValue(
-                            ConversationOperations.OPERATION_KEY,
-                            ConversationOperations.DISCARD_DRAFTS).build();
+                    op = ConversationWritePipeline.Write.operation(uri,
+                            ConversationOperations.DISCARD_DRAFTS);
                     break;
                 case MOVE_FAILED_INTO_DRAFTS:
                     sProvider.deleteLocal(mUri, ConversationCursor.this, mUndoCallback);
 
                     // Create an update operation that represents removing current folder label
                     // and adding the drafts folder label for all failed messages.
-                    op = ContentProviderOperation.newUpdate(uri).withValue(
-                            ConversationOperations.OPERATION_KEY,
-                            ConversationOperations.MOVE_FAILED_TO_DRAFTS).build();
+                    op = ConversationWritePipeline.Write.operation(uri,
+                            ConversationOperations.MOVE_FAILED_TO_DRAFTS);
                     break;
                 default:
                     throw new UnsupportedOperationException(
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import com.android.mail.utils.LongIntHashMap;
+
+/**
+ * The difference between two snapshots of a conversation list, keyed by conversation id.
+ * <p>
+ * Each row of a snapshot is described by its conversation id and a row version, a hash over
+ * the row's order key and the columns a {@link com.android.mail.providers.Conversation} is built
+ * from. A row of the new snapshot is either inserted (its id is not in the old snapshot), moved
+ * (its position relative to the other surviving rows changed), changed (its version differs) or
+ * unchanged. Rows of the old snapshot whose id is absent from the new one are removed.
+ * <p>
+ * A snapshot may leave the versions of some rows as {@link #UNKNOWN_VERSION}, e.g. those outside
+ * the part of a large list that is displayed. Such a row is neither changed nor unchanged; it
+ * still counts as inserted, removed or moved.
+ */
+public final class ConversationCursorDiff {
+
+    /** The version of a row that wasn't read. */
+    public static final long UNKNOWN_VERSION = Long.MIN_VALUE;
+
+    /** Position of each new row in the old snapshot, or -1 if the row was inserted. */
+    private final int[] mNewToOld;
+    /** Whether each new row existed in the old snapshot with the same version. */
+    private final boolean[] mSameVersion;
+    private final int mInsertedCount;
+    private final int mRemovedCount;
+    private final int mMovedCount;
+    private final int mChangedCount;
+
+    private ConversationCursorDiff(int[] newToOld, boolean[] sameVersion, int insertedCount,
+            int removedCount, int movedCount, int changedCount) {
+        mNewToOld = newToOld;
+        mSameVersion = sameVersion;
+        mInsertedCount = insertedCount;
+        mRemovedCount = removedCount;
+        mMovedCount = movedCount;
+        mChangedCount = changedCount;
+    }
+
+    /**
+     * Computes the difference between two snapshots. Ids must be unique within a snapshot, and
+     * each versions array must be the same length as its ids array.
+     */
+    public static ConversationCursorDiff compute(long[] oldIds, long[] oldVersions,
+            long[] newIds, long[] newVersions) {
+        final int oldCount = oldIds.length;
+        final int newCount = newIds.length;
+
+        final LongIntHashMap oldPositions = new LongIntHashMap(oldCount);
+        for (int i = 0; i < oldCount; i++) {
+            oldPositions.put(oldIds[i], i);
+        }
+
+        final int[] newToOld = new int[newCount];
+        // old positions of the surviving rows, in new order
+        final int[] survivors = new int[newCount];
+        int survivorCount = 0;
+        int insertedCount = 0;
+        for (int i = 0; i < newCount; i++) {
+            final int oldPos = oldPositions.get(newIds[i]);
+            newToOld[i] = oldPos;
+            if (oldPos < 0) {
+                insertedCount++;
+            } else {
+                survivors[survivorCount++] = oldPos;
+            }
+        }
+
+        // The rows that keep their relative order are a longest increasing subsequence of
+        // the surviving old positions; every other surviving row has moved.
+        final boolean[] inOrder = longestIncreasingSubsequence(survivors, survivorCount);
+
+        final boolean[] sameVersion = new boolean[newCount];
+        int movedCount = 0;
+        int changedCount = 0;
+        for (int i = 0, s = 0; i < newCount; i++) {
+            final int oldPos = newToOld[i];
+            if (oldPos < 0) {
+                continue;
+            }
+            if (!inOrder[s++]) {
+                movedCount++;
+            }
+            if (oldVersions[oldPos] == UNKNOWN_VERSION || newVersions[i] == UNKNOWN_VERSION) {
+                continue;
+            }
+            if (oldVersions[oldPos] == newVersions[i]) {
+                sameVersion[i] = true;
+            } else {
+                changedCount++;
+            }
+        }
+
+        return new ConversationCursorDiff(newToOld, sameVersion, insertedCount,
+                oldCount - survivorCount, movedCount, changedCount);
+    }
+
+    /**
+     * Marks the members of one longest strictly increasing subsequence of the first
+     * {@code count} values, in O(n log n).
+     */
+    private static boolean[] longestIncreasingSubsequence(int[] values, int count) {
+        // tails[k] is the index of the smallest tail of an increasing run of length k + 1
+        final int[] tails = new int[count];
+        final int[] predecessors = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            predecessors[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+        final boolean[] members = new boolean[count];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            members[i] = true;
+        }
+        return members;
+    }
+
+    /**
+     * @return the position the row at {@code newPosition} had in the old snapshot, or -1 if it
+     * was inserted
+     */
+    public int getOldPosition(int newPosition) {
+        return mNewToOld[newPosition];
+    }
+
+    /**
+     * @return true if the row at {@code newPosition} existed in the old snapshot with the same
+     * known version, whether or not it moved
+     */
+    public boolean hasSameVersion(int newPosition) {
+        return mSameVersion[newPosition];
+    }
+
+    public int getInsertedCount() {
+        return mInsertedCount;
+    }
+
+    public int getRemovedCount() {
+        return mRemovedCount;
+    }
+
+    public int getMovedCount() {
+        return mMovedCount;
+    }
+
+    public int getChangedCount() {
+        return mChangedCount;
+    }
+
+    /**
+     * @return true if the two snapshots hold the same rows, in the same order, with the same
+     * versions where both are known
+     */
+    public boolean isEmpty() {
+        return mInsertedCount == 0 && mRemovedCount == 0 && mMovedCount == 0
+                && mChangedCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "[ConversationCursorDiff n=" + mNewToOld.length + " inserted=" + mInsertedCount
+                + " removed=" + mRemovedCount + " moved=" + mMovedCount
+                + " changed=" + mChangedCount + "]";
+    }
+}
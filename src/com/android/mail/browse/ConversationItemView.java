@@ -64,7 +64,7 @@ import com.android.mail.R;
 import com.android.mail.analytics.Analytics;
 import com.android.mail.bitmap.CheckableContactFlipDrawable;
 import com.android.mail.bitmap.ContactDrawable;
-import com.android.mail.perf.Timer;
+import com.android.mail.perf.Tracer;
 import com.android.mail.providers.Account;
 import com.android.mail.providers.Conversation;
 import com.android.mail.providers.Folder;
@@ -94,16 +94,6 @@ public class ConversationItemView extends View
         implements SwipeableItemView, ToggleableItem, ConversationSetObserver,
         BadgeSpan.BadgeSpanDimensions {
 
-    // Timer.
-    private static int sLayoutCount = 0;
-    private static Timer sTimer; // Create the sTimer here if you need to do
-                                 // perf analysis.
-    private static final int PERF_LAYOUT_ITERATIONS = 50;
-    private static final String PERF_TAG_LAYOUT = "CCHV.layout";
-    private static final String PERF_TAG_CALCULATE_TEXTS_BITMAPS = "CCHV.txtsbmps";
-    private static final String PERF_TAG_CALCULATE_SENDER_SUBJECT = "CCHV.sendersubj";
-    private static final String PERF_TAG_CALCULATE_FOLDERS = "CCHV.folders";
-    private static final String PERF_TAG_CALCULATE_COORDINATES = "CCHV.coordinates";
     private static final String LOG_TAG = LogTag.getLogTag();
 
     private static final Typeface SANS_SERIF_BOLD = Typeface.create("sans-serif", Typeface.BOLD);
@@ -653,18 +643,6 @@ public class ConversationItemView extends View
         return mHeader.conversation;
     }
 
-    private static void startTimer(String tag) {
-        if (sTimer != null) {
-            sTimer.start(tag);
-        }
-    }
-
-    private static void pauseTimer(String tag) {
-        if (sTimer != null) {
-            sTimer.pause(tag);
-        }
-    }
-
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         Utils.traceBeginSection("CIVC.measure");
@@ -697,7 +675,7 @@ public class ConversationItemView extends View
 
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        startTimer(PERF_TAG_LAYOUT);
+        final long start = Tracer.begin();
         Utils.traceBeginSection("CIVC.layout");
 
         super.onLayout(changed, left, top, right, bottom);
@@ -722,13 +700,8 @@ public class ConversationItemView extends View
         mHeader.validate();
         Utils.traceEndSection();
 
-        pauseTimer(PERF_TAG_LAYOUT);
-        if (sTimer != null && ++sLayoutCount >= PERF_LAYOUT_ITERATIONS) {
-            sTimer.dumpResults();
-            sTimer = new Timer();
-            sLayoutCount = 0;
-        }
         Utils.traceEndSection();
+        Tracer.end(Tracer.LAYOUT_CONVERSATION_ITEM, start);
     }
 
     private void setContentDescription() {
@@ -763,8 +736,6 @@ public class ConversationItemView extends View
     }
 
     private void calculateTextsAndBitmaps() {
-        startTimer(PERF_TAG_CALCULATE_TEXTS_BITMAPS);
-
         if (mCheckedConversationSet != null) {
             setChecked(mCheckedConversationSet.contains(mHeader.conversation));
         }
@@ -779,7 +750,7 @@ public class ConversationItemView extends View
             // This is a special view that doesn't need special sender formatting
             mHeader.sendersDisplayText = new SpannableStringBuilder(mHeader.sendersText);
             loadImages();
-        } else if (mHeader.conversation.conversationInfo != null) {
+        } else if (mHeader.conversation.getConversationInfo() != null) {
             Context context = getContext();
             mHeader.messageInfoString = SendersView
                     .createMessageInfo(context, mHeader.conversation, true);
@@ -790,7 +761,7 @@ public class ConversationItemView extends View
             mHeader.displayableNames.clear();
             mHeader.styledNames.clear();
 
-            SendersView.format(context, mHeader.conversation.conversationInfo,
+            SendersView.format(context, mHeader.conversation.getConversationInfo(),
                     mHeader.messageInfoString.toString(), maxChars, mHeader.styledNames,
                     mHeader.displayableNames, mHeader.mSenderAvatarModel,
                     mAccount, mDisplayedFolder.shouldShowRecipients(), true);
@@ -802,24 +773,14 @@ public class ConversationItemView extends View
         }
 
         if (mHeader.isLayoutValid()) {
-            pauseTimer(PERF_TAG_CALCULATE_TEXTS_BITMAPS);
             return;
         }
-        startTimer(PERF_TAG_CALCULATE_FOLDERS);
-
-
-        pauseTimer(PERF_TAG_CALCULATE_FOLDERS);
 
         // Paper clip icon.
         mHeader.paperclip = null;
         if (mHeader.conversation.hasAttachments) {
             mHeader.paperclip = ATTACHMENT;
         }
-
-        startTimer(PERF_TAG_CALCULATE_SENDER_SUBJECT);
-
-        pauseTimer(PERF_TAG_CALCULATE_SENDER_SUBJECT);
-        pauseTimer(PERF_TAG_CALCULATE_TEXTS_BITMAPS);
     }
 
     // FIXME(ath): maybe move this to bind(). the only dependency on layout is on tile W/H, which
@@ -959,8 +920,6 @@ public class ConversationItemView extends View
     }
 
     private void calculateCoordinates() {
-        startTimer(PERF_TAG_CALCULATE_COORDINATES);
-
         sPaint.setTextSize(mCoordinates.dateFontSize);
         sPaint.setTypeface(Typeface.DEFAULT);
 
@@ -1033,8 +992,6 @@ public class ConversationItemView extends View
             final SpannableStringBuilder participantText = elideParticipants(mHeader.styledNames);
             layoutParticipantText(participantText);
         }
-
-        pauseTimer(PERF_TAG_CALCULATE_COORDINATES);
     }
 
     // The rules for displaying elided participants are as follows:
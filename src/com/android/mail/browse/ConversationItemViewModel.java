@@ -29,6 +29,7 @@ import android.util.Pair;
 
 import com.android.mail.R;
 import com.android.mail.providers.Conversation;
+import com.android.mail.providers.ConversationInfo;
 import com.android.mail.providers.Folder;
 import com.android.mail.providers.ParticipantInfo;
 import com.android.mail.providers.UIProvider;
@@ -213,8 +214,9 @@ public class ConversationItemViewModel {
      */
     void validate() {
         mDataHashCode = getHashCode(dateText,
-                conversation.conversationInfo, conversation.getRawFolders(), conversation.starred,
-                conversation.read, conversation.priority, conversation.sendingState);
+                conversation.getConversationInfo(), conversation.getRawFolders(),
+                conversation.starred, conversation.read, conversation.priority,
+                conversation.sendingState);
         mLayoutHashCode = getLayoutHashCode();
     }
 
@@ -223,8 +225,9 @@ public class ConversationItemViewModel {
      */
     boolean isDataValid() {
         return mDataHashCode == getHashCode(dateText,
-                conversation.conversationInfo, conversation.getRawFolders(), conversation.starred,
-                conversation.read, conversation.priority, conversation.sendingState);
+                conversation.getConversationInfo(), conversation.getRawFolders(),
+                conversation.starred, conversation.read, conversation.priority,
+                conversation.sendingState);
     }
 
     /**
@@ -253,17 +256,18 @@ public class ConversationItemViewModel {
             // If all are read, get the last sender.
             String participant = "";
             String lastParticipant = "";
-            int last = conversation.conversationInfo.participantInfos != null ?
-                    conversation.conversationInfo.participantInfos.size() - 1 : -1;
+            final ConversationInfo conversationInfo = conversation.getConversationInfo();
+            int last = conversationInfo.participantInfos != null ?
+                    conversationInfo.participantInfos.size() - 1 : -1;
             if (last != -1) {
-                lastParticipant = conversation.conversationInfo.participantInfos.get(last).name;
+                lastParticipant = conversationInfo.participantInfos.get(last).name;
             }
             if (conversation.read) {
                 participant = TextUtils.isEmpty(lastParticipant) ?
                         SendersView.getMe(showToHeader /* useObjectMe */) : lastParticipant;
             } else {
                 ParticipantInfo firstUnread = null;
-                for (ParticipantInfo p : conversation.conversationInfo.participantInfos) {
+                for (ParticipantInfo p : conversationInfo.participantInfos) {
                     if (!p.readConversation) {
                         firstUnread = p;
                         break;
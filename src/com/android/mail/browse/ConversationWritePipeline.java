@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.RemoteException;
+
+import com.android.mail.providers.UIProvider.ConversationOperations;
+import com.android.mail.utils.LogUtils;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the writes that {@link ConversationCursor.ConversationProvider} makes on behalf of the UI
+ * to the underlying providers on a single background thread, rather than a new thread per batch.
+ * <p>
+ * Writes queued from the UI thread are held for {@link #COALESCE_WINDOW_MS} and then flushed as a
+ * single {@link ContentResolver#applyBatch} per authority. While they wait, a plain update to a
+ * conversation is merged into a later plain update to the same conversation, and dropped
+ * entirely if the conversation is then deleted. Operation updates (archive, mute, report spam,
+ * etc.) and inserts are never merged.
+ * <p>
+ * All flushes, whether from the pipeline thread or from {@link #applyNow}, are serialized, so
+ * each authority sees writes in the order they were queued.
+ */
+final class ConversationWritePipeline {
+    private static final String LOG_TAG = ConversationCursor.LOG_TAG;
+
+    /** How long writes queued from the UI thread wait for more writes to coalesce with. */
+    private static final long COALESCE_WINDOW_MS = 100;
+
+    /**
+     * A single write to an underlying provider, which is turned into a
+     * {@link ContentProviderOperation} when its batch is flushed.
+     */
+    static final class Write {
+        static final int INSERT = 0;
+        static final int UPDATE = 1;
+        static final int DELETE = 2;
+
+        final int mKind;
+        /** The uri to write, including any sequence query parameter. */
+        final Uri mUri;
+        /** The conversation the write applies to: the uri without its query parameters. */
+        final String mKey;
+        ContentValues mValues;
+        /** Set when a later write made this one redundant. */
+        boolean mCancelled;
+
+        private Write(int kind, Uri uri, ContentValues values) {
+            mKind = kind;
+            mUri = uri;
+            mKey = uri.buildUpon().clearQuery().build().toString();
+            mValues = values;
+        }
+
+        static Write insert(Uri uri, ContentValues values) {
+            return new Write(INSERT, uri, values);
+        }
+
+        static Write update(Uri uri, ContentValues values) {
+            return new Write(UPDATE, uri, values);
+        }
+
+        /**
+         * An update that asks the underlying provider to perform one of
+         * {@link ConversationOperations}, rather than to set column values.
+         */
+        static Write operation(Uri uri, String operation) {
+            final ContentValues values = new ContentValues(1);
+            values.put(ConversationOperations.OPERATION_KEY, operation);
+            return new Write(UPDATE, uri, values);
+        }
+
+        static Write delete(Uri uri) {
+            return new Write(DELETE, uri, null);
+        }
+
+        /**
+         * @return true if this write only sets column values, and so may be merged with other
+         * such writes to the same conversation
+         */
+        boolean isPlainUpdate() {
+            return mKind == UPDATE && mValues != null
+                    && !mValues.containsKey(ConversationOperations.OPERATION_KEY);
+        }
+
+        ContentProviderOperation toOperation() {
+            switch (mKind) {
+                case INSERT:
+                    return ContentProviderOperation.newInsert(mUri).withValues(mValues).build();
+                case UPDATE:
+                    return ContentProviderOperation.newUpdate(mUri).withValues(mValues).build();
+                case DELETE:
+                    return ContentProviderOperation.newDelete(mUri).build();
+                default:
+                    throw new IllegalStateException("Unknown write kind: " + mKind);
+            }
+        }
+    }
+
+    /** Runs the delayed flushes of queued writes. */
+    interface Scheduler {
+        void schedule(Runnable flush, long delayMs);
+    }
+
+    /** The writes waiting to be flushed to one authority. */
+    private static final class Pending {
+        final ArrayList<Write> mWrites = new ArrayList<Write>();
+        /** The most recent pending write to each conversation. */
+        final Map<String, Write> mLatestByKey = new HashMap<String, Write>();
+        boolean mFlushScheduled;
+    }
+
+    private final ContentResolver mResolver;
+    private final Scheduler mScheduler;
+    /** Guards {@link #mPending} and the counters. */
+    private final Object mLock = new Object();
+    /** Held while a batch is being applied, so that batches never overlap. */
+    private final Object mFlushLock = new Object();
+    private final Map<String, Pending> mPending = new HashMap<String, Pending>();
+
+    private int mQueuedCount;
+    private int mMergedCount;
+    private int mFlushedCount;
+    private int mBatchCount;
+
+    ConversationWritePipeline(ContentResolver resolver) {
+        this(resolver, createHandlerScheduler());
+    }
+
+    /** Constructor for tests, which run the delayed flushes themselves */
+    @VisibleForTesting
+    ConversationWritePipeline(ContentResolver resolver, Scheduler scheduler) {
+        mResolver = resolver;
+        mScheduler = scheduler;
+    }
+
+    /** @return a scheduler that runs flushes on a background thread of their own */
+    private static Scheduler createHandlerScheduler() {
+        final HandlerThread thread = new HandlerThread("ConversationWritePipeline",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        final Handler handler = new Handler(thread.getLooper());
+        return new Scheduler() {
+            @Override
+            public void schedule(Runnable flush, long delayMs) {
+                handler.postDelayed(flush, delayMs);
+            }
+        };
+    }
+
+    /**
+     * Queues writes to be flushed to the given authority after a short delay.
+     */
+    void enqueue(final String authority, List<Write> writes) {
+        synchronized (mLock) {
+            final Pending pending = add(authority, writes);
+            if (!pending.mFlushScheduled) {
+                pending.mFlushScheduled = true;
+                mScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(authority, null);
+                    }
+                }, COALESCE_WINDOW_MS);
+            }
+        }
+    }
+
+    /**
+     * Flushes the given writes to the given authority on the calling thread, along with any
+     * writes already queued for it. Must not be called on the UI thread.
+     */
+    void applyNow(String authority, List<Write> writes) {
+        flush(authority, writes);
+    }
+
+    /**
+     * Adds writes to an authority's pending list, coalescing them with the writes already there.
+     * Must be called with {@link #mLock} held.
+     */
+    private Pending add(String authority, List<Write> writes) {
+        Pending pending = mPending.get(authority);
+        if (pending == null) {
+            pending = new Pending();
+            mPending.put(authority, pending);
+        }
+        for (Write write : writes) {
+            mQueuedCount++;
+            final Write previous = pending.mLatestByKey.get(write.mKey);
+            if (previous != null && previous.isPlainUpdate()) {
+                if (write.isPlainUpdate()) {
+                    // Fold the earlier values in; the later write wins any conflicts
+                    final ContentValues merged = new ContentValues(previous.mValues);
+                    merged.putAll(write.mValues);
+                    write.mValues = merged;
+                    previous.mCancelled = true;
+                    mMergedCount++;
+                } else if (write.mKind == Write.DELETE) {
+                    previous.mCancelled = true;
+                    mMergedCount++;
+                }
+            }
+            pending.mLatestByKey.put(write.mKey, write);
+            pending.mWrites.add(write);
+        }
+        return pending;
+    }
+
+    private void flush(String authority, List<Write> extraWrites) {
+        synchronized (mFlushLock) {
+            final ArrayList<ContentProviderOperation> batch;
+            synchronized (mLock) {
+                final Pending pending = extraWrites != null ? add(authority, extraWrites)
+                        : mPending.get(authority);
+                if (pending == null) {
+                    return;
+                }
+                mPending.remove(authority);
+                batch = new ArrayList<ContentProviderOperation>(pending.mWrites.size());
+                for (Write write : pending.mWrites) {
+                    if (!write.mCancelled) {
+                        batch.add(write.toOperation());
+                    }
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                mFlushedCount += batch.size();
+                mBatchCount++;
+            }
+            LogUtils.d(LOG_TAG, "Flushing %d writes to %s; %s", batch.size(), authority, this);
+            try {
+                mResolver.applyBatch(authority, batch);
+            } catch (RemoteException e) {
+                LogUtils.w(LOG_TAG, e, "Unable to apply conversation writes to %s", authority);
+            } catch (OperationApplicationException e) {
+                LogUtils.w(LOG_TAG, e, "Unable to apply conversation writes to %s", authority);
+            }
+        }
+    }
+
+    /** @return the number of writes queued so far */
+    @VisibleForTesting
+    int getQueuedCount() {
+        synchronized (mLock) {
+            return mQueuedCount;
+        }
+    }
+
+    /** @return the number of writes dropped because a later write superseded them */
+    @VisibleForTesting
+    int getMergedCount() {
+        synchronized (mLock) {
+            return mMergedCount;
+        }
+    }
+
+    /** @return the number of writes sent to the underlying providers */
+    @VisibleForTesting
+    int getFlushedCount() {
+        synchronized (mLock) {
+            return mFlushedCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "[ConversationWritePipeline queued=" + mQueuedCount + " merged=" + mMergedCount
+                    + " flushed=" + mFlushedCount + " batches=" + mBatchCount + "]";
+        }
+    }
+}
@@ -48,14 +48,11 @@ import com.android.mail.ui.SecureConversationViewControllerCallbacks;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.Utils;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Fragment that is used to view EML files. It is mostly stubs
@@ -87,13 +84,11 @@ public class EmlMessageViewFragment extends Fragment
     private boolean mMessageLoadFailed;
 
     /**
-     * Cache of email address strings to parsed Address objects.
-     * <p>
-     * Remember to synchronize on the map when reading or writing to this cache, because some
-     * instances use it off the UI thread (e.g. from WebView).
+     * Cache of email address strings to parsed Address objects, for the addresses shown in this
+     * view. It is concurrent because some instances use it off the UI thread (e.g. from WebView).
      */
-    protected final Map<String, Address> mAddressCache = Collections.synchronizedMap(
-            new HashMap<String, Address>());
+    protected final Map<String, Address> mAddressCache =
+            new ConcurrentHashMap<String, Address>();
 
     private class EmlWebViewClient extends AbstractConversationWebViewClient {
         public EmlWebViewClient(Account account) {
@@ -125,11 +120,7 @@ public class EmlMessageViewFragment extends Fragment
             mViewController.dismissLoadingStatus();
 
             final Set<String> emailAddresses = Sets.newHashSet();
-            final List<Address> cacheCopy;
-            synchronized (mAddressCache) {
-                cacheCopy = ImmutableList.copyOf(mAddressCache.values());
-            }
-            for (Address addr : cacheCopy) {
+            for (Address addr : mAddressCache.values()) {
                 emailAddresses.add(addr.getAddress());
             }
             final ContactLoaderCallbacks callbacks = getContactInfoSource();
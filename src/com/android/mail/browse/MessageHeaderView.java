@@ -44,13 +44,14 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.android.emailcommon.mail.Address;
+import com.android.emailcommon.utility.SnippetExtractor;
 import com.android.mail.ContactInfo;
 import com.android.mail.ContactInfoSource;
 import com.android.mail.R;
 import com.android.mail.analytics.Analytics;
 import com.android.mail.browse.ConversationViewAdapter.MessageHeaderItem;
 import com.android.mail.compose.ComposeActivity;
-import com.android.mail.perf.Timer;
+import com.android.mail.perf.Tracer;
 import com.android.mail.photomanager.LetterTileProvider;
 import com.android.mail.print.PrintUtils;
 import com.android.mail.providers.Account;
@@ -71,8 +72,6 @@ import com.android.mail.utils.Utils;
 import com.android.mail.utils.VeiledAddressMatcher;
 import com.google.common.annotations.VisibleForTesting;
 
-import java.io.IOException;
-import java.io.StringReader;
 import java.util.Map;
 
 public class MessageHeaderView extends SnapHeader implements OnClickListener,
@@ -88,10 +87,6 @@ public class MessageHeaderView extends SnapHeader implements OnClickListener,
     private static final int SHOW_IMAGE_PROMPT_ONCE = 1;
     private static final int SHOW_IMAGE_PROMPT_ALWAYS = 2;
 
-    private static final String HEADER_RENDER_TAG = "message header render";
-    private static final String LAYOUT_TAG = "message header layout";
-    private static final String MEASURE_TAG = "message header measure";
-
     private static final String LOG_TAG = LogTag.getLogTag();
 
     // This is a debug only feature
@@ -394,8 +389,7 @@ public class MessageHeaderView extends SnapHeader implements OnClickListener,
             return;
         }
 
-        Timer t = new Timer();
-        t.start(HEADER_RENDER_TAG);
+        final long start = Tracer.begin();
 
         mRecipientSummaryValid = false;
         mExpandedDetailsValid = false;
@@ -479,7 +473,7 @@ public class MessageHeaderView extends SnapHeader implements OnClickListener,
             }
         }
 
-        t.pause(HEADER_RENDER_TAG);
+        Tracer.end(Tracer.RENDER_MESSAGE_HEADER, start);
     }
 
     /**
@@ -1368,9 +1362,8 @@ public class MessageHeaderView extends SnapHeader implements OnClickListener,
 
     /**
      * Returns a short plaintext snippet generated from the given HTML message
-     * body. Collapses whitespace, ignores '&lt;' and '&gt;' characters and
-     * everything in between, and truncates the snippet to no more than 100
-     * characters.
+     * body. Collapses whitespace, drops tags, decodes entities, and truncates
+     * the snippet to no more than 100 characters.
      *
      * @return Short plaintext snippet
      */
@@ -1379,105 +1372,22 @@ public class MessageHeaderView extends SnapHeader implements OnClickListener,
         if (TextUtils.isEmpty(messageBody)) {
             return null;
         }
-
-        final StringBuilder snippet = new StringBuilder(MAX_SNIPPET_LENGTH);
-
-        final StringReader reader = new StringReader(messageBody);
-        try {
-            int c;
-            while ((c = reader.read()) != -1 && snippet.length() < MAX_SNIPPET_LENGTH) {
-                // Collapse whitespace.
-                if (Character.isWhitespace(c)) {
-                    snippet.append(' ');
-                    do {
-                        c = reader.read();
-                    } while (Character.isWhitespace(c));
-                    if (c == -1) {
-                        break;
-                    }
-                }
-
-                if (c == '<') {
-                    // Ignore everything up to and including the next '>'
-                    // character.
-                    while ((c = reader.read()) != -1) {
-                        if (c == '>') {
-                            break;
-                        }
-                    }
-
-                    // If we reached the end of the message body, exit.
-                    if (c == -1) {
-                        break;
-                    }
-                } else if (c == '&') {
-                    // Read HTML entity.
-                    StringBuilder sb = new StringBuilder();
-
-                    while ((c = reader.read()) != -1) {
-                        if (c == ';') {
-                            break;
-                        }
-                        sb.append((char) c);
-                    }
-
-                    String entity = sb.toString();
-                    if ("nbsp".equals(entity)) {
-                        snippet.append(' ');
-                    } else if ("lt".equals(entity)) {
-                        snippet.append('<');
-                    } else if ("gt".equals(entity)) {
-                        snippet.append('>');
-                    } else if ("amp".equals(entity)) {
-                        snippet.append('&');
-                    } else if ("quot".equals(entity)) {
-                        snippet.append('"');
-                    } else if ("apos".equals(entity) || "#39".equals(entity)) {
-                        snippet.append('\'');
-                    } else {
-                        // Unknown entity; just append the literal string.
-                        snippet.append('&').append(entity);
-                        if (c == ';') {
-                            snippet.append(';');
-                        }
-                    }
-
-                    // If we reached the end of the message body, exit.
-                    if (c == -1) {
-                        break;
-                    }
-                } else {
-                    // The current character is a non-whitespace character that
-                    // isn't inside some
-                    // HTML tag and is not part of an HTML entity.
-                    snippet.append((char) c);
-                }
-            }
-        } catch (IOException e) {
-            LogUtils.wtf(LOG_TAG, e, "Really? IOException while reading a freaking string?!? ");
-        }
-
-        return snippet.toString();
+        return SnippetExtractor.extract(messageBody, MAX_SNIPPET_LENGTH,
+                SnippetExtractor.FLAG_STRIP_HTML);
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        Timer perf = new Timer();
-        perf.start(LAYOUT_TAG);
+        final long start = Tracer.begin();
         super.onLayout(changed, l, t, r, b);
-        perf.pause(LAYOUT_TAG);
+        Tracer.end(Tracer.LAYOUT_MESSAGE_HEADER, start);
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        Timer t = new Timer();
-        if (Timer.ENABLE_TIMER && !mPreMeasuring) {
-            t.count("header measure id=" + mMessage.id);
-            t.start(MEASURE_TAG);
-        }
+        // measuring a header offscreen to find its height isn't a real measure
+        final long start = mPreMeasuring ? 0 : Tracer.begin();
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        if (!mPreMeasuring) {
-            t.pause(MEASURE_TAG);
-        }
+        Tracer.end(Tracer.MEASURE_MESSAGE_HEADER, start);
     }
 }
@@ -146,7 +146,7 @@ public class SendersView {
         SpannableStringBuilder messageInfo = new SpannableStringBuilder();
 
         try {
-            final ConversationInfo conversationInfo = conv.conversationInfo;
+            final ConversationInfo conversationInfo = conv.getConversationInfo();
             final int sendingStatus = conv.sendingState;
             boolean hasSenders = false;
             // This covers the case where the sender is "me" and this is a draft
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.perf;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latency tracing that can be left in shipped code and turned on at runtime.
+ * <p>
+ * Each traced operation has one of the metric ids below. Time it like this:
+ *
+ * <pre>
+ * final long start = Tracer.begin();
+ * ... code for the operation ...
+ * Tracer.end(Tracer.SANITIZE_HTML, start);
+ * </pre>
+ *
+ * While tracing is off, {@link #begin} reads a single volatile flag and {@link #end} returns at
+ * once, so the calls cost next to nothing. While it is on, each thread records into its own
+ * latency histograms and ring buffer of recent samples, without locks or allocation. The
+ * histograms have 8 buckets per power of two of microseconds, so the percentiles reported by
+ * {@link #dump} are within 12.5% of the true values.
+ * <p>
+ * Reading the results from another thread is not synchronized with the threads recording them,
+ * so a dump taken while operations are being recorded may miss the most recent few samples.
+ * The histograms of threads that have ended are folded into a shared total, so that thread pools
+ * that come and go don't keep adding to the memory used by tracing; their recent samples are
+ * dropped.
+ */
+public final class Tracer {
+
+    /** Sanitizing the html of a message, see {@link com.android.mail.utils.HtmlSanitizer}. */
+    public static final int SANITIZE_HTML = 0;
+    /** Rendering the html of all the messages in a conversation. */
+    public static final int RENDER_CONVERSATION = 1;
+    /** Caching the rows of a conversation list cursor in the background. */
+    public static final int PRELOAD_CURSOR = 2;
+    /** Binding a message header to its message. */
+    public static final int RENDER_MESSAGE_HEADER = 3;
+    public static final int LAYOUT_MESSAGE_HEADER = 4;
+    public static final int MEASURE_MESSAGE_HEADER = 5;
+    public static final int LAYOUT_CONVERSATION_ITEM = 6;
+
+    /** The names of the metrics in dumps, by id. */
+    private static final String[] METRIC_NAMES = {
+        "sanitizingHTMLEmail",
+        "conversation render",
+        "cursor preload",
+        "message header render",
+        "message header layout",
+        "message header measure",
+        "conversation item layout",
+    };
+    @VisibleForTesting
+    static final int METRIC_COUNT = METRIC_NAMES.length;
+
+    /** Each power of two is split into 2^SUB_BUCKET_BITS buckets. */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Latencies of 2^MAX_EXPONENT microseconds (over 19 hours) and up share the last bucket. */
+    private static final int MAX_EXPONENT = 36;
+    @VisibleForTesting
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** The number of recent samples kept by each thread. */
+    private static final int RECENT_SIZE = 32;
+    /** Recent samples are packed with the metric id above the latency in microseconds. */
+    private static final int METRIC_SHIFT = 56;
+    private static final long LATENCY_MASK = (1L << METRIC_SHIFT) - 1;
+
+    private static volatile boolean sEnabled;
+
+    /** The recorders of the threads that are alive, or have ended since the last prune. */
+    private static final List<Recorder> sRecorders = new CopyOnWriteArrayList<Recorder>();
+    /**
+     * The samples of the threads that have ended, without recent samples. Only written while
+     * holding its lock.
+     */
+    private static final Recorder sEnded = new Recorder(null);
+
+    private static final ThreadLocal<Recorder> sRecorder = new ThreadLocal<Recorder>() {
+        @Override
+        protected Recorder initialValue() {
+            pruneEndedThreads();
+            final Recorder recorder = new Recorder(Thread.currentThread());
+            sRecorders.add(recorder);
+            return recorder;
+        }
+    };
+
+    /**
+     * The samples recorded by one thread. Only that thread writes to it; {@link #mSampleCount}
+     * is written last, so that a reader that reads it first sees the rest.
+     */
+    private static final class Recorder {
+        final String mThreadName;
+        /** Weak, so that the list of recorders doesn't keep ended threads around. */
+        final WeakReference<Thread> mThread;
+        final int[][] mHistograms = new int[METRIC_COUNT][BUCKET_COUNT];
+        final long[] mMaxMicros = new long[METRIC_COUNT];
+        final long[] mRecent = new long[RECENT_SIZE];
+        volatile int mSampleCount;
+
+        Recorder(Thread thread) {
+            mThreadName = thread != null ? thread.getName() : null;
+            mThread = new WeakReference<Thread>(thread);
+        }
+
+        boolean hasEnded() {
+            final Thread thread = mThread.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        /** Adds the histograms of {@code other} to those of this one. */
+        void add(Recorder other) {
+            for (int metric = 0; metric < METRIC_COUNT; metric++) {
+                final int[] counts = mHistograms[metric];
+                final int[] otherCounts = other.mHistograms[metric];
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    counts[i] += otherCounts[i];
+                }
+                mMaxMicros[metric] = Math.max(mMaxMicros[metric], other.mMaxMicros[metric]);
+            }
+            mSampleCount = (mSampleCount + other.mSampleCount) & Integer.MAX_VALUE;
+        }
+
+        void record(int metric, long micros) {
+            mHistograms[metric][bucketOf(micros)]++;
+            if (micros > mMaxMicros[metric]) {
+                mMaxMicros[metric] = micros;
+            }
+            final int count = mSampleCount;
+            mRecent[count % RECENT_SIZE] = ((long) metric << METRIC_SHIFT)
+                    | (micros & LATENCY_MASK);
+            // wraps after 2^31 samples, so keep it positive for the modulus above
+            mSampleCount = (count + 1) & Integer.MAX_VALUE;
+        }
+    }
+
+    private Tracer() {}
+
+    /** Turns tracing on or off. Samples recorded so far are kept either way. */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return the start time of an operation, to pass to {@link #end}, or 0 if tracing is off
+     */
+    public static long begin() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of an operation that started at {@code startNanos}, unless that is 0
+     * because tracing was off when it started.
+     *
+     * @param metric one of the metric ids of this class
+     * @param startNanos what {@link #begin} returned at the start of the operation
+     */
+    public static void end(int metric, long startNanos) {
+        if (startNanos != 0) {
+            record(metric, (System.nanoTime() - startNanos) / 1000);
+        }
+    }
+
+    @VisibleForTesting
+    static void record(int metric, long micros) {
+        sRecorder.get().record(metric, Math.max(micros, 0));
+    }
+
+    /**
+     * Folds the samples of the threads that have ended into {@link #sEnded} and forgets their
+     * recorders. A thread that has ended no longer writes to its recorder, so this is safe.
+     */
+    private static void pruneEndedThreads() {
+        synchronized (sEnded) {
+            for (Recorder recorder : sRecorders) {
+                if (recorder.hasEnded()) {
+                    sEnded.add(recorder);
+                    sRecorders.remove(recorder);
+                }
+            }
+        }
+    }
+
+    /** @return the number of threads whose recorders are kept apart */
+    @VisibleForTesting
+    static int getRecorderCount() {
+        return sRecorders.size();
+    }
+
+    /** @return the histogram bucket of a latency in microseconds */
+    @VisibleForTesting
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /** @return the smallest latency in microseconds that falls in a bucket */
+    @VisibleForTesting
+    static long lowestInBucket(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        final long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << shift;
+    }
+
+    /** @return the merged histogram of a metric over all threads */
+    private static long[] getHistogram(int metric) {
+        final long[] histogram = new long[BUCKET_COUNT];
+        // the lock keeps a recorder from being counted both in sEnded and in sRecorders
+        synchronized (sEnded) {
+            addCounts(histogram, sEnded.mHistograms[metric]);
+            for (Recorder recorder : sRecorders) {
+                if (recorder.mSampleCount != 0) {
+                    addCounts(histogram, recorder.mHistograms[metric]);
+                }
+            }
+        }
+        return histogram;
+    }
+
+    private static void addCounts(long[] histogram, int[] counts) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            histogram[i] += counts[i];
+        }
+    }
+
+    /** @return the largest latency of a metric recorded by any thread */
+    private static long getMax(int metric) {
+        synchronized (sEnded) {
+            long max = sEnded.mMaxMicros[metric];
+            for (Recorder recorder : sRecorders) {
+                max = Math.max(max, recorder.mMaxMicros[metric]);
+            }
+            return max;
+        }
+    }
+
+    /**
+     * @return the top of the bucket that the sample at {@code percentile} percent of
+     * {@code histogram} falls in, but no more than {@code max}; 0 if the histogram is empty
+     */
+    private static long getPercentile(long[] histogram, long total, long max, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return Math.min(lowestInBucket(i + 1) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    /** @return the number of samples of a metric recorded by all threads */
+    public static long getCount(int metric) {
+        long total = 0;
+        for (long count : getHistogram(metric)) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the latency of a metric in microseconds at the given percentile, e.g. 95 for p95,
+     * to within the width of a histogram bucket; 0 if nothing has been recorded
+     */
+    public static long getPercentile(int metric, double percentile) {
+        final long[] histogram = getHistogram(metric);
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        return getPercentile(histogram, total, getMax(metric), percentile);
+    }
+
+    /**
+     * Forgets all samples. Samples being recorded while this runs may survive it.
+     */
+    public static void reset() {
+        pruneEndedThreads();
+        synchronized (sEnded) {
+            for (int[] counts : sEnded.mHistograms) {
+                Arrays.fill(counts, 0);
+            }
+            Arrays.fill(sEnded.mMaxMicros, 0);
+            sEnded.mSampleCount = 0;
+        }
+        for (Recorder recorder : sRecorders) {
+            for (int[] counts : recorder.mHistograms) {
+                Arrays.fill(counts, 0);
+            }
+            Arrays.fill(recorder.mMaxMicros, 0);
+            recorder.mSampleCount = 0;
+        }
+    }
+
+    /**
+     * Writes the count, p50, p95, p99 and max latency of each metric, followed by the most recent
+     * samples of each thread.
+     */
+    public static void dump(PrintWriter writer) {
+        pruneEndedThreads();
+        writer.println("Tracing is " + (sEnabled ? "on" : "off") + ", latencies in us:");
+        writer.println(String.format("  %-26s %8s %8s %8s %8s %8s",
+                "metric", "count", "p50", "p95", "p99", "max"));
+        for (int metric = 0; metric < METRIC_COUNT; metric++) {
+            final long[] histogram = getHistogram(metric);
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                continue;
+            }
+            final long max = getMax(metric);
+            writer.println(String.format("  %-26s %8d %8d %8d %8d %8d", METRIC_NAMES[metric],
+                    total, getPercentile(histogram, total, max, 50),
+                    getPercentile(histogram, total, max, 95),
+                    getPercentile(histogram, total, max, 99), max));
+        }
+
+        for (Recorder recorder : sRecorders) {
+            final int count = recorder.mSampleCount;
+            if (count == 0) {
+                continue;
+            }
+            writer.println("Recent samples on thread \"" + recorder.mThreadName + "\":");
+            final int recent = Math.min(count, RECENT_SIZE);
+            for (int i = count - recent; i < count; i++) {
+                final long sample = recorder.mRecent[i % RECENT_SIZE];
+                writer.println(String.format("  %-26s %8d",
+                        METRIC_NAMES[(int) (sample >>> METRIC_SHIFT)], sample & LATENCY_MASK));
+            }
+        }
+    }
+}
@@ -93,8 +93,16 @@ public class Conversation implements Parcelable {
     public boolean starred;
     /**
      * @see UIProvider.ConversationColumns#RAW_FOLDERS
+     * Null until {@link #getRawFolders()} decodes it, if this conversation was read from a
+     * blob in a cursor. Volatile, as conversations are built in the background and read on the
+     * UI thread.
      */
-    private FolderList rawFolders;
+    private volatile FolderList rawFolders;
+    /**
+     * The undecoded form of {@link #rawFolders}, kept so the folder list is only unmarshalled
+     * for conversations that are actually displayed. Guarded by {@code this}; null once decoded.
+     */
+    private byte[] rawFoldersBlob;
     /**
      * @see UIProvider.ConversationColumns#FLAGS
      */
@@ -125,8 +133,16 @@ public class Conversation implements Parcelable {
     public final Uri accountUri;
     /**
      * @see UIProvider.ConversationColumns#CONVERSATION_INFO
+     * Null until {@link #getConversationInfo()} decodes it, if this conversation was read from a
+     * blob in a cursor. Volatile for the same reason as {@link #rawFolders}.
+     */
+    private volatile ConversationInfo conversationInfo;
+    /**
+     * The undecoded form of {@link #conversationInfo}. Conversations are built for every row of
+     * the conversation list in the background, so the participant list is only unmarshalled
+     * for conversations that are actually displayed. Guarded by {@code this}; null once decoded.
      */
-    public final ConversationInfo conversationInfo;
+    private byte[] conversationInfoBlob;
     /**
      * @see UIProvider.ConversationColumns#CONVERSATION_BASE_URI
      */
@@ -186,7 +202,7 @@ public class Conversation implements Parcelable {
         dest.writeInt(read ? 1 : 0);
         dest.writeInt(seen ? 1 : 0);
         dest.writeInt(starred ? 1 : 0);
-        dest.writeParcelable(rawFolders, 0);
+        dest.writeParcelable(getFolderList(), 0);
         dest.writeInt(convFlags);
         dest.writeInt(personalLevel);
         dest.writeInt(spam ? 1 : 0);
@@ -194,7 +210,7 @@ public class Conversation implements Parcelable {
         dest.writeInt(muted ? 1 : 0);
         dest.writeInt(color);
         dest.writeParcelable(accountUri, 0);
-        dest.writeParcelable(conversationInfo, 0);
+        dest.writeParcelable(getConversationInfo(), 0);
         dest.writeParcelable(conversationBaseUri, 0);
         dest.writeInt(isRemote ? 1 : 0);
         dest.writeLong(orderKey);
@@ -288,7 +304,7 @@ public class Conversation implements Parcelable {
         read = cursor.getInt(UIProvider.CONVERSATION_READ_COLUMN) != 0;
         seen = cursor.getInt(UIProvider.CONVERSATION_SEEN_COLUMN) != 0;
         starred = cursor.getInt(UIProvider.CONVERSATION_STARRED_COLUMN) != 0;
-        rawFolders = readRawFolders(cursor);
+        readRawFolders(cursor);
         convFlags = cursor.getInt(UIProvider.CONVERSATION_FLAGS_COLUMN);
         personalLevel = cursor.getInt(UIProvider.CONVERSATION_PERSONAL_LEVEL_COLUMN);
         spam = cursor.getInt(UIProvider.CONVERSATION_IS_SPAM_COLUMN) != 0;
@@ -299,8 +315,8 @@ public class Conversation implements Parcelable {
         accountUri = !TextUtils.isEmpty(account) ? Uri.parse(account) : null;
         position = NO_POSITION;
         localDeleteOnUpdate = false;
-        conversationInfo = readConversationInfo(cursor);
-        if (conversationInfo == null) {
+        readConversationInfo(cursor);
+        if (conversationInfo == null && conversationInfoBlob == null) {
             LogUtils.wtf(LOG_TAG, "Null conversation info from cursor");
         }
         final String conversationBase =
@@ -327,7 +343,11 @@ public class Conversation implements Parcelable {
         read = other.read;
         seen = other.seen;
         starred = other.starred;
-        rawFolders = other.rawFolders; // FolderList is immutable, shallow copy is OK
+        // FolderList is immutable, and the blob is never modified, so a shallow copy is OK
+        synchronized (other) {
+            rawFolders = other.rawFolders;
+            rawFoldersBlob = other.rawFoldersBlob;
+        }
         convFlags = other.convFlags;
         personalLevel = other.personalLevel;
         spam = other.spam;
@@ -339,7 +359,7 @@ public class Conversation implements Parcelable {
         localDeleteOnUpdate = other.localDeleteOnUpdate;
         // although ConversationInfo is mutable (see ConversationInfo.markRead), applyCachedValues
         // will overwrite this if cached changes exist anyway, so a shallow copy is OK
-        conversationInfo = other.conversationInfo;
+        conversationInfo = other.getConversationInfo();
         conversationBaseUri = other.conversationBaseUri;
         isRemote = other.isRemote;
         orderKey = other.orderKey;
@@ -556,46 +576,89 @@ public class Conversation implements Parcelable {
                 ConversationCursorCommand.OPTION_MOVE_POSITION);
     }
 
-    private static ConversationInfo readConversationInfo(Cursor cursor) {
-        final ConversationInfo ci;
-
+    /**
+     * Reads either {@link #conversationInfo} or, if the cursor only has it as a blob,
+     * {@link #conversationInfoBlob}.
+     */
+    private void readConversationInfo(Cursor cursor) {
         if (cursor instanceof ConversationCursor) {
             final byte[] blob = ((ConversationCursor) cursor).getCachedBlob(
                     UIProvider.CONVERSATION_INFO_COLUMN);
             if (blob != null && blob.length > 0) {
-                return ConversationInfo.fromBlob(blob);
+                conversationInfoBlob = blob;
+                return;
             }
         }
 
         final Bundle response = cursor.respond(CONVERSATION_INFO_REQUEST);
         if (response.containsKey(ConversationCursorCommand.COMMAND_GET_CONVERSATION_INFO)) {
-            ci = response.getParcelable(ConversationCursorCommand.COMMAND_GET_CONVERSATION_INFO);
+            conversationInfo = response.getParcelable(
+                    ConversationCursorCommand.COMMAND_GET_CONVERSATION_INFO);
         } else {
             // legacy fallback
-            ci = ConversationInfo.fromBlob(cursor.getBlob(UIProvider.CONVERSATION_INFO_COLUMN));
+            conversationInfoBlob = cursor.getBlob(UIProvider.CONVERSATION_INFO_COLUMN);
         }
-        return ci;
     }
 
-    private static FolderList readRawFolders(Cursor cursor) {
-        final FolderList fl;
-
+    /**
+     * Reads either {@link #rawFolders} or, if the cursor only has it as a blob,
+     * {@link #rawFoldersBlob}.
+     */
+    private void readRawFolders(Cursor cursor) {
         if (cursor instanceof ConversationCursor) {
             final byte[] blob = ((ConversationCursor) cursor).getCachedBlob(
                     UIProvider.CONVERSATION_RAW_FOLDERS_COLUMN);
             if (blob != null && blob.length > 0) {
-                return FolderList.fromBlob(blob);
+                rawFoldersBlob = blob;
+                return;
             }
         }
 
         final Bundle response = cursor.respond(RAW_FOLDERS_REQUEST);
         if (response.containsKey(ConversationCursorCommand.COMMAND_GET_RAW_FOLDERS)) {
-            fl = response.getParcelable(ConversationCursorCommand.COMMAND_GET_RAW_FOLDERS);
+            rawFolders = response.getParcelable(ConversationCursorCommand.COMMAND_GET_RAW_FOLDERS);
         } else {
             // legacy fallback
             // TODO: delete this once Email supports the respond call
-            fl = FolderList.fromBlob(
-                    cursor.getBlob(UIProvider.CONVERSATION_RAW_FOLDERS_COLUMN));
+            rawFoldersBlob = cursor.getBlob(UIProvider.CONVERSATION_RAW_FOLDERS_COLUMN);
+            if (rawFoldersBlob == null) {
+                rawFolders = FolderList.fromBlob(null);
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link ConversationInfo} for this conversation, unmarshalling it on first use
+     * if it was read from a cursor blob.
+     */
+    public ConversationInfo getConversationInfo() {
+        ConversationInfo ci = conversationInfo;
+        if (ci == null) {
+            // Decode only once, so that changes made to the result, e.g. by markRead, aren't
+            // lost to a copy decoded by another thread
+            synchronized (this) {
+                ci = conversationInfo;
+                if (ci == null && conversationInfoBlob != null) {
+                    ci = ConversationInfo.fromBlob(conversationInfoBlob);
+                    conversationInfo = ci;
+                    conversationInfoBlob = null;
+                }
+            }
+        }
+        return ci;
+    }
+
+    private FolderList getFolderList() {
+        FolderList fl = rawFolders;
+        if (fl == null) {
+            synchronized (this) {
+                fl = rawFolders;
+                if (fl == null) {
+                    fl = FolderList.fromBlob(rawFoldersBlob);
+                    rawFolders = fl;
+                    rawFoldersBlob = null;
+                }
+            }
         }
         return fl;
     }
@@ -620,7 +683,7 @@ public class Conversation implements Parcelable {
                 if (cachedCi == null) {
                     LogUtils.d(LOG_TAG, "Null ConversationInfo in applyCachedValues");
                 } else {
-                    conversationInfo.overwriteWith(cachedCi);
+                    getConversationInfo().overwriteWith(cachedCi);
                 }
             } else if (ConversationColumns.FLAGS.equals(key)) {
                 convFlags = (Integer) val;
@@ -629,7 +692,7 @@ public class Conversation implements Parcelable {
             } else if (ConversationColumns.SEEN.equals(key)) {
                 seen = (Integer) val != 0;
             } else if (ConversationColumns.RAW_FOLDERS.equals(key)) {
-                rawFolders = FolderList.fromBlob((byte[]) val);
+                setRawFolders(FolderList.fromBlob((byte[]) val));
             } else if (ConversationColumns.VIEWED.equals(key)) {
                 // ignore. this is not read from the cursor, either.
             } else if (ConversationColumns.PRIORITY.equals(key)) {
@@ -648,11 +711,14 @@ public class Conversation implements Parcelable {
      * @return <strong>Immutable</strong> list of {@link Folder}s.
      */
     public List<Folder> getRawFolders() {
-        return rawFolders.folders;
+        return getFolderList().folders;
     }
 
     public void setRawFolders(FolderList folders) {
-        rawFolders = folders;
+        synchronized (this) {
+            rawFolders = folders;
+            rawFoldersBlob = null;
+        }
     }
 
     @Override
@@ -726,22 +792,22 @@ public class Conversation implements Parcelable {
      * Get the snippet for this conversation.
      */
     public String getSnippet() {
-        return !TextUtils.isEmpty(conversationInfo.firstSnippet) ?
-                conversationInfo.firstSnippet : "";
+        final ConversationInfo ci = getConversationInfo();
+        return !TextUtils.isEmpty(ci.firstSnippet) ? ci.firstSnippet : "";
     }
 
     /**
      * Get the number of messages for this conversation.
      */
     public int getNumMessages() {
-        return conversationInfo.messageCount;
+        return getConversationInfo().messageCount;
     }
 
     /**
      * Get the number of drafts for this conversation.
      */
     public int numDrafts() {
-        return conversationInfo.draftCount;
+        return getConversationInfo().draftCount;
     }
 
     public boolean isViewed() {
@@ -40,7 +40,7 @@ import com.android.emailcommon.mail.Part;
 import com.android.emailcommon.utility.ConversionUtilities;
 import com.android.mail.providers.UIProvider.MessageColumns;
 import com.android.mail.ui.HtmlMessage;
-import com.android.mail.utils.HtmlSanitizer;
+import com.android.mail.utils.SanitizedHtmlCache;
 import com.android.mail.utils.Utils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
@@ -65,6 +65,12 @@ public class Message implements Parcelable, HtmlMessage {
     // regex that matches content id surrounded by "<>" optionally.
     private static final Pattern REMOVE_OPTIONAL_BRACKETS = Pattern.compile("^<?([^>]+)>?$");
 
+    /**
+     * The most sanitized html kept for the body of a message read from a .eml file; beyond this
+     * the body is cut off and the message marked as {@link #clipped}.
+     */
+    private static final int MAX_SANITIZED_HTML_LENGTH = 2 * 1024 * 1024;
+
     /**
      * @see BaseColumns#_ID
      */
@@ -483,7 +489,15 @@ public class Message implements Parcelable, HtmlMessage {
         bodyText = data.textContent;
 
         // sanitize the HTML found within the .eml file before consuming it
-        bodyHtml = HtmlSanitizer.sanitizeHtml(data.htmlContent);
+        if (data.htmlContent != null) {
+            final StringBuilder sanitized = new StringBuilder(
+                    Math.min(data.htmlContent.length(), MAX_SANITIZED_HTML_LENGTH));
+            clipped = !SanitizedHtmlCache.get(context).sanitizeHtml(data.htmlContent, sanitized,
+                    MAX_SANITIZED_HTML_LENGTH);
+            bodyHtml = sanitized.toString();
+        } else {
+            bodyHtml = null;
+        }
 
         // populate mAttachments
         mAttachments = Lists.newArrayList();
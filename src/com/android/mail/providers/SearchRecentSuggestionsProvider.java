@@ -24,11 +24,14 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.BaseColumns;
 import android.support.annotation.Nullable;
 
 import com.android.mail.R;
+import com.android.mail.utils.MatrixCursorWithCachedColumns;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class SearchRecentSuggestionsProvider {
     /*
@@ -41,14 +44,25 @@ public class SearchRecentSuggestionsProvider {
     private static final String DATABASE_NAME = "suggestions.db";
     private static final String SUGGESTIONS_TABLE = "suggestions";
 
-    private static final String QUERY =
-            " SELECT _id" +
-            "   , display1 AS " + SearchManager.SUGGEST_COLUMN_TEXT_1 +
-            "   , ? || query AS " + SearchManager.SUGGEST_COLUMN_QUERY +
-            "   , ? AS " + SearchManager.SUGGEST_COLUMN_ICON_1 +
-            " FROM " + SUGGESTIONS_TABLE +
-            " WHERE display1 LIKE ?" +
-            " ORDER BY date DESC";
+    private static final String[] LOAD_PROJECTION = new String[] { "display1" };
+    private static final String LOAD_ORDER = "date ASC";
+
+    private static final String[] COLUMNS = new String[] {
+            BaseColumns._ID,
+            SearchManager.SUGGEST_COLUMN_TEXT_1, SearchManager.SUGGEST_COLUMN_QUERY,
+            SearchManager.SUGGEST_COLUMN_ICON_1
+    };
+
+    /** The most recent queries offered as suggestions at once. */
+    private static final int MAX_SUGGESTIONS = 10;
+
+    /**
+     * The recent queries in the database, loaded the first time suggestions are asked for and
+     * then kept up to date as queries are saved. There is one database per process, so there is
+     * one index per process too.
+     */
+    private static SuggestionIndex sRecentQueries;
+    private static final Object sRecentQueriesLock = new Object();
 
     // Table of database versions.  Don't forget to update!
     // NOTE:  These version values are shifted left 8 bits (x 256) in order to create space for
@@ -142,25 +156,65 @@ public class SearchRecentSuggestionsProvider {
         return null;
     }
 
-    public Cursor query(String query) {
-        final SQLiteDatabase db = getDatabase(true /* readOnly */);
-        if (db != null) {
-            final StringBuilder builder = new StringBuilder();
-            if (mFullQueryTerms != null) {
-                for (String token : mFullQueryTerms) {
-                    builder.append(token).append(QUERY_TOKEN_SEPARATOR);
+    /**
+     * @return the index of recent queries, loading it from the database if this is the first
+     * time it is needed; null if the database has been closed
+     */
+    private @Nullable SuggestionIndex getRecentQueries() {
+        synchronized (sRecentQueriesLock) {
+            if (sRecentQueries == null) {
+                final SQLiteDatabase db = getDatabase(true /* readOnly */);
+                if (db == null) {
+                    return null;
+                }
+                final SuggestionIndex index = new SuggestionIndex(MAX_SUGGESTIONS);
+                Cursor c = null;
+                try {
+                    // Oldest first, so that the most recent query is added last
+                    c = db.query(SUGGESTIONS_TABLE, LOAD_PROJECTION, null, null, null, null,
+                            LOAD_ORDER);
+                    while (c.moveToNext()) {
+                        final String display = c.getString(0);
+                        index.add(display, display);
+                    }
+                } catch (IllegalStateException e) {
+                    // db could have been closed due to cleanup, simply don't do anything.
+                    return null;
+                } finally {
+                    if (c != null) {
+                        c.close();
+                    }
                 }
+                sRecentQueries = index;
             }
+            return sRecentQueries;
+        }
+    }
 
-            final String[] args = new String[] {
-                    builder.toString(), mHistoricalIcon, "%" + query + "%" };
+    /**
+     * @return the recent queries with a word that starts with {@code query}, most recent first
+     */
+    public Cursor query(String query) {
+        final SuggestionIndex recentQueries = getRecentQueries();
+        if (recentQueries == null) {
+            return null;
+        }
+        final StringBuilder builder = new StringBuilder();
+        if (mFullQueryTerms != null) {
+            for (String token : mFullQueryTerms) {
+                builder.append(token).append(QUERY_TOKEN_SEPARATOR);
+            }
+        }
+        final String fullQueryTerms = builder.toString();
 
-            try {
-                // db could have been closed due to cleanup, simply don't do anything.
-                return db.rawQuery(QUERY, args);
-            } catch (IllegalStateException e) {}
+        final List<String> matches = recentQueries.find(query != null ? query : "");
+        final MatrixCursorWithCachedColumns cursor =
+                new MatrixCursorWithCachedColumns(COLUMNS, matches.size());
+        int id = 0;
+        for (String match : matches) {
+            cursor.addRow(new Object[] {id++, match, fullQueryTerms + match, mHistoricalIcon});
         }
-        return null;
+        return cursor;
     }
 
     /**
@@ -177,8 +231,18 @@ public class SearchRecentSuggestionsProvider {
             // Note:  This table has on-conflict-replace semantics, so insert may actually replace
             try {
                 // db could have been closed due to cleanup, simply don't do anything.
-                db.insert(SUGGESTIONS_TABLE, null, values);
-            } catch (IllegalStateException e) {}
+                if (db.insert(SUGGESTIONS_TABLE, null, values) == -1) {
+                    return;
+                }
+            } catch (IllegalStateException e) {
+                return;
+            }
+            synchronized (sRecentQueriesLock) {
+                // if the index isn't loaded yet, it will find the query in the database
+                if (sRecentQueries != null) {
+                    sRecentQueries.add(query, query);
+                }
+            }
         }
     }
 
@@ -188,7 +252,14 @@ public class SearchRecentSuggestionsProvider {
             try {
                 // db could have been closed due to cleanup, simply don't do anything.
                 db.delete(SUGGESTIONS_TABLE, null, null);
-            } catch (IllegalStateException e) {}
+            } catch (IllegalStateException e) {
+                return;
+            }
+            synchronized (sRecentQueriesLock) {
+                if (sRecentQueries != null) {
+                    sRecentQueries.clear();
+                }
+            }
         }
     }
 }
\ No newline at end of file
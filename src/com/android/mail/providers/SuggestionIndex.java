@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.providers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An in-memory index of search suggestions, such as recent queries or contact names, that finds
+ * the most recently added suggestions with a word starting with a given prefix, ignoring case.
+ * <p>
+ * A word starts at the beginning of the text, after any character that isn't a letter or digit,
+ * and at any such character itself, so "bob@example.com" is found by "bob", "example", "@ex" and
+ * "com".
+ * <p>
+ * Lookups of a prefix of at most {@link #MAX_CACHED_PREFIX_LENGTH} characters are answered from
+ * lists of their most recent suggestions that are kept up to date as suggestions are added, so
+ * they take the same time however many suggestions there are. Longer prefixes are looked up with
+ * a binary search over the sorted word starts, visiting only the words that start with the
+ * prefix; a prefix that turns out to start more than {@link #MAX_SCANNED_WORDS} words gets a
+ * list of its own, so that it too is answered from the list from then on.
+ * <p>
+ * All methods are thread safe.
+ */
+final class SuggestionIndex {
+
+    /** Lookups of prefixes up to this long are always answered from the recent lists. */
+    private static final int MAX_CACHED_PREFIX_LENGTH = 2;
+    /** A longer prefix that starts more words than this gets a recent list too. */
+    private static final int MAX_SCANNED_WORDS = 256;
+
+    private static final class Entry {
+        /** The text of the suggestion. */
+        String mText;
+        /** The text that is searched, in lower case. */
+        final char[] mFolded;
+        /** Higher for suggestions added more recently. */
+        long mRank;
+
+        Entry(String text, char[] folded) {
+            mText = text;
+            mFolded = folded;
+        }
+    }
+
+    /** The start of a word in the searched text of an entry. */
+    private static final class Word {
+        final Entry mEntry;
+        final int mStart;
+
+        Word(Entry entry, int start) {
+            mEntry = entry;
+            mStart = start;
+        }
+    }
+
+    private static final Comparator<Word> WORD_ORDER = new Comparator<Word>() {
+        @Override
+        public int compare(Word lhs, Word rhs) {
+            return compareFrom(lhs.mEntry.mFolded, lhs.mStart, rhs.mEntry.mFolded, rhs.mStart);
+        }
+    };
+
+    private static final Comparator<Entry> MOST_RECENT_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return lhs.mRank > rhs.mRank ? -1 : (lhs.mRank == rhs.mRank ? 0 : 1);
+        }
+    };
+
+    private final int mMaxResults;
+    /** Every entry, by the text that is searched. */
+    private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+    /** Every word start; sorted unless {@link #mWordsSorted} is false. */
+    private final ArrayList<Word> mWords = new ArrayList<Word>();
+    private boolean mWordsSorted = true;
+    /** The most recent entries for each short or common prefix, most recent first. */
+    private final HashMap<String, ArrayList<Entry>> mRecentByPrefix =
+            new HashMap<String, ArrayList<Entry>>();
+    /** The length of the longest prefix in {@link #mRecentByPrefix}. */
+    private int mLongestCachedPrefix = MAX_CACHED_PREFIX_LENGTH;
+    private long mNextRank;
+
+    /**
+     * @param maxResults the most suggestions that {@link #find} returns
+     */
+    SuggestionIndex(int maxResults) {
+        mMaxResults = maxResults;
+    }
+
+    /**
+     * Adds a suggestion, or makes it the most recent if it was already added.
+     *
+     * @param text the suggestion
+     * @param searchedText the text to match prefixes against, e.g. the text itself, or a name and
+     * address
+     */
+    synchronized void add(String text, String searchedText) {
+        Entry entry = mEntries.get(searchedText);
+        if (entry == null) {
+            entry = new Entry(text, fold(searchedText));
+            mEntries.put(searchedText, entry);
+            final char[] folded = entry.mFolded;
+            for (int i = 0; i < folded.length; i++) {
+                if (!isWordStart(folded, i)) {
+                    continue;
+                }
+                if (mWordsSorted && !mWords.isEmpty()) {
+                    mWords.add(lowerBound(folded, i), new Word(entry, i));
+                } else {
+                    // a bulk load is sorted once, by the first lookup that needs it
+                    mWords.add(new Word(entry, i));
+                    mWordsSorted = false;
+                }
+            }
+        } else {
+            entry.mText = text;
+        }
+        entry.mRank = mNextRank++;
+
+        addToRecent("", entry);
+        final char[] folded = entry.mFolded;
+        for (int i = 0; i < folded.length; i++) {
+            if (isWordStart(folded, i)) {
+                final int max = Math.min(mLongestCachedPrefix, folded.length - i);
+                for (int length = 1; length <= max; length++) {
+                    addToRecent(new String(folded, i, length), entry);
+                }
+            }
+        }
+    }
+
+    /** Makes {@code entry} the most recent in the recent list of {@code prefix}. */
+    private void addToRecent(String prefix, Entry entry) {
+        ArrayList<Entry> recent = mRecentByPrefix.get(prefix);
+        if (recent == null) {
+            if (prefix.length() > MAX_CACHED_PREFIX_LENGTH) {
+                // not a common prefix
+                return;
+            }
+            recent = new ArrayList<Entry>(mMaxResults);
+            mRecentByPrefix.put(prefix, recent);
+        } else if (!recent.isEmpty() && recent.get(0) == entry) {
+            // another word of the entry with the same prefix
+            return;
+        }
+        recent.remove(entry);
+        recent.add(0, entry);
+        if (recent.size() > mMaxResults) {
+            recent.remove(recent.size() - 1);
+        }
+    }
+
+    /** Removes every suggestion. */
+    synchronized void clear() {
+        mEntries.clear();
+        mWords.clear();
+        mWordsSorted = true;
+        mRecentByPrefix.clear();
+        mLongestCachedPrefix = MAX_CACHED_PREFIX_LENGTH;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return the text of the most recent suggestions with a word that starts with
+     * {@code prefix}, most recent first; all suggestions match an empty prefix
+     */
+    synchronized List<String> find(String prefix) {
+        final char[] folded = fold(prefix);
+        final String key = new String(folded);
+        List<Entry> found = mRecentByPrefix.get(key);
+        if (found == null && folded.length <= MAX_CACHED_PREFIX_LENGTH) {
+            found = Collections.emptyList();
+        } else if (found == null) {
+            if (!mWordsSorted) {
+                Collections.sort(mWords, WORD_ORDER);
+                mWordsSorted = true;
+            }
+            final Set<Entry> matches = new HashSet<Entry>();
+            int scanned = 0;
+            for (int i = lowerBound(folded, 0); i < mWords.size(); i++, scanned++) {
+                final Word word = mWords.get(i);
+                if (!startsWith(word.mEntry.mFolded, word.mStart, folded)) {
+                    break;
+                }
+                matches.add(word.mEntry);
+            }
+            final ArrayList<Entry> sorted = new ArrayList<Entry>(matches);
+            Collections.sort(sorted, MOST_RECENT_FIRST);
+            while (sorted.size() > mMaxResults) {
+                sorted.remove(sorted.size() - 1);
+            }
+            if (scanned > MAX_SCANNED_WORDS) {
+                sorted.trimToSize();
+                mRecentByPrefix.put(key, sorted);
+                mLongestCachedPrefix = Math.max(mLongestCachedPrefix, folded.length);
+            }
+            found = sorted;
+        }
+
+        final ArrayList<String> result = new ArrayList<String>(found.size());
+        for (Entry entry : found) {
+            result.add(entry.mText);
+        }
+        return result;
+    }
+
+    /**
+     * @return the index of the first word that is not less than the text of {@code folded} from
+     * {@code start}
+     */
+    private int lowerBound(char[] folded, int start) {
+        int low = 0;
+        int high = mWords.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final Word word = mWords.get(mid);
+            if (compareFrom(word.mEntry.mFolded, word.mStart, folded, start) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isWordStart(char[] folded, int i) {
+        return i == 0 || !Character.isLetterOrDigit(folded[i])
+                || !Character.isLetterOrDigit(folded[i - 1]);
+    }
+
+    private static char[] fold(String text) {
+        final char[] folded = text.toCharArray();
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(folded[i]);
+        }
+        return folded;
+    }
+
+    private static boolean startsWith(char[] text, int start, char[] prefix) {
+        if (text.length - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (text[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Compares the text of {@code lhs} from {@code lhsStart} with that of {@code rhs}. */
+    private static int compareFrom(char[] lhs, int lhsStart, char[] rhs, int rhsStart) {
+        final int length = Math.min(lhs.length - lhsStart, rhs.length - rhsStart);
+        for (int i = 0; i < length; i++) {
+            final char l = lhs[lhsStart + i];
+            final char r = rhs[rhsStart + i];
+            if (l != r) {
+                return l - r;
+            }
+        }
+        return (lhs.length - lhsStart) - (rhs.length - rhsStart);
+    }
+}
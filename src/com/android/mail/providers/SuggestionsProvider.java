@@ -19,7 +19,8 @@ package com.android.mail.providers;
 
 import android.database.Cursor;
 import android.database.MergeCursor;
-import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.provider.BaseColumns;
 import android.provider.ContactsContract;
 import android.app.SearchManager;
@@ -53,10 +54,30 @@ public class SuggestionsProvider extends SearchRecentSuggestionsProvider {
             ContactsContract.CommonDataKinds.Email.DISPLAY_NAME,
             ContactsContract.CommonDataKinds.Email.DATA
     };
+    /**
+     * Least contacted first, so that the most contacted addresses are added to the index last
+     * and are suggested first.
+     */
+    private static final String CONTACTS_ORDER =
+            ContactsContract.CommonDataKinds.Email.TIMES_CONTACTED + " ASC";
     /**
      * Minimum length of query before we start showing contacts suggestions.
      */
     static private final int MIN_QUERY_LENGTH_FOR_CONTACTS = 2;
+    /** The most contacts offered as suggestions at once. */
+    private static final int MAX_CONTACT_SUGGESTIONS = 10;
+    /** How long the contacts index is used before it is loaded again. */
+    private static final long CONTACTS_INDEX_MAX_AGE_MS = 10 * 60 * 1000;
+
+    /**
+     * The names and addresses of all contacts with an email address, loaded once rather than
+     * filtering the contacts provider on every keystroke. Null until first loaded.
+     */
+    private SuggestionIndex mContacts;
+    private long mContactsLoadTime;
+    /** Whether {@link #mContacts} is being loaded in the background. */
+    private boolean mContactsLoading;
+    private final Object mContactsLock = new Object();
 
     public SuggestionsProvider(Context context) {
         super(context);
@@ -98,8 +119,11 @@ public class SuggestionsProvider extends SearchRecentSuggestionsProvider {
                 cursors.add(c);
             }
 
-            if (query.length() >= MIN_QUERY_LENGTH_FOR_CONTACTS) {
-                cursors.add(new ContactsCursor().query(query));
+            // Start loading the contacts from the first keystroke, so that they are likely
+            // ready by the time the query is long enough to show them
+            final SuggestionIndex contacts = getContacts();
+            if (contacts != null && query.length() >= MIN_QUERY_LENGTH_FOR_CONTACTS) {
+                cursors.add(new ContactsCursor().query(contacts, query));
             }
 
             if (cursors.size() > 0) {
@@ -109,6 +133,72 @@ public class SuggestionsProvider extends SearchRecentSuggestionsProvider {
         return mergeCursor;
     }
 
+    /**
+     * @return the index of contact names and addresses, or null if it hasn't been loaded yet;
+     * starts loading it in the background if it hasn't been loaded yet or is out of date, and
+     * until that is done the previous index, if any, is returned
+     */
+    private SuggestionIndex getContacts() {
+        synchronized (mContactsLock) {
+            final long now = SystemClock.elapsedRealtime();
+            if (!mContactsLoading
+                    && (mContacts == null || now - mContactsLoadTime > CONTACTS_INDEX_MAX_AGE_MS)) {
+                mContactsLoading = true;
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SuggestionIndex contacts = null;
+                        try {
+                            contacts = loadContacts();
+                        } finally {
+                            synchronized (mContactsLock) {
+                                // if loading failed, keep the previous index until the next try
+                                if (contacts != null) {
+                                    mContacts = contacts;
+                                }
+                                mContactsLoadTime = SystemClock.elapsedRealtime();
+                                mContactsLoading = false;
+                            }
+                        }
+                    }
+                });
+            }
+            return mContacts;
+        }
+    }
+
+    /**
+     * @return a new index of the names and addresses of all contacts with an email address
+     */
+    private SuggestionIndex loadContacts() {
+        final SuggestionIndex contacts = new SuggestionIndex(MAX_CONTACT_SUGGESTIONS);
+        final Cursor cursor = mContext.getContentResolver().query(
+                ContactsContract.CommonDataKinds.Email.CONTENT_URI, sContract, null, null,
+                CONTACTS_ORDER);
+        if (cursor != null) {
+            try {
+                final int nameIndex = cursor.getColumnIndex(
+                        ContactsContract.CommonDataKinds.Email.DISPLAY_NAME);
+                final int addressIndex = cursor.getColumnIndex(
+                        ContactsContract.CommonDataKinds.Email.DATA);
+                while (cursor.moveToNext()) {
+                    final String name = cursor.getString(nameIndex);
+                    final String address = cursor.getString(addressIndex);
+                    if (TextUtils.isEmpty(address)) {
+                        continue;
+                    }
+                    final String match = !TextUtils.isEmpty(name) ? name : address;
+                    // find the contact by either its name or its address
+                    contacts.add(match, TextUtils.isEmpty(name) ? address
+                            : name + QUERY_TOKEN_SEPARATOR + address);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return contacts;
+    }
+
     /**
      * Utility class to return a cursor over the contacts database
      */
@@ -118,36 +208,22 @@ public class SuggestionsProvider extends SearchRecentSuggestionsProvider {
         }
 
         /**
-         * Searches over the contacts cursor with the specified query as the starting characters to
-         * match.
+         * Searches the contacts for names and addresses with a word that starts with the query.
+         * @param contacts the index of the contacts
          * @param query
-         * @return a cursor over the contacts database with the contacts matching the query.
+         * @return a cursor over the contacts matching the query.
          */
-        public ContactsCursor query(String query) {
-            final Uri contactsUri = Uri.withAppendedPath(
-                    ContactsContract.CommonDataKinds.Email.CONTENT_FILTER_URI, Uri.encode(query));
-            final Cursor cursor = mContext.getContentResolver().query(
-                    contactsUri, sContract, null, null, null);
+        public ContactsCursor query(SuggestionIndex contacts, String query) {
             // We don't want to show a contact icon here. Leaving the SEARCH_ICON_1 field
             // empty causes inconsistent behavior because the cursor is merged with the
             // historical suggestions, which have an icon.  The solution is to show an empty icon
             // instead.
             final String emptyIcon = ContentResolver.SCHEME_ANDROID_RESOURCE + "://"
                     + mContext.getPackageName() + "/" + R.drawable.empty;
-            if (cursor != null) {
-                final int nameIndex = cursor
-                        .getColumnIndex(ContactsContract.CommonDataKinds.Email.DISPLAY_NAME);
-                final int addressIndex = cursor
-                        .getColumnIndex(ContactsContract.CommonDataKinds.Email.DATA);
-                String match;
-                while (cursor.moveToNext()) {
-                    match = cursor.getString(nameIndex);
-                    match = !TextUtils.isEmpty(match) ? match : cursor.getString(addressIndex);
-                    // The order of fields is:
-                    // _ID, SUGGEST_COLUMN_TEXT_1, SUGGEST_COLUMN_QUERY, SUGGEST_COLUMN_ICON_1
-                    addRow(new Object[] {0, match, createQuery(match), emptyIcon});
-                }
-                cursor.close();
+            for (String match : contacts.find(query)) {
+                // The order of fields is:
+                // _ID, SUGGEST_COLUMN_TEXT_1, SUGGEST_COLUMN_QUERY, SUGGEST_COLUMN_ICON_1
+                addRow(new Object[] {0, match, createQuery(match), emptyIcon});
             }
             return this;
         }
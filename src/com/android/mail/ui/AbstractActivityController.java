@@ -1212,12 +1212,10 @@ public abstract class AbstractActivityController implements ActivityController,
 
     /**
      * Initialize development time logging. This can potentially log a lot of PII, and we don't want
-     * to turn it on for shipped versions.
+     * to turn it on for shipped versions. Latency tracing logs no PII, so the service also runs
+     * in shipped versions when tracing is asked for (see {@link MailLogService}).
      */
     private void initializeDevLoggingService() {
-        if (!MailLogService.DEBUG_ENABLED) {
-            return;
-        }
         // Check every 5 minutes.
         final int WAIT_TIME = 5 * 60 * 1000;
         // Start a runnable that periodically checks the log level and starts/stops the service.
@@ -1232,7 +1230,9 @@ public abstract class AbstractActivityController implements ActivityController,
             private void startOrStopService() {
                 // If the log level is already high, start the service.
                 final Intent i = new Intent(mContext, MailLogService.class);
-                final boolean loggingEnabled = MailLogService.isLoggingLevelHighEnough();
+                final boolean loggingEnabled = (MailLogService.DEBUG_ENABLED
+                        && MailLogService.isLoggingLevelHighEnough())
+                        || MailLogService.isTracingRequested();
                 if (mCurrentlyLogging == loggingEnabled) {
                     // No change since previous run, just return;
                     return;
@@ -1936,7 +1936,7 @@ public abstract class AbstractActivityController implements ActivityController,
             if (markViewed) {
                 value.put(ConversationColumns.VIEWED, true);
             }
-            final ConversationInfo info = target.conversationInfo;
+            final ConversationInfo info = target.getConversationInfo();
             final boolean changed = info.markRead(read);
             if (changed) {
                 value.put(ConversationColumns.CONVERSATION_INFO, info.toBlob());
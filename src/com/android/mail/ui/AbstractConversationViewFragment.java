@@ -54,9 +54,8 @@ import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.Utils;
 
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AbstractConversationViewFragment extends Fragment implements
         ConversationController, ConversationAccountController,
@@ -82,13 +81,11 @@ public abstract class AbstractConversationViewFragment extends Fragment implemen
     protected AbstractConversationWebViewClient mWebViewClient;
 
     /**
-     * Cache of email address strings to parsed Address objects.
-     * <p>
-     * Remember to synchronize on the map when reading or writing to this cache, because some
-     * instances use it off the UI thread (e.g. from WebView).
+     * Cache of email address strings to parsed Address objects, for the addresses shown in this
+     * view. It is concurrent because some instances use it off the UI thread (e.g. from WebView).
      */
-    protected final Map<String, Address> mAddressCache = Collections.synchronizedMap(
-            new HashMap<String, Address>());
+    protected final Map<String, Address> mAddressCache =
+            new ConcurrentHashMap<String, Address>();
     private MessageCursor mCursor;
     private Context mContext;
     /**
@@ -33,6 +33,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 /**
@@ -344,14 +345,14 @@ public class ConversationCheckedSet implements Parcelable {
             // conversations that had been in the batch selection, with the items we know have been
             // deleted removed.
 
-            // This set contains the conversation ids that are in the conversation cursor
-            final Set<Long> cursorConversationIds = cursor.getConversationIds();
-
             // We want to remove all of the valid items that are in the conversation cursor, from
             // the batchConversations to check.  The goal is after this block, anything remaining
             // would be items that don't exist in the conversation cursor anymore.
-            if (!batchConversationToCheck.isEmpty() && cursorConversationIds != null) {
-                batchConversationToCheck.removeAll(cursorConversationIds);
+            final Iterator<Long> iter = batchConversationToCheck.iterator();
+            while (iter.hasNext()) {
+                if (cursor.containsUnderlyingConversation(iter.next())) {
+                    iter.remove();
+                }
             }
 
             // At this point any of the item that are remaining in the batchConversationToCheck set
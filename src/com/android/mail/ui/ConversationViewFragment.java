@@ -75,6 +75,7 @@ import com.android.mail.browse.SuperCollapsedBlock;
 import com.android.mail.browse.WebViewContextMenu;
 import com.android.mail.compose.ComposeActivity;
 import com.android.mail.content.ObjectCursor;
+import com.android.mail.perf.Tracer;
 import com.android.mail.print.PrintUtils;
 import com.android.mail.providers.Account;
 import com.android.mail.providers.Conversation;
@@ -88,7 +89,6 @@ import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
 import com.android.mail.utils.Utils;
 import com.android.mail.utils.ViewUtils;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -672,7 +672,9 @@ public class ConversationViewFragment extends AbstractConversationViewFragment i
     }
 
     private void renderConversation(MessageCursor messageCursor) {
+        final long start = Tracer.begin();
         final String convHtml = renderMessageBodies(messageCursor, mEnableContentReadySignal);
+        Tracer.end(Tracer.RENDER_CONVERSATION, start);
         timerMark("rendered conversation");
 
         if (DEBUG_DUMP_CONVERSATION_HTML) {
@@ -1325,11 +1327,7 @@ public class ConversationViewFragment extends AbstractConversationViewFragment i
             }
 
             final Set<String> emailAddresses = Sets.newHashSet();
-            final List<Address> cacheCopy;
-            synchronized (mAddressCache) {
-                cacheCopy = ImmutableList.copyOf(mAddressCache.values());
-            }
-            for (Address addr : cacheCopy) {
+            for (Address addr : mAddressCache.values()) {
                 emailAddresses.add(addr.getAddress());
             }
             final ContactLoaderCallbacks callbacks = getContactInfoSource();
@@ -39,11 +39,9 @@ import com.android.mail.providers.Account;
 import com.android.mail.providers.Conversation;
 import com.android.mail.utils.LogTag;
 import com.android.mail.utils.LogUtils;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -89,11 +87,7 @@ public class SecureConversationViewFragment extends AbstractConversationViewFrag
             mViewController.dismissLoadingStatus();
 
             final Set<String> emailAddresses = Sets.newHashSet();
-            final List<Address> cacheCopy;
-            synchronized (mAddressCache) {
-                cacheCopy = ImmutableList.copyOf(mAddressCache.values());
-            }
-            for (Address addr : cacheCopy) {
+            for (Address addr : mAddressCache.values()) {
                 emailAddresses.add(addr.getAddress());
             }
             final ContactLoaderCallbacks callbacks = getContactInfoSource();
@@ -18,7 +18,7 @@ package com.android.mail.utils;
 import android.os.Looper;
 import android.util.Log;
 
-import com.android.mail.perf.Timer;
+import com.android.mail.perf.Tracer;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
@@ -28,9 +28,12 @@ import org.owasp.html.ElementPolicy;
 import org.owasp.html.FilterUrlByProtocolAttributePolicy;
 import org.owasp.html.Handler;
 import org.owasp.html.HtmlPolicyBuilder;
+import org.owasp.html.HtmlStreamEventReceiver;
 import org.owasp.html.HtmlStreamRenderer;
 import org.owasp.html.PolicyFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -370,21 +373,65 @@ public final class HtmlSanitizer {
      *      <code>rawHtml</code> was <code>null</code>
      */
     public static String sanitizeHtml(final String rawHtml) {
-        if (Looper.getMainLooper() == Looper.myLooper()) {
-            throw new IllegalStateException("sanitizing email should not occur on the main thread");
-        }
-
         if (rawHtml == null) {
+            checkNotMainThread();
             return null;
         }
 
         // create the builder into which the sanitized email will be written
         final StringBuilder htmlBuilder = new StringBuilder(rawHtml.length());
+        try {
+            sanitizeHtml(rawHtml, htmlBuilder, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new AssertionError(e);
+        }
+
+        // return the resulting HTML from the builder
+        return htmlBuilder.toString();
+    }
+
+    /**
+     * Sanitizes <code>rawHtml</code>, writing the sanitized html to <code>out</code> as it is
+     * produced rather than collecting it first, so that the caller can start consuming it before
+     * the whole document has been sanitized.
+     * <p>
+     * Once <code>maxOutputLength</code> characters have been written, no more text or elements
+     * are written; the elements already written are closed, so the output is always well formed
+     * and may run slightly over the cap by the length of those end tags.
+     * <p>
+     * Sanitizing email is treated as an expensive operation; this method should be called from
+     * a background Thread.
+     *
+     * @param rawHtml the unsanitized, suspicious html
+     * @param out where to write the sanitized html
+     * @param maxOutputLength the cap on the length of the output, or Integer.MAX_VALUE for none
+     * @return <code>true</code> if all of the sanitized html was written; <code>false</code> if
+     *      it was cut short by the cap
+     * @throws IOException if <code>out</code> throws; output stops at the first exception
+     */
+    public static boolean sanitizeHtml(final CharSequence rawHtml, final Appendable out,
+            final int maxOutputLength) throws IOException {
+        checkNotMainThread();
+        if (maxOutputLength <= 0) {
+            throw new IllegalArgumentException("maxOutputLength must be positive");
+        }
 
-        // create the renderer that will write the sanitized HTML to the builder
+        final CountingAppendable sink = new CountingAppendable(out);
+        final IOException[] ioException = new IOException[1];
+
+        // create the renderer that will write the sanitized HTML to the sink
         final HtmlStreamRenderer renderer = HtmlStreamRenderer.create(
-                htmlBuilder,
-                Handler.PROPAGATE,
+                sink,
+                new Handler<IOException>() {
+                    public void handle(final IOException x) {
+                        // stop writing, and rethrow the first exception once sanitizing is done
+                        if (ioException[0] == null) {
+                            ioException[0] = x;
+                        }
+                        sink.mFailed = true;
+                    }
+                },
                 // log errors resulting from exceptionally bizarre inputs
                 new Handler<String>() {
                     public void handle(final String x) {
@@ -393,19 +440,164 @@ public final class HtmlSanitizer {
                     }
                 }
         );
+        final CappingReceiver receiver = new CappingReceiver(renderer, sink, maxOutputLength);
 
         // create a thread-specific policy
-        final org.owasp.html.HtmlSanitizer.Policy policy = POLICY_DEFINITION.apply(renderer);
+        final org.owasp.html.HtmlSanitizer.Policy policy = POLICY_DEFINITION.apply(receiver);
 
         // run the html through the sanitizer
-        Timer.startTiming("sanitizingHTMLEmail");
+        final long start = Tracer.begin();
         try {
-            org.owasp.html.HtmlSanitizer.sanitize(rawHtml, policy);
+            // the OWASP lexer works on a String, so the input can't be read in chunks
+            org.owasp.html.HtmlSanitizer.sanitize(rawHtml.toString(), policy);
         } finally {
-            Timer.stopTiming("sanitizingHTMLEmail");
+            Tracer.end(Tracer.SANITIZE_HTML, start);
         }
 
-        // return the resulting HTML from the builder
-        return htmlBuilder.toString();
+        if (ioException[0] != null) {
+            throw ioException[0];
+        }
+        if (receiver.mCapped) {
+            LogUtils.w(LOG_TAG, "Sanitized html cut off at %d chars; raw html was %d chars",
+                    sink.mLength, rawHtml.length());
+            return false;
+        }
+        return true;
+    }
+
+    private static void checkNotMainThread() {
+        if (Looper.getMainLooper() == Looper.myLooper()) {
+            throw new IllegalStateException("sanitizing email should not occur on the main thread");
+        }
+    }
+
+    /**
+     * Counts the characters written to an Appendable, and drops them once it has thrown.
+     */
+    private static final class CountingAppendable implements Appendable {
+        private final Appendable mOut;
+        int mLength;
+        boolean mFailed;
+
+        CountingAppendable(Appendable out) {
+            mOut = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            if (!mFailed) {
+                mOut.append(csq, start, end);
+                mLength += end - start;
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            if (!mFailed) {
+                mOut.append(c);
+                mLength++;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Sits between the sanitizing policy and the renderer and enforces the output cap. The
+     * policy hands it balanced events; once the cap is reached it drops text and start tags, and
+     * passes on only the end tags of elements it has already passed on.
+     */
+    private static final class CappingReceiver implements HtmlStreamEventReceiver {
+        /** Elements that have no end tag, so are never on {@link #mOpenElements}. */
+        private static final ImmutableSet<String> VOID_ELEMENTS = ImmutableSet.of(
+                "area", "base", "basefont", "bgsound", "br", "col", "command", "embed", "frame",
+                "hr", "img", "input", "isindex", "keygen", "link", "meta", "param", "source",
+                "track", "wbr");
+
+        private final HtmlStreamEventReceiver mOut;
+        private final CountingAppendable mSink;
+        private final int mMaxLength;
+        /** The names of the elements passed on and not yet closed, innermost last. */
+        private final ArrayList<String> mOpenElements = new ArrayList<String>();
+        /** The number of elements dropped after the cap that are still open. */
+        private int mDroppedDepth;
+        boolean mCapped;
+
+        CappingReceiver(HtmlStreamEventReceiver out, CountingAppendable sink, int maxLength) {
+            mOut = out;
+            mSink = sink;
+            mMaxLength = maxLength;
+        }
+
+        @Override
+        public void openDocument() {
+            mOut.openDocument();
+        }
+
+        @Override
+        public void closeDocument() {
+            mOut.closeDocument();
+        }
+
+        @Override
+        public void openTag(String elementName, List<String> attrs) {
+            final boolean isVoid = VOID_ELEMENTS.contains(elementName);
+            if (isCapped()) {
+                if (!isVoid) {
+                    mDroppedDepth++;
+                }
+                return;
+            }
+            if (!isVoid) {
+                mOpenElements.add(elementName);
+            }
+            mOut.openTag(elementName, attrs);
+        }
+
+        @Override
+        public void closeTag(String elementName) {
+            if (VOID_ELEMENTS.contains(elementName)) {
+                return;
+            }
+            if (mDroppedDepth > 0) {
+                // the events are balanced, so this closes the innermost dropped element
+                mDroppedDepth--;
+                return;
+            }
+            if (mOpenElements.isEmpty()) {
+                return;
+            }
+            mOut.closeTag(mOpenElements.remove(mOpenElements.size() - 1));
+        }
+
+        @Override
+        public void text(String text) {
+            if (isCapped()) {
+                return;
+            }
+            // escaping may make the text longer, so this is only roughly held to the cap
+            final int remaining = mMaxLength - mSink.mLength;
+            if (text.length() > remaining) {
+                int end = remaining;
+                if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+                text = text.substring(0, end);
+                mCapped = true;
+            }
+            mOut.text(text);
+        }
+
+        private boolean isCapped() {
+            if (!mCapped && mSink.mLength >= mMaxLength) {
+                mCapped = true;
+            }
+            return mCapped;
+        }
     }
 }
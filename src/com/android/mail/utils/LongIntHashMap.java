@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from primitive longs to non-negative ints. Unlike a
+ * {@code HashMap<Long, Integer>}, lookups and insertions do not box and the whole table is
+ * backed by two flat arrays, which makes it suitable for indexing every row of a large cursor.
+ * <p>
+ * Only non-negative values may be stored; a negative value is used to signal a missing key.
+ * This class is not thread-safe, but may be read concurrently once fully populated.
+ */
+public final class LongIntHashMap {
+
+    private static final int MIN_CAPACITY = 8;
+    /** Marks an unused slot in {@link #mValues}. */
+    private static final int EMPTY = -1;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mSize;
+    /** Grow once {@link #mSize} reaches this many entries. Keeps the load factor at 0.5. */
+    private int mThreshold;
+
+    /**
+     * Creates a new map that will not need to grow until it holds {@code expectedSize} entries.
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Maps {@code key} to {@code value}, replacing any existing mapping.
+     *
+     * @param value a non-negative value
+     * @return the previous value mapped to {@code key}, or -1 if there was none
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value: " + value);
+        }
+        final int mask = mKeys.length - 1;
+        int i = mix(key) & mask;
+        while (mValues[i] != EMPTY) {
+            if (mKeys[i] == key) {
+                final int previous = mValues[i];
+                mValues[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        if (++mSize >= mThreshold) {
+            rehash(mKeys.length << 1);
+        }
+        return EMPTY;
+    }
+
+    /**
+     * @return the value mapped to {@code key}, or {@code valueIfKeyNotFound} if there is none
+     */
+    public int get(long key, int valueIfKeyNotFound) {
+        final int mask = mKeys.length - 1;
+        int i = mix(key) & mask;
+        int value;
+        while ((value = mValues[i]) != EMPTY) {
+            if (mKeys[i] == key) {
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return valueIfKeyNotFound;
+    }
+
+    /**
+     * @return the value mapped to {@code key}, or -1 if there is none
+     */
+    public int get(long key) {
+        return get(key, EMPTY);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key, EMPTY) != EMPTY;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns all keys in the map, in no particular order, into a newly allocated array.
+     */
+    public long[] keys() {
+        final long[] result = new long[mSize];
+        int j = 0;
+        for (int i = 0; i < mValues.length; i++) {
+            if (mValues[i] != EMPTY) {
+                result[j++] = mKeys[i];
+            }
+        }
+        return result;
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        Arrays.fill(mValues, EMPTY);
+        mThreshold = capacity >> 1;
+    }
+
+    private void rehash(int newCapacity) {
+        final long[] oldKeys = mKeys;
+        final int[] oldValues = mValues;
+        allocate(newCapacity);
+        final int mask = newCapacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != EMPTY) {
+                int i = mix(oldKeys[j]) & mask;
+                while (mValues[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = oldKeys[j];
+                mValues[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest power of two table size that keeps {@code expectedSize} entries below
+     * the growth threshold.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while ((capacity >> 1) <= expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the bits of a key so that sequential ids (the common case for row ids) don't
+     * cluster under linear probing.
+     */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= (h >>> 32);
+        return (int) (h ^ (h >>> 16));
+    }
+}
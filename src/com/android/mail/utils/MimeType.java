@@ -152,6 +152,50 @@ public class MimeType {
         }
     }
 
+    /**
+     * Returns whether {@code mimeType} matches {@code pattern}, ignoring case. Each "*" in the
+     * pattern matches any run of characters (e.g. "image/*") and every other character matches
+     * only itself, so types such as "image/svg+xml" match themselves. Nothing is compiled or
+     * allocated, which keeps this cheap enough to call for every part of every message.
+     *
+     * @param mimeType the MIME type to check
+     * @param pattern the MIME type to check against, which may include wildcards
+     * @return {@code true} if the mime type matches the pattern
+     */
+    public static boolean matches(String mimeType, String pattern) {
+        final int typeLength = mimeType.length();
+        final int patternLength = pattern.length();
+        int t = 0;
+        int p = 0;
+        // where the last "*" was seen, and the type position it is currently matched up to
+        int starP = -1;
+        int starT = 0;
+        while (t < typeLength) {
+            if (p < patternLength && pattern.charAt(p) == '*') {
+                starP = p++;
+                starT = t;
+            } else if (p < patternLength
+                    && equalsIgnoreCase(pattern.charAt(p), mimeType.charAt(t))) {
+                p++;
+                t++;
+            } else if (starP >= 0) {
+                // let the last "*" swallow one more character and try again
+                p = starP + 1;
+                t = ++starT;
+            } else {
+                return false;
+            }
+        }
+        while (p < patternLength && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == patternLength;
+    }
+
+    private static boolean equalsIgnoreCase(char a, char b) {
+        return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
     /**
      * Checks the supplied mime type to determine if it is a valid eml file.
      * Valid mime types are "message/rfc822" and "application/eml".
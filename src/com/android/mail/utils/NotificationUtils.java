@@ -68,6 +68,7 @@ import com.android.mail.utils.NotificationActionUtils.NotificationAction;
 import com.google.android.mail.common.html.parser.HTML;
 import com.google.android.mail.common.html.parser.HTML4;
 import com.google.android.mail.common.html.parser.HtmlDocument;
+import com.google.android.mail.common.html.parser.HtmlPlainTextVisitor;
 import com.google.android.mail.common.html.parser.HtmlTree;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
@@ -103,14 +104,19 @@ public class NotificationUtils {
     private static TextAppearanceSpan sNotificationUnreadStyleSpan;
     private static CharacterStyle sNotificationReadStyleSpan;
 
-    /** A factory that produces a plain text converter that removes elided text. */
-    private static final HtmlTree.ConverterFactory MESSAGE_CONVERTER_FACTORY =
-            new HtmlTree.ConverterFactory() {
-                @Override
-                public HtmlTree.Converter<String> createInstance() {
-                    return new MailMessagePlainTextConverter();
-                }
-            };
+    /**
+     * The most characters of a message body to show in a notification. This matches the limit
+     * {@link android.app.Notification} puts on the text it holds, so no more of the body is
+     * converted than could be shown.
+     */
+    private static final int MAX_NOTIFICATION_BODY_LENGTH = 5 * 1024;
+
+    /**
+     * The most characters of message body html to parse for a notification. Bodies that are
+     * mostly markup may not reach {@link #MAX_NOTIFICATION_BODY_LENGTH} characters of text before
+     * this, but it bounds the work done for each message of a large sync.
+     */
+    private static final int MAX_NOTIFICATION_HTML_LENGTH = 128 * 1024;
 
     private static BidiFormatter sBidiFormatter = BidiFormatter.getInstance();
 
@@ -1372,7 +1378,7 @@ public class NotificationUtils {
             final Cursor conversationCursor, final int maxLength, final Account account) {
         final Conversation conversation = new Conversation(conversationCursor);
         final com.android.mail.providers.ConversationInfo conversationInfo =
-                conversation.conversationInfo;
+                conversation.getConversationInfo();
         final ArrayList<SpannableString> senders = new ArrayList<>();
         if (sNotificationUnreadStyleSpan == null) {
             sNotificationUnreadStyleSpan = new TextAppearanceSpan(
@@ -1830,11 +1836,9 @@ public class NotificationUtils {
         if (TextUtils.isEmpty(html)) {
             return "";
         }
-        // Get the html "tree" for this message body
-        final HtmlTree htmlTree = com.android.mail.utils.Utils.getHtmlTree(html);
-        htmlTree.setConverterFactory(MESSAGE_CONVERTER_FACTORY);
-
-        return htmlTree.getPlainText();
+        // Only the beginning of the body is shown, so stop parsing once we have that much text
+        return new MailMessagePlainTextVisitor(MAX_NOTIFICATION_BODY_LENGTH)
+                .convert(Utils.getHtmlParser(MAX_NOTIFICATION_HTML_LENGTH), html);
     }
 
     public static void markSeen(final Context context, final Folder folder) {
@@ -1979,31 +1983,53 @@ public class NotificationUtils {
             }
 
             // If this tag starts another elided text block, we want to remember the end
-            if (n instanceof HtmlDocument.Tag) {
-                boolean foundElidedTextTag = false;
-                final HtmlDocument.Tag htmlTag = (HtmlDocument.Tag)n;
-                final HTML.Element htmlElement = htmlTag.getElement();
-                if (ELIDED_TEXT_ELEMENT_NAME.equals(htmlElement.getName())) {
-                    // Make sure that the class is what is expected
-                    final List<HtmlDocument.TagAttribute> attributes =
-                            htmlTag.getAttributes(ELIDED_TEXT_ATTRIBUTE);
-                    for (HtmlDocument.TagAttribute attribute : attributes) {
-                        if (ELIDED_TEXT_ELEMENT_ATTRIBUTE_CLASS_VALUE.equals(
-                                attribute.getValue())) {
-                            // Found an "elided-text" div.  Remember information about this tag
-                            mEndNodeElidedTextBlock = endNum;
-                            foundElidedTextTag = true;
-                            break;
-                        }
-                    }
-                }
+            if (n instanceof HtmlDocument.Tag && isElidedTextTag((HtmlDocument.Tag) n)) {
+                mEndNodeElidedTextBlock = endNum;
+                return;
+            }
+
+            super.addNode(n, nodeNum, endNum);
+        }
 
-                if (foundElidedTextTag) {
-                    return;
+        /**
+         * @return true if the tag starts an "elided-text" div
+         */
+        private static boolean isElidedTextTag(HtmlDocument.Tag htmlTag) {
+            final HTML.Element htmlElement = htmlTag.getElement();
+            if (ELIDED_TEXT_ELEMENT_NAME.equals(htmlElement.getName())) {
+                // Make sure that the class is what is expected
+                final List<HtmlDocument.TagAttribute> attributes =
+                        htmlTag.getAttributes(ELIDED_TEXT_ATTRIBUTE);
+                for (HtmlDocument.TagAttribute attribute : attributes) {
+                    if (ELIDED_TEXT_ELEMENT_ATTRIBUTE_CLASS_VALUE.equals(attribute.getValue())) {
+                        return true;
+                    }
                 }
             }
+            return false;
+        }
+    }
 
-            super.addNode(n, nodeNum, endNum);
+    /**
+     * Converts a message body to plaintext as it is parsed, leaving out elided text the same way
+     * {@link MailMessagePlainTextConverter} does, without building an HtmlTree.
+     */
+    public static class MailMessagePlainTextVisitor extends HtmlPlainTextVisitor {
+        /**
+         * @param maxLength the most characters of plaintext to produce
+         */
+        public MailMessagePlainTextVisitor(int maxLength) {
+            super(new HtmlTree.DefaultPlainTextConverter(), maxLength);
+        }
+
+        @Override
+        protected boolean isSkipped(HtmlDocument.Tag tag) {
+            return MailMessagePlainTextConverter.isElidedTextTag(tag);
+        }
+
+        @Override
+        protected HtmlDocument.Node getSkippedReplacement() {
+            return MailMessagePlainTextConverter.ELIDED_TEXT_REPLACEMENT_NODE;
         }
     }
 
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.utils;
+
+import android.content.Context;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Caches the output of {@link HtmlSanitizer}, so that opening the same .eml message again doesn't
+ * run the whole sanitizing policy over it again.
+ * <p>
+ * Entries are keyed by a 128 bit hash of the raw html, its length, the output cap and
+ * {@link HtmlSanitizer#VERSION}, so a change to the sanitizer configuration never serves stale
+ * output. Small entries are kept in a memory LRU in front of a size-bounded directory of files;
+ * the least recently used files are deleted when the directory grows past its limit.
+ * <p>
+ * Like sanitizing itself, this reads and writes files and must be used from a background thread.
+ */
+public final class SanitizedHtmlCache {
+    private static final String LOG_TAG = LogTag.getLogTag();
+
+    private static final String DIRECTORY_NAME = "sanitized";
+    private static final String FILE_SUFFIX = ".html";
+    private static final String ENCODING = "UTF-8";
+
+    /** The most bytes kept on disk before the least recently used files are deleted. */
+    private static final long MAX_DISK_BYTES = 8 * 1024 * 1024;
+    /** The number of entries kept in memory. */
+    private static final int MAX_MEMORY_ENTRIES = 8;
+    /** Sanitized html longer than this is only cached on disk. */
+    private static final int MAX_MEMORY_ENTRY_LENGTH = 256 * 1024;
+
+    /** Written before the html of an entry that was cut off by the output cap. */
+    private static final char CLIPPED = '0';
+    /** Written before the html of an entry that was sanitized in full. */
+    private static final char COMPLETE = '1';
+
+    private static SanitizedHtmlCache sInstance;
+
+    private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(File lhs, File rhs) {
+            final long l = lhs.lastModified();
+            final long r = rhs.lastModified();
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+
+    /** A cached result: the sanitized html and whether it was sanitized in full. */
+    private static final class Entry {
+        final String mHtml;
+        final boolean mComplete;
+
+        Entry(String html, boolean complete) {
+            mHtml = html;
+            mComplete = complete;
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMaxDiskBytes;
+    private final LruCache<String, Entry> mMemoryCache = new LruCache<String, Entry>(
+            MAX_MEMORY_ENTRIES);
+
+    private int mMemoryHits;
+    private int mDiskHits;
+    private int mMisses;
+
+    public static synchronized SanitizedHtmlCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SanitizedHtmlCache(
+                    new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME),
+                    MAX_DISK_BYTES);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    SanitizedHtmlCache(File directory, long maxDiskBytes) {
+        mDirectory = directory;
+        mMaxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * Appends the sanitized form of <code>rawHtml</code> to <code>out</code>, from the cache if
+     * it has been sanitized before, otherwise by running it through
+     * {@link HtmlSanitizer#sanitizeHtml(CharSequence, Appendable, int)} and caching the result.
+     *
+     * @param rawHtml the unsanitized, suspicious html
+     * @param out where to append the sanitized html
+     * @param maxOutputLength the cap on the length of the output, or Integer.MAX_VALUE for none
+     * @return <code>true</code> if all of the sanitized html was appended; <code>false</code> if
+     *      it was cut short by the cap
+     */
+    public boolean sanitizeHtml(String rawHtml, StringBuilder out, int maxOutputLength) {
+        final String key = getKey(rawHtml, maxOutputLength);
+
+        Entry entry = mMemoryCache.getElement(key);
+        if (entry != null) {
+            synchronized (this) {
+                mMemoryHits++;
+            }
+        } else {
+            entry = readEntry(key);
+            if (entry != null) {
+                synchronized (this) {
+                    mDiskHits++;
+                }
+                putInMemory(key, entry);
+            }
+        }
+        if (entry != null) {
+            out.append(entry.mHtml);
+            return entry.mComplete;
+        }
+
+        synchronized (this) {
+            mMisses++;
+        }
+        final StringBuilder sanitized = new StringBuilder(
+                Math.min(rawHtml.length(), maxOutputLength));
+        final boolean complete;
+        try {
+            complete = HtmlSanitizer.sanitizeHtml(rawHtml, sanitized, maxOutputLength);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new AssertionError(e);
+        }
+        entry = new Entry(sanitized.toString(), complete);
+        putInMemory(key, entry);
+        writeEntry(key, entry);
+
+        out.append(entry.mHtml);
+        return complete;
+    }
+
+    private void putInMemory(String key, Entry entry) {
+        if (entry.mHtml.length() <= MAX_MEMORY_ENTRY_LENGTH) {
+            mMemoryCache.putElement(key, entry);
+        }
+    }
+
+    /**
+     * @return the cached entry on disk, or null if there is none or it can't be read
+     */
+    private Entry readEntry(String key) {
+        final File file = new File(mDirectory, key + FILE_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        Reader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    ENCODING));
+            final int flag = reader.read();
+            if (flag != CLIPPED && flag != COMPLETE) {
+                file.delete();
+                return null;
+            }
+            final StringBuilder html = new StringBuilder((int) file.length());
+            final char[] buffer = new char[8192];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                html.append(buffer, 0, count);
+            }
+            // mark the file as recently used
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(html.toString(), flag == COMPLETE);
+        } catch (IOException e) {
+            LogUtils.w(LOG_TAG, e, "Unable to read cached sanitized html %s", file);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Writes an entry to disk, then deletes the least recently used files if the directory has
+     * grown past its limit.
+     */
+    private void writeEntry(String key, Entry entry) {
+        // skip entries that would push everything else out
+        if (entry.mHtml.length() * 2L > mMaxDiskBytes) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            LogUtils.w(LOG_TAG, "Unable to create %s", mDirectory);
+            return;
+        }
+        Writer writer = null;
+        File temp = null;
+        try {
+            // write to a temporary file first so that readers never see a partial entry
+            temp = File.createTempFile(key, null, mDirectory);
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp),
+                    ENCODING));
+            writer.write(entry.mComplete ? COMPLETE : CLIPPED);
+            writer.write(entry.mHtml);
+            writer.close();
+            writer = null;
+            if (!temp.renameTo(new File(mDirectory, key + FILE_SUFFIX))) {
+                throw new IOException("Unable to rename " + temp);
+            }
+            temp = null;
+        } catch (IOException e) {
+            LogUtils.w(LOG_TAG, e, "Unable to cache sanitized html");
+        } finally {
+            closeQuietly(writer);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= mMaxDiskBytes) {
+            return;
+        }
+        Arrays.sort(files, OLDEST_FIRST);
+        for (int i = 0; i < files.length && total > mMaxDiskBytes; i++) {
+            final long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Hashes the raw html twice, with 64 bit FNV-1a and with a 64 bit polynomial hash, so that
+     * a collision between two different messages is vanishingly unlikely.
+     */
+    @VisibleForTesting
+    static String getKey(String rawHtml, int maxOutputLength) {
+        long fnv = 0xcbf29ce484222325L;
+        long poly = 0;
+        final int length = rawHtml.length();
+        for (int i = 0; i < length; i++) {
+            final char c = rawHtml.charAt(i);
+            fnv = (fnv ^ c) * 0x100000001b3L;
+            poly = poly * 0x9e3779b97f4a7c15L + c;
+        }
+        return String.format("v%d-%016x%016x-%d-%d", HtmlSanitizer.VERSION, fnv, poly, length,
+                maxOutputLength);
+    }
+
+    /** @return the number of lookups answered from memory */
+    public synchronized int getMemoryHitCount() {
+        return mMemoryHits;
+    }
+
+    /** @return the number of lookups answered from disk */
+    public synchronized int getDiskHitCount() {
+        return mDiskHits;
+    }
+
+    /** @return the number of lookups that had to sanitize the html */
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "[SanitizedHtmlCache memoryHits=" + mMemoryHits + " diskHits=" + mDiskHits
+                + " misses=" + mMisses + "]";
+    }
+}
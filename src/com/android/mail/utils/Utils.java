@@ -63,6 +63,7 @@ import com.android.mail.providers.UIProvider.EditSettingsExtras;
 import com.android.mail.ui.HelpActivity;
 import com.google.android.mail.common.html.parser.HtmlDocument;
 import com.google.android.mail.common.html.parser.HtmlParser;
+import com.google.android.mail.common.html.parser.HtmlPlainTextVisitor;
 import com.google.android.mail.common.html.parser.HtmlTree;
 import com.google.android.mail.common.html.parser.HtmlTreeBuilder;
 
@@ -124,6 +125,14 @@ public class Utils {
 
     private static final String LOG_TAG = LogTag.getLogTag();
 
+    /** See {@link #getHtmlParser}. */
+    private static final ThreadLocal<HtmlParser> sHtmlParser = new ThreadLocal<HtmlParser>() {
+        @Override
+        protected HtmlParser initialValue() {
+            return new HtmlParser();
+        }
+    };
+
     public static final boolean ENABLE_CONV_LOAD_TIMER = false;
     public static final SimpleTimer sConvLoadTimer =
             new SimpleTimer(ENABLE_CONV_LOAD_TIMER).withSessionName("ConvLoadTimer");
@@ -340,7 +349,8 @@ public class Utils {
         if (TextUtils.isEmpty(htmlText)) {
             return "";
         }
-        return getHtmlTree(htmlText, new HtmlParser(), new HtmlTreeBuilder()).getPlainText();
+        // Convert as we parse, rather than building a tree only to walk it once
+        return new HtmlPlainTextVisitor().convert(getHtmlParser(Integer.MAX_VALUE), htmlText);
     }
 
     public static String convertHtmlToPlainText(String htmlText, HtmlParser parser,
@@ -355,7 +365,21 @@ public class Utils {
      * Returns a {@link HtmlTree} representation of the specified HTML string.
      */
     public static HtmlTree getHtmlTree(String htmlText) {
-        return getHtmlTree(htmlText, new HtmlParser(), new HtmlTreeBuilder());
+        return getHtmlTree(htmlText, getHtmlParser(Integer.MAX_VALUE), new HtmlTreeBuilder());
+    }
+
+    /**
+     * Returns the calling thread's {@link HtmlParser}. The same parser is handed out on every
+     * call from a thread, so that converting many messages in a row, e.g. to notify about a sync,
+     * doesn't set up a new parser for each. It must not be used again on the thread until the
+     * previous parse has returned.
+     *
+     * @param clipLength how many characters of html to parse, or Integer.MAX_VALUE for all
+     */
+    public static HtmlParser getHtmlParser(int clipLength) {
+        final HtmlParser parser = sHtmlParser.get();
+        parser.setClipLength(clipLength);
+        return parser;
     }
 
     /**
@@ -1051,15 +1075,22 @@ public class Utils {
         return -1;
     }
 
+    /**
+     * Looks up an address in {@code cache}, which must be thread safe, parsing it and adding it
+     * if it isn't there yet. The parsing itself is cached app wide by
+     * {@link Address#getEmailAddress}; {@code cache} keeps track of the addresses that one view
+     * has shown.
+     */
     public static @Nullable Address getAddress(Map<String, Address> cache, String emailStr) {
-        Address addr;
-        synchronized (cache) {
-            addr = cache.get(emailStr);
-            if (addr == null) {
-                addr = Address.getEmailAddress(emailStr);
-                if (addr != null) {
-                    cache.put(emailStr, addr);
-                }
+        if (TextUtils.isEmpty(emailStr)) {
+            // e.g. a message without a sender; the cache may not accept null keys
+            return null;
+        }
+        Address addr = cache.get(emailStr);
+        if (addr == null) {
+            addr = Address.getEmailAddress(emailStr);
+            if (addr != null) {
+                cache.put(emailStr, addr);
             }
         }
         return addr;
@@ -411,7 +411,7 @@ public class WidgetService extends RemoteViewsService {
                 // Split the senders and status from the instructions.
 
                 ArrayList<SpannableString> senders = new ArrayList<SpannableString>();
-                SendersView.format(mContext, conversation.conversationInfo, "",
+                SendersView.format(mContext, conversation.getConversationInfo(), "",
                         MAX_SENDERS_LENGTH, senders, null, null, mAccount,
                         Folder.shouldShowRecipients(mFolderCapabilities), true);
                 final SpannableStringBuilder senderBuilder = elideParticipants(senders);
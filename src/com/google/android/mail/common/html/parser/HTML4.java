@@ -21,6 +21,7 @@ import com.google.common.collect.Maps;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -64,12 +65,28 @@ public final class HTML4 {
 
   /** Looks for a HTML4 element */
   public static HTML.Element lookupElement(String name) {
-    return elements.get(name.toLowerCase());
+    return elementTable.get(name);
+  }
+
+  /**
+   * Looks for a HTML4 element named by {@code html} from {@code start} to
+   * {@code end}, without copying the name.
+   */
+  public static HTML.Element lookupElement(String html, int start, int end) {
+    return elementTable.get(html, start, end);
   }
 
   /** Looks for a HTML4 attribute */
   public static HTML.Attribute lookupAttribute(String name) {
-    return attributes.get(name.toLowerCase());
+    return attributeTable.get(name);
+  }
+
+  /**
+   * Looks for a HTML4 attribute named by {@code html} from {@code start} to
+   * {@code end}, without copying the name.
+   */
+  public static HTML.Attribute lookupAttribute(String html, int start, int end) {
+    return attributeTable.get(html, start, end);
   }
 
   /**
@@ -106,7 +123,7 @@ public final class HTML4 {
   /** Creates and adds a element to the map */
   private static HTML.Element addElement(String tag, String flags, HTML.Element.Flow flow,
       int type) {
-    tag = tag.toLowerCase();
+    tag = tag.toLowerCase(Locale.ENGLISH);
 
     boolean empty = false;
     boolean optionalEndTag = false;
@@ -136,12 +153,12 @@ public final class HTML4 {
   private static HTML.Attribute addAttribute(String attribute,
                                              int type,
                                              String[] values) {
-    attribute = attribute.toLowerCase();
+    attribute = attribute.toLowerCase(Locale.ENGLISH);
     Set<String> valueSet = null;
     if (values != null) {
       valueSet = new HashSet<String>();
       for (String x : values) {
-        valueSet.add(x.toLowerCase());
+        valueSet.add(x.toLowerCase(Locale.ENGLISH));
       }
       valueSet = Collections.unmodifiableSet(valueSet);
     }
@@ -397,4 +414,11 @@ public final class HTML4 {
     VLINK_ATTRIBUTE          = addAttribute("VLINK"),
     VSPACE_ATTRIBUTE         = addAttribute("VSPACE"),
     WIDTH_ATTRIBUTE          = addAttribute("WIDTH");
-}
\ No newline at end of file
+
+  // The lookup tables are built from the maps once every element and
+  // attribute above has been added.
+  private static final HtmlNameTable<HTML.Element> elementTable =
+      new HtmlNameTable<HTML.Element>(elements);
+  private static final HtmlNameTable<HTML.Attribute> attributeTable =
+      new HtmlNameTable<HTML.Attribute>(attributes);
+}
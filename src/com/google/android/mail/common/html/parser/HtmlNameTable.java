@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.mail.common.html.parser;
+
+import com.google.android.mail.common.base.X;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * HtmlNameTable is a read-only table of lower case ASCII names, such as the
+ * HTML4 element and attribute names. It is queried with a region of a String
+ * and ignores ASCII case, so that a name can be looked up where it was
+ * scanned, without taking a substring or lower-casing it.
+ *
+ * The table is a perfect hash: when it is built, a hash multiplier is chosen
+ * that gives every name a slot of its own. A lookup hashes the region once
+ * and compares it with the one name in its slot.
+ */
+final class HtmlNameTable<V> {
+
+  /** Multipliers tried for each table size before the table is grown */
+  private static final int MAX_TRIES = 10000;
+
+  private final String[] names;
+  private final Object[] values;
+  private final int multiplier;
+  private final int shift;
+
+  /**
+   * @param map Values keyed by name. Names must be lower case ASCII.
+   */
+  HtmlNameTable(Map<String, V> map) {
+    String[] keys = map.keySet().toArray(new String[map.size()]);
+    int[] hashes = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      hashes[i] = hash(keys[i], 0, keys[i].length());
+      X.assertTrue(hashes[i] != -1, "Not an ASCII name: " + keys[i]);
+    }
+
+    // Start with a sparse table so that a multiplier is found quickly, and
+    // grow it if none is.
+    int bits = 1;
+    while ((1 << bits) < keys.length * 4) {
+      bits++;
+    }
+    String[] slots;
+    int multiplier;
+    while (true) {
+      slots = new String[1 << bits];
+      multiplier = findMultiplier(hashes, keys, slots, 32 - bits);
+      if (multiplier != 0) {
+        break;
+      }
+      bits++;
+    }
+
+    this.names = slots;
+    this.values = new Object[slots.length];
+    for (int slot = 0; slot < slots.length; slot++) {
+      if (slots[slot] != null) {
+        values[slot] = map.get(slots[slot]);
+      }
+    }
+    this.multiplier = multiplier;
+    this.shift = 32 - bits;
+  }
+
+  /**
+   * Looks for a multiplier that puts every key in a slot of its own, and
+   * fills in {@code slots} with the keys if one is found.
+   *
+   * @return the multiplier, or 0 if none was found
+   */
+  private static int findMultiplier(int[] hashes, String[] keys, String[] slots, int shift) {
+    int multiplier = 0x9E3779B9;
+    for (int t = 0; t < MAX_TRIES; t++, multiplier += 0x61C88646) {
+      int m = multiplier | 1;
+      Arrays.fill(slots, null);
+      boolean perfect = true;
+      for (int i = 0; i < keys.length && perfect; i++) {
+        int slot = (hashes[i] * m) >>> shift;
+        perfect = (slots[slot] == null);
+        slots[slot] = keys[i];
+      }
+      if (perfect) {
+        return m;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Looks up the name in {@code s} from {@code start} to {@code end},
+   * ignoring ASCII case.
+   *
+   * @return the value of the name, or null if it is not in the table
+   */
+  @SuppressWarnings("unchecked")
+  V get(String s, int start, int end) {
+    int h = hash(s, start, end);
+    if (h == -1) {
+      return null;
+    }
+    int slot = (h * multiplier) >>> shift;
+    String name = names[slot];
+    if (name == null || name.length() != end - start) {
+      return null;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      if (toLowerAscii(s.charAt(start + i)) != name.charAt(i)) {
+        return null;
+      }
+    }
+    return (V) values[slot];
+  }
+
+  /** Looks up {@code name}, ignoring ASCII case */
+  V get(String name) {
+    return get(name, 0, name.length());
+  }
+
+  /**
+   * Hashes a region of {@code s} as if it were lower case.
+   *
+   * @return the hash, or -1 if the region has a non-ASCII character and so
+   * can't be in the table
+   */
+  private static int hash(String s, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      char ch = s.charAt(i);
+      if (ch >= 0x80) {
+        return -1;
+      }
+      h = 31 * h + toLowerAscii(ch);
+    }
+    return h & 0x7fffffff;
+  }
+
+  private static char toLowerAscii(char ch) {
+    return (ch >= 'A' && ch <= 'Z') ? (char) (ch + ('a' - 'A')) : ch;
+  }
+}
@@ -29,7 +29,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,6 +53,7 @@ public class HtmlParser {
 
   private int clipLength = Integer.MAX_VALUE;
   private boolean clipped;
+  private boolean stopped;
 
   // The html text
   private String html;
@@ -60,6 +61,14 @@ public class HtmlParser {
   // The entire array of nodes
   private List<HtmlDocument.Node> nodes;
 
+  // When streaming, the visitor that nodes are passed to instead of being
+  // collected in nodes, and the text nodes that haven't been passed on yet
+  private HtmlDocument.Visitor visitor;
+  private LinkedList<HtmlDocument.Text> pendingText;
+
+  // The STYLE or SCRIPT element whose content is being scanned as CDATA
+  private HTML.Element cdataElement;
+
   // Turn on for debug information.
   private static boolean DEBUG = false;
 
@@ -69,6 +78,24 @@ public class HtmlParser {
   // Whitelists for looking up accepted HTML tags and attributes
   private List<HtmlWhitelist> whitelists = Lists.newArrayList(DEFAULT_WHITELIST);
 
+  // The most names to remember the whitelist lookup result of. Known names
+  // are few, but a long-lived parser can see any number of unknown ones.
+  private static final int MAX_RESOLVED_NAMES = 512;
+
+  // Results of looking up lower-cased names in the whitelists, including
+  // names that aren't in any whitelist, so that each name is resolved once
+  // rather than once per tag. Cleared when the whitelists change.
+  private final HashMap<String, HTML.Element> resolvedElements = Maps.newHashMap();
+  private final HashMap<String, HTML.Attribute> resolvedAttributes = Maps.newHashMap();
+
+  // True while the only whitelist is the default one, whose names can be
+  // looked up in place in the html
+  private boolean defaultWhitelistOnly = true;
+
+  // Scanners, reused for every tag
+  private final TagNameScanner tagNameScanner = new TagNameScanner();
+  private final AttributeScanner attributeScanner = new AttributeScanner();
+
   /**
    * This setting controls how much of the original HTML is preserved.  In
    * ascending order of aggressiveness:
@@ -137,11 +164,17 @@ public class HtmlParser {
    *
    * This has no effect in <code>ParseStyle.PRESERVE_ALL</code> mode.
    *
+   * Names are looked up in lower case, and the parser remembers the result
+   * of each lookup, so a whitelist must give the same answer for a name every
+   * time it is asked.
+   *
    * @param whitelist The whitelist to use. Must not be null.
    */
   public void setWhitelist(HtmlWhitelist whitelist) {
     Preconditions.checkNotNull(whitelist);
     whitelists = Lists.newArrayList(whitelist);
+    defaultWhitelistOnly = (whitelist == DEFAULT_WHITELIST);
+    clearResolvedNames();
   }
 
   /**
@@ -157,9 +190,17 @@ public class HtmlParser {
    * This has no effect in <code>ParseStyle.PRESERVE_ALL</code> mode.
    *
    * @param whitelist The whitelist to use.
+   * @see #setWhitelist
    */
   public void addWhitelist(HtmlWhitelist whitelist) {
     whitelists.add(whitelist);
+    defaultWhitelistOnly = false;
+    clearResolvedNames();
+  }
+
+  private void clearResolvedNames() {
+    resolvedElements.clear();
+    resolvedAttributes.clear();
   }
 
   /**
@@ -185,17 +226,76 @@ public class HtmlParser {
    * @return an Html document
    */
   public HtmlDocument parse(String html) {
-    this.html = html;
     // Use a LinkedList because we don't know the number of nodes ahead of
     // time. This will be compacted into an ArrayList in coalesceTextNodes().
     nodes = Lists.newLinkedList();
+    try {
+      scan(html);
+      return new HtmlDocument(coalesceTextNodes(nodes));
+    } finally {
+      nodes = null;
+    }
+  }
+
+  /**
+   * Parses a String as HTML, passing each node to {@code visitor} as soon as
+   * it is scanned instead of building an HtmlDocument. The visitor sees the
+   * same nodes, in the same order, as it would if it were given to
+   * {@link HtmlDocument#accept} on the result of {@link #parse(String)}.
+   * Parsing can be cut short by calling {@link #stop} from the visitor.
+   *
+   * @param html String to parse
+   * @param visitor Receives the nodes
+   */
+  public void parse(String html, HtmlDocument.Visitor visitor) {
+    this.visitor = visitor;
+    pendingText = Lists.newLinkedList();
+    try {
+      visitor.start();
+      scan(html);
+      flushPendingText();
+      visitor.finish();
+    } finally {
+      this.visitor = null;
+      pendingText = null;
+    }
+  }
+
+  /**
+   * Stops a {@link #parse(String, HtmlDocument.Visitor)} in progress. No more
+   * nodes are scanned, though the visitor is still finished as usual. This is
+   * meant to be called by the visitor once it has seen all it needs.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  /**
+   * Scans the html, adding each node found with {@link #addNode}. Nothing
+   * refers to the html once this returns, even on an exception, as the parser
+   * may be kept for reuse long after.
+   */
+  private void scan(String html) {
+    this.html = html;
+    try {
+      scanHtml();
+    } finally {
+      this.html = null;
+      cdataElement = null;
+      tagNameScanner.reset(null);
+      attributeScanner.reset(null);
+    }
+  }
+
+  private void scanHtml() {
     state = State.IN_TEXT;
 
     clipped = false;
+    stopped = false;
     int end = html.length();
     int clipEnd = Math.min(clipLength, end);
 
-    for (int i = 0; i < end && !clipped;) {
+    for (int i = 0; i < end && !clipped && !stopped;) {
 
       // At any one time, the parser is in one of these states:
       int pos;
@@ -231,13 +331,30 @@ public class HtmlParser {
       // If we've reached or gone beyond the clipping length, stop.
       clipped = pos >= clipLength;
     }
+  }
 
-    nodes = coalesceTextNodes(nodes);
+  /**
+   * Adds a scanned node to the document being built, or passes it to the
+   * visitor when streaming. Adjacent text nodes are held back so that they
+   * can be coalesced, just as {@link #coalesceTextNodes} does for a document.
+   */
+  private void addNode(HtmlDocument.Node node) {
+    if (visitor == null) {
+      nodes.add(node);
+    } else if (node instanceof HtmlDocument.Text) {
+      pendingText.add((HtmlDocument.Text) node);
+    } else {
+      flushPendingText();
+      node.accept(visitor);
+    }
+  }
 
-    HtmlDocument doc = new HtmlDocument(nodes);
-    nodes = null;
-    html = null;
-    return doc;
+  /** Passes any held back text nodes to the visitor as a single node. */
+  private void flushPendingText() {
+    HtmlDocument.Text text = mergeTextNodes(pendingText);
+    if (text != null) {
+      text.accept(visitor);
+    }
   }
 
   /**
@@ -258,47 +375,53 @@ public class HtmlParser {
       if (node instanceof HtmlDocument.Text) {
         textNodes.add((HtmlDocument.Text) node);
       } else {
-        mergeTextNodes(textNodes, out);
+        addIfNotNull(out, mergeTextNodes(textNodes));
         out.add(node);
       }
     }
-    mergeTextNodes(textNodes, out);
+    addIfNotNull(out, mergeTextNodes(textNodes));
     return out;
   }
 
+  private static void addIfNotNull(List<HtmlDocument.Node> output,
+                                   HtmlDocument.Node node) {
+    if (node != null) {
+      output.add(node);
+    }
+  }
+
   /**
-   * Flushes any Text nodes in {@code textNodes} into a single Text node
-   * in {@code output}. {@code textNodes} is guaranteed to be empty when
-   * the function returns.
+   * Merges any Text nodes in {@code textNodes} into a single Text node.
+   * {@code textNodes} is guaranteed to be empty when the function returns.
    * @param textNodes Text nodes.
-   * @param output Destination to which results are added.
+   * @return The merged node, or null if there were no Text nodes.
    */
-  private static void mergeTextNodes(LinkedList<HtmlDocument.Text> textNodes,
-                                     List<HtmlDocument.Node> output) {
-    if (!textNodes.isEmpty()) {
-      if (textNodes.size() == 1) {
-        output.add(textNodes.removeFirst());
-      } else {
-        int combinedTextLen = 0;
-        int combinedInputLen = 0;
-        for (HtmlDocument.Text text : textNodes) {
-          combinedTextLen += text.getText().length();
-          if (text.getOriginalHTML() != null) {
-            combinedInputLen += text.getOriginalHTML().length();
-          }
+  private static HtmlDocument.Text mergeTextNodes(
+      LinkedList<HtmlDocument.Text> textNodes) {
+    if (textNodes.isEmpty()) {
+      return null;
+    } else if (textNodes.size() == 1) {
+      return textNodes.removeFirst();
+    } else {
+      int combinedTextLen = 0;
+      int combinedInputLen = 0;
+      for (HtmlDocument.Text text : textNodes) {
+        combinedTextLen += text.getText().length();
+        if (text.getOriginalHTML() != null) {
+          combinedInputLen += text.getOriginalHTML().length();
         }
-        StringBuilder combinedText = new StringBuilder(combinedTextLen);
-        StringBuilder combinedInput = new StringBuilder(combinedInputLen);
-        while (!textNodes.isEmpty()) {
-          HtmlDocument.Text text = textNodes.removeFirst();
-          combinedText.append(text.getText());
-          if (text.getOriginalHTML() != null) {
-            combinedInput.append(text.getOriginalHTML());
-          }
+      }
+      StringBuilder combinedText = new StringBuilder(combinedTextLen);
+      StringBuilder combinedInput = new StringBuilder(combinedInputLen);
+      while (!textNodes.isEmpty()) {
+        HtmlDocument.Text text = textNodes.removeFirst();
+        combinedText.append(text.getText());
+        if (text.getOriginalHTML() != null) {
+          combinedInput.append(text.getOriginalHTML());
         }
-        String originalInput = combinedInputLen > 0 ? combinedInput.toString() : null;
-        output.add(HtmlDocument.createText(combinedText.toString(), originalInput));
       }
+      String originalInput = combinedInputLen > 0 ? combinedInput.toString() : null;
+      return HtmlDocument.createText(combinedText.toString(), originalInput);
     }
   }
 
@@ -374,7 +497,7 @@ public class HtmlParser {
         }
 
         HtmlDocument.Text textnode = HtmlDocument.createEscapedText(htmlTail, originalHtml);
-        nodes.add(textnode);
+        addNode(textnode);
       }
     }
     return pos;
@@ -384,13 +507,19 @@ public class HtmlParser {
   // Tag name scanning utility class
   //------------------------------------------------------------------------
   private static class TagNameScanner {
-    private final String html;
+    private String html;
     private String tagName;
     private int startNamePos = -1;
     private int endNamePos = -1;
 
-    public TagNameScanner(String html) {
+    /**
+     * Reset to scan another tag name.
+     */
+    public void reset(String html) {
       this.html = html;
+      tagName = null;
+      startNamePos = -1;
+      endNamePos = -1;
     }
 
     /**
@@ -416,6 +545,13 @@ public class HtmlParser {
       return pos;
     }
 
+    /**
+     * @return True if a tag name was found.
+     */
+    public boolean hasName() {
+      return startNamePos != -1 && endNamePos != -1;
+    }
+
     /**
      * @return Tag name.
      */
@@ -431,7 +567,7 @@ public class HtmlParser {
   // Attribute scanning utility class
   //------------------------------------------------------------------------
   private static class AttributeScanner {
-    private final String html;
+    private String html;
     private String name;
     private String value;
 
@@ -444,14 +580,11 @@ public class HtmlParser {
     int endValuePos = -1;
     boolean attrValueIsQuoted = false;
 
-    public AttributeScanner(String html) {
-      this.html = html;
-    }
-
     /**
      * Reset to scan another attribute.
      */
-    public void reset() {
+    public void reset(String html) {
+      this.html = html;
       startNamePos = -1;
       endNamePos = -1;
       startValuePos = -1;
@@ -571,6 +704,10 @@ public class HtmlParser {
       return pos;
     }
 
+    public boolean hasName() {
+      return startNamePos != -1 && endNamePos != -1;
+    }
+
     public String getName() {
       if (name == null && startNamePos != -1 && endNamePos != -1) {
         name = html.substring(startNamePos, endNamePos);
@@ -604,7 +741,7 @@ public class HtmlParser {
    * gives us a placeholder for tracking original HTML contents.
    */
   private HTML.Element lookupUnknownElement(String name) {
-    name = name.toLowerCase();
+    name = name.toLowerCase(Locale.ENGLISH);
     HTML.Element result = unknownElements.get(name);
     if (result == null) {
       result = new HTML.Element(name,
@@ -624,7 +761,7 @@ public class HtmlParser {
    *         gives us a placeholder for tracking original HTML contents.
    */
   private HTML.Attribute lookupUnknownAttribute(String name) {
-    name = name.toLowerCase();
+    name = name.toLowerCase(Locale.ENGLISH);
     HTML.Attribute result = unknownAttributes.get(name);
     if (result == null) {
       result = new HTML.Attribute(name, HTML.Attribute.NO_TYPE);
@@ -659,18 +796,17 @@ public class HtmlParser {
     }
 
     // Tag name and element
-    TagNameScanner tagNameScanner = new TagNameScanner(html);
+    tagNameScanner.reset(html);
     int pos = tagNameScanner.scanName(nameStart, end);
-    String tagName = tagNameScanner.getTagName();
     HTML.Element element = null;
-    if (tagName == null) {
+    if (!tagNameScanner.hasName()) {
       // For some reason, browsers treat start and end tags differently
       // when they don't have a valid tag name - end tags are swallowed
       // (e.g., "</ >"), start tags treated as text (e.g., "< >")
       if (!isEndTag) {
         // This is not really a tag, treat the '<' as text.
         HtmlDocument.Text text = HtmlDocument.createText("<", preserveAll ? "<" : null);
-        nodes.add(text);
+        addNode(text);
         state = State.IN_TEXT;
         return nameStart;
       }
@@ -679,14 +815,14 @@ public class HtmlParser {
         element = lookupUnknownElement("");
       }
     } else {
-      element = lookupElement(tagName);
+      element = lookupElement(html, tagNameScanner.startNamePos, tagNameScanner.endNamePos);
       if (element == null) {
         if (DEBUG) {
           // Unknown element
-          debug("Unknown element: " + tagName);
+          debug("Unknown element: " + tagNameScanner.getTagName());
         }
         if (preserveAll) {
-          element = lookupUnknownElement(tagName);
+          element = lookupUnknownElement(tagNameScanner.getTagName());
         }
       }
     }
@@ -696,7 +832,6 @@ public class HtmlParser {
     ArrayList<HtmlDocument.TagAttribute> attributes = null;
     int allAttributesStartPos = pos;
     int nextAttributeStartPos = pos;
-    AttributeScanner attributeScanner = new AttributeScanner(html);
     while (pos < end) {
       int startPos = pos;
       char ch = html.charAt(pos);
@@ -728,12 +863,12 @@ public class HtmlParser {
         ++pos;
       } else {
         // Scan for attribute
-        attributeScanner.reset();
+        attributeScanner.reset(html);
         pos = attributeScanner.scanName(pos, end);
         X.assertTrue(pos > startPos);
 
         // If it's a valid attribute, scan attribute values
-        if (attributeScanner.getName() != null) {
+        if (attributeScanner.hasName()) {
           pos = attributeScanner.scanValue(pos, end);
 
           // Add the attribute to the list
@@ -764,7 +899,7 @@ public class HtmlParser {
         originalContent =
             CharMatcher.is('<').replaceFrom(html.substring(start, end), "&lt;");
       }
-      nodes.add(HtmlDocument.createEscapedText(textNodeContent, originalContent));
+      addNode(HtmlDocument.createEscapedText(textNodeContent, originalContent));
       return end;
     }
 
@@ -782,6 +917,7 @@ public class HtmlParser {
         // CDATA state.
         if (HTML4.SCRIPT_ELEMENT.equals(element) || HTML4.STYLE_ELEMENT.equals(element)) {
           state = State.IN_CDATA;
+          cdataElement = element;
         }
 
         addStartTag(element, start, allAttributesStartPos,
@@ -802,14 +938,17 @@ public class HtmlParser {
    * @return Element.
    */
   HTML.Element lookupElement(String name) {
-    ListIterator<HtmlWhitelist> iter = whitelists.listIterator(whitelists.size());
-    while (iter.hasPrevious()) {
-      HTML.Element elem = iter.previous().lookupElement(name);
-      if (elem != null) {
-        return elem;
+    name = name.toLowerCase(Locale.ENGLISH);
+    HTML.Element elem = resolvedElements.get(name);
+    if (elem == null && !resolvedElements.containsKey(name)) {
+      for (int i = whitelists.size() - 1; i >= 0 && elem == null; i--) {
+        elem = whitelists.get(i).lookupElement(name);
+      }
+      if (resolvedElements.size() < MAX_RESOLVED_NAMES) {
+        resolvedElements.put(name, elem);
       }
     }
-    return null;
+    return elem;
   }
 
   /**
@@ -821,14 +960,41 @@ public class HtmlParser {
    * @return Attribute.
    */
   HTML.Attribute lookupAttribute(String name) {
-    ListIterator<HtmlWhitelist> iter = whitelists.listIterator(whitelists.size());
-    while (iter.hasPrevious()) {
-      HTML.Attribute attr = iter.previous().lookupAttribute(name);
-      if (attr != null) {
-        return attr;
+    name = name.toLowerCase(Locale.ENGLISH);
+    HTML.Attribute attr = resolvedAttributes.get(name);
+    if (attr == null && !resolvedAttributes.containsKey(name)) {
+      for (int i = whitelists.size() - 1; i >= 0 && attr == null; i--) {
+        attr = whitelists.get(i).lookupAttribute(name);
+      }
+      if (resolvedAttributes.size() < MAX_RESOLVED_NAMES) {
+        resolvedAttributes.put(name, attr);
       }
     }
-    return null;
+    return attr;
+  }
+
+  /**
+   * Lookups the element named by {@code html} from {@code start} to
+   * {@code end}. While only the default whitelist is in use, the name is
+   * looked up where it is, without being copied.
+   */
+  private HTML.Element lookupElement(String html, int start, int end) {
+    if (defaultWhitelistOnly) {
+      return HTML4.lookupElement(html, start, end);
+    }
+    return lookupElement(html.substring(start, end));
+  }
+
+  /**
+   * Lookups the attribute named by {@code html} from {@code start} to
+   * {@code end}. While only the default whitelist is in use, the name is
+   * looked up where it is, without being copied.
+   */
+  private HTML.Attribute lookupAttribute(String html, int start, int end) {
+    if (defaultWhitelistOnly) {
+      return HTML4.lookupAttribute(html, start, end);
+    }
+    return lookupAttribute(html.substring(start, end));
   }
 
   /**
@@ -858,7 +1024,7 @@ public class HtmlParser {
               beforeAttrs, afterAttrs)
           : HtmlDocument.createTag(element, attributes,
               beforeAttrs, afterAttrs);
-      nodes.add(tag);
+      addNode(tag);
     } else if (preserveValidHtml) {
       // This is the beginning of the tag up through the tag name. It should not
       // be possible for this to contain characters needing escaping, but we add
@@ -889,13 +1055,13 @@ public class HtmlParser {
               beforeAttrs.toString(), afterAttrs)
           : HtmlDocument.createTag(element, attributes,
               beforeAttrs.toString(), afterAttrs);
-      nodes.add(tag);
+      addNode(tag);
     } else {
       // Normalize.
       HtmlDocument.Tag tag = (isSingleTag)
           ? HtmlDocument.createSelfTerminatingTag(element, attributes)
           : HtmlDocument.createTag(element, attributes);
-      nodes.add(tag);
+      addNode(tag);
     }
   }
 
@@ -918,7 +1084,7 @@ public class HtmlParser {
       // Preserve all: keep actual content even if it's malformed.
       X.assertTrue(startPos < endPos);
       String content = html.substring(startPos, endPos);
-      nodes.add(HtmlDocument.createEndTag(element, content));
+      addNode(HtmlDocument.createEndTag(element, content));
     } else if (preserveValidHtml) {
       // Preserve valid: terminate the tag.
 
@@ -943,10 +1109,10 @@ public class HtmlParser {
       // Strip everything but leading whitespace.
       validContent.append(endOfTag.replaceAll("\\S+.*>", ">"));
 
-      nodes.add(HtmlDocument.createEndTag(element, validContent.toString()));
+      addNode(HtmlDocument.createEndTag(element, validContent.toString()));
     } else {
       // Normalize: ignore the original content.
-      nodes.add(HtmlDocument.createEndTag(element));
+      addNode(HtmlDocument.createEndTag(element));
     }
   }
 
@@ -965,9 +1131,9 @@ public class HtmlParser {
       AttributeScanner scanner, final int startPos, final int endPos) {
     X.assertTrue(startPos < endPos);
 
-    String name = scanner.getName();
-    X.assertTrue(name != null);
-    HTML.Attribute htmlAttribute = lookupAttribute(name);
+    X.assertTrue(scanner.hasName());
+    HTML.Attribute htmlAttribute =
+        lookupAttribute(html, scanner.startNamePos, scanner.endNamePos);
 
     // This can be null when there's no value, e.g., input.checked attribute.
     String value = scanner.getValue();
@@ -975,12 +1141,12 @@ public class HtmlParser {
     if (htmlAttribute == null) {
       // Unknown attribute.
       if (DEBUG) {
-        debug("Unknown attribute: " + name);
+        debug("Unknown attribute: " + scanner.getName());
       }
       if (preserveAll) {
         String original = html.substring(startPos, endPos);
         attributes.add(HtmlDocument.createTagAttribute(
-            lookupUnknownAttribute(name), value, original));
+            lookupUnknownAttribute(scanner.getName()), value, original));
       }
     } else {
       String unescapedValue = (value == null) ? null : StringUtil.unescapeHTML(value);
@@ -1011,7 +1177,7 @@ public class HtmlParser {
         } else {
           // Escape name in case the name has any quotes or '<' that could
           // confuse a browser.
-          original.append(CharEscapers.asciiHtmlEscaper().escape(name));
+          original.append(CharEscapers.asciiHtmlEscaper().escape(scanner.getName()));
 
           // This includes the equal sign, and any other whitespace
           // between the name and value. It also contains the opening quote
@@ -1075,7 +1241,7 @@ public class HtmlParser {
     }
 
     if (preserveAll) {
-      nodes.add(HtmlDocument.createHtmlComment(html.substring(start, pos)));
+      addNode(HtmlDocument.createHtmlComment(html.substring(start, pos)));
     }
 
     return pos;
@@ -1086,9 +1252,8 @@ public class HtmlParser {
   //------------------------------------------------------------------------
   int scanCDATA(final int start, final int end) {
 
-    // Get the tag: must be either STYLE or SCRIPT
-    HtmlDocument.Tag tag = (HtmlDocument.Tag) nodes.get(nodes.size() - 1);
-    HTML.Element element = tag.getElement();
+    // Get the element: must be either STYLE or SCRIPT
+    HTML.Element element = cdataElement;
     X.assertTrue(HTML4.SCRIPT_ELEMENT.equals(element) || HTML4.STYLE_ELEMENT.equals(element));
 
     int pos;
@@ -1106,7 +1271,7 @@ public class HtmlParser {
     if (pos > start) {
       HtmlDocument.CDATA cdata =
         HtmlDocument.createCDATA(html.substring(start, pos));
-      nodes.add(cdata);
+      addNode(cdata);
     }
 
     state = State.IN_TAG;
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.mail.common.html.parser;
+
+/**
+ * HtmlPlainTextVisitor converts html to plain text in a single pass over the
+ * nodes as HtmlParser scans them, without building an HtmlDocument or an
+ * HtmlTree. For the same converter, the text is the same as that from
+ * {@link HtmlTree#getPlainText()}.
+ *
+ * The conversion can be given a budget of plain text characters, in which
+ * case parsing stops as soon as the budget is reached. This makes it cheap to
+ * get the beginning of a large message.
+ *
+ * Subclasses can leave whole elements out of the text by overriding
+ * {@link #isSkipped}.
+ *
+ * Each visitor converts a single html text.
+ */
+public class HtmlPlainTextVisitor implements HtmlDocument.Visitor {
+
+  private final HtmlTree.Converter<String> converter;
+  private final int maxLength;
+
+  /** The parser to stop once the budget is reached */
+  private HtmlParser parser;
+
+  /** The number of nodes passed to the converter */
+  private int nodeNum;
+
+  /** Nesting depth of start tags within a skipped element, 0 if not in one */
+  private int skipDepth;
+
+  /** Set once the budget is reached */
+  private boolean done;
+
+  /** Creates a visitor that converts all of the text with the default converter */
+  public HtmlPlainTextVisitor() {
+    this(new HtmlTree.DefaultPlainTextConverter(), Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param converter Converts the nodes to text. Nodes are converted in order
+   * as they are scanned, so the end node of a start tag is not known yet; the
+   * endNum passed to {@link HtmlTree.Converter#addNode} is always -1.
+   * @param maxLength The budget of plain text characters, must be greater
+   * than zero. Use Integer.MAX_VALUE for no limit.
+   */
+  public HtmlPlainTextVisitor(HtmlTree.Converter<String> converter, int maxLength) {
+    if (maxLength <= 0) {
+      throw new IllegalArgumentException("maxLength '" + maxLength + "' <= 0");
+    }
+    this.converter = converter;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Parses {@code html} and converts it to plain text.
+   *
+   * @param parser The parser to use. It must not be in use by anyone else
+   * during the call.
+   * @param html The html to convert
+   * @return the plain text, no longer than the budget
+   */
+  public String convert(HtmlParser parser, String html) {
+    this.parser = parser;
+    try {
+      parser.parse(html, new HtmlTreeBuilder(this));
+    } finally {
+      this.parser = null;
+    }
+    String text = converter.getObject();
+    return (text.length() > maxLength) ? text.substring(0, maxLength) : text;
+  }
+
+  /**
+   * Returns true if the element started by {@code tag}, along with
+   * everything in it, should be left out of the text. By default nothing is
+   * left out.
+   */
+  protected boolean isSkipped(HtmlDocument.Tag tag) {
+    return false;
+  }
+
+  /**
+   * Returns the node to convert in place of a skipped element, or null to
+   * convert nothing. By default nothing is converted.
+   */
+  protected HtmlDocument.Node getSkippedReplacement() {
+    return null;
+  }
+
+  /** Implements HtmlDocument.Visitor.start */
+  public void start() {
+  }
+
+  /** Implements HtmlDocument.Visitor.visitText */
+  public void visitText(HtmlDocument.Text n) {
+    if (skipDepth == 0) {
+      addNode(n);
+    }
+  }
+
+  /** Implements HtmlDocument.Visitor.visitTag */
+  public void visitTag(HtmlDocument.Tag n) {
+    // Tags of empty elements are never followed by an end tag, see
+    // HtmlTreeBuilder, so they don't change the depth.
+    boolean isStartTag = !n.getElement().isEmpty();
+    if (skipDepth > 0) {
+      if (isStartTag) {
+        skipDepth++;
+      }
+    } else if (isStartTag && isSkipped(n)) {
+      skipDepth = 1;
+    } else {
+      addNode(n);
+    }
+  }
+
+  /** Implements HtmlDocument.Visitor.visitEndTag */
+  public void visitEndTag(HtmlDocument.EndTag n) {
+    if (skipDepth > 0) {
+      if (--skipDepth == 0) {
+        HtmlDocument.Node replacement = getSkippedReplacement();
+        if (replacement != null) {
+          addNode(replacement);
+        }
+      }
+    } else {
+      addNode(n);
+    }
+  }
+
+  /** Implements HtmlDocument.Visitor.visitComment */
+  public void visitComment(HtmlDocument.Comment n) {
+    // ignore
+  }
+
+  /** Implements HtmlDocument.Visitor.finish */
+  public void finish() {
+  }
+
+  /** Converts a node, and stops the parser once the budget is reached */
+  private void addNode(HtmlDocument.Node n) {
+    if (done) {
+      return;
+    }
+    converter.addNode(n, nodeNum++, -1);
+    if (converter.getPlainTextLength() >= maxLength) {
+      done = true;
+      if (parser != null) {
+        parser.stop();
+      }
+    }
+  }
+}
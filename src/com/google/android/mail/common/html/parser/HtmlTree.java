@@ -28,7 +28,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.Stack;
 import java.util.logging.Logger;
 
 /**
@@ -98,12 +97,18 @@ public class HtmlTree {
         }
       };
 
+  /** Initial capacity of the node arrays, which grow as nodes are added */
+  private static final int INITIAL_CAPACITY = 64;
+
   /** Contains html nodes */
-  private final List<HtmlDocument.Node> nodes = new ArrayList<HtmlDocument.Node>();
+  private final ArrayList<HtmlDocument.Node> nodes = new ArrayList<HtmlDocument.Node>();
 
-  /** Keeps track of beginning and end of each node */
-  private final Stack<Integer> begins = new Stack<Integer>();
-  private final Stack<Integer> ends = new Stack<Integer>();
+  /**
+   * Keeps track of beginning and end of each node, indexed by node number.
+   * Only the first nodes.size() entries are used.
+   */
+  private int[] begins = new int[INITIAL_CAPACITY];
+  private int[] ends = new int[INITIAL_CAPACITY];
 
   /** Plain text (lazy creation) */
   private String plainText;
@@ -163,7 +168,7 @@ public class HtmlTree {
    */
   public int findOpenTag(int endTagNodeNum) {
     X.assertTrue(endTagNodeNum >= 0 && endTagNodeNum < nodes.size());
-    return begins.get(endTagNodeNum);
+    return begins[endTagNodeNum];
   }
 
   /**
@@ -172,7 +177,7 @@ public class HtmlTree {
    */
   public int findEndTag(int openTagNodeNum) {
     X.assertTrue(openTagNodeNum >= 0 && openTagNodeNum < nodes.size());
-    return ends.get(openTagNodeNum);
+    return ends[openTagNodeNum];
   }
 
   /**
@@ -181,8 +186,8 @@ public class HtmlTree {
    */
   public int findPairedTag(int tagNodeNum) {
     X.assertTrue(tagNodeNum >= 0 && tagNodeNum < nodes.size());
-    int openNodeNum = begins.get(tagNodeNum);
-    int endNodeNum = ends.get(tagNodeNum);
+    int openNodeNum = begins[tagNodeNum];
+    int endNodeNum = ends[tagNodeNum];
     return tagNodeNum == openNodeNum ? endNodeNum : openNodeNum;
   }
 
@@ -395,8 +400,8 @@ public class HtmlTree {
     for (int n = startNode; n < endNode;) {
 
       // The node n spans [nBegin, nEnd]
-      int nBegin = begins.get(n);
-      int nEnd = ends.get(n);
+      int nBegin = begins[n];
+      int nEnd = ends[n];
 
       if (blockStart == -1) {
         // Check if this is a valid start node
@@ -570,7 +575,7 @@ public class HtmlTree {
 
     for (int i = 0; i < numNodes; i++) {
       textPositions[i] = converter.getPlainTextLength();
-      converter.addNode(nodes.get(i), i, ends.get(i));
+      converter.addNode(nodes.get(i), i, ends[i]);
     }
 
     // Add a last entry, so that textPositions_[nodes_.size()] is valid.
@@ -618,7 +623,7 @@ public class HtmlTree {
         Converter<Spanned> converter = (Converter<Spanned>) converterFactory.createInstance();
 
         for (int i = 0; i < numNodes; i++) {
-            converter.addNode(nodes.get(i), i, ends.get(i));
+            converter.addNode(nodes.get(i), i, ends[i]);
         }
 
         constructedSpan = converter.getObject();
@@ -975,20 +980,32 @@ public class HtmlTree {
   //------------------------------------------------------------------------
   // The following methods are used to build the html tree.
   //------------------------------------------------------------------------
-  /** For building the html tree */
-  private Stack<Integer> stack;
+  /**
+   * For building the html tree: the open tags enclosing the current parent,
+   * outermost first. Only the first stackSize entries are used.
+   */
+  private int[] stack;
+  private int stackSize;
   private int parent;
 
   /** Starts the build process */
   void start() {
-    stack = new Stack<Integer>();
+    stack = new int[INITIAL_CAPACITY];
+    stackSize = 0;
     parent = -1;
   }
 
   /** Finishes the build process */
   void finish() {
-    X.assertTrue(stack.size() == 0);
+    X.assertTrue(stackSize == 0);
     X.assertTrue(parent == -1);
+    stack = null;
+
+    // Drop the unused capacity, since the tree may be kept around
+    int numNodes = nodes.size();
+    nodes.trimToSize();
+    begins = Arrays.copyOf(begins, numNodes);
+    ends = Arrays.copyOf(ends, numNodes);
   }
 
   /**
@@ -999,7 +1016,10 @@ public class HtmlTree {
     int nodenum = nodes.size();
     addNode(t, nodenum, -1);
 
-    stack.add(parent);
+    if (stackSize == stack.length) {
+      stack = Arrays.copyOf(stack, stackSize * 2);
+    }
+    stack[stackSize++] = parent;
     parent = nodenum;
   }
 
@@ -1011,10 +1031,10 @@ public class HtmlTree {
     addNode(t, parent, nodenum);
 
     if (parent != -1) {
-      ends.set(parent, nodenum);
+      ends[parent] = nodenum;
     }
 
-    parent = stack.pop();
+    parent = stack[--stackSize];
   }
 
   /** Adds a singular tag that does not have a corresponding end tag */
@@ -1034,9 +1054,15 @@ public class HtmlTree {
 
   /** Adds a node */
   private void addNode(HtmlDocument.Node n, int begin, int end) {
+    int nodenum = nodes.size();
+    if (nodenum == begins.length) {
+      int capacity = Math.max(INITIAL_CAPACITY, nodenum * 2);
+      begins = Arrays.copyOf(begins, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+    }
     nodes.add(n);
-    begins.add(begin);
-    ends.add(end);
+    begins[nodenum] = begin;
+    ends[nodenum] = end;
   }
 
   /** For debugging */
@@ -28,6 +28,13 @@ import java.util.logging.Logger;
 /**
  * HtmlTreeBuilder builds a well-formed HtmlTree.
  *
+ * It can also be constructed with an output visitor, in which case no tree is
+ * built. The well-formed stream of nodes, with missing start and end tags
+ * added, is passed straight on to the output visitor instead. Start tags of
+ * empty elements (e.g. BR) are never followed by an end tag in this stream.
+ *
+ * A builder can be reused for another document once it has finished one.
+ *
  * @see HtmlTree
  * @author jlim@google.com (Jing Yee Lim)
  */
@@ -38,19 +45,42 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
   /** Stack contains HTML4.Element objects to keep track of unclosed tags */
   private final List<HTML.Element> stack = new ArrayList<HTML.Element>();
   private final TableFixer tableFixer = new TableFixer();
+  private final HtmlDocument.Visitor output;
   private HtmlTree tree;
   private boolean built = false;
 
+  /** Creates a builder that builds an HtmlTree */
+  public HtmlTreeBuilder() {
+    this(null);
+  }
+
+  /**
+   * Creates a builder that passes the well-formed nodes to {@code output}
+   * instead of building an HtmlTree.
+   */
+  public HtmlTreeBuilder(HtmlDocument.Visitor output) {
+    this.output = output;
+  }
+
   /** Gets the built html tree */
   public HtmlTree getTree() {
-    X.assertTrue(built);
+    X.assertTrue(built && output == null);
     return tree;
   }
 
   /** Implements HtmlDocument.Visitor.start */
   public void start() {
-    tree = new HtmlTree();
-    tree.start();
+    // Clear anything left over from an earlier document that failed to parse
+    stack.clear();
+    tableFixer.reset();
+    built = false;
+
+    if (output != null) {
+      output.start();
+    } else {
+      tree = new HtmlTree();
+      tree.start();
+    }
   }
 
   /** Implements HtmlDocument.Visitor.finish */
@@ -60,7 +90,11 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
       addMissingEndTag();
     }
     tableFixer.finish();
-    tree.finish();
+    if (output != null) {
+      output.finish();
+    } else {
+      tree.finish();
+    }
 
     built = true;
   }
@@ -71,7 +105,7 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
 
     HTML.Element element = t.getElement();
     if (element.isEmpty()) {
-      tree.addSingularTag(t);
+      addSingularTag(t);
     } else if (t.isSelfTerminating()) {
       // Explicitly create a non-selfterminating open tag and add it to the tree
       // and also immediately add the corresponding close tag. This is done
@@ -79,14 +113,14 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
       // will be balanced consistently.
       // Otherwise there is a possibility of "<span /></span>" for example, if
       // the created tree is converted to string through toXHTML.
-      tree.addStartTag(HtmlDocument.createTag(element,
+      addStartTag(HtmlDocument.createTag(element,
           t.getAttributes(), t.getOriginalHtmlBeforeAttributes(),
           t.getOriginalHtmlAfterAttributes()));
       EndTag end = HtmlDocument.createEndTag(element);
       tableFixer.seeEndTag(end);
-      tree.addEndTag(end);
+      addEndTag(end);
     } else {
-      tree.addStartTag(t);
+      addStartTag(t);
       push(element);                       // Track the open tags
     }
   }
@@ -106,7 +140,7 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
 
       pop();
       tableFixer.seeEndTag(t);
-      tree.addEndTag(t);
+      addEndTag(t);
 
     } else {
       // Not found, ignore this end tag
@@ -117,7 +151,11 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
   /** Implements HtmlDocument.Visitor.visitText */
   public void visitText(HtmlDocument.Text t) {
     tableFixer.seeText(t);
-    tree.addText(t);
+    if (output != null) {
+      output.visitText(t);
+    } else {
+      tree.addText(t);
+    }
   }
 
   /** Implements HtmlDocument.Visitor.visitComment */
@@ -145,7 +183,34 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
 
     HtmlDocument.EndTag endTag = HtmlDocument.createEndTag(element);
     tableFixer.seeEndTag(endTag);
-    tree.addEndTag(endTag);
+    addEndTag(endTag);
+  }
+
+  /** Adds a start tag to the tree, or passes it to the output */
+  private void addStartTag(HtmlDocument.Tag t) {
+    if (output != null) {
+      output.visitTag(t);
+    } else {
+      tree.addStartTag(t);
+    }
+  }
+
+  /** Adds a tag of an empty element to the tree, or passes it to the output */
+  private void addSingularTag(HtmlDocument.Tag t) {
+    if (output != null) {
+      output.visitTag(t);
+    } else {
+      tree.addSingularTag(t);
+    }
+  }
+
+  /** Adds an end tag to the tree, or passes it to the output */
+  private void addEndTag(HtmlDocument.EndTag t) {
+    if (output != null) {
+      output.visitEndTag(t);
+    } else {
+      tree.addEndTag(t);
+    }
   }
 
   /** Pushes a tag onto the stack */
@@ -192,6 +257,11 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
 
     private int state;
 
+    void reset() {
+      tables = 0;
+      state = NULL;
+    }
+
     void seeTag(HtmlDocument.Tag tag) {
       HTML.Element element = tag.getElement();
       if (element.getType() == HTML.Element.TABLE_TYPE) {
@@ -272,7 +342,7 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
 
         HtmlDocument.Tag tableTag =
           HtmlDocument.createTag(HTML4.TABLE_ELEMENT, null);
-        tree.addStartTag(tableTag);
+        addStartTag(tableTag);
 
         tables++;
       }
@@ -284,7 +354,7 @@ public class HtmlTreeBuilder implements HtmlDocument.Visitor {
         push(HTML4.TD_ELEMENT);
 
         HtmlDocument.Tag tdTag = HtmlDocument.createTag(HTML4.TD_ELEMENT, null);
-        tree.addStartTag(tdTag);
+        addStartTag(tdTag);
 
         state = IN_CELL;
       }
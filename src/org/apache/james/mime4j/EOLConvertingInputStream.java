@@ -21,12 +21,15 @@ package org.apache.james.mime4j;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
 
 /**
  * InputStream which converts <code>\r</code>
  * bytes not followed by <code>\n</code> and <code>\n</code> not 
  * preceded by <code>\r</code> to <code>\r\n</code>.
+ * <p>
+ * The underlying stream is read a block at a time, and
+ * {@link #read(byte[], int, int)} copies each run of bytes between line
+ * breaks in one go.
  *
  * 
  * @version $Id: EOLConvertingInputStream.java,v 1.4 2004/11/29 13:15:42 ntherning Exp $
@@ -39,7 +42,14 @@ public class EOLConvertingInputStream extends InputStream {
     /** Converts single '\r' and '\n' to '\r\n' */
     public static final int CONVERT_BOTH = 3;
 
-    private PushbackInputStream in = null;
+    private static final int BUFFER_SIZE = 8192;
+
+    private InputStream in = null;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos = 0;
+    private int bufferLimit = 0;
+    /** A '\n' inserted by a conversion, to be returned next, or -1. */
+    private int pending = -1;
     private int previous = 0;
     private int flags = CONVERT_BOTH;
     private int size = 0;
@@ -61,7 +71,7 @@ public class EOLConvertingInputStream extends InputStream {
      */
     public EOLConvertingInputStream(InputStream _in) {
         super();
-        in = new PushbackInputStream(_in, 2);
+        in = _in;
     }
 
     /**
@@ -89,51 +99,125 @@ public class EOLConvertingInputStream extends InputStream {
         in.close();
     }
     
-    private int readByte() throws IOException {
-        int b = in.read();
-        if (b != -1) {
-            if (callback != null && pos++ == nextTenPctPos) {
-                nextTenPctPos += tenPctSize;
-                if (callback != null) {
-                    callback.report(pos);
+    /**
+     * Reads the next block of the underlying stream into the buffer, which
+     * must be empty.
+     * 
+     * @return <code>false</code> if the underlying stream has reached EOF.
+     */
+    private boolean fillBuffer() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n == -1) {
+            return false;
+        }
+        bufferPos = 0;
+        bufferLimit = n;
+        if (callback != null) {
+            pos += n;
+            if (pos > nextTenPctPos) {
+                callback.report(pos);
+                if (tenPctSize > 0) {
+                    while (nextTenPctPos < pos) {
+                        nextTenPctPos += tenPctSize;
+                    }
+                } else {
+                    nextTenPctPos = Integer.MAX_VALUE;
                 }
             }
         }
-        return b;
+        return true;
     }
 
-    private void unreadByte(int c) throws IOException {
-        in.unread(c);
-        pos--;
+    /**
+     * Converts a line break byte just taken from the buffer, queueing the
+     * <code>\n</code> to follow it if one has to be inserted.
+     */
+    private int convert(int b) throws IOException {
+        if ((flags & CONVERT_CR) != 0 && b == '\r') {
+            if (bufferPos == bufferLimit) {
+                fillBuffer();
+            }
+            if (bufferPos == bufferLimit || buffer[bufferPos] != '\n') {
+                pending = '\n';
+            }
+        } else if ((flags & CONVERT_LF) != 0 && b == '\n' && previous != '\r') {
+            b = '\r';
+            pending = '\n';
+        }
+        
+        previous = b;
+        
+        return b;
     }
 
     /**
      * @see java.io.InputStream#read()
      */
     public int read() throws IOException {
-        int b = readByte();
+        if (pending != -1) {
+            previous = pending;
+            pending = -1;
+            return previous;
+        }
         
-        if (b == -1) {
+        if (bufferPos == bufferLimit && !fillBuffer()) {
             pos = size;
             return -1;
         }
         
-        if ((flags & CONVERT_CR) != 0 && b == '\r') {
-            int c = readByte();
-            if (c != -1) {
-                unreadByte(c);
+        return convert(buffer[bufferPos++] & 0xFF);
+    }
+
+    /**
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        
+        int n = 0;
+        while (n < len) {
+            if (pending != -1) {
+                previous = pending;
+                pending = -1;
+                b[off + n++] = (byte) previous;
+                continue;
             }
-            if (c != '\n') {
-                unreadByte('\n');
+            if (bufferPos == bufferLimit && (n > 0 || !fillBuffer())) {
+                break;
             }
-        } else if ((flags & CONVERT_LF) != 0 && b == '\n' && previous != '\r') {
-            b = '\r';
-            unreadByte('\n');
+            
+            int c = buffer[bufferPos];
+            if (c == '\r' || c == '\n') {
+                bufferPos++;
+                b[off + n++] = (byte) convert(c);
+                continue;
+            }
+            
+            /*
+             * Copy everything up to the next line break, which needs no
+             * conversion.
+             */
+            int end = bufferPos + 1;
+            int max = Math.min(bufferLimit, bufferPos + len - n);
+            while (end < max && buffer[end] != '\r' && buffer[end] != '\n') {
+                end++;
+            }
+            System.arraycopy(buffer, bufferPos, b, off + n, end - bufferPos);
+            n += end - bufferPos;
+            bufferPos = end;
+            previous = buffer[end - 1] & 0xFF;
         }
         
-        previous = b;
-        
-        return b;
+        if (n == 0) {
+            pos = size;
+            return -1;
+        }
+        return n;
     }
 
 }
@@ -22,6 +22,7 @@ package org.apache.james.mime4j;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.util.Arrays;
 
 /**
  * Stream that constrains itself to a single MIME body part.
@@ -29,44 +30,114 @@ import java.io.PushbackInputStream;
  * can be used to determine if a final boundary has been seen or not.
  * If {@link #parentEOF()} is <code>true</code> an unexpected end of stream
  * has been detected in the parent stream.
- * 
+ * <p>
+ * The underlying stream is read a block at a time and searched for the
+ * boundary delimiter with the Boyer-Moore-Horspool algorithm, so bulk reads
+ * through {@link #read(byte[], int, int)} cost a copy per block rather than
+ * a comparison per byte. Whatever has been read past the end of the
+ * boundary line is pushed back into the underlying stream once the
+ * boundary has been seen. To read successive body parts from one stream,
+ * create each <code>MimeBoundaryInputStream</code> over the same stream
+ * returned by {@link #newPartSource(InputStream, String)}.
  * 
  * 
  * @version $Id: MimeBoundaryInputStream.java,v 1.2 2004/11/29 13:15:42 ntherning Exp $
  */
 public class MimeBoundaryInputStream extends InputStream {
-    
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
     private PushbackInputStream s = null;
+    /** The dash-boundary, which may open the stream without a line break. */
     private byte[] boundary = null;
-    private boolean first = true;
+    /** The delimiter: CRLF followed by the dash-boundary. */
+    private byte[] delimiter = null;
+    /** Horspool shift for each byte value, by the last byte of the window. */
+    private final int[] shift = new int[256];
+
+    private byte[] buffer = null;
+    /** Position of the next byte to return. */
+    private int pos = 0;
+    /** End of the bytes read from the underlying stream. */
+    private int limit = 0;
+    /** Bytes before this position are known not to start a delimiter. */
+    private int safeLimit = 0;
+    /** Position of the delimiter found in the buffer, or -1 if none. */
+    private int delimiterPos = -1;
+    private boolean sourceEOF = false;
+
     private boolean eof = false;
     private boolean parenteof = false;
     private boolean moreParts = true;
 
     /**
-     * Creates a new MimeBoundaryInputStream.
+     * Wraps a stream so that the <code>MimeBoundaryInputStream</code>s for
+     * successive body parts can share it. Each of them reads ahead of its
+     * boundary and pushes the excess back into the returned stream, which
+     * also holds whatever follows the final boundary.
+     * 
+     * @param s The underlying stream.
+     * @param boundary Boundary string (not including leading hyphens).
+     */
+    public static PushbackInputStream newPartSource(InputStream s,
+            String boundary) {
+        return new PushbackInputStream(s, bufferSize(boundary));
+    }
+
+    /**
+     * Creates a new MimeBoundaryInputStream. Bytes read ahead of the boundary
+     * are lost when the stream ends; use
+     * {@link #MimeBoundaryInputStream(PushbackInputStream, String)} to read
+     * more than one body part from the same stream.
+     * 
      * @param s The underlying stream.
      * @param boundary Boundary string (not including leading hyphens).
      */
     public MimeBoundaryInputStream(InputStream s, String boundary) 
             throws IOException {
+        this(newPartSource(s, boundary), boundary);
+    }
+
+    /**
+     * Creates a new MimeBoundaryInputStream.
+     * @param s The underlying stream, as returned by
+     *        {@link #newPartSource(InputStream, String)} for the same boundary.
+     * @param boundary Boundary string (not including leading hyphens).
+     */
+    public MimeBoundaryInputStream(PushbackInputStream s, String boundary)
+            throws IOException {
         
-        this.s = new PushbackInputStream(s, boundary.length() + 4);
+        this.s = s;
+        this.buffer = new byte[bufferSize(boundary)];
 
-        boundary = "--" + boundary;
-        this.boundary = new byte[boundary.length()];
-        for (int i = 0; i < this.boundary.length; i++) {
-            this.boundary[i] = (byte) boundary.charAt(i);
+        this.boundary = toAscii("--" + boundary);
+        this.delimiter = toAscii("\r\n--" + boundary);
+        int last = delimiter.length - 1;
+        Arrays.fill(shift, delimiter.length);
+        for (int i = 0; i < last; i++) {
+            shift[delimiter[i] & 0xFF] = last - i;
         }
         
         /*
-         * By reading one byte we will update moreParts to be as expected
-         * before any bytes have been read.
+         * A boundary right at the start needs no preceding line break. Check
+         * for one now so that moreParts is as expected before any bytes have
+         * been read.
          */
-        int b = read();
-        if (b != -1) {
-            this.s.unread(b);
+        if (startsWithBoundary()) {
+            skipBoundaryLine();
+        }
+    }
+
+    private static int bufferSize(String boundary) {
+        return Math.max(DEFAULT_BUFFER_SIZE, 2 * (boundary.length() + 4));
+    }
+
+    private static byte[] toAscii(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) s.charAt(i);
         }
+        return b;
     }
 
     /**
@@ -106,7 +177,8 @@ public class MimeBoundaryInputStream extends InputStream {
      * @throws IOException on I/O errors.
      */
     public void consume() throws IOException {
-        while (read() != -1) {
+        while (fillSafe()) {
+            pos = safeLimit;
         }
     }
     
@@ -114,71 +186,184 @@ public class MimeBoundaryInputStream extends InputStream {
      * @see java.io.InputStream#read()
      */
     public int read() throws IOException {
-        if (eof) {
+        if (pos < safeLimit) {
+            return buffer[pos++] & 0xFF;
+        }
+        if (!fillSafe()) {
             return -1;
         }
-        
-        if (first) {
-            first = false;
-            if (matchBoundary()) {
-                return -1;
-            }
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
         }
-        
-        int b1 = s.read();
-        int b2 = s.read();
-        
-        if (b1 == '\r' && b2 == '\n') {
-            if (matchBoundary()) {
-                return -1;
+        if (!fillSafe()) {
+            return -1;
+        }
+        int n = Math.min(len, safeLimit - pos);
+        System.arraycopy(buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * @see java.io.InputStream#skip(long)
+     */
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fillSafe()) {
+            int step = (int) Math.min(n - skipped, safeLimit - pos);
+            pos += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    /**
+     * @see java.io.InputStream#available()
+     */
+    public int available() throws IOException {
+        return safeLimit - pos;
+    }
+
+    /**
+     * Makes sure there is at least one byte of the body part in the buffer,
+     * unless the part has ended.
+     * 
+     * @return <code>false</code> if this stream has reached EOF.
+     */
+    private boolean fillSafe() throws IOException {
+        while (pos == safeLimit) {
+            if (eof) {
+                return false;
+            }
+            if (delimiterPos == pos) {
+                pos += delimiter.length;
+                delimiterPos = -1;
+                skipBoundaryLine();
+                return false;
+            }
+            if (sourceEOF && pos == limit) {
+                parenteof = true;
+                eof = true;
+                return false;
             }
+            if (!sourceEOF) {
+                fill();
+            }
+            scan();
         }
-        
-        if (b2 != -1) {
-            s.unread(b2);
+        return true;
+    }
+
+    /**
+     * Searches the unscanned part of the buffer for the delimiter, moving
+     * {@link #safeLimit} up to it if it's found, or else up to the first
+     * position that could still start one once more bytes have been read.
+     */
+    private void scan() {
+        int last = delimiter.length - 1;
+        int i = safeLimit;
+        while (i + last < limit) {
+            int j = last;
+            while (buffer[i + j] == delimiter[j]) {
+                if (j == 0) {
+                    delimiterPos = i;
+                    safeLimit = i;
+                    return;
+                }
+                j--;
+            }
+            i += shift[buffer[i + last] & 0xFF];
         }
+        safeLimit = sourceEOF ? limit : i;
+    }
 
-        parenteof = b1 == -1;
-        eof = parenteof;
-        
-        return b1;
+    /**
+     * Reads another block from the underlying stream into the buffer,
+     * first moving the unread bytes to the front if the buffer is full.
+     * 
+     * @return <code>false</code> if the underlying stream has reached EOF.
+     */
+    private boolean fill() throws IOException {
+        if (sourceEOF) {
+            return false;
+        }
+        if (limit == buffer.length) {
+            int n = limit - pos;
+            System.arraycopy(buffer, pos, buffer, 0, n);
+            safeLimit -= pos;
+            limit = n;
+            pos = 0;
+        }
+        int n = s.read(buffer, limit, buffer.length - limit);
+        if (n == -1) {
+            sourceEOF = true;
+            return false;
+        }
+        limit += n;
+        return true;
     }
-    
-    private boolean matchBoundary() throws IOException {
-        
+
+    private boolean startsWithBoundary() throws IOException {
+        while (limit - pos < boundary.length && fill()) {
+        }
+        if (limit - pos < boundary.length) {
+            return false;
+        }
         for (int i = 0; i < boundary.length; i++) {
-            int b = s.read();
-            if (b != boundary[i]) {
-                if (b != -1) {
-                    s.unread(b);
-                }
-                for (int j = i - 1; j >= 0; j--) {
-                    s.unread(boundary[j]);
-                }
+            if (buffer[pos + i] != boundary[i]) {
                 return false;
             }
         }
+        pos += boundary.length;
+        return true;
+    }
+
+    /**
+     * Consumes the rest of the boundary line after a matched boundary and
+     * ends this stream, returning any bytes read past the line to the
+     * underlying stream.
+     */
+    private void skipBoundaryLine() throws IOException {
         
         /*
          * We have a match. Is it an end boundary?
          */
-        int prev = s.read();
-        int curr = s.read();
-        moreParts = !(prev == '-' && curr == '-');
-        do {
-            if (curr == '\n' && prev == '\r') {
+        while (limit - pos < 2 && fill()) {
+        }
+        moreParts = !(limit - pos >= 2
+                && buffer[pos] == '-' && buffer[pos + 1] == '-');
+        
+        int prev = -1;
+        boolean lineEnded = false;
+        while (!lineEnded) {
+            while (pos < limit) {
+                byte curr = buffer[pos++];
+                if (curr == '\n' && prev == '\r') {
+                    lineEnded = true;
+                    break;
+                }
+                prev = curr;
+            }
+            if (!lineEnded && !fill()) {
+                moreParts = false;
+                parenteof = true;
                 break;
             }
-            prev = curr;
-        } while ((curr = s.read()) != -1);
-        
-        if (curr == -1) {
-            moreParts = false;
-            parenteof = true;
         }
         
         eof = true;
-        
-        return true;
+        if (pos < limit) {
+            s.unread(buffer, pos, limit - pos);
+        }
+        pos = 0;
+        limit = 0;
+        safeLimit = 0;
     }
 }
@@ -24,6 +24,7 @@ import org.apache.james.mime4j.decoder.QuotedPrintableInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.util.BitSet;
 import java.util.LinkedList;
 
@@ -57,6 +58,7 @@ public class MimeStreamParser {
     private ContentHandler handler = null;
     private boolean raw = false;
     private boolean prematureEof = false;
+    private final byte[] skipBuffer = new byte[4096];
 
     static {
         fieldChars = new BitSet();
@@ -141,13 +143,22 @@ public class MimeStreamParser {
 
             handler.startMultipart(bd);
 
+            /*
+             * The body part streams read ahead of their boundaries and push
+             * the excess back into partSource, so everything after this
+             * point, the epilogue included, has to be read through it.
+             */
+            PushbackInputStream partSource =
+                MimeBoundaryInputStream.newPartSource(is, bd.getBoundary());
+            is = partSource;
+
             MimeBoundaryInputStream tempIs =
-                new MimeBoundaryInputStream(is, bd.getBoundary());
+                new MimeBoundaryInputStream(partSource, bd.getBoundary());
             handler.preamble(new CloseShieldInputStream(tempIs));
             tempIs.consume();
 
             while (tempIs.hasMoreParts()) {
-                tempIs = new MimeBoundaryInputStream(is, bd.getBoundary());
+                tempIs = new MimeBoundaryInputStream(partSource, bd.getBoundary());
                 parseBodyPart(tempIs);
                 tempIs.consume();
                 if (tempIs.parentEOF()) {
@@ -188,7 +199,7 @@ public class MimeStreamParser {
         /*
          * Make sure the stream has been consumed.
          */
-        while (is.read() != -1) {
+        while (is.read(skipBuffer) != -1) {
         }
     }
 
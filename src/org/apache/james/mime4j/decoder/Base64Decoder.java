@@ -0,0 +1,162 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table-driven Base-64 decoder that works a block at a time, from one
+ * buffer straight into another.
+ * <p>
+ * Characters outside the Base-64 alphabet, such as line breaks, are
+ * skipped. Decoding ends at the first '=', after which the decoder accepts
+ * no more input. An incomplete quantum left at the end of the input without
+ * padding is dropped.
+ */
+public class Base64Decoder {
+
+    private int accum = 0;
+    /** Number of sextets in {@link #accum}, 0 to 3. */
+    private int count = 0;
+    private boolean done = false;
+
+    /**
+     * Determines if the padding at the end of the encoded data has been
+     * reached. No more bytes will be decoded once it has.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Decodes as much of <code>in</code> into <code>out</code> as fits,
+     * advancing the position of both. Decoding stops when <code>in</code> is
+     * exhausted, <code>out</code> has no room for the next bytes or the
+     * padding is reached. At least three bytes of room are needed to be
+     * sure of making progress.
+     */
+    public void decode(ByteBuffer in, ByteBuffer out) {
+        if (in.hasArray() && out.hasArray()) {
+            decodeArrays(in, out);
+            return;
+        }
+
+        byte[] src = new byte[in.remaining()];
+        int start = in.position();
+        in.get(src);
+        ByteBuffer arrayIn = ByteBuffer.wrap(src);
+        ByteBuffer arrayOut = ByteBuffer.allocate(out.remaining());
+        decodeArrays(arrayIn, arrayOut);
+        in.position(start + arrayIn.position());
+        out.put(arrayOut.array(), 0, arrayOut.position());
+    }
+
+    private void decodeArrays(ByteBuffer in, ByteBuffer out) {
+        final byte[] src = in.array();
+        final int inOffset = in.arrayOffset();
+        final int inEnd = inOffset + in.limit();
+        int i = inOffset + in.position();
+
+        final byte[] dst = out.array();
+        final int outOffset = out.arrayOffset();
+        final int outEnd = outOffset + out.limit();
+        int o = outOffset + out.position();
+
+        while (i < inEnd && !done) {
+            /*
+             * Fast path for the common case of four characters from the
+             * alphabet in a row.
+             */
+            if (count == 0 && inEnd - i >= 4 && outEnd - o >= 3) {
+                int a = TRANSLATION[src[i] & 0xFF];
+                int b = TRANSLATION[src[i + 1] & 0xFF];
+                int c = TRANSLATION[src[i + 2] & 0xFF];
+                int d = TRANSLATION[src[i + 3] & 0xFF];
+                if ((a | b | c | d) >= 0) {
+                    int v = (a << 18) | (b << 12) | (c << 6) | d;
+                    dst[o++] = (byte) (v >> 16);
+                    dst[o++] = (byte) (v >> 8);
+                    dst[o++] = (byte) v;
+                    i += 4;
+                    continue;
+                }
+            }
+
+            int ch = src[i] & 0xFF;
+            if (ch == '=') {
+                // count - 1 bytes are left in the last, padded quantum
+                if (count >= 2 && outEnd - o < count - 1) {
+                    break;
+                }
+                i++;
+                done = true;
+                if (count == 3) {
+                    dst[o++] = (byte) (accum >> 10);
+                    dst[o++] = (byte) (accum >> 2);
+                } else if (count == 2) {
+                    dst[o++] = (byte) (accum >> 4);
+                }
+                accum = 0;
+                count = 0;
+                break;
+            }
+
+            int sx = TRANSLATION[ch];
+            if (sx < 0) {
+                i++;
+                continue;
+            }
+            if (count == 3 && outEnd - o < 3) {
+                break;
+            }
+            i++;
+            accum = (accum << 6) | sx;
+            if (++count == 4) {
+                dst[o++] = (byte) (accum >> 16);
+                dst[o++] = (byte) (accum >> 8);
+                dst[o++] = (byte) accum;
+                accum = 0;
+                count = 0;
+            }
+        }
+
+        in.position(i - inOffset);
+        out.position(o - outOffset);
+    }
+
+    private static final byte[] TRANSLATION = {
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x00 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x10 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, -1, -1, 63, /* 0x20 */
+        52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -1, -1, -1, /* 0x30 */
+        -1, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, /* 0x40 */
+        15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, -1, -1, -1, -1, -1, /* 0x50 */
+        -1, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, /* 0x60 */
+        41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, -1, -1, -1, -1, -1, /* 0x70 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x80 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x90 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xA0 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xB0 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xC0 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xD0 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xE0 */
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1  /* 0xF0 */
+    };
+}
@@ -25,23 +25,33 @@ package org.apache.james.mime4j.decoder;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Performs Base-64 decoding on an underlying stream.
+ * <p>
+ * The underlying stream is read a block at a time and decoded by a
+ * {@link Base64Decoder}, straight into the caller's array when it has room
+ * for a full quantum.
  * 
  * 
  * @version $Id: Base64InputStream.java,v 1.3 2004/11/29 13:15:47 ntherning Exp $
  */
 public class Base64InputStream extends InputStream {
+    private static final int BUFFER_SIZE = 4096;
+
     private final InputStream s;
-    private int outCount = 0;
-    private int outIndex = 0;
-    private final int[] outputBuffer = new int[3];
-    private final byte[] inputBuffer = new byte[4];
-    private boolean done = false;
+    private final Base64Decoder decoder = new Base64Decoder();
+    private final byte[] inputBytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer inputBuffer = ByteBuffer.wrap(inputBytes);
+    /** Decoded bytes not yet returned, between position and limit. */
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(BUFFER_SIZE / 4 * 3);
+    private boolean sourceEOF = false;
 
     public Base64InputStream(InputStream s) {
         this.s = s;
+        inputBuffer.limit(0);
+        outputBuffer.limit(0);
     }
 
     /**
@@ -56,96 +66,70 @@ public class Base64InputStream extends InputStream {
     
     @Override
     public int read() throws IOException {
-        if (outIndex == outCount) {
-            fillBuffer();
-            if (outIndex == outCount) {
+        if (!outputBuffer.hasRemaining()) {
+            outputBuffer.clear();
+            decodeInto(outputBuffer);
+            outputBuffer.flip();
+            if (!outputBuffer.hasRemaining()) {
                 return -1;
             }
         }
 
-        return outputBuffer[outIndex++];
+        return outputBuffer.get() & 0xFF;
     }
 
-    /**
-     * Retrieve data from the underlying stream, decode it,
-     * and put the results in the byteq.
-     * @throws IOException
-     */
-    private void fillBuffer() throws IOException {
-        outCount = 0;
-        outIndex = 0;
-        int inCount = 0;
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
 
-        int i;
-        // "done" is needed for the two successive '=' at the end
-        while (!done) {
-            switch (i = s.read()) {
-                case -1:
-                    // No more input - just return, let outputBuffer drain out, and be done
-                    return;
-                case '=':
-                    // once we meet the first '=', avoid reading the second '='
-                    done = true;
-                    decodeAndEnqueue(inCount);
-                    return;
-                default:
-                    byte sX = TRANSLATION[i];
-                    if (sX < 0) continue;
-                    inputBuffer[inCount++] = sX;
-                    if (inCount == 4) {
-                        decodeAndEnqueue(inCount);
-                        return;
-                    }
-                    break;
+        int n;
+        if (outputBuffer.hasRemaining()) {
+            n = Math.min(len, outputBuffer.remaining());
+            outputBuffer.get(b, off, n);
+        } else if (len >= 3) {
+            n = decodeInto(ByteBuffer.wrap(b, off, len));
+        } else {
+            int c = read();
+            if (c == -1) {
+                return -1;
             }
+            b[off] = (byte) c;
+            n = 1;
         }
-    }
 
-    private void decodeAndEnqueue(int len) {
-        int accum = 0;
-        accum |= inputBuffer[0] << 18;
-        accum |= inputBuffer[1] << 12;
-        accum |= inputBuffer[2] << 6;
-        accum |= inputBuffer[3];
-
-        // There's a bit of duplicated code here because we want to have straight-through operation
-        // for the most common case of len==4
-        if (len == 4) {
-            outputBuffer[0] = (accum >> 16) & 0xFF;
-            outputBuffer[1] = (accum >> 8) & 0xFF;
-            outputBuffer[2] = (accum) & 0xFF;
-            outCount = 3;
-            return;
-        } else if (len == 3) {
-            outputBuffer[0] = (accum >> 16) & 0xFF;
-            outputBuffer[1] = (accum >> 8) & 0xFF;
-            outCount = 2;
-            return;
-        } else {    // len == 2
-            outputBuffer[0] = (accum >> 16) & 0xFF;
-            outCount = 1;
-            return;
-        }
+        return n == 0 ? -1 : n;
     }
 
-    private static byte[] TRANSLATION = {
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x00 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x10 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, -1, -1, 63, /* 0x20 */
-        52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -1, -1, -1, /* 0x30 */
-        -1, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, /* 0x40 */
-        15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, -1, -1, -1, -1, -1, /* 0x50 */
-        -1, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, /* 0x60 */
-        41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, -1, -1, -1, -1, -1, /* 0x70 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x80 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0x90 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xA0 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xB0 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xC0 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xD0 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, /* 0xE0 */
-        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1     /* 0xF0 */
-    };
+    @Override
+    public int available() throws IOException {
+        return outputBuffer.remaining();
+    }
 
+    /**
+     * Decodes into <code>out</code>, which must have room for at least three
+     * bytes, reading from the underlying stream until at least one byte
+     * has been decoded or there is nothing left to decode.
+     * 
+     * @return the number of bytes decoded, 0 at the end of the data.
+     */
+    private int decodeInto(ByteBuffer out) throws IOException {
+        int start = out.position();
+        while (true) {
+            decoder.decode(inputBuffer, out);
+            if (out.position() > start || decoder.isDone() || sourceEOF) {
+                return out.position() - start;
+            }
 
+            // The decoder used up the input without completing a quantum
+            int n = s.read(inputBytes, 0, inputBytes.length);
+            if (n == -1) {
+                sourceEOF = true;
+            } else {
+                inputBuffer.clear();
+                inputBuffer.limit(n);
+            }
+        }
+    }
 }
@@ -25,10 +25,9 @@ import org.apache.james.mime4j.LogFactory;
 //END android-changed
 import org.apache.james.mime4j.util.CharsetUtil;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 /**
  * Static methods for decoding strings, byte arrays and encoded words.
@@ -46,18 +45,16 @@ public class DecoderUtil {
      * @return the decoded bytes.
      */
     public static byte[] decodeBaseQuotedPrintable(String s) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
         try {
             byte[] bytes = s.getBytes("US-ASCII");
-            
-            QuotedPrintableInputStream is = new QuotedPrintableInputStream(
-                                               new ByteArrayInputStream(bytes));
-            
-            int b = 0;
-            while ((b = is.read()) != -1) {
-                baos.write(b);
-            }
+
+            /*
+             * Decoded data is never longer than the input, but the decoder
+             * wants three bytes of room for every step.
+             */
+            ByteBuffer out = ByteBuffer.allocate(bytes.length + 3);
+            new QuotedPrintableDecoder().decode(ByteBuffer.wrap(bytes), out);
+            return copyOfPosition(out);
         } catch (IOException e) {
             /*
              * This should never happen!
@@ -65,7 +62,7 @@ public class DecoderUtil {
             log.error(e);
         }
         
-        return baos.toByteArray();
+        return new byte[0];
     }
     
     /**
@@ -75,18 +72,12 @@ public class DecoderUtil {
      * @return the decoded bytes.
      */
     public static byte[] decodeBase64(String s) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
         try {
             byte[] bytes = s.getBytes("US-ASCII");
             
-            Base64InputStream is = new Base64InputStream(
-                                        new ByteArrayInputStream(bytes));
-            
-            int b = 0;
-            while ((b = is.read()) != -1) {
-                baos.write(b);
-            }
+            ByteBuffer out = ByteBuffer.allocate(bytes.length / 4 * 3 + 3);
+            new Base64Decoder().decode(ByteBuffer.wrap(bytes), out);
+            return copyOfPosition(out);
         } catch (IOException e) {
             /*
              * This should never happen!
@@ -94,7 +85,13 @@ public class DecoderUtil {
             log.error(e);
         }
         
-        return baos.toByteArray();
+        return new byte[0];
+    }
+
+    private static byte[] copyOfPosition(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, result, 0, result.length);
+        return result;
     }
     
     /**
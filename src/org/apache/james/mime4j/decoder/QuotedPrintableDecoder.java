@@ -0,0 +1,254 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.decoder;
+
+//BEGIN android-changed: Stubbing out logging
+import org.apache.james.mime4j.Log;
+import org.apache.james.mime4j.LogFactory;
+//END android-changed
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table-driven Quoted-Printable decoder that works a block at a time, from
+ * one buffer straight into another.
+ * <p>
+ * Runs of plain characters are copied as they are. "Transport padding",
+ * i.e. whitespace that appears immediately before a line break or the end
+ * of the data, is dropped, so whitespace is held back until the character
+ * after it has been seen. Soft line breaks are removed and malformed
+ * escapes are passed through.
+ */
+public class QuotedPrintableDecoder {
+    private static Log log = LogFactory.getLog(QuotedPrintableDecoder.class);
+
+    /** Start state, no bytes pending. */
+    private static final int STATE_START = 0;
+    /** Encountered "=" so far. */
+    private static final int STATE_ESCAPE = 1;
+    /** Encountered "=\r" so far. */
+    private static final int STATE_SOFT_BREAK = 2;
+    /** Encountered "=" and one hex digit so far. */
+    private static final int STATE_HEX = 3;
+
+    private int state = STATE_START;
+    /** First digit of an escaped octet. */
+    private byte msdChar = 0;
+
+    /** Whitespace held back until we know whether it is transport padding. */
+    private byte[] whitespace = new byte[16];
+    private int whitespaceStart = 0;
+    private int whitespaceEnd = 0;
+
+    /**
+     * Decodes as much of <code>in</code> into <code>out</code> as fits,
+     * advancing the position of both. Decoding stops when <code>in</code> is
+     * exhausted or <code>out</code> has no room for the next bytes. At least
+     * three bytes of room are needed to be sure of making progress. Decoded
+     * data is never longer than the input it came from.
+     * <p>
+     * Whitespace and incomplete escapes at the end of <code>in</code> are
+     * held until the next call. If there is no more input they are dropped.
+     */
+    public void decode(ByteBuffer in, ByteBuffer out) {
+        if (in.hasArray() && out.hasArray()) {
+            decodeArrays(in, out);
+            return;
+        }
+
+        byte[] src = new byte[in.remaining()];
+        int start = in.position();
+        in.get(src);
+        ByteBuffer arrayIn = ByteBuffer.wrap(src);
+        ByteBuffer arrayOut = ByteBuffer.allocate(out.remaining());
+        decodeArrays(arrayIn, arrayOut);
+        in.position(start + arrayIn.position());
+        out.put(arrayOut.array(), 0, arrayOut.position());
+    }
+
+    private void decodeArrays(ByteBuffer in, ByteBuffer out) {
+        final byte[] src = in.array();
+        final int inOffset = in.arrayOffset();
+        final int inEnd = inOffset + in.limit();
+        int i = inOffset + in.position();
+
+        final byte[] dst = out.array();
+        final int outOffset = out.arrayOffset();
+        final int outEnd = outOffset + out.limit();
+        int o = outOffset + out.position();
+
+        decoding:
+        while (i < inEnd) {
+            /*
+             * Fast path: copy a run of characters that need no decoding.
+             */
+            if (state == STATE_START && whitespaceStart == whitespaceEnd) {
+                int end = Math.min(inEnd, i + outEnd - o);
+                int start = i;
+                while (i < end && PLAIN[src[i] & 0xFF]) {
+                    i++;
+                }
+                System.arraycopy(src, start, dst, o, i - start);
+                o += i - start;
+                if (i == inEnd) {
+                    break;
+                }
+            }
+
+            byte b = src[i];
+            if (b == ' ' || b == '\t') {
+                holdWhitespace(b);
+                i++;
+                continue;
+            }
+
+            if (b == '\r' || b == '\n') {
+                // discard any whitespace preceding EOL
+                whitespaceStart = 0;
+                whitespaceEnd = 0;
+            } else {
+                while (whitespaceStart < whitespaceEnd) {
+                    if (outEnd - o < 3) {
+                        break decoding;
+                    }
+                    o = decodeByte(whitespace[whitespaceStart++], dst, o);
+                }
+                whitespaceStart = 0;
+                whitespaceEnd = 0;
+            }
+
+            if (outEnd - o < 3) {
+                break;
+            }
+            o = decodeByte(b, dst, o);
+            i++;
+        }
+
+        in.position(i - inOffset);
+        out.position(o - outOffset);
+    }
+
+    private void holdWhitespace(byte b) {
+        if (whitespaceEnd == whitespace.length) {
+            byte[] grown = new byte[whitespace.length * 2];
+            System.arraycopy(whitespace, whitespaceStart, grown, 0,
+                    whitespaceEnd - whitespaceStart);
+            whitespaceEnd -= whitespaceStart;
+            whitespaceStart = 0;
+            whitespace = grown;
+        }
+        whitespace[whitespaceEnd++] = b;
+    }
+
+    /**
+     * Runs one byte through the decoding state machine, writing up to three
+     * bytes to <code>dst</code> at <code>o</code>.
+     * 
+     * @return the new output position.
+     */
+    private int decodeByte(byte b, byte[] dst, int o) {
+        switch (state) {
+            case STATE_START:
+                if (b != '=') {
+                    dst[o++] = b;
+                } else {
+                    state = STATE_ESCAPE;
+                }
+                break;
+            case STATE_ESCAPE:
+                if (b == '\r') {
+                    state = STATE_SOFT_BREAK;
+                } else if (HEX[b & 0xFF] >= 0) {
+                    state = STATE_HEX;
+                    msdChar = b;  // save until next digit encountered
+                } else if (b == '=') {
+                    /*
+                     * Special case when == is encountered.
+                     * Emit one = and stay in this state.
+                     */
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; got ==");
+                    }
+                    dst[o++] = '=';
+                } else {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; expected \\r or "
+                                + "[0-9A-Z], got " + b);
+                    }
+                    state = STATE_START;
+                    dst[o++] = '=';
+                    dst[o++] = b;
+                }
+                break;
+            case STATE_SOFT_BREAK:
+                state = STATE_START;
+                if (b != '\n') {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; expected "
+                                + (int) '\n' + ", got " + b);
+                    }
+                    dst[o++] = '=';
+                    dst[o++] = '\r';
+                    dst[o++] = b;
+                }
+                break;
+            case STATE_HEX:
+                state = STATE_START;
+                int low = HEX[b & 0xFF];
+                if (low >= 0) {
+                    dst[o++] = (byte) ((HEX[msdChar & 0xFF] << 4) | low);
+                } else {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Malformed MIME; expected "
+                                 + "[0-9A-Z], got " + b);
+                    }
+                    dst[o++] = '=';
+                    dst[o++] = msdChar;
+                    dst[o++] = b;
+                }
+                break;
+            default:  // should never happen
+                log.error("Illegal state: " + state);
+                state = STATE_START;
+                dst[o++] = b;
+                break;
+        }
+        return o;
+    }
+
+    /** Value of each hexadecimal digit, or -1. */
+    private static final byte[] HEX = new byte[256];
+    /** Characters copied as they are when no escape or whitespace is pending. */
+    private static final boolean[] PLAIN = new boolean[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            HEX[i] = -1;
+            PLAIN[i] = i != '=' && i != ' ' && i != '\t';
+        }
+        for (int i = 0; i < 10; i++) {
+            HEX['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX['A' + i] = (byte) (0xA + i);
+            HEX['a' + i] = (byte) (0xA + i);
+        }
+    }
+}
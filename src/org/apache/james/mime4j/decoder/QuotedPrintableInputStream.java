@@ -21,29 +21,34 @@ package org.apache.james.mime4j.decoder;
 
 import java.io.IOException;
 import java.io.InputStream;
-
-//BEGIN android-changed: Stubbing out logging
-import org.apache.james.mime4j.Log;
-import org.apache.james.mime4j.LogFactory;
-//END android-changed
+import java.nio.ByteBuffer;
 
 /**
  * Performs Quoted-Printable decoding on an underlying stream.
+ * <p>
+ * The underlying stream is read a block at a time and decoded by a
+ * {@link QuotedPrintableDecoder}, straight into the caller's array when it
+ * has room for at least three bytes.
  * 
  * 
  * 
  * @version $Id: QuotedPrintableInputStream.java,v 1.3 2004/11/29 13:15:47 ntherning Exp $
  */
 public class QuotedPrintableInputStream extends InputStream {
-    private static Log log = LogFactory.getLog(QuotedPrintableInputStream.class);
-    
+    private static final int BUFFER_SIZE = 4096;
+
     private InputStream stream;
-    ByteQueue byteq = new ByteQueue();
-    ByteQueue pushbackq = new ByteQueue();
-    private byte state = 0;
+    private final QuotedPrintableDecoder decoder = new QuotedPrintableDecoder();
+    private final byte[] inputBytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer inputBuffer = ByteBuffer.wrap(inputBytes);
+    /** Decoded bytes not yet returned, between position and limit. */
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean sourceEOF = false;
 
     public QuotedPrintableInputStream(InputStream stream) {
         this.stream = stream;
+        inputBuffer.limit(0);
+        outputBuffer.limit(0);
     }
     
     /**
@@ -56,174 +61,72 @@ public class QuotedPrintableInputStream extends InputStream {
     }
 
     public int read() throws IOException {
-        fillBuffer();
-        if (byteq.count() == 0)
-            return -1;
-        else {
-            byte val = byteq.dequeue();
-            if (val >= 0)
-                return val;
-            else
-                return val & 0xFF;
+        if (!outputBuffer.hasRemaining()) {
+            outputBuffer.clear();
+            decodeInto(outputBuffer);
+            outputBuffer.flip();
+            if (!outputBuffer.hasRemaining()) {
+                return -1;
+            }
         }
-    }
 
-    /**
-     * Pulls bytes out of the underlying stream and places them in the
-     * pushback queue.  This is necessary (vs. reading from the
-     * underlying stream directly) to detect and filter out "transport
-     * padding" whitespace, i.e., all whitespace that appears immediately
-     * before a CRLF.
-     *
-     * @throws IOException Underlying stream threw IOException.
-     */
-    private void populatePushbackQueue() throws IOException {
-        //Debug.verify(pushbackq.count() == 0, "PopulatePushbackQueue called when pushback queue was not empty!");
-
-        if (pushbackq.count() != 0)
-            return;
+        return outputBuffer.get() & 0xFF;
+    }
 
-        while (true) {
-            int i = stream.read();
-            switch (i) {
-                case -1:
-                    // stream is done
-                    pushbackq.clear();  // discard any whitespace preceding EOF
-                    return;
-                case ' ':
-                case '\t':
-                    pushbackq.enqueue((byte)i);
-                    break;
-                case '\r':
-                case '\n':
-                    pushbackq.clear();  // discard any whitespace preceding EOL
-                    pushbackq.enqueue((byte)i);
-                    return;
-                default:
-                    pushbackq.enqueue((byte)i);
-                    return;
-            }
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
         }
-    }
 
-    /**
-     * Causes the pushback queue to get populated if it is empty, then
-     * consumes and decodes bytes out of it until one or more bytes are
-     * in the byte queue.  This decoding step performs the actual QP
-     * decoding.
-     *
-     * @throws IOException Underlying stream threw IOException.
-     */
-    private void fillBuffer() throws IOException {
-        byte msdChar = 0;  // first digit of escaped num
-        while (byteq.count() == 0) {
-            if (pushbackq.count() == 0) {
-                populatePushbackQueue();
-                if (pushbackq.count() == 0)
-                    return;
+        int n;
+        if (outputBuffer.hasRemaining()) {
+            n = Math.min(len, outputBuffer.remaining());
+            outputBuffer.get(b, off, n);
+        } else if (len >= 3) {
+            n = decodeInto(ByteBuffer.wrap(b, off, len));
+        } else {
+            int c = read();
+            if (c == -1) {
+                return -1;
             }
+            b[off] = (byte) c;
+            n = 1;
+        }
 
-            byte b = (byte)pushbackq.dequeue();
+        return n == 0 ? -1 : n;
+    }
 
-            switch (state) {
-                case 0:  // start state, no bytes pending
-                    if (b != '=') {
-                        byteq.enqueue(b);
-                        break;  // state remains 0
-                    } else {
-                        state = 1;
-                        break;
-                    }
-                case 1:  // encountered "=" so far
-                    if (b == '\r') {
-                        state = 2;
-                        break;
-                    } else if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f')) {
-                        state = 3;
-                        msdChar = b;  // save until next digit encountered
-                        break;
-                    } else if (b == '=') {
-                        /*
-                         * Special case when == is encountered.
-                         * Emit one = and stay in this state.
-                         */
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; got ==");
-                        }
-                        byteq.enqueue((byte)'=');
-                        break;
-                    } else {
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; expected \\r or "
-                                    + "[0-9A-Z], got " + b);
-                        }
-                        state = 0;
-                        byteq.enqueue((byte)'=');
-                        byteq.enqueue(b);
-                        break;
-                    }
-                case 2:  // encountered "=\r" so far
-                    if (b == '\n') {
-                        state = 0;
-                        break;
-                    } else {
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; expected " 
-                                    + (int)'\n' + ", got " + b);
-                        }
-                        state = 0;
-                        byteq.enqueue((byte)'=');
-                        byteq.enqueue((byte)'\r');
-                        byteq.enqueue(b);
-                        break;
-                    }
-                case 3:  // encountered =<digit> so far; expecting another <digit> to complete the octet
-                    if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f')) {
-                        byte msd = asciiCharToNumericValue(msdChar);
-                        byte low = asciiCharToNumericValue(b);
-                        state = 0;
-                        byteq.enqueue((byte)((msd << 4) | low));
-                        break;
-                    } else {
-                        if (log.isWarnEnabled()) {
-                            log.warn("Malformed MIME; expected "
-                                     + "[0-9A-Z], got " + b);
-                        }
-                        state = 0;
-                        byteq.enqueue((byte)'=');
-                        byteq.enqueue(msdChar);
-                        byteq.enqueue(b);
-                        break;
-                    }
-                default:  // should never happen
-                    log.error("Illegal state: " + state);
-                    state = 0;
-                    byteq.enqueue(b);
-                    break;
-            }
-        }
+    public int available() throws IOException {
+        return outputBuffer.remaining();
     }
 
     /**
-     * Converts '0' => 0, 'A' => 10, etc.
-     * @param c ASCII character value.
-     * @return Numeric value of hexadecimal character.
+     * Decodes into <code>out</code>, which must have room for at least three
+     * bytes, reading from the underlying stream until at least one byte
+     * has been decoded or the underlying stream is exhausted.
+     * 
+     * @return the number of bytes decoded, 0 at the end of the data.
      */
-    private byte asciiCharToNumericValue(byte c) {
-        if (c >= '0' && c <= '9') {
-            return (byte)(c - '0');
-        } else if (c >= 'A' && c <= 'Z') {
-            return (byte)(0xA + (c - 'A'));
-        } else if (c >= 'a' && c <= 'z') {
-            return (byte)(0xA + (c - 'a'));
-        } else {
+    private int decodeInto(ByteBuffer out) throws IOException {
+        int start = out.position();
+        while (true) {
+            decoder.decode(inputBuffer, out);
+            if (out.position() > start || sourceEOF) {
+                return out.position() - start;
+            }
+
             /*
-             * This should never happen since all calls to this method
-             * are preceded by a check that c is in [0-9A-Za-z]
+             * The decoder used up the input while holding back whitespace or
+             * an escape sequence. Whatever is still held when the underlying
+             * stream ends is dropped.
              */
-            throw new IllegalArgumentException((char) c 
-                    + " is not a hexadecimal digit");
+            int n = stream.read(inputBytes, 0, inputBytes.length);
+            if (n == -1) {
+                sourceEOF = true;
+            } else {
+                inputBuffer.clear();
+                inputBuffer.limit(n);
+            }
         }
     }
-
 }
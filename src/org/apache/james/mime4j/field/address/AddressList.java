@@ -19,10 +19,8 @@
 
 package org.apache.james.mime4j.field.address;
 
-import org.apache.james.mime4j.field.address.parser.AddressListParser;
 import org.apache.james.mime4j.field.address.parser.ParseException;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 
 /**
@@ -109,8 +107,7 @@ public class AddressList {
 	 * The string MUST be unfolded already.
 	 */
 	public static AddressList parse(String rawAddressList) throws ParseException {
-		AddressListParser parser = new AddressListParser(new StringReader(rawAddressList));
-		return Builder.getInstance().buildAddressList(parser.parse());
+		return AddressParser.getInstance().parse(rawAddressList);
 	}
 
 	/**
@@ -0,0 +1,466 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.address;
+
+import org.apache.james.mime4j.decoder.DecoderUtil;
+import org.apache.james.mime4j.field.address.parser.ParseException;
+
+import java.util.ArrayList;
+
+/**
+ * Hand-written parser for address lists that accepts the same language as
+ * the JavaCC generated {@link org.apache.james.mime4j.field.address.parser.AddressListParser}
+ * and builds the same addresses as {@link Builder} does from its syntax
+ * tree, without the token objects and the tree in between.
+ * <p>
+ * The input is first split into tokens, which are kept as offsets into the
+ * input in int arrays that are reused from one parse to the next, and then
+ * parsed by recursive descent straight into {@link Address} objects. The
+ * only objects made are the addresses and their strings.
+ * <p>
+ * Instances are not thread safe; use {@link #getInstance} to get the one of
+ * the calling thread.
+ */
+final class AddressParser {
+
+    // token kinds; other tokens are the punctuation characters themselves
+    private static final int EOF = -1;
+    private static final int DOT_ATOM = 0;
+    private static final int QUOTED_STRING = 1;
+    private static final int DOMAIN_LITERAL = 2;
+
+    private static final ThreadLocal<AddressParser> sParser = new ThreadLocal<AddressParser>() {
+        @Override
+        protected AddressParser initialValue() {
+            return new AddressParser();
+        }
+    };
+
+    private CharSequence input;
+    private int[] kinds = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count;
+    /** The index of the next token to parse. */
+    private int pos;
+    private final StringBuilder buffer = new StringBuilder();
+
+    static AddressParser getInstance() {
+        return sParser.get();
+    }
+
+    /**
+     * Parses an unfolded address list, such as the value of a From, To or
+     * Cc header.
+     */
+    AddressList parse(CharSequence addressList) throws ParseException {
+        input = addressList;
+        try {
+            tokenize();
+            pos = 0;
+            final ArrayList<Address> addresses = new ArrayList<Address>();
+            if (startsMailbox()) {
+                addresses.add(address());
+            }
+            while (kind(pos) == ',') {
+                pos++;
+                if (startsMailbox()) {
+                    addresses.add(address());
+                }
+            }
+            expect(EOF);
+            return new AddressList(addresses, true);
+        } finally {
+            input = null;
+        }
+    }
+
+    private Address address() throws ParseException {
+        if (isAddrSpecAhead()) {
+            return addrSpec(null);
+        }
+        if (kind(pos) == '<') {
+            return angleAddr();
+        }
+        final String name = phrase();
+        if (kind(pos) == ':') {
+            return new Group(name, groupBody());
+        }
+        return new NamedMailbox(DecoderUtil.decodeEncodedWords(name), angleAddr());
+    }
+
+    private Mailbox mailbox() throws ParseException {
+        if (isAddrSpecAhead()) {
+            return addrSpec(null);
+        }
+        if (kind(pos) == '<') {
+            return angleAddr();
+        }
+        final String name = phrase();
+        return new NamedMailbox(DecoderUtil.decodeEncodedWords(name), angleAddr());
+    }
+
+    private boolean startsMailbox() {
+        final int kind = kind(pos);
+        return kind == DOT_ATOM || kind == QUOTED_STRING || kind == '<';
+    }
+
+    private MailboxList groupBody() throws ParseException {
+        expect(':');
+        final ArrayList<Address> mailboxes = new ArrayList<Address>();
+        if (startsMailbox()) {
+            mailboxes.add(mailbox());
+        }
+        while (kind(pos) == ',') {
+            pos++;
+            if (startsMailbox()) {
+                mailboxes.add(mailbox());
+            }
+        }
+        expect(';');
+        return new MailboxList(mailboxes, true);
+    }
+
+    private Mailbox angleAddr() throws ParseException {
+        expect('<');
+        final DomainList route = kind(pos) == '@' ? route() : null;
+        final Mailbox mailbox = addrSpec(route);
+        expect('>');
+        return mailbox;
+    }
+
+    private DomainList route() throws ParseException {
+        final ArrayList<String> domains = new ArrayList<String>();
+        expect('@');
+        domains.add(domain());
+        while (kind(pos) == ',' || kind(pos) == '@') {
+            while (kind(pos) == ',') {
+                pos++;
+            }
+            expect('@');
+            domains.add(domain());
+        }
+        expect(':');
+        return new DomainList(domains, true);
+    }
+
+    private Mailbox addrSpec(DomainList route) throws ParseException {
+        final String localPart = localPart();
+        expect('@');
+        return new Mailbox(route, localPart, domain());
+    }
+
+    private String localPart() throws ParseException {
+        final int first = pos;
+        expectWord();
+        while (isWord(kind(pos)) || kind(pos) == '.') {
+            int separator = pos - 1;
+            if (kind(pos) == '.') {
+                separator = pos++;
+            }
+            if (!endsWithDot(separator)) {
+                throw new ParseException("Words in local part must be separated by '.'");
+            }
+            expectWord();
+        }
+        return buildString(first, pos, true);
+    }
+
+    private String domain() throws ParseException {
+        final int first = pos;
+        if (kind(pos) == DOMAIN_LITERAL) {
+            pos++;
+        } else {
+            expect(DOT_ATOM);
+            while (kind(pos) == DOT_ATOM || kind(pos) == '.') {
+                int separator = pos - 1;
+                if (kind(pos) == '.') {
+                    separator = pos++;
+                }
+                if (!endsWithDot(separator)) {
+                    throw new ParseException("Atoms in domain names must be separated by '.'");
+                }
+                expect(DOT_ATOM);
+            }
+        }
+        return buildString(first, pos, true);
+    }
+
+    private String phrase() throws ParseException {
+        final int first = pos;
+        expectWord();
+        while (isWord(kind(pos))) {
+            pos++;
+        }
+        return buildString(first, pos, false);
+    }
+
+    /**
+     * Looks ahead for the syntax of an addr-spec, the way the JavaCC parser
+     * does: the optional and repeated parts give up and backtrack as soon as
+     * they don't match, and the separators between words aren't checked.
+     */
+    private boolean isAddrSpecAhead() {
+        int i = pos;
+        if (!isWord(kind(i))) {
+            return false;
+        }
+        i++;
+        while (true) {
+            final int next = kind(i) == '.' ? i + 1 : i;
+            if (!isWord(kind(next))) {
+                break;
+            }
+            i = next + 1;
+        }
+        if (kind(i) != '@') {
+            return false;
+        }
+        i++;
+        return kind(i) == DOT_ATOM || kind(i) == DOMAIN_LITERAL;
+    }
+
+    private static boolean isWord(int kind) {
+        return kind == DOT_ATOM || kind == QUOTED_STRING;
+    }
+
+    /**
+     * @return whether a token is a '.' or a dot-atom that ends with one, and
+     * so may be followed by another word without a '.' token in between
+     */
+    private boolean endsWithDot(int token) {
+        return kinds[token] == '.'
+                || (kinds[token] == DOT_ATOM && input.charAt(ends[token] - 1) == '.');
+    }
+
+    private int kind(int token) {
+        return token < count ? kinds[token] : EOF;
+    }
+
+    private void expect(int kind) throws ParseException {
+        if (kind(pos) != kind) {
+            throw unexpected();
+        }
+        pos++;
+    }
+
+    private void expectWord() throws ParseException {
+        if (!isWord(kind(pos))) {
+            throw unexpected();
+        }
+        pos++;
+    }
+
+    private ParseException unexpected() {
+        if (pos >= count) {
+            return new ParseException("Unexpected end of address list");
+        }
+        return new ParseException("Unexpected \""
+                + input.subSequence(starts[pos], ends[pos]) + "\" at column " + (starts[pos] + 1));
+    }
+
+    /**
+     * @return the text of the tokens from <code>first</code> up to but not
+     * including <code>end</code>, with quoted strings unquoted; unless
+     * <code>stripSpaces</code> is set, the spaces and tabs between the tokens
+     * are kept, but not the comments
+     */
+    private String buildString(int first, int end, boolean stripSpaces) {
+        final StringBuilder out = buffer;
+        out.setLength(0);
+        for (int token = first; token < end; token++) {
+            if (!stripSpaces && token > first) {
+                appendSpaces(out, ends[token - 1], starts[token]);
+            }
+            final int start = starts[token];
+            switch (kinds[token]) {
+                case QUOTED_STRING:
+                    appendUnquoted(out, start + 1, ends[token] - 1);
+                    break;
+                case DOMAIN_LITERAL:
+                    out.append('[');
+                    appendUnquoted(out, start + 1, ends[token] - 1);
+                    out.append(']');
+                    break;
+                default:
+                    out.append(input, start, ends[token]);
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    private void appendUnquoted(StringBuilder out, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = input.charAt(i);
+            if (c == '\\') {
+                out.append(input.charAt(++i));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /** Appends the white space between two tokens that is not in a comment. */
+    private void appendSpaces(StringBuilder out, int start, int end) {
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            final char c = input.charAt(i);
+            if (depth == 0) {
+                if (c == '(') {
+                    depth = 1;
+                } else {
+                    out.append(c);
+                }
+            } else if (c == '\\') {
+                i++;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+        }
+    }
+
+    private void tokenize() throws ParseException {
+        final CharSequence s = input;
+        final int length = s.length();
+        count = 0;
+        int i = 0;
+        while (i < length) {
+            final char c = s.charAt(i);
+            final int start = i;
+            switch (c) {
+                case ' ':
+                case '\t':
+                    i++;
+                    continue;
+                case '"':
+                    i = skipQuoted(s, i + 1, '"', false);
+                    addToken(QUOTED_STRING, start, i);
+                    continue;
+                case '[':
+                    i = skipQuoted(s, i + 1, ']', true);
+                    addToken(DOMAIN_LITERAL, start, i);
+                    continue;
+                case '(':
+                    i = skipComment(s, i + 1);
+                    continue;
+                case '<':
+                case '>':
+                case ',':
+                case ':':
+                case ';':
+                case '@':
+                case '.':
+                    addToken(c, start, ++i);
+                    continue;
+                default:
+                    if (!isAtext(c)) {
+                        throw new ParseException("Unexpected '" + c + "' at column " + (i + 1));
+                    }
+                    i++;
+                    while (i < length && (s.charAt(i) == '.' || isAtext(s.charAt(i)))) {
+                        i++;
+                    }
+                    addToken(DOT_ATOM, start, i);
+            }
+        }
+    }
+
+    /**
+     * @return the offset after the <code>close</code> character that ends the
+     * quoted string or domain literal whose contents start at
+     * <code>i</code>
+     */
+    private static int skipQuoted(CharSequence s, int i, char close, boolean isLiteral)
+            throws ParseException {
+        final int length = s.length();
+        while (i < length) {
+            final char c = s.charAt(i);
+            if (c == close) {
+                return i + 1;
+            } else if (c == '\\') {
+                i += 2;
+            } else if (isLiteral && c == '[') {
+                throw new ParseException("Unexpected '[' in domain literal at column " + (i + 1));
+            } else {
+                i++;
+            }
+        }
+        throw new ParseException("Unterminated " + (isLiteral ? "domain literal" : "string"));
+    }
+
+    /**
+     * @return the offset after the ')' that ends the comment whose contents
+     * start at <code>i</code>
+     */
+    private static int skipComment(CharSequence s, int i) throws ParseException {
+        final int length = s.length();
+        int depth = 1;
+        while (i < length) {
+            final char c = s.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        throw new ParseException("Unterminated comment");
+    }
+
+    private static boolean isAtext(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return true;
+        }
+        switch (c) {
+            case '!': case '#': case '$': case '%': case '&': case '\'': case '*': case '+':
+            case '-': case '/': case '=': case '?': case '^': case '_': case '`': case '{':
+            case '|': case '}': case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void addToken(int kind, int start, int end) {
+        if (count == kinds.length) {
+            final int capacity = count * 2;
+            kinds = copyOf(kinds, capacity);
+            starts = copyOf(starts, capacity);
+            ends = copyOf(ends, capacity);
+        }
+        kinds[count] = kind;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        final int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
@@ -42,6 +42,9 @@ import org.apache.james.mime4j.field.address.parser.Token;
  * Transforms the JJTree-generated abstract syntax tree
  * into a graph of org.apache.james.mime4j.field.address objects.
  *
+ * AddressList.parse uses the hand-written AddressParser instead; this is
+ * kept as the reference that it is tested against.
+ *
  *
  */
 class Builder {
@@ -50,6 +50,18 @@ public class DateTime {
         this.timeZone = timeZone;
     }
 
+    DateTime(Date date, int year, int month, int day, int hour, int minute, int second,
+            int timeZone) {
+        this.date = date;
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        this.hour = hour;
+        this.minute = minute;
+        this.second = second;
+        this.timeZone = timeZone;
+    }
+
     private int convertToYear(String yearString) {
         int year = Integer.parseInt(yearString);
         switch (yearString.length()) {
@@ -117,6 +129,10 @@ public class DateTime {
 
 
     public static DateTime parse(String dateString) throws ParseException {
+        final DateTime fast = FastDateTime.parse(dateString);
+        if (fast != null) {
+            return fast;
+        }
         try {
             return new DateTimeParser(new StringReader(dateString)).parseAll();
         }
@@ -0,0 +1,317 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mime4j.field.datetime;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parser and formatter for dates in the layout that nearly all Date
+ * headers use, "EEE, d MMM yyyy HH:mm:ss Z", such as
+ * "Fri, 3 Jan 2014 09:05:07 +0100 (CET)".
+ * <p>
+ * The parser accepts only that layout, with or without the day of the week
+ * and the seconds, with a numeric, "GMT" or "UT" zone and an optional
+ * comment at the end, and with fields in their usual ranges. It gives the
+ * same results as {@link org.apache.james.mime4j.field.datetime.parser.DateTimeParser}
+ * for those, and returns null for anything else, which is then left to that
+ * parser. The arithmetic is done directly on the fields, without a
+ * Calendar, so both methods are thread safe.
+ */
+public final class FastDateTime {
+
+    private static final String[] DAYS = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    /** Dates before this are in the Julian calendar for GregorianCalendar. */
+    private static final int MIN_YEAR = 1600;
+    private static final int MAX_YEAR = 9999;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    private FastDateTime() {
+    }
+
+    /**
+     * @return the date in <code>s</code>, or null if it isn't in the usual
+     * layout
+     */
+    public static DateTime parse(CharSequence s) {
+        if (s == null) {
+            return null;
+        }
+        final int length = s.length();
+        int i = skipSpaces(s, 0);
+
+        if (i < length && !isDigit(s.charAt(i))) {
+            if (indexOfName(DAYS, s, i) < 0) {
+                return null;
+            }
+            i = skipSpaces(s, i + 3);
+            if (i == length || s.charAt(i) != ',') {
+                return null;
+            }
+            i = skipSpaces(s, i + 1);
+        }
+
+        int start = i;
+        i = skipDigits(s, i);
+        if (i - start < 1 || i - start > 2) {
+            return null;
+        }
+        final int day = parseDigits(s, start, i);
+        if (day < 1 || day > 31 || (i = skipRequiredSpaces(s, i)) < 0) {
+            return null;
+        }
+
+        final int month = indexOfName(MONTHS, s, i) + 1;
+        if (month == 0 || (i = skipRequiredSpaces(s, i + 3)) < 0) {
+            return null;
+        }
+
+        start = i;
+        i = skipDigits(s, i);
+        if (i - start != 4) {
+            return null;
+        }
+        final int year = parseDigits(s, start, i);
+        if (year < MIN_YEAR || (i = skipRequiredSpaces(s, i)) < 0) {
+            return null;
+        }
+
+        final int hour = parseTwoDigits(s, i);
+        if (hour < 0 || hour > 23 || !isChar(s, i + 2, ':')) {
+            return null;
+        }
+        final int minute = parseTwoDigits(s, i + 3);
+        if (minute < 0 || minute > 59) {
+            return null;
+        }
+        i += 5;
+        int second = 0;
+        if (isChar(s, i, ':')) {
+            second = parseTwoDigits(s, i + 1);
+            if (second < 0 || second > 59) {
+                return null;
+            }
+            i += 3;
+        }
+        if ((i = skipRequiredSpaces(s, i)) < 0) {
+            return null;
+        }
+
+        // the zone, as hours * 100 + minutes like DateTimeParser gives it
+        final int zone;
+        if (isChar(s, i, '+') || isChar(s, i, '-')) {
+            start = i + 1;
+            i = skipDigits(s, start);
+            if (i - start != 4) {
+                return null;
+            }
+            zone = s.charAt(start - 1) == '-'
+                    ? -parseDigits(s, start, i) : parseDigits(s, start, i);
+        } else if (regionMatches(s, i, "GMT")) {
+            zone = 0;
+            i += 3;
+        } else if (regionMatches(s, i, "UT")) {
+            zone = 0;
+            i += 2;
+        } else {
+            return null;
+        }
+
+        i = skipSpaces(s, i);
+        if (isChar(s, i, '(')) {
+            // a simple comment, e.g. the name of the zone
+            i++;
+            while (i < length && s.charAt(i) != ')') {
+                final char c = s.charAt(i++);
+                if (c == '(' || c == '\\' || c == '\r' || c == '\n') {
+                    return null;
+                }
+            }
+            if (i == length) {
+                return null;
+            }
+            i = skipSpaces(s, i + 1);
+        }
+        if (i != length) {
+            return null;
+        }
+
+        final long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000
+                - ((zone / 100) * 60 + zone % 100) * MILLIS_PER_MINUTE;
+        return new DateTime(new Date(millis), year, month, day, hour, minute, second, zone);
+    }
+
+    /**
+     * Formats a date like "Fri, 03 Jan 2014 09:05:07 +0100", as a
+     * SimpleDateFormat with the pattern "EEE, dd MMM yyyy HH:mm:ss Z" and
+     * Locale.US would.
+     */
+    public static String format(Date date, TimeZone zone) {
+        final long time = date.getTime();
+        final int offset = zone.getOffset(time);
+        final long local = time + offset;
+        final long days = floorDiv(local, MILLIS_PER_DAY);
+        final int[] civil = civilFromDays(days);
+        final int year = civil[0];
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            final SimpleDateFormat format =
+                    new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
+            format.setTimeZone(zone);
+            return format.format(date);
+        }
+
+        final int millisOfDay = (int) (local - days * MILLIS_PER_DAY);
+        final int secondOfDay = millisOfDay / 1000;
+        final StringBuilder out = new StringBuilder(31);
+        out.append(DAYS[(int) floorMod(days + 4, 7)]).append(", ");
+        appendTwoDigits(out, civil[2]);
+        out.append(' ').append(MONTHS[civil[1] - 1]).append(' ').append(year).append(' ');
+        appendTwoDigits(out, secondOfDay / 3600);
+        out.append(':');
+        appendTwoDigits(out, secondOfDay / 60 % 60);
+        out.append(':');
+        appendTwoDigits(out, secondOfDay % 60);
+
+        final int offsetMinutes = offset / (int) MILLIS_PER_MINUTE;
+        out.append(offsetMinutes < 0 ? " -" : " +");
+        appendTwoDigits(out, Math.abs(offsetMinutes) / 60);
+        appendTwoDigits(out, Math.abs(offsetMinutes) % 60);
+        return out.toString();
+    }
+
+    /** @return the number of days from 1970-01-01 to a date */
+    static long daysFromCivil(int year, int month, int day) {
+        if (month <= 2) {
+            year--;
+        }
+        final int era = (year >= 0 ? year : year - 399) / 400;
+        final int yearOfEra = year - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /** @return the year, month and day of the date that is <code>days</code> after 1970-01-01 */
+    static int[] civilFromDays(long days) {
+        days += 719468;
+        final long era = floorDiv(days, 146097);
+        final int dayOfEra = (int) (days - era * 146097);
+        final int yearOfEra =
+                (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+        return new int[] {year, month, day};
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long q = x / y;
+        return (x % y != 0 && ((x < 0) != (y < 0))) ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /** @return the index of the three letter name at <code>i</code>, or -1 */
+    private static int indexOfName(String[] names, CharSequence s, int i) {
+        for (int n = 0; n < names.length; n++) {
+            if (regionMatches(s, i, names[n])) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence s, int i, String expected) {
+        if (i + expected.length() > s.length()) {
+            return false;
+        }
+        for (int j = 0; j < expected.length(); j++) {
+            if (s.charAt(i + j) != expected.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isChar(CharSequence s, int i, char c) {
+        return i < s.length() && s.charAt(i) == c;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipSpaces(CharSequence s, int i) {
+        while (i < s.length() && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /** @return the index after the spaces at <code>i</code>, or -1 if there are none */
+    private static int skipRequiredSpaces(CharSequence s, int i) {
+        final int end = skipSpaces(s, i);
+        return end > i ? end : -1;
+    }
+
+    private static int skipDigits(CharSequence s, int i) {
+        while (i < s.length() && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int parseDigits(CharSequence s, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + s.charAt(i) - '0';
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of the two digits at <code>i</code>, or -1 if there
+     * aren't exactly two
+     */
+    private static int parseTwoDigits(CharSequence s, int i) {
+        if (i + 2 > s.length() || !isDigit(s.charAt(i)) || !isDigit(s.charAt(i + 1))
+                || (i + 2 < s.length() && isDigit(s.charAt(i + 2)))) {
+            return -1;
+        }
+        return (s.charAt(i) - '0') * 10 + s.charAt(i + 1) - '0';
+    }
+}
@@ -19,12 +19,19 @@
 
 package org.apache.james.mime4j.util;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 //BEGIN android-changed: Stubbing out logging
 import org.apache.james.mime4j.Log;
@@ -1017,6 +1024,32 @@ public class CharsetUtil {
      */
     private static HashMap<String, Charset> charsetMap = null;
 
+    /**
+     * Maps the character set names given to {@link #lookupJavaCharset} to
+     * the Java character set, to the Java name if the VM doesn't support it,
+     * or to {@link #UNKNOWN_CHARSET}.
+     */
+    private static final ConcurrentHashMap<String, Object> resolvedCharsets =
+            new ConcurrentHashMap<String, Object>();
+    private static final Object UNKNOWN_CHARSET = new Object();
+    private static final int MAX_RESOLVED_CHARSETS = 256;
+
+    private static final int DECODE_BUFFER_SIZE = 8192;
+    /**
+     * The most characters that {@link #decode} allocates before decoding any,
+     * so that a hint that is far off can't exhaust memory on its own.
+     */
+    private static final int MAX_PRESIZED_CHARS = 8 * 1024 * 1024;
+    /** The characters allocated by {@link #decode} when there is no hint. */
+    private static final int DEFAULT_DECODED_CHARS = 1024;
+    private static final ThreadLocal<DecodeBuffers> decodeBuffers =
+            new ThreadLocal<DecodeBuffers>() {
+                @Override
+                protected DecodeBuffers initialValue() {
+                    return new DecodeBuffers();
+                }
+            };
+
     static {
         decodingSupported = new TreeSet<String>();
         encodingSupported = new TreeSet<String>();
@@ -1189,6 +1222,120 @@ public class CharsetUtil {
         return null;
     }
 
+    /**
+     * Gets the Java character set for the specified MIME character set
+     * name, as named by {@link #toJavaCharset(String)}. The lookups are
+     * cached by name, so each name is resolved only once.
+     *
+     * @param charsetName the character set name to look for.
+     * @return the Java character set or <code>null</code> if not known.
+     * @throws UnsupportedCharsetException if the character set is known but
+     *         not supported by the current VM.
+     */
+    public static java.nio.charset.Charset lookupJavaCharset(String charsetName) {
+        Object cached = resolvedCharsets.get(charsetName);
+        if (cached == null) {
+            final String javaName = toJavaCharset(charsetName);
+            if (javaName == null) {
+                cached = UNKNOWN_CHARSET;
+            } else {
+                try {
+                    cached = java.nio.charset.Charset.forName(javaName);
+                } catch (IllegalArgumentException e) {
+                    // IllegalCharsetNameException or UnsupportedCharsetException
+                    cached = javaName;
+                }
+            }
+            // the names come from messages, so don't let odd ones fill the cache
+            if (resolvedCharsets.size() < MAX_RESOLVED_CHARSETS) {
+                resolvedCharsets.put(charsetName, cached);
+            }
+        }
+        if (cached == UNKNOWN_CHARSET) {
+            return null;
+        }
+        if (cached instanceof String) {
+            throw new UnsupportedCharsetException((String) cached);
+        }
+        return (java.nio.charset.Charset) cached;
+    }
+
+    /**
+     * Decodes all of a stream as the given character set, replacing
+     * malformed and unmappable input as <code>new String(bytes, charset)</code>
+     * does, but without first reading the stream into a byte array. The
+     * decoder and buffers are kept per thread and reused.
+     *
+     * @param in the stream to decode, which is not closed.
+     * @param charset the character set of the stream.
+     * @param sizeHint the number of characters expected, or at most, such as
+     *        the number of bytes; 0 if unknown. The characters are decoded
+     *        straight into an array of this size, which only has to grow if
+     *        the hint is too small; at most {@link #MAX_PRESIZED_CHARS} are
+     *        allocated up front.
+     * @return the decoded characters.
+     */
+    public static String decode(InputStream in, java.nio.charset.Charset charset, int sizeHint)
+            throws IOException {
+        final DecodeBuffers buffers = decodeBuffers.get();
+        final CharsetDecoder decoder = buffers.getDecoder(charset);
+        final ByteBuffer bytes = buffers.bytes;
+        bytes.clear();
+        CharBuffer out = CharBuffer.allocate(
+                sizeHint > 0 ? Math.min(sizeHint, MAX_PRESIZED_CHARS) : DEFAULT_DECODED_CHARS);
+
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            final int count = in.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (count < 0) {
+                endOfInput = true;
+            } else {
+                bytes.position(bytes.position() + count);
+            }
+            bytes.flip();
+            while (decoder.decode(bytes, out, endOfInput).isOverflow()) {
+                out = grow(out);
+            }
+            bytes.compact();
+        }
+        while (decoder.flush(out).isOverflow()) {
+            out = grow(out);
+        }
+        // the only copy of the characters
+        return new String(out.array(), 0, out.position());
+    }
+
+    /** @return a buffer twice the size of a full one, holding the same characters */
+    private static CharBuffer grow(CharBuffer chars) {
+        final int capacity = chars.capacity();
+        final CharBuffer bigger = CharBuffer.allocate(
+                capacity < Integer.MAX_VALUE / 2 ? Math.max(capacity * 2, DEFAULT_DECODED_CHARS)
+                        : Integer.MAX_VALUE - 8);
+        chars.flip();
+        bigger.put(chars);
+        return bigger;
+    }
+
+    /** The per thread state of {@link #decode}. */
+    private static class DecodeBuffers {
+        final ByteBuffer bytes = ByteBuffer.allocate(DECODE_BUFFER_SIZE);
+        final HashMap<java.nio.charset.Charset, CharsetDecoder> decoders =
+                new HashMap<java.nio.charset.Charset, CharsetDecoder>();
+
+        CharsetDecoder getDecoder(java.nio.charset.Charset charset) {
+            CharsetDecoder decoder = decoders.get(charset);
+            if (decoder == null) {
+                decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                decoders.put(charset, decoder);
+            } else {
+                decoder.reset();
+            }
+            return decoder;
+        }
+    }
+
     public static java.nio.charset.Charset getCharset(String charsetName) {
         String defaultCharset = "ISO-8859-1";
 
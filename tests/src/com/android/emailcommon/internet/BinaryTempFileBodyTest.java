@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.emailcommon.TempDirectory;
+import com.android.emailcommon.mail.MessagingException;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+@SmallTest
+public class BinaryTempFileBodyTest extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TempDirectory.setTempDirectory(getContext());
+        BinaryTempFileBody.setMemoryThreshold(1024);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BinaryTempFileBody.setMemoryThreshold(BinaryTempFileBody.DEFAULT_MEMORY_THRESHOLD);
+        super.tearDown();
+    }
+
+    private static byte[] bytes(int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private static byte[] roundTrip(byte[] data) throws IOException, MessagingException {
+        final BinaryTempFileBody body = new BinaryTempFileBody();
+        final OutputStream out = body.getOutputStream();
+        // a single byte first, so that both write methods are exercised
+        out.write(data[0]);
+        out.write(data, 1, data.length - 1);
+        out.close();
+
+        final InputStream in = body.getInputStream();
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        IOUtils.copy(in, result);
+        in.close();
+        return result.toByteArray();
+    }
+
+    public void testSmallBodyStaysInMemory() throws IOException, MessagingException {
+        final int inMemory = BinaryTempFileBody.getInMemoryCount();
+        final int spilled = BinaryTempFileBody.getSpillCount();
+        final byte[] data = bytes(1000);
+        assertTrue(Arrays.equals(data, roundTrip(data)));
+        assertEquals(inMemory + 1, BinaryTempFileBody.getInMemoryCount());
+        assertEquals(spilled, BinaryTempFileBody.getSpillCount());
+    }
+
+    public void testLargeBodySpillsToDisk() throws IOException, MessagingException {
+        final int inMemory = BinaryTempFileBody.getInMemoryCount();
+        final int spilled = BinaryTempFileBody.getSpillCount();
+        final byte[] data = bytes(5000);
+        assertTrue(Arrays.equals(data, roundTrip(data)));
+        assertEquals(inMemory, BinaryTempFileBody.getInMemoryCount());
+        assertEquals(spilled + 1, BinaryTempFileBody.getSpillCount());
+    }
+
+    public void testReadAfterDispose() throws IOException, MessagingException {
+        final BinaryTempFileBody body = new BinaryTempFileBody();
+        final OutputStream out = body.getOutputStream();
+        out.write(bytes(10));
+        out.close();
+        body.getInputStream().close();
+        try {
+            body.getInputStream();
+            fail("Expected a MessagingException");
+        } catch (MessagingException expected) {
+        }
+        try {
+            body.writeTo(new ByteArrayOutputStream());
+            fail("Expected a MessagingException");
+        } catch (MessagingException expected) {
+        }
+    }
+
+    public void testWriteAfterClose() throws IOException, MessagingException {
+        // both while the body is in memory and once it is in a file
+        for (int length : new int[] {10, 5000}) {
+            final OutputStream out = new BinaryTempFileBody().getOutputStream();
+            out.write(bytes(length));
+            out.close();
+            try {
+                out.write(1);
+                fail("Expected an IOException");
+            } catch (IOException expected) {
+            }
+            try {
+                out.write(bytes(10), 0, 10);
+                fail("Expected an IOException");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    public void testWriteToEncodesBase64() throws IOException, MessagingException {
+        final BinaryTempFileBody body = new BinaryTempFileBody();
+        final OutputStream out = body.getOutputStream();
+        out.write("Hello, world".getBytes());
+        out.close();
+
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        body.writeTo(encoded);
+        assertEquals("SGVsbG8sIHdvcmxk\r\n", encoded.toString());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.internet;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.emailcommon.mail.MessagingException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+@SmallTest
+public class MimeHeaderTest extends AndroidTestCase {
+
+    public void testLookupIgnoresCase() throws MessagingException {
+        final MimeHeader header = new MimeHeader();
+        header.addHeader("Received", "from a");
+        header.addHeader("Subject", "Hello");
+        header.addRawField("RECEIVED:  from b ");
+        header.addHeader("received", "from c");
+
+        assertEquals("Hello", header.getFirstHeader("subject"));
+        assertEquals("from a", header.getFirstHeader("Received"));
+        assertTrue(Arrays.equals(new String[] {"from a", "from b", "from c"},
+                header.getHeader("ReCeIvEd")));
+        assertNull(header.getHeader("To"));
+        assertNull(header.getFirstHeader("To"));
+    }
+
+    public void testRemoveAndSet() throws MessagingException {
+        final MimeHeader header = new MimeHeader();
+        header.addHeader("To", "a@example.com");
+        header.addHeader("Cc", "b@example.com");
+        header.addHeader("TO", "c@example.com");
+        header.addHeader("Subject", "Hello");
+
+        header.setHeader("to", "d@example.com");
+        assertTrue(Arrays.equals(new String[] {"d@example.com"}, header.getHeader("To")));
+        assertEquals("Cc: b@example.com\r\nSubject: Hello\r\nto: d@example.com\r\n",
+                header.writeToString());
+
+        header.removeHeader("SUBJECT");
+        header.removeHeader("Bcc");
+        assertNull(header.getFirstHeader("Subject"));
+        header.addHeader("Subject", "Again");
+        assertEquals("Cc: b@example.com\r\nto: d@example.com\r\nSubject: Again\r\n",
+                header.writeToString());
+
+        header.clear();
+        assertNull(header.writeToString());
+        assertNull(header.getFirstHeader("Cc"));
+    }
+
+    public void testRawFields() throws MessagingException, IOException {
+        final MimeHeader header = new MimeHeader();
+        header.addRawField("From:\tBob <bob@example.com>  ");
+        header.addRawField("X-Empty:");
+        header.addRawField("not a field");
+        header.addRawField(MimeHeader.HEADER_ANDROID_ATTACHMENT_STORE_DATA + ": 1.2");
+        header.addRawField("Subject: a: b");
+
+        // written before and after the values are cut out of the fields
+        final String expected = "From: Bob <bob@example.com>\r\nX-Empty: \r\nSubject: a: b\r\n";
+        assertEquals(expected, header.writeToString());
+        assertEquals("Bob <bob@example.com>", header.getFirstHeader("from"));
+        assertEquals("", header.getFirstHeader("X-Empty"));
+        assertEquals("a: b", header.getFirstHeader("Subject"));
+        assertEquals("1.2",
+                header.getFirstHeader(MimeHeader.HEADER_ANDROID_ATTACHMENT_STORE_DATA));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.writeTo(out);
+        assertEquals(expected, out.toString("UTF-8"));
+    }
+
+    public void testNullValue() throws MessagingException, IOException {
+        final MimeHeader header = new MimeHeader();
+        header.addHeader("X-Foo", null);
+        header.addHeader("Subject", "Hello");
+
+        assertNull(header.getFirstHeader("X-Foo"));
+        assertTrue(Arrays.equals(new String[] {null}, header.getHeader("x-foo")));
+        final String expected = "X-Foo: null\r\nSubject: Hello\r\n";
+        assertEquals(expected, header.writeToString());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.writeTo(out);
+        assertEquals(expected, out.toString("UTF-8"));
+    }
+}
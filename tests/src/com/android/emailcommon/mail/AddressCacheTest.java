@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.mail;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class AddressCacheTest extends AndroidTestCase {
+
+    public void testGenerations() {
+        final AddressCache cache = new AddressCache(2);
+        final Address a = new Address("a@example.com");
+        final Address b = new Address("b@example.com");
+        final Address c = new Address("c@example.com");
+        cache.put("a", a);
+        cache.put("b", b);
+        // a and b are now the previous generation; looking up a keeps it
+        assertSame(a, cache.get("a"));
+        cache.put("c", c);
+        // a and c are now the previous generation, so b is dropped
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertSame(c, cache.get("c"));
+
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        cache.clear();
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    public void testGetEmailAddress() {
+        Address.getParsedAddressCache().clear();
+        final Address address = Address.getEmailAddress("Bob Smith <bob@example.com>");
+        assertEquals("Bob Smith", address.getPersonal());
+        assertEquals("bob@example.com", address.getAddress());
+        assertSame(address, Address.getEmailAddress("Bob Smith <bob@example.com>"));
+        assertEquals(1, Address.getParsedAddressCache().getHitCount());
+        assertNull(Address.getEmailAddress(""));
+    }
+
+    public void testFromHtml() {
+        final String plain = "Bob Smith";
+        assertSame(plain, Address.fromHtml(plain));
+        assertEquals("Bob & Alice", Address.fromHtml("Bob &amp; Alice"));
+        assertEquals("Bob Smith", Address.fromHtml("Bob  Smith"));
+        assertEquals("Bob Smith", Address.fromHtml(" Bob\nSmith"));
+    }
+}
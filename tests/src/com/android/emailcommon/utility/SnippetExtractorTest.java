@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class SnippetExtractorTest extends AndroidTestCase {
+    private static final int HTML = SnippetExtractor.FLAG_STRIP_HTML | SnippetExtractor.FLAG_TRIM;
+
+    public void testWhitespace() {
+        assertEquals("Foo Bar", SnippetExtractor.extract("\nFoo\n \nBar\t  ", 100,
+                SnippetExtractor.FLAG_TRIM));
+        assertEquals(" Foo Bar ", SnippetExtractor.extract("\nFoo\n \nBar\t  ", 100, 0));
+        assertEquals("a-b=c", SnippetExtractor.extract("a-----b=====c", 100, 0));
+        assertEquals("", SnippetExtractor.extract(null, 100, 0));
+    }
+
+    public void testStripTags() {
+        assertEquals("Hello, World...", SnippetExtractor.extract(
+                "<p><span style=\"color:red\">Hello, <b>World</b></span>...</p>", 100, HTML));
+        assertEquals("body", SnippetExtractor.extract(
+                "<head><TITLE>title</TITLE><style>p {}</style></head>body", 100, HTML));
+        assertEquals("a < b", SnippetExtractor.extract("a < b", 100, HTML));
+        assertEquals("", SnippetExtractor.extract("<script>never ends", 100, HTML));
+    }
+
+    public void testStripTagsMatchWholeNames() {
+        // TextUtilities used to strip these as if they were head, style or script
+        assertEquals("abc", SnippetExtractor.extract("a<header>b</header>c", 100, HTML));
+        assertEquals("afoo bar", SnippetExtractor.extract("a<header>foo bar", 100, HTML));
+        assertEquals("ab", SnippetExtractor.extract("a<stylep>b", 100, HTML));
+        assertEquals("xyz", SnippetExtractor.extract("x<headx>y</head>z", 100, HTML));
+        assertEquals("abc", SnippetExtractor.extract("a<scripte>b</script>c", 100, HTML));
+        // and matched their end tags only in the same case
+        assertEquals("ac", SnippetExtractor.extract("a<STYLE>b</style>c", 100, HTML));
+    }
+
+    public void testUnterminatedStripTagNearEnd() {
+        // TextUtilities used to keep the content when the tag was close to the end of the text
+        assertEquals("pre", SnippetExtractor.extract("pre <style>a", 100, HTML));
+        assertEquals("pre", SnippetExtractor.extract("pre <head>ab", 100, HTML));
+        assertEquals("a", SnippetExtractor.extract("a<title>t", 100, HTML));
+    }
+
+    public void testEntities() {
+        assertEquals("Simon & Garfunkel", SnippetExtractor.extract("Simon &amp; Garfunkel", 100,
+                HTML));
+        assertEquals("\u00e9\u00c9AB'",
+                SnippetExtractor.extract("&eacute;&Eacute;&#65;&#x42;&apos;", 100, HTML));
+        assertEquals("&bogus; ?", SnippetExtractor.extract("&bogus; &#zz;", 100, HTML));
+        assertEquals("a b", SnippetExtractor.extract("a&nbsp; b", 100, HTML));
+    }
+
+    public void testMaxLength() {
+        assertEquals("abcde", SnippetExtractor.extract("abcdefgh", 5, 0));
+        assertEquals("ab", SnippetExtractor.extract("ab   cd", 3, SnippetExtractor.FLAG_TRIM));
+    }
+}
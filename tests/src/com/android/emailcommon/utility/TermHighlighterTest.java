@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.emailcommon.utility;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+
+@SmallTest
+public class TermHighlighterTest extends AndroidTestCase {
+    private static final String START = "<span style=\"background-color: "
+            + TextUtilities.HIGHLIGHT_COLOR_STRING + "\">";
+    private static final String END = "</span>";
+
+    public void testHtml() {
+        final TermHighlighter highlighter = new TermHighlighter("amp");
+        assertEquals("<p class=\"amp\">Tom &amp; Jerry " + START + "amp" + END + "</p>",
+                highlighter.highlightHtml("<p class=\"amp\">Tom &amp; Jerry amp</p>"));
+        assertEquals("<title>amp</title>" + START + "AMP" + END + "LE",
+                highlighter.highlightHtml("<title>amp</title>AMPLE"));
+    }
+
+    public void testOverlappingTerms() {
+        final TermHighlighter highlighter = new TermHighlighter("bc e abcdef");
+        assertEquals(START + "abcdef" + END + "g", highlighter.highlightHtml("abcdefg"));
+        // a match is found even where an earlier partial match fails
+        assertEquals("a" + START + "ab" + END,
+                new TermHighlighter("ab").highlightHtml("aab"));
+    }
+
+    public void testText() {
+        final CharSequence text = new TermHighlighter("hello world")
+                .highlightText("Hello there, world");
+        final BackgroundColorSpan[] spans = ((Spanned) text).getSpans(0, text.length(),
+                BackgroundColorSpan.class);
+        assertEquals(2, spans.length);
+        assertEquals("Hello there, world", text.toString());
+    }
+
+    public void testNoTerms() {
+        final TermHighlighter highlighter = new TermHighlighter("  ");
+        assertTrue(highlighter.isEmpty());
+        assertEquals("<b>text</b>", highlighter.highlightHtml("<b>text</b>"));
+        assertEquals("text", highlighter.highlightText("text"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class ConversationCursorDiffTest extends AndroidTestCase {
+
+    public void testIdenticalSnapshots() {
+        final long[] ids = {10, 11, 12};
+        final long[] versions = {1, 2, 3};
+        final ConversationCursorDiff diff = ConversationCursorDiff.compute(ids, versions,
+                ids.clone(), versions.clone());
+        assertTrue(diff.isEmpty());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, diff.getOldPosition(i));
+            assertTrue(diff.hasSameVersion(i));
+        }
+    }
+
+    public void testInsertAndRemove() {
+        final ConversationCursorDiff diff = ConversationCursorDiff.compute(
+                new long[] {10, 11, 12}, new long[] {1, 2, 3},
+                new long[] {13, 10, 12}, new long[] {4, 1, 3});
+        assertFalse(diff.isEmpty());
+        assertEquals(1, diff.getInsertedCount());
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(0, diff.getMovedCount());
+        assertEquals(0, diff.getChangedCount());
+        assertEquals(-1, diff.getOldPosition(0));
+        assertFalse(diff.hasSameVersion(0));
+        assertEquals(0, diff.getOldPosition(1));
+        assertEquals(2, diff.getOldPosition(2));
+    }
+
+    public void testChange() {
+        final ConversationCursorDiff diff = ConversationCursorDiff.compute(
+                new long[] {10, 11}, new long[] {1, 2},
+                new long[] {10, 11}, new long[] {1, 5});
+        assertEquals(1, diff.getChangedCount());
+        assertEquals(0, diff.getMovedCount());
+        assertTrue(diff.hasSameVersion(0));
+        assertFalse(diff.hasSameVersion(1));
+    }
+
+    public void testMoveToTop() {
+        // a new message bumps the last conversation to the top
+        final ConversationCursorDiff diff = ConversationCursorDiff.compute(
+                new long[] {10, 11, 12, 13}, new long[] {1, 2, 3, 4},
+                new long[] {13, 10, 11, 12}, new long[] {5, 1, 2, 3});
+        assertEquals(0, diff.getInsertedCount());
+        assertEquals(0, diff.getRemovedCount());
+        assertEquals(1, diff.getMovedCount());
+        assertEquals(1, diff.getChangedCount());
+        assertEquals(3, diff.getOldPosition(0));
+        assertTrue(diff.hasSameVersion(1));
+        assertTrue(diff.hasSameVersion(3));
+    }
+
+    public void testEmptySnapshots() {
+        final ConversationCursorDiff diff = ConversationCursorDiff.compute(
+                new long[0], new long[0], new long[] {1}, new long[] {1});
+        assertEquals(1, diff.getInsertedCount());
+        assertTrue(ConversationCursorDiff.compute(
+                new long[0], new long[0], new long[0], new long[0]).isEmpty());
+    }
+
+    public void testUnknownVersions() {
+        final long unknown = ConversationCursorDiff.UNKNOWN_VERSION;
+        final ConversationCursorDiff diff = ConversationCursorDiff.compute(
+                new long[] {10, 11, 12}, new long[] {1, unknown, unknown},
+                new long[] {10, 11, 12}, new long[] {1, 2, unknown});
+        // rows not read in either snapshot are neither changed nor unchanged
+        assertTrue(diff.isEmpty());
+        assertEquals(0, diff.getChangedCount());
+        assertTrue(diff.hasSameVersion(0));
+        assertFalse(diff.hasSameVersion(1));
+        assertFalse(diff.hasSameVersion(2));
+
+        // but still count when they move
+        final ConversationCursorDiff moved = ConversationCursorDiff.compute(
+                new long[] {10, 11, 12}, new long[] {unknown, unknown, unknown},
+                new long[] {12, 10, 11}, new long[] {unknown, unknown, unknown});
+        assertEquals(1, moved.getMovedCount());
+        assertEquals(0, moved.getChangedCount());
+        assertFalse(moved.isEmpty());
+    }
+}
@@ -24,13 +24,27 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.test.ProviderTestCase2;
+import android.test.mock.MockContentProvider;
 import android.test.mock.MockContentResolver;
 import android.test.suitebuilder.annotation.SmallTest;
 
+import com.android.mail.browse.ConversationCursor.ConversationProvider;
+import com.android.mail.providers.UIProvider;
+import com.android.mail.providers.UIProvider.ConversationColumns;
+import com.android.mail.utils.LogUtils;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @SmallTest
 public class ConversationCursorTests extends ProviderTestCase2<TestProvider> {
@@ -52,6 +66,16 @@ public class ConversationCursorTests extends ProviderTestCase2<TestProvider> {
             public ContentResolver getContentResolver() {
                 return mMockResolver;
             }
+
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+
+            @Override
+            public Object getSystemService(String name) {
+                return null;
+            }
         };
     }
 
@@ -61,6 +85,7 @@ public class ConversationCursorTests extends ProviderTestCase2<TestProvider> {
         mMockContext = getMockContext();
         mMockResolver = (MockContentResolver)mMockContext.getContentResolver();
         mMockResolver.addProvider(TestProvider.AUTHORITY, new TestProvider(mMockContext));
+        mMockResolver.addProvider(CONVERSATION_AUTHORITY, mConversationProvider);
     }
 
     @Override
@@ -128,6 +153,245 @@ public class ConversationCursorTests extends ProviderTestCase2<TestProvider> {
         return uri;
     }
 
+    private static final String LOG_TAG = "ConversationCursorTests";
+    private static final String CONVERSATION_AUTHORITY = "com.android.mail.conversations.test";
+    private static final Uri CONVERSATIONS_URI = Uri.parse(
+            "content://" + CONVERSATION_AUTHORITY + "/conversations");
+
+    /** Answers every query with the rows in {@link #mRows}, in order. */
+    private static class ConversationRowsProvider extends MockContentProvider {
+        final List<Object[]> mRows = new ArrayList<Object[]>();
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            final MatrixCursor cursor = new MatrixCursor(projection, mRows.size());
+            for (Object[] row : mRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+        void setRows(int... ids) {
+            mRows.clear();
+            for (int id : ids) {
+                final Object[] row = new Object[UIProvider.CONVERSATION_PROJECTION.length];
+                row[UIProvider.CONVERSATION_ID_COLUMN] = id;
+                row[UIProvider.CONVERSATION_URI_COLUMN] = conversationUri(id).toString();
+                row[UIProvider.CONVERSATION_SUBJECT_COLUMN] = "Subject " + id;
+                row[UIProvider.CONVERSATION_READ_COLUMN] = 0;
+                row[UIProvider.CONVERSATION_STARRED_COLUMN] = 0;
+                mRows.add(row);
+            }
+        }
+    }
+
+    private final ConversationRowsProvider mConversationProvider = new ConversationRowsProvider();
+
+    private static Uri conversationUri(int id) {
+        return Uri.withAppendedPath(CONVERSATIONS_URI, Integer.toString(id));
+    }
+
+    private ConversationCursor loadConversations(int... ids) {
+        mConversationProvider.setRows(ids);
+        final ConversationCursor cursor =
+                new ConversationCursor(mActivity, CONVERSATIONS_URI, false, "test");
+        cursor.load();
+        return cursor;
+    }
+
+    /** Checks the ids and read states of the rows the cursor shows, in order. */
+    private static void assertRows(ConversationCursor cursor, int[] ids, int[] read) {
+        assertEquals(ids.length, cursor.getCount());
+        cursor.moveToPosition(-1);
+        for (int i = 0; i < ids.length; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(ids[i], cursor.getLong(UIProvider.CONVERSATION_ID_COLUMN));
+            assertEquals("Subject " + ids[i],
+                    cursor.getString(UIProvider.CONVERSATION_SUBJECT_COLUMN));
+            assertEquals("row " + ids[i], read[i],
+                    cursor.getInt(UIProvider.CONVERSATION_READ_COLUMN));
+            assertEquals(0, cursor.getInt(UIProvider.CONVERSATION_STARRED_COLUMN));
+        }
+        assertFalse(cursor.moveToNext());
+    }
+
+    public void testCachedValues() {
+        final ConversationCursor cursor = loadConversations(1, 2, 3);
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 0, 0});
+
+        cursor.setConversationColumn(conversationUri(2), ConversationColumns.READ, 1);
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 1, 0});
+        cursor.setConversationColumn(conversationUri(3), ConversationColumns.READ, true);
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 1, 1});
+        // a value for a conversation that isn't in the list changes nothing
+        cursor.setConversationColumn(conversationUri(4), ConversationColumns.READ, 1);
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 1, 1});
+
+        cursor.disable();
+    }
+
+    public void testCachedValuesFollowRequery() {
+        final ConversationCursor cursor = loadConversations(1, 2, 3);
+        cursor.setConversationColumn(conversationUri(3), ConversationColumns.READ, 1);
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 0, 1});
+
+        // the recently cached value moves with its conversation, and the row that took its old
+        // position shows its own value
+        mConversationProvider.setRows(3, 4, 1, 2);
+        cursor.load();
+        assertRows(cursor, new int[] {3, 4, 1, 2}, new int[] {1, 0, 0, 0});
+
+        // and it reappears when its conversation does
+        mConversationProvider.setRows(1, 2);
+        cursor.load();
+        assertRows(cursor, new int[] {1, 2}, new int[] {0, 0});
+        mConversationProvider.setRows(1, 2, 3);
+        cursor.load();
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 0, 1});
+
+        cursor.disable();
+    }
+
+    public void testRefreshDropsExpiredCachedValues() throws InterruptedException {
+        final ConversationCursor cursor = loadConversations(1, 2, 3);
+        final CountDownLatch refreshReady = new CountDownLatch(1);
+        cursor.addListener(new ConversationCursor.ConversationListener() {
+            @Override
+            public void onRefreshRequired() {}
+
+            @Override
+            public void onRefreshReady() {
+                refreshReady.countDown();
+            }
+
+            @Override
+            public void onDataSetChanged() {}
+        });
+        cursor.setConversationColumn(conversationUri(2), ConversationColumns.READ, 1);
+        assertTrue(cursor.moveToPosition(1));
+        assertTrue(cursor.getConversation().read);
+
+        // refresh without any change to the rows, after the cached value has expired
+        final long allowance = ConversationCursor.sRequeryAllowanceTime;
+        ConversationCursor.sRequeryAllowanceTime = 0;
+        try {
+            assertTrue(cursor.refresh());
+            assertTrue(refreshReady.await(5, TimeUnit.SECONDS));
+            cursor.sync();
+        } finally {
+            ConversationCursor.sRequeryAllowanceTime = allowance;
+        }
+
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 0, 0});
+        assertTrue(cursor.moveToPosition(1));
+        assertFalse(cursor.getConversation().read);
+        cursor.disable();
+    }
+
+    /** Deletes a conversation locally, as the only deletion of a new undoable operation. */
+    private static void deleteLocal(ConversationProvider provider, ConversationCursor cursor,
+            int id) {
+        // an operation starts a new undo sequence before executing locally
+        provider.apply(Collections.<ConversationCursor.ConversationOperation>emptyList(), cursor);
+        provider.deleteLocal(conversationUri(id), cursor, null);
+    }
+
+    public void testDeleteAndUndo() {
+        final ConversationCursor cursor = loadConversations(1, 2, 3);
+        final ConversationProvider provider = new ConversationProvider() {
+            @Override
+            protected String getAuthority() {
+                return CONVERSATION_AUTHORITY;
+            }
+        };
+
+        deleteLocal(provider, cursor, 2);
+        assertRows(cursor, new int[] {1, 3}, new int[] {0, 0});
+        provider.undo(cursor);
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 0, 0});
+
+        // undo only clears the deletion, not other cached values of the conversation
+        cursor.setConversationColumn(conversationUri(2), ConversationColumns.READ, 1);
+        deleteLocal(provider, cursor, 2);
+        assertRows(cursor, new int[] {1, 3}, new int[] {0, 0});
+        provider.undo(cursor);
+        assertRows(cursor, new int[] {1, 2, 3}, new int[] {0, 1, 0});
+
+        // a deletion whose conversation is gone from the requery is dropped
+        deleteLocal(provider, cursor, 1);
+        mConversationProvider.setRows(2, 3);
+        cursor.load();
+        assertRows(cursor, new int[] {2, 3}, new int[] {1, 0});
+
+        cursor.disable();
+        cursor.load();
+        assertRows(cursor, new int[] {2, 3}, new int[] {0, 0});
+        cursor.disable();
+    }
+
+    /**
+     * Times reading every column of every row, as binding a scrolling list does, with a few
+     * cached values. Logs the time per row; only the values are checked.
+     */
+    public void testScrollWithFewCachedValues() {
+        final int count = 2000;
+        final int[] ids = new int[count];
+        final int[] read = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+        }
+        final ConversationCursor cursor = loadConversations(ids);
+        for (int i = 0; i < count; i += 500) {
+            cursor.setConversationColumn(conversationUri(ids[i]), ConversationColumns.READ, 1);
+            read[i] = 1;
+        }
+
+        final int columnCount = cursor.getColumnCount();
+        final int passes = 5;
+        long sum = 0;
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < passes; pass++) {
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                for (int column = 0; column < columnCount; column++) {
+                    if (cursor.getType(column) == Cursor.FIELD_TYPE_INTEGER) {
+                        sum += cursor.getInt(column);
+                    } else {
+                        cursor.getString(column);
+                    }
+                }
+            }
+        }
+        final long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        LogUtils.i(LOG_TAG, "Scrolled %d rows of %d columns in %d ns per row", count,
+                columnCount, elapsed / (passes * count));
+
+        // the ids sum to count * (count + 1) / 2, plus one for each cached read
+        assertEquals(passes * ((long) count * (count + 1) / 2 + count / 500), sum);
+        assertRows(cursor, ids, read);
+        cursor.disable();
+    }
+
+    public void testExtrasEqual() {
+        final Bundle loading = new Bundle();
+        loading.putInt(UIProvider.CursorExtraKeys.EXTRA_STATUS, UIProvider.CursorStatus.LOADING);
+        final Bundle complete = new Bundle();
+        complete.putInt(UIProvider.CursorExtraKeys.EXTRA_STATUS, UIProvider.CursorStatus.COMPLETE);
+        final Bundle completeToo = new Bundle(complete);
+
+        assertTrue(ConversationCursor.extrasEqual(complete, completeToo));
+        assertTrue(ConversationCursor.extrasEqual(null, Bundle.EMPTY));
+        assertFalse(ConversationCursor.extrasEqual(loading, complete));
+        assertFalse(ConversationCursor.extrasEqual(null, complete));
+
+        // a change to the total count alone is a change
+        completeToo.putInt(UIProvider.CursorExtraKeys.EXTRA_TOTAL_COUNT, 10);
+        assertFalse(ConversationCursor.extrasEqual(complete, completeToo));
+        complete.putInt(UIProvider.CursorExtraKeys.EXTRA_TOTAL_COUNT, 10);
+        assertTrue(ConversationCursor.extrasEqual(complete, completeToo));
+    }
+
     public void brokentestLocalDelete() throws RemoteException, OperationApplicationException {
         Uri uri = setupConvoList();
 
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.browse;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.browse.ConversationWritePipeline.Write;
+import com.android.mail.providers.UIProvider.ConversationOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@SmallTest
+public class ConversationWritePipelineTest extends AndroidTestCase {
+    private static final String AUTHORITY = "com.android.mail.pipeline.test";
+    private static final Uri CONVERSATION_1 = Uri.parse("content://" + AUTHORITY + "/conv/1");
+    private static final Uri CONVERSATION_2 = Uri.parse("content://" + AUTHORITY + "/conv/2");
+
+    /** Records the writes it receives, one string per write, and the batches they came in. */
+    private static class RecordingProvider extends MockContentProvider {
+        final List<String> mWrites = new ArrayList<String>();
+        final List<ContentValues> mValues = new ArrayList<ContentValues>();
+        final List<Integer> mBatchSizes = new ArrayList<Integer>();
+
+        @Override
+        public synchronized ContentProviderResult[] applyBatch(
+                ArrayList<ContentProviderOperation> operations)
+                throws OperationApplicationException {
+            mBatchSizes.add(operations.size());
+            final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+            for (int i = 0; i < operations.size(); i++) {
+                results[i] = operations.get(i).apply(this, results, i);
+            }
+            return results;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            mWrites.add("insert " + uri);
+            mValues.add(values);
+            return uri;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            mWrites.add("update " + uri);
+            mValues.add(values);
+            return 1;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            mWrites.add("delete " + uri);
+            mValues.add(null);
+            return 1;
+        }
+
+        synchronized List<Integer> getBatchSizes() {
+            return new ArrayList<Integer>(mBatchSizes);
+        }
+    }
+
+    /** Holds the delayed flushes until the test runs them. */
+    private static class ManualScheduler implements ConversationWritePipeline.Scheduler {
+        final List<Runnable> mFlushes = new ArrayList<Runnable>();
+
+        @Override
+        public void schedule(Runnable flush, long delayMs) {
+            mFlushes.add(flush);
+        }
+
+        /** Runs the flushes scheduled so far, and returns how many there were. */
+        int runScheduled() {
+            final List<Runnable> flushes = new ArrayList<Runnable>(mFlushes);
+            mFlushes.clear();
+            for (Runnable flush : flushes) {
+                flush.run();
+            }
+            return flushes.size();
+        }
+    }
+
+    private RecordingProvider mProvider;
+    private ManualScheduler mScheduler;
+    private ConversationWritePipeline mPipeline;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mProvider = new RecordingProvider();
+        final MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(AUTHORITY, mProvider);
+        mScheduler = new ManualScheduler();
+        mPipeline = new ConversationWritePipeline(resolver, mScheduler);
+    }
+
+    private static ContentValues values(String key, int value) {
+        final ContentValues values = new ContentValues(1);
+        values.put(key, value);
+        return values;
+    }
+
+    private static Uri withSequence(Uri uri, int sequence) {
+        return uri.buildUpon().appendQueryParameter("seq", Integer.toString(sequence)).build();
+    }
+
+    public void testPlainUpdatesMerge() {
+        mPipeline.applyNow(AUTHORITY, Arrays.asList(
+                Write.update(withSequence(CONVERSATION_1, 1), values("read", 1)),
+                Write.update(CONVERSATION_2, values("read", 1)),
+                Write.update(withSequence(CONVERSATION_1, 2), values("starred", 1)),
+                Write.update(withSequence(CONVERSATION_1, 3), values("read", 0))));
+
+        // the merged update takes the place and the uri of the last one
+        assertEquals(Arrays.asList("update " + CONVERSATION_2,
+                "update " + withSequence(CONVERSATION_1, 3)), mProvider.mWrites);
+        final ContentValues merged = mProvider.mValues.get(1);
+        assertEquals(2, merged.size());
+        assertEquals(Integer.valueOf(0), merged.getAsInteger("read"));
+        assertEquals(Integer.valueOf(1), merged.getAsInteger("starred"));
+        assertEquals(Arrays.asList(2), mProvider.getBatchSizes());
+
+        assertEquals(4, mPipeline.getQueuedCount());
+        assertEquals(2, mPipeline.getMergedCount());
+        assertEquals(2, mPipeline.getFlushedCount());
+    }
+
+    public void testUpdateThenDeleteCancelsUpdate() {
+        mPipeline.applyNow(AUTHORITY, Arrays.asList(
+                Write.update(CONVERSATION_1, values("read", 1)),
+                Write.delete(CONVERSATION_1),
+                Write.update(CONVERSATION_2, values("read", 1))));
+
+        assertEquals(Arrays.asList("delete " + CONVERSATION_1, "update " + CONVERSATION_2),
+                mProvider.mWrites);
+        assertEquals(1, mPipeline.getMergedCount());
+    }
+
+    public void testOperationsAreNeverMerged() {
+        mPipeline.applyNow(AUTHORITY, Arrays.asList(
+                Write.update(CONVERSATION_1, values("read", 1)),
+                Write.operation(CONVERSATION_1, ConversationOperations.ARCHIVE),
+                Write.update(CONVERSATION_1, values("starred", 1)),
+                Write.operation(CONVERSATION_1, ConversationOperations.MUTE),
+                Write.delete(CONVERSATION_1)));
+
+        // nothing before an operation may be dropped or moved past it
+        assertEquals(Arrays.asList("update " + CONVERSATION_1, "update " + CONVERSATION_1,
+                "update " + CONVERSATION_1, "update " + CONVERSATION_1,
+                "delete " + CONVERSATION_1), mProvider.mWrites);
+        assertEquals(ConversationOperations.ARCHIVE,
+                mProvider.mValues.get(1).getAsString(ConversationOperations.OPERATION_KEY));
+        assertEquals(ConversationOperations.MUTE,
+                mProvider.mValues.get(3).getAsString(ConversationOperations.OPERATION_KEY));
+        assertEquals(0, mPipeline.getMergedCount());
+    }
+
+    public void testInsertsAreNeverMerged() {
+        mPipeline.applyNow(AUTHORITY, Arrays.asList(
+                Write.insert(CONVERSATION_1, values("read", 1)),
+                Write.update(CONVERSATION_1, values("read", 0))));
+
+        assertEquals(Arrays.asList("insert " + CONVERSATION_1, "update " + CONVERSATION_1),
+                mProvider.mWrites);
+        assertEquals(0, mPipeline.getMergedCount());
+    }
+
+    public void testApplyNowDrainsQueuedWritesFirst() {
+        mPipeline.enqueue(AUTHORITY, Arrays.asList(
+                Write.update(CONVERSATION_1, values("read", 1)),
+                Write.update(CONVERSATION_2, values("starred", 1))));
+        mPipeline.applyNow(AUTHORITY, Arrays.asList(
+                Write.update(CONVERSATION_1, values("seen", 1)),
+                Write.delete(CONVERSATION_2)));
+
+        // one batch, with the queued writes merged into or cancelled by the later ones
+        assertEquals(Arrays.asList("update " + CONVERSATION_1, "delete " + CONVERSATION_2),
+                mProvider.mWrites);
+        assertEquals(2, mProvider.mValues.get(0).size());
+        assertEquals(Arrays.asList(2), mProvider.getBatchSizes());
+
+        // the delayed flush of the queued writes finds nothing left to send
+        assertEquals(1, mScheduler.runScheduled());
+        assertEquals(Arrays.asList(2), mProvider.getBatchSizes());
+        assertEquals(2, mPipeline.getFlushedCount());
+    }
+
+    public void testEnqueuedWritesAreFlushedTogether() {
+        mPipeline.enqueue(AUTHORITY, Arrays.asList(
+                Write.update(CONVERSATION_1, values("read", 1))));
+        mPipeline.enqueue(AUTHORITY, Arrays.asList(
+                Write.update(CONVERSATION_1, values("starred", 1)),
+                Write.update(CONVERSATION_2, values("read", 1))));
+
+        // nothing is sent until the one delayed flush runs
+        assertTrue(mProvider.getBatchSizes().isEmpty());
+        assertEquals(1, mScheduler.runScheduled());
+        assertEquals(Arrays.asList(2), mProvider.getBatchSizes());
+        assertEquals(Arrays.asList("update " + CONVERSATION_1, "update " + CONVERSATION_2),
+                mProvider.mWrites);
+        assertEquals(3, mPipeline.getQueuedCount());
+        assertEquals(1, mPipeline.getMergedCount());
+        assertEquals(2, mPipeline.getFlushedCount());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.perf;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@SmallTest
+public class TracerTest extends AndroidTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        Tracer.setEnabled(false);
+        Tracer.reset();
+        super.tearDown();
+    }
+
+    public void testBuckets() {
+        int previous = -1;
+        for (long micros = 0; micros < 100000; micros++) {
+            final int bucket = Tracer.bucketOf(micros);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(Tracer.lowestInBucket(bucket) <= micros);
+            assertTrue(micros < Tracer.lowestInBucket(bucket + 1));
+            // buckets are never wider than an eighth of their values
+            assertTrue(Tracer.lowestInBucket(bucket + 1) - Tracer.lowestInBucket(bucket)
+                    <= Math.max(1, Tracer.lowestInBucket(bucket) / 8));
+            previous = bucket;
+        }
+        assertEquals(Tracer.BUCKET_COUNT - 1, Tracer.bucketOf(Long.MAX_VALUE));
+    }
+
+    public void testDisabled() {
+        Tracer.setEnabled(false);
+        final long start = Tracer.begin();
+        assertEquals(0, start);
+        Tracer.end(Tracer.SANITIZE_HTML, start);
+        assertEquals(0, Tracer.getCount(Tracer.SANITIZE_HTML));
+    }
+
+    public void testEnabled() {
+        Tracer.setEnabled(true);
+        final long start = Tracer.begin();
+        assertTrue(start != 0);
+        Tracer.end(Tracer.SANITIZE_HTML, start);
+        assertEquals(1, Tracer.getCount(Tracer.SANITIZE_HTML));
+    }
+
+    public void testPercentiles() throws InterruptedException {
+        for (int i = 1; i <= 1000; i++) {
+            Tracer.record(Tracer.RENDER_CONVERSATION, i);
+        }
+        // samples from other threads are merged in
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    Tracer.record(Tracer.RENDER_CONVERSATION, 1000000);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertEquals(2000, Tracer.getCount(Tracer.RENDER_CONVERSATION));
+        assertWithin(1000, Tracer.getPercentile(Tracer.RENDER_CONVERSATION, 50));
+        assertWithin(1000000, Tracer.getPercentile(Tracer.RENDER_CONVERSATION, 95));
+        assertWithin(500, Tracer.getPercentile(Tracer.RENDER_CONVERSATION, 25));
+        assertEquals(0, Tracer.getCount(Tracer.PRELOAD_CURSOR));
+
+        final StringWriter out = new StringWriter();
+        Tracer.dump(new PrintWriter(out));
+        assertTrue(out.toString().contains("conversation render"));
+        assertFalse(out.toString().contains("cursor preload"));
+
+        Tracer.reset();
+        assertEquals(0, Tracer.getCount(Tracer.RENDER_CONVERSATION));
+    }
+
+    public void testEndedThreadsAreFolded() throws InterruptedException {
+        final int before = Tracer.getRecorderCount();
+        for (int i = 0; i < 20; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    Tracer.record(Tracer.PRELOAD_CURSOR, 100);
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+        // each new thread prunes the ones that ended before it
+        assertTrue(Tracer.getRecorderCount() <= before + 1);
+        assertEquals(20, Tracer.getCount(Tracer.PRELOAD_CURSOR));
+        assertWithin(100, Tracer.getPercentile(Tracer.PRELOAD_CURSOR, 50));
+
+        Tracer.reset();
+        assertEquals(0, Tracer.getCount(Tracer.PRELOAD_CURSOR));
+        assertEquals(0, Tracer.getPercentile(Tracer.PRELOAD_CURSOR, 99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+}
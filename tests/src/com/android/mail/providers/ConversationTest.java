@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.providers;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+@SmallTest
+public class ConversationTest extends AndroidTestCase {
+
+    /** @return a conversation read from a cursor that has its info and folders as blobs */
+    private static Conversation fromBlobs() {
+        final MatrixCursor cursor = new MatrixCursor(UIProvider.CONVERSATION_PROJECTION);
+        final Object[] row = new Object[UIProvider.CONVERSATION_PROJECTION.length];
+        row[UIProvider.CONVERSATION_URI_COLUMN] = "content://test/conversation/1";
+        row[UIProvider.CONVERSATION_INFO_COLUMN] =
+                new ConversationInfo(3, 0, "first", "unread", "last").toBlob();
+        row[UIProvider.CONVERSATION_RAW_FOLDERS_COLUMN] =
+                FolderList.listToBlob(Collections.<Folder>emptyList());
+        cursor.addRow(row);
+        cursor.moveToFirst();
+        final Conversation conversation = new Conversation(cursor);
+        cursor.close();
+        return conversation;
+    }
+
+    public void testDecodesOnce() {
+        final Conversation conversation = fromBlobs();
+        final ConversationInfo info = conversation.getConversationInfo();
+        assertEquals(3, info.messageCount);
+        assertEquals("last", info.lastSnippet);
+        assertSame(info, conversation.getConversationInfo());
+        assertTrue(conversation.getRawFolders().isEmpty());
+        assertSame(conversation.getRawFolders(), conversation.getRawFolders());
+
+        // a copy shares the decoded info, so changes to it show in both
+        final Conversation copy = new Conversation(conversation);
+        assertSame(info, copy.getConversationInfo());
+    }
+
+    public void testConcurrentFirstUse() throws InterruptedException {
+        for (int attempt = 0; attempt < 20; attempt++) {
+            final Conversation conversation = fromBlobs();
+            final ConversationInfo[] infos = new ConversationInfo[4];
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread[] threads = new Thread[infos.length];
+            for (int i = 0; i < threads.length; i++) {
+                final int index = i;
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        infos[index] = conversation.getConversationInfo();
+                    }
+                };
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (ConversationInfo info : infos) {
+                assertSame(conversation.getConversationInfo(), info);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.providers;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.utils.LogUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@SmallTest
+public class SuggestionIndexTest extends AndroidTestCase {
+
+    private static final String LOG_TAG = "SuggestionIndexTest";
+
+    private static void add(SuggestionIndex index, String... texts) {
+        for (String text : texts) {
+            index.add(text, text);
+        }
+    }
+
+    public void testWordPrefixes() {
+        final SuggestionIndex index = new SuggestionIndex(10);
+        add(index, "Quarterly report", "bob@example.com", "lunch");
+
+        assertEquals(Arrays.asList("Quarterly report"), index.find("REP"));
+        assertEquals(Arrays.asList("Quarterly report"), index.find("quarterly r"));
+        assertEquals(Arrays.asList("bob@example.com"), index.find("example"));
+        assertEquals(Arrays.asList("bob@example.com"), index.find("@ex"));
+        assertEquals(Arrays.asList("bob@example.com"), index.find("co"));
+        // only the starts of words match
+        assertEquals(Collections.<String>emptyList(), index.find("unch"));
+        assertEquals(Collections.<String>emptyList(), index.find("xample"));
+        assertEquals(Collections.<String>emptyList(), index.find("lunches"));
+    }
+
+    public void testMostRecentFirst() {
+        final SuggestionIndex index = new SuggestionIndex(2);
+        add(index, "alpha", "alps", "alpine", "beta");
+
+        assertEquals(Arrays.asList("alpine", "alps"), index.find("al"));
+        assertEquals(Arrays.asList("alpine", "alps"), index.find("alp"));
+        assertEquals(Arrays.asList("beta", "alpine"), index.find(""));
+
+        // adding again makes it the most recent
+        add(index, "alpha");
+        assertEquals(Arrays.asList("alpha", "alpine"), index.find("al"));
+        assertEquals(Arrays.asList("alpha", "alpine"), index.find("alp"));
+        assertEquals(4, index.size());
+    }
+
+    public void testSearchedText() {
+        final SuggestionIndex index = new SuggestionIndex(10);
+        index.add("Bob Smith", "Bob Smith bob@example.com");
+        index.add("Bob Smith", "Bob Smith robert@example.org");
+
+        assertEquals(Arrays.asList("Bob Smith", "Bob Smith"), index.find("smi"));
+        assertEquals(Arrays.asList("Bob Smith"), index.find("robert"));
+        assertEquals(Arrays.asList("Bob Smith"), index.find("org"));
+    }
+
+    public void testClear() {
+        final SuggestionIndex index = new SuggestionIndex(10);
+        add(index, "alpha", "beta");
+        index.clear();
+        assertEquals(Collections.<String>emptyList(), index.find(""));
+        assertEquals(Collections.<String>emptyList(), index.find("alpha"));
+        add(index, "gamma");
+        assertEquals(Arrays.asList("gamma"), index.find("gam"));
+    }
+
+    public void testLargeHistory() {
+        final SuggestionIndex index = new SuggestionIndex(10);
+        for (int i = 0; i < 10000; i++) {
+            add(index, "query " + i + " from:sender" + (i % 100) + "@example.com");
+        }
+        assertEquals(10000, index.size());
+
+        final List<String> recent = index.find("q");
+        assertEquals(10, recent.size());
+        assertEquals("query 9999 from:sender99@example.com", recent.get(0));
+        assertEquals("query 9990 from:sender90@example.com", recent.get(9));
+
+        assertEquals(Arrays.asList("query 1234 from:sender34@example.com"),
+                index.find("1234 "));
+        final List<String> sender = index.find("sender42@");
+        assertEquals(10, sender.size());
+        assertEquals("query 9942 from:sender42@example.com", sender.get(0));
+        assertEquals("query 9042 from:sender42@example.com", sender.get(9));
+    }
+
+    /** @return the mean time of {@code passes} lookups of each query, in ns */
+    private static long timeLookups(SuggestionIndex index, String[] queries, int passes) {
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < passes; pass++) {
+            for (String query : queries) {
+                index.find(query);
+            }
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / (passes * queries.length);
+    }
+
+    public void testLookupTime() {
+        final int count = 10000;
+        final long start = SystemClock.elapsedRealtimeNanos();
+        final SuggestionIndex index = new SuggestionIndex(10);
+        for (int i = 0; i < count; i++) {
+            add(index, "re: weekly sync " + i + " notes from sender" + (i % 100)
+                    + "@example.com about project" + (i % 37));
+        }
+        // the first lookup of a long prefix sorts the words
+        assertEquals(Collections.<String>emptyList(), index.find("zzz"));
+        LogUtils.i(LOG_TAG, "Loaded %d suggestions in %d us", count,
+                (SystemClock.elapsedRealtimeNanos() - start) / 1000);
+
+        // short prefixes, and the long ones that start many words once they are looked up,
+        // are answered from their recent lists
+        final String[] common = {"w", "no", "sync", "examp"};
+        // these start at most a hundred words each, so every lookup searches the words
+        final String[] rare = {"sender42", "1234 ", "999"};
+        final int passes = 100;
+        timeLookups(index, common, 1);
+        LogUtils.i(LOG_TAG, "Looked up common prefixes in %d ns and rare ones in %d ns",
+                timeLookups(index, common, passes), timeLookups(index, rare, passes));
+
+        for (String query : common) {
+            assertEquals(query, 10, index.find(query).size());
+        }
+        assertEquals("re: weekly sync 9999 notes from sender99@example.com about project9",
+                index.find("sync").get(0));
+        assertEquals("re: weekly sync 9942 notes from sender42@example.com about project26",
+                index.find("sender42").get(0));
+        assertEquals(Arrays.asList(
+                "re: weekly sync 1234 notes from sender34@example.com about project13"),
+                index.find("1234 "));
+        assertEquals(10, index.find("999").size());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.mail.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+
+@SmallTest
+public class LongIntHashMapTest extends AndroidTestCase {
+
+    public void testPutAndGet() {
+        final LongIntHashMap map = new LongIntHashMap(4);
+        assertEquals(-1, map.put(42L, 0));
+        assertEquals(-1, map.put(-7L, 1));
+        assertEquals(-1, map.put(Long.MAX_VALUE, 2));
+        assertEquals(3, map.size());
+
+        assertEquals(0, map.get(42L));
+        assertEquals(1, map.get(-7L));
+        assertEquals(2, map.get(Long.MAX_VALUE));
+        assertEquals(-1, map.get(43L));
+        assertEquals(99, map.get(43L, 99));
+        assertTrue(map.containsKey(-7L));
+        assertFalse(map.containsKey(0L));
+    }
+
+    public void testReplaceReturnsPrevious() {
+        final LongIntHashMap map = new LongIntHashMap();
+        map.put(5L, 10);
+        assertEquals(10, map.put(5L, 11));
+        assertEquals(1, map.size());
+        assertEquals(11, map.get(5L));
+    }
+
+    public void testGrowsPastExpectedSize() {
+        final int count = 10000;
+        final LongIntHashMap map = new LongIntHashMap(16);
+        for (int i = 0; i < count; i++) {
+            // sequential ids, as handed out by most providers
+            map.put(1000L + i, i);
+        }
+        assertEquals(count, map.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, map.get(1000L + i));
+        }
+        assertEquals(-1, map.get(1000L + count));
+
+        final long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(count, keys.length);
+        assertEquals(1000L, keys[0]);
+        assertEquals(1000L + count - 1, keys[count - 1]);
+    }
+
+    public void testRejectsNegativeValues() {
+        final LongIntHashMap map = new LongIntHashMap();
+        try {
+            map.put(1L, -1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
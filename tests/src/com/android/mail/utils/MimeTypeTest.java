@@ -34,4 +34,21 @@ public class MimeTypeTest extends AndroidTestCase {
         // rtf files, with a specified mimetype
         assertEquals("application/rtf", MimeType.inferMimeType("filename.rtf", "application/rtf"));
     }
+
+    @SmallTest
+    public void testMatches() {
+        assertTrue(MimeType.matches("text/plain", "text/plain"));
+        assertTrue(MimeType.matches("Text/HTML", "text/html"));
+        assertTrue(MimeType.matches("text/html", "text/*"));
+        assertTrue(MimeType.matches("image/svg+xml", "image/svg+xml"));
+        assertTrue(MimeType.matches("image/png", "*/*"));
+        assertTrue(MimeType.matches("application/vnd.ms-excel", "application/*excel"));
+        assertTrue(MimeType.matches("text/", "text/*"));
+
+        assertFalse(MimeType.matches("image/png", "text/*"));
+        assertFalse(MimeType.matches("text", "text/*"));
+        assertFalse(MimeType.matches("text/plainx", "text/plain"));
+        // '.' is not a wildcard
+        assertFalse(MimeType.matches("application/vndXms-excel", "application/vnd.ms-excel"));
+    }
 }
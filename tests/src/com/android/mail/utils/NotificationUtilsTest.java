@@ -76,4 +76,45 @@ public class NotificationUtilsTest extends AndroidTestCase {
 
         assertEquals(expectedText, resultText);
     }
+
+    /**
+     * Verifies that the streaming conversion gives the same text as the converter.
+     */
+    public void testGetMessageBodyWithoutElidedTextStyles() {
+        final String expectedText = "This test passed!";
+        final String html = "<body style=3D=22margin:0; padding:0;=22>"
+                + "<style type=3D=22text/css=22>=20"
+                + "       html =7B -webkit-text-size-adjust:none; =7D"
+                + "       <style>html =7B -webkit-text-size-adjust:none; =7D</style></style>"
+                + expectedText + "</body>";
+
+        assertEquals(expectedText, NotificationUtils.getMessageBodyWithoutElidedText(html));
+    }
+
+    /**
+     * Verifies that an elided-text div, and everything in it, is replaced by a line break.
+     */
+    public void testGetMessageBodyWithoutElidedText() {
+        final String html = "<div>Hi<div class=\"elided-text\">On Monday, someone wrote:"
+                + "<blockquote>quoted<div>nested</div></blockquote></div>Bye</div>";
+
+        assertEquals("Hi\nBye", NotificationUtils.getMessageBodyWithoutElidedText(html));
+    }
+
+    /**
+     * Verifies that only the beginning of a long body is converted.
+     */
+    public void testGetMessageBodyWithoutElidedTextLongBody() {
+        final StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            html.append("<p>Paragraph ").append(i).append("</p>");
+        }
+
+        final String resultText = NotificationUtils.getMessageBodyWithoutElidedText(
+                html.toString());
+
+        assertTrue(resultText.startsWith("Paragraph 0\n\nParagraph 1\n\n"));
+        assertTrue(resultText.length() < 10 * 1024);
+        assertTrue(Utils.convertHtmlToPlainText(html.toString()).startsWith(resultText));
+    }
 }
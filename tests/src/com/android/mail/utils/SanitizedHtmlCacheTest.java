@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+
+@SmallTest
+public class SanitizedHtmlCacheTest extends AndroidTestCase {
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "sanitized-test");
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    public void testHitsAndMisses() {
+        final String dirtyHTML = "<div onclick=\"bad()\">something</div>";
+        final SanitizedHtmlCache cache = new SanitizedHtmlCache(mDirectory, 1024 * 1024);
+        final StringBuilder out = new StringBuilder();
+        assertTrue(cache.sanitizeHtml(dirtyHTML, out, Integer.MAX_VALUE));
+        assertEquals(HtmlSanitizer.sanitizeHtml(dirtyHTML), out.toString());
+        assertEquals(1, cache.getMissCount());
+
+        out.setLength(0);
+        assertTrue(cache.sanitizeHtml(dirtyHTML, out, Integer.MAX_VALUE));
+        assertEquals("<div>something</div>", out.toString());
+        assertEquals(1, cache.getMemoryHitCount());
+
+        // a new cache over the same directory finds the entry on disk
+        final SanitizedHtmlCache reopened = new SanitizedHtmlCache(mDirectory, 1024 * 1024);
+        out.setLength(0);
+        assertTrue(reopened.sanitizeHtml(dirtyHTML, out, Integer.MAX_VALUE));
+        assertEquals("<div>something</div>", out.toString());
+        assertEquals(1, reopened.getDiskHitCount());
+        assertEquals(0, reopened.getMissCount());
+    }
+
+    public void testClippedEntry() {
+        final String dirtyHTML = "<div>something long enough to be cut off</div>";
+        final SanitizedHtmlCache cache = new SanitizedHtmlCache(mDirectory, 1024 * 1024);
+        final StringBuilder clipped = new StringBuilder();
+        assertFalse(cache.sanitizeHtml(dirtyHTML, clipped, 16));
+
+        final SanitizedHtmlCache reopened = new SanitizedHtmlCache(mDirectory, 1024 * 1024);
+        final StringBuilder out = new StringBuilder();
+        assertFalse(reopened.sanitizeHtml(dirtyHTML, out, 16));
+        assertEquals(clipped.toString(), out.toString());
+
+        // the cap is part of the key
+        out.setLength(0);
+        assertTrue(reopened.sanitizeHtml(dirtyHTML, out, Integer.MAX_VALUE));
+        assertEquals(1, reopened.getMissCount());
+    }
+
+    public void testTrim() {
+        final SanitizedHtmlCache cache = new SanitizedHtmlCache(mDirectory, 256);
+        for (int i = 0; i < 20; i++) {
+            cache.sanitizeHtml("<p>" + i + " abcdefghijklmnopqrstuvwxyz</p>", new StringBuilder(),
+                    Integer.MAX_VALUE);
+        }
+        long total = 0;
+        for (File file : mDirectory.listFiles()) {
+            total += file.length();
+        }
+        assertTrue(total <= 256);
+    }
+
+    public void testKeyDependsOnContent() {
+        assertFalse(SanitizedHtmlCache.getKey("<p>a</p>", 100).equals(
+                SanitizedHtmlCache.getKey("<p>b</p>", 100)));
+        assertEquals(SanitizedHtmlCache.getKey("<p>a</p>", 100),
+                SanitizedHtmlCache.getKey("<p>a</p>", 100));
+    }
+}
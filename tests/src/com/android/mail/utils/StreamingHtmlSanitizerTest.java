@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.mail.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.IOException;
+
+/**
+ * These test cases verify that sanitizing into an Appendable matches sanitizing into a String,
+ * and that the output cap leaves well formed html.
+ */
+@SmallTest
+public class StreamingHtmlSanitizerTest extends AndroidTestCase {
+
+    public void testMatchesString() throws IOException {
+        final String dirtyHTML = "<body><div class=\"gmail_quote\"><p>quoted</p></div>"
+                + "<a href=\"javascript:badness()\">link</a><script>bad()</script></body>";
+        final StringBuilder out = new StringBuilder();
+        assertTrue(HtmlSanitizer.sanitizeHtml(dirtyHTML, out, Integer.MAX_VALUE));
+        assertEquals(HtmlSanitizer.sanitizeHtml(dirtyHTML), out.toString());
+    }
+
+    public void testCapClosesOpenElements() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append('x');
+        }
+        final String dirtyHTML = "<div><p>" + text + "</p><p>more</p></div>";
+        final StringBuilder out = new StringBuilder();
+        assertFalse(HtmlSanitizer.sanitizeHtml(dirtyHTML, out, 20));
+        assertEquals("<div><p>" + text.substring(0, 12) + "</p></div>", out.toString());
+    }
+
+    public void testCapDropsNestedElementsWithTheSameName() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append('x');
+        }
+        // the end tag of the dropped inner div must not close the outer one early
+        final String dirtyHTML = "<div><span>" + text + "<div>inner<br></div>after</span>"
+                + "<p>more</p></div>";
+        final StringBuilder out = new StringBuilder();
+        assertFalse(HtmlSanitizer.sanitizeHtml(dirtyHTML, out, 20));
+        assertEquals("<div><span>" + text.substring(0, 9) + "</span></div>", out.toString());
+    }
+
+    public void testCapWithVoidElements() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append('x');
+        }
+        final String dirtyHTML = "<div>a<br>b<hr><p>" + text + "</p><br><p>more</p></div>";
+        final StringBuilder out = new StringBuilder();
+        assertFalse(HtmlSanitizer.sanitizeHtml(dirtyHTML, out, 40));
+        final String start = "<div>a<br />b<hr /><p>";
+        assertEquals(start + text.substring(0, 40 - start.length()) + "</p></div>",
+                out.toString());
+    }
+
+    public void testSinkException() {
+        final Appendable sink = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) throws IOException {
+                throw new IOException("full");
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                throw new IOException("full");
+            }
+
+            @Override
+            public Appendable append(char c) throws IOException {
+                throw new IOException("full");
+            }
+        };
+        try {
+            HtmlSanitizer.sanitizeHtml("<div>something</div>", sink, Integer.MAX_VALUE);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("full", e.getMessage());
+        }
+    }
+}
@@ -21,6 +21,13 @@ import android.text.SpannableString;
 import android.text.Spanned;
 import android.text.style.TextAppearanceSpan;
 
+import com.android.emailcommon.mail.Address;
+import com.google.android.mail.common.html.parser.HtmlParser;
+import com.google.android.mail.common.html.parser.HtmlPlainTextVisitor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Tests for {@link Utils}.
  */
@@ -50,6 +57,30 @@ public class UtilsTest extends AndroidTestCase {
         assertSpannedEquals(expected, actual);
     }
 
+    public void testGetHtmlParser() {
+        final HtmlParser parser = Utils.getHtmlParser(5);
+        assertSame(parser, Utils.getHtmlParser(Integer.MAX_VALUE));
+
+        // A clip length doesn't stick to the thread's parser
+        assertEquals("Hello", new HtmlPlainTextVisitor().convert(
+                Utils.getHtmlParser(5), "Hello <b>World</b>"));
+        assertEquals("Hello World", Utils.convertHtmlToPlainText("Hello <b>World</b>"));
+        assertEquals("Hello World", Utils.convertHtmlToPlainText("Hello <B>World</B>"));
+    }
+
+    public void testGetAddress() {
+        final Map<String, Address> cache = new ConcurrentHashMap<String, Address>();
+        assertNull(Utils.getAddress(cache, null));
+        assertNull(Utils.getAddress(cache, ""));
+        assertTrue(cache.isEmpty());
+
+        final Address address = Utils.getAddress(cache, "Bob <bob@example.com>");
+        assertEquals("bob@example.com", address.getAddress());
+        assertEquals("Bob", address.getPersonal());
+        assertSame(address, cache.get("Bob <bob@example.com>"));
+        assertSame(address, Utils.getAddress(cache, "Bob <bob@example.com>"));
+    }
+
     public static void assertSpannedEquals(Spanned expected, Spanned actual) {
         assertEquals(expected.length(), actual.length());
         assertEquals(expected.toString(), actual.toString());
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.mail.common.html.parser;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Locale;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+@SmallTest
+public class HtmlNameTableTest extends TestCase {
+
+    public void testEveryElementName() {
+        for (Map.Entry<String, HTML.Element> e : HTML4.getAllElements().entrySet()) {
+            final String name = e.getKey();
+            final HTML.Element element = e.getValue();
+            assertSame(name, element, HTML4.lookupElement(name));
+            assertSame(name, element, HTML4.lookupElement(name.toUpperCase(Locale.ENGLISH)));
+            final String html = "<" + name + ">";
+            assertSame(name, element, HTML4.lookupElement(html, 1, html.length() - 1));
+        }
+    }
+
+    public void testEveryAttributeName() {
+        for (Map.Entry<String, HTML.Attribute> e : HTML4.getAllAttributes().entrySet()) {
+            final String name = e.getKey();
+            final HTML.Attribute attribute = e.getValue();
+            assertSame(name, attribute, HTML4.lookupAttribute(name));
+            assertSame(name, attribute, HTML4.lookupAttribute(name.toUpperCase(Locale.ENGLISH)));
+            final String html = " " + name + "=";
+            assertSame(name, attribute, HTML4.lookupAttribute(html, 1, html.length() - 1));
+        }
+    }
+
+    public void testUnknownNames() {
+        assertNull(HTML4.lookupElement("blink"));
+        assertNull(HTML4.lookupElement("di"));
+        assertNull(HTML4.lookupElement("divv"));
+        assertNull(HTML4.lookupElement(""));
+        // Non-ASCII names can't be in the table, even if they lower-case to one.
+        assertNull(HTML4.lookupElement("TİTLE"));
+        assertNull(HTML4.lookupAttribute("onclickx"));
+    }
+
+    public void testLookupInTurkishLocale() {
+        final HtmlParser parser = new HtmlParser();
+        // A second whitelist takes lookups off the perfect-hash table and through
+        // the parser's own lower-casing.
+        parser.addWhitelist(new HtmlWhitelist() {
+            @Override
+            public HTML.Element lookupElement(String name) {
+                return null;
+            }
+
+            @Override
+            public HTML.Attribute lookupAttribute(String name) {
+                return null;
+            }
+        });
+
+        final Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertSame(HTML4.TITLE_ELEMENT, parser.lookupElement("TITLE"));
+            assertSame(HTML4.LINK_ELEMENT, parser.lookupElement("LINK"));
+            assertSame(HTML4.ID_ATTRIBUTE, parser.lookupAttribute("ID"));
+            assertSame(HTML4.TITLE_ELEMENT, HTML4.lookupElement("TITLE"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
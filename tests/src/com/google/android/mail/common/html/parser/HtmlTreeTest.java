@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.mail.common.html.parser;
+
+import android.os.SystemClock;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.utils.LogUtils;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+@SmallTest
+public class HtmlTreeTest extends TestCase {
+
+    private static final String LOG_TAG = "HtmlTreeTest";
+
+    private static HtmlTree buildTree(String html) {
+        final HtmlDocument doc = new HtmlParser().parse(html);
+        final HtmlTreeBuilder builder = new HtmlTreeBuilder();
+        doc.accept(builder);
+        return builder.getTree();
+    }
+
+    /**
+     * Checks that every tag is paired with the tag of the same element that
+     * closes it, and that text nodes are paired with themselves.
+     */
+    private static void assertPaired(HtmlTree tree) {
+        final List<HtmlDocument.Node> nodes = tree.getNodesList();
+        for (int i = 0; i < nodes.size(); i++) {
+            final HtmlDocument.Node node = nodes.get(i);
+            final int paired = tree.findPairedTag(i);
+            if (node instanceof HtmlDocument.Tag
+                    && !((HtmlDocument.Tag) node).getElement().isEmpty()) {
+                assertTrue(paired > i);
+                assertEquals(i, tree.findOpenTag(paired));
+                assertSame(((HtmlDocument.Tag) node).getElement(),
+                        ((HtmlDocument.EndTag) nodes.get(paired)).getElement());
+            } else if (node instanceof HtmlDocument.EndTag) {
+                assertTrue(paired < i);
+                assertEquals(i, tree.findEndTag(paired));
+            } else {
+                assertEquals(i, paired);
+            }
+        }
+    }
+
+    public void testPairedTags() {
+        final HtmlTree tree = buildTree("<div>a<b>b<i>c</i></b><br>d<p>e</div>");
+        assertPaired(tree);
+        assertEquals(3, tree.getTreeHeight());
+        assertEquals("abc\nd\n\ne", tree.getPlainText());
+    }
+
+    public void testLargeTable() {
+        final int rows = 5000;
+        final int columns = 5;
+        final StringBuilder html = new StringBuilder("<table>");
+        for (int row = 0; row < rows; row++) {
+            html.append("<tr>");
+            for (int column = 0; column < columns; column++) {
+                html.append("<td><b>").append(row).append('.').append(column).append("</b></td>");
+            }
+            html.append("</tr>");
+        }
+        html.append("</table>");
+        final HtmlDocument doc = new HtmlParser().parse(html.toString());
+
+        final int passes = 5;
+        HtmlTree tree = null;
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < passes; pass++) {
+            final HtmlTreeBuilder builder = new HtmlTreeBuilder();
+            doc.accept(builder);
+            tree = builder.getTree();
+        }
+        final long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        LogUtils.i(LOG_TAG, "Built a tree of %d nodes in %d us", tree.getNumNodes(),
+                elapsed / (passes * 1000L));
+
+        // a table, its rows, and a td, b and text node per cell, with end tags
+        assertEquals(2 + rows * (2 + columns * 5), tree.getNumNodes());
+        assertEquals(4, tree.getTreeHeight());
+        assertPaired(tree);
+        final String text = tree.getPlainText();
+        assertTrue(text.contains("0.0"));
+        assertTrue(text.contains((rows - 1) + "." + (columns - 1)));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+@SmallTest
+public class MimeBoundaryInputStreamTest extends AndroidTestCase {
+
+    private static final String BOUNDARY = "simple boundary";
+
+    private static PushbackInputStream source(String s) {
+        return MimeBoundaryInputStream.newPartSource(
+                new ByteArrayInputStream(s.getBytes()), BOUNDARY);
+    }
+
+    private static String readAll(InputStream is) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[7];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString();
+    }
+
+    public void testParts() throws IOException {
+        final PushbackInputStream source = source("preamble\r\n--simple boundary\r\n"
+                + "part one\r\n--simple boundary  \r\n"
+                + "part\r\ntwo\r\n--simple boundary--\r\nepilogue");
+
+        MimeBoundaryInputStream part = new MimeBoundaryInputStream(source, BOUNDARY);
+        assertEquals("preamble", readAll(part));
+        assertTrue(part.hasMoreParts());
+
+        part = new MimeBoundaryInputStream(source, BOUNDARY);
+        assertEquals("part one", readAll(part));
+        assertTrue(part.hasMoreParts());
+
+        part = new MimeBoundaryInputStream(source, BOUNDARY);
+        assertEquals("part\r\ntwo", readAll(part));
+        assertFalse(part.hasMoreParts());
+        assertFalse(part.parentEOF());
+
+        assertEquals("epilogue", readAll(source));
+    }
+
+    public void testBoundaryAtStart() throws IOException {
+        final MimeBoundaryInputStream part = new MimeBoundaryInputStream(
+                source("--simple boundary--\r\n"), BOUNDARY);
+        assertFalse(part.hasMoreParts());
+        assertEquals(-1, part.read());
+    }
+
+    public void testUnterminatedPart() throws IOException {
+        final MimeBoundaryInputStream part = new MimeBoundaryInputStream(
+                source("text\r\n--simple bound"), BOUNDARY);
+        assertEquals("text\r\n--simple bound", readAll(part));
+        assertTrue(part.parentEOF());
+    }
+
+    public void testLargePart() throws IOException {
+        // Long enough that the delimiter straddles several buffer refills
+        final StringBuilder body = new StringBuilder();
+        while (body.length() < 50000) {
+            body.append("line ").append(body.length()).append("\r\n--simple\r\n");
+        }
+        final PushbackInputStream source = source(
+                body + "\r\n--simple boundary\r\nnext\r\n--simple boundary--\r\n");
+
+        MimeBoundaryInputStream part = new MimeBoundaryInputStream(source, BOUNDARY);
+        assertEquals(body.toString(), readAll(part));
+        assertTrue(part.hasMoreParts());
+
+        part = new MimeBoundaryInputStream(source, BOUNDARY);
+        assertEquals('n', part.read());
+        part.consume();
+        assertFalse(part.hasMoreParts());
+        assertEquals(-1, source.read());
+    }
+}
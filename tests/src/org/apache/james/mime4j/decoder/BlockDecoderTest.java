@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.decoder;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+@SmallTest
+public class BlockDecoderTest extends AndroidTestCase {
+
+    private static String readAll(InputStream is, int chunk) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[chunk];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString("US-ASCII");
+    }
+
+    public void testDecodeBase64() {
+        assertEquals("Hello, world", new String(DecoderUtil.decodeBase64("SGVsbG8sIHdvcmxk")));
+        assertEquals("Hi!", new String(DecoderUtil.decodeBase64("SGkh")));
+        assertEquals("Hi", new String(DecoderUtil.decodeBase64("SGk=")));
+        assertEquals("H", new String(DecoderUtil.decodeBase64("SA==")));
+        // line breaks and other characters outside the alphabet are skipped
+        assertEquals("Hello, world",
+                new String(DecoderUtil.decodeBase64("SGVs\r\nbG8s IHdv*cmxk")));
+        // nothing after the padding is decoded
+        assertEquals("Hi", new String(DecoderUtil.decodeBase64("SGk=SGk=")));
+    }
+
+    public void testBase64StreamSmallReads() throws IOException {
+        final String encoded = "SGVsbG8s\r\nIHdvcmxk\r\n";
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            assertEquals("Hello, world", readAll(new Base64InputStream(
+                    new ByteArrayInputStream(encoded.getBytes())), chunk));
+        }
+    }
+
+    public void testBase64DecoderStopsWhenOutputIsFull() {
+        final Base64Decoder decoder = new Base64Decoder();
+        final ByteBuffer in = ByteBuffer.wrap("SGVsbG8s".getBytes());
+        final ByteBuffer out = ByteBuffer.allocate(4);
+        decoder.decode(in, out);
+        assertEquals(3, out.position());
+
+        // the partly decoded quantum is picked up again once there is room
+        final ByteBuffer rest = ByteBuffer.allocate(3);
+        decoder.decode(in, rest);
+        assertFalse(in.hasRemaining());
+        assertEquals("Hel", new String(out.array(), 0, 3));
+        assertEquals("lo,", new String(rest.array()));
+    }
+
+    public void testDecodeQuotedPrintable() {
+        assertEquals("a=b", new String(DecoderUtil.decodeBaseQuotedPrintable("a=3Db")));
+        assertEquals("a=b", new String(DecoderUtil.decodeBaseQuotedPrintable("a=3db")));
+        // soft line break
+        assertEquals("ab", new String(DecoderUtil.decodeBaseQuotedPrintable("a=\r\nb")));
+        // malformed escapes are passed through
+        assertEquals("a=xb", new String(DecoderUtil.decodeBaseQuotedPrintable("a=xb")));
+        assertEquals("a=4x", new String(DecoderUtil.decodeBaseQuotedPrintable("a=4x")));
+    }
+
+    public void testQuotedPrintableTransportPadding() throws IOException {
+        final String encoded = "one  \r\ntwo \t three\t\r\nfour  ";
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            assertEquals("one\r\ntwo \t three\r\nfour", readAll(new QuotedPrintableInputStream(
+                    new ByteArrayInputStream(encoded.getBytes())), chunk));
+        }
+    }
+}
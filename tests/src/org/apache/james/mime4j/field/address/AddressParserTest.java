@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field.address;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.utils.LogUtils;
+
+import org.apache.james.mime4j.field.address.parser.AddressListParser;
+import org.apache.james.mime4j.field.address.parser.ParseException;
+
+import java.io.StringReader;
+import java.util.Random;
+
+/**
+ * Checks that {@link AddressParser} gives the same results as the JavaCC parser.
+ */
+@SmallTest
+public class AddressParserTest extends AndroidTestCase {
+
+    private static final String LOG_TAG = "AddressParserTest";
+
+    /** Pieces of address lists, valid and not, that the random lists are made of. */
+    private static final String[] PIECES = {
+        "a", "bob", "x.y", "a.", "..", ".", "@", "<", ">", ",", ":", ";", " ", "\t", "\"",
+        "\\", "(", ")", "[", "]", "\n", "\u00e9", "!#$", "\"q s\"", "\"q\\\"s\"", "\"\"",
+        "(c (n) \\) )", "[1.2.3.4]", "[a\\]b]", "=?utf-8?Q?J=C3=B6rg?=", "group:",
+    };
+
+    private static String describe(AddressList list) {
+        final StringBuilder out = new StringBuilder();
+        for (int i = 0; i < list.size(); i++) {
+            final Address address = list.get(i);
+            if (address instanceof Group) {
+                final Group group = (Group) address;
+                out.append("group ").append(group.getName()).append(" {");
+                final MailboxList mailboxes = group.getMailboxes();
+                for (int j = 0; j < mailboxes.size(); j++) {
+                    describe(out, mailboxes.get(j));
+                }
+                out.append("}");
+            } else {
+                describe(out, (Mailbox) address);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void describe(StringBuilder out, Mailbox mailbox) {
+        out.append("[");
+        if (mailbox instanceof NamedMailbox) {
+            out.append(((NamedMailbox) mailbox).getName());
+        }
+        out.append("|");
+        if (mailbox.getRoute() != null) {
+            out.append(mailbox.getRoute().toRouteString());
+        }
+        out.append("|").append(mailbox.getLocalPart()).append("|").append(mailbox.getDomain())
+                .append("]");
+    }
+
+    private static String parseWithJavaCC(String addressList) {
+        try {
+            return describe(Builder.getInstance().buildAddressList(
+                    new AddressListParser(new StringReader(addressList)).parse()));
+        } catch (Exception e) {
+            // including the StringIndexOutOfBoundsException it throws for "" "a"@b
+            return null;
+        }
+    }
+
+    private static String parse(String addressList) {
+        try {
+            return describe(AddressList.parse(addressList));
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static void assertSameAsJavaCC(String addressList) {
+        assertEquals(addressList, parseWithJavaCC(addressList), parse(addressList));
+    }
+
+    public void testAddresses() throws ParseException {
+        final String list = "bob@example.com, \"Doe, Jane\" <jane.doe@example.com> (work),"
+                + " John  Q. Public <@relay.org,@hub.net:john@[10.0.0.1]>,"
+                + " team: a@b.c, <d@e.f>;, =?utf-8?Q?J=C3=B6rg?= <j@x.de>";
+        assertEquals("[||bob|example.com]"
+                + "[Doe, Jane||jane.doe|example.com]"
+                + "[John  Q. Public|@relay.org,@hub.net|john|[10.0.0.1]]"
+                + "group team {[||a|b.c][||d|e.f]}"
+                + "[J\u00f6rg||j|x.de]", describe(AddressList.parse(list)));
+        assertSameAsJavaCC(list);
+    }
+
+    public void testCompatibility() {
+        final String[] lists = {
+            "", " , ,", "a@b", "a . b @ c . d", "\"a\".\"b\"@c", "a.\"b\"@c", "\"a\" \"b\"@c",
+            "a b@c", "a@b c", "a@b .", "x <a@b", "x a@b", "x: a@b", "x: ;", "<a@b> c",
+            "a (comment) b <c@d>", "a (unterminated <c@d>", "\"unterminated <c@d>",
+            "[a]@b", "a@[b[c]]", "\u00e9 <a@b>", "a@b\r\n", "\"\" \"a\"@b",
+        };
+        for (String list : lists) {
+            assertSameAsJavaCC(list);
+        }
+    }
+
+    public void testRandomCompatibility() {
+        final Random random = new Random(822);
+        final StringBuilder list = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            list.setLength(0);
+            final int pieces = random.nextInt(14);
+            for (int j = 0; j < pieces; j++) {
+                list.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            assertSameAsJavaCC(list.toString());
+        }
+    }
+
+    public void testLongList() throws ParseException {
+        final int count = 500;
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(i > 0 ? ", " : "").append("\"Doe, Jane ").append(i)
+                    .append("\" <jane.doe").append(i).append("@example.com>");
+        }
+        final String list = builder.toString();
+        assertSameAsJavaCC(list);
+
+        final int passes = 20;
+        AddressList parsed = null;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < passes; pass++) {
+            parsed = AddressList.parse(list);
+        }
+        final long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < passes; pass++) {
+            parseWithJavaCC(list);
+        }
+        final long elapsedWithJavaCC = SystemClock.elapsedRealtimeNanos() - start;
+        LogUtils.i(LOG_TAG, "Parsed %d addresses in %d us, and in %d us with JavaCC", count,
+                elapsed / (passes * 1000L), elapsedWithJavaCC / (passes * 1000L));
+
+        assertEquals(count, parsed.size());
+        final NamedMailbox last = (NamedMailbox) parsed.get(count - 1);
+        assertEquals("Doe, Jane " + (count - 1), last.getName());
+        assertEquals("jane.doe" + (count - 1), last.getLocalPart());
+        assertEquals("example.com", last.getDomain());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.field.datetime;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.mail.utils.LogUtils;
+
+import org.apache.james.mime4j.field.datetime.parser.DateTimeParser;
+import org.apache.james.mime4j.field.datetime.parser.ParseException;
+
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+@SmallTest
+public class FastDateTimeTest extends AndroidTestCase {
+
+    private static final String LOG_TAG = "FastDateTimeTest";
+
+    /** Date headers as they are usually sent. */
+    private static final String[] HEADERS = {
+        "Fri, 3 Jan 2014 09:05:07 +0100", "Mon, 13 Oct 2014 17:22:41 -0700 (PDT)",
+        "Tue, 14 Oct 2014 02:01:00 +0000", "14 Oct 2014 11:45:12 +0530",
+        "Wed, 15 Oct 2014 23:59:59 GMT", "Thu, 16 Oct 2014 08:30:00 -0400 (EDT)",
+    };
+
+    private static String describe(DateTime dateTime) {
+        return dateTime.getDate().getTime() + " " + dateTime.getYear() + "-"
+                + dateTime.getMonth() + "-" + dateTime.getDay() + " " + dateTime.getHour() + ":"
+                + dateTime.getMinute() + ":" + dateTime.getSecond() + " " + dateTime.getTimeZone();
+    }
+
+    private static void assertSameAsJavaCC(String date) throws ParseException {
+        final DateTime fast = FastDateTime.parse(date);
+        assertNotNull(date, fast);
+        assertEquals(date, describe(new DateTimeParser(new StringReader(date)).parseAll()),
+                describe(fast));
+    }
+
+    public void testParse() throws ParseException {
+        final DateTime dateTime = FastDateTime.parse("Fri, 3 Jan 2014 09:05:07 +0100 (CET)");
+        assertEquals(1388736307000L, dateTime.getDate().getTime());
+        assertEquals(2014, dateTime.getYear());
+        assertEquals(100, dateTime.getTimeZone());
+
+        final String[] dates = {
+            "Fri, 3 Jan 2014 09:05:07 +0100", "Mon,13 Oct 2014 17:22:41 -0700 (PDT)",
+            "13 Oct 2014 17:22 -0730", "  Wed, 31 Dec 1969 23:59:59 GMT ", "1 Mar 2000 00:00 UT",
+            "Thu, 29 Feb 2024 12:00:00\t+1400", "Sat, 31 Feb 2015 10:00:00 +0000",
+        };
+        for (String date : dates) {
+            assertSameAsJavaCC(date);
+        }
+    }
+
+    public void testFallsBack() throws ParseException {
+        final String[] dates = {
+            "Fri, 3 Jan 14 09:05:07 +0100", "Friday, 3 Jan 2014 09:05:07 +0100",
+            "3 January 2014 09:05:07 +0100", "3 Jan 2014 9:05:07 +0100", "3 Jan 2014 09:05 EST",
+            "3 Jan 2014 09:05 +01", "3 Jan 2014 09:05 GMT+0100", "3 Jan 2014 09:05 +0100 (a(b))",
+            "3 Jan 2014 24:05 +0100", "3 Jan 1500 09:05 +0100", "3 Jan 2014 09:05 +0100 x",
+            "", null,
+        };
+        for (String date : dates) {
+            assertNull(date, FastDateTime.parse(date));
+        }
+        // and those are still parsed by the grammar
+        assertEquals(DateTime.parse("Fri, 3 Jan 2014 09:05:07 +0100").getDate(),
+                DateTime.parse("Fri, 3 Jan 14 09:05:07 +0100").getDate());
+    }
+
+    public void testRandomDates() throws ParseException {
+        final Random random = new Random(5322);
+        final String[] days = {"Sun, ", "Mon,", ""};
+        final String[] months = {"Jan", "Feb", "Jun", "Dec"};
+        for (int i = 0; i < 10000; i++) {
+            final String date = days[random.nextInt(days.length)] + (1 + random.nextInt(31))
+                    + " " + months[random.nextInt(months.length)] + " "
+                    + (1600 + random.nextInt(600))
+                    + String.format(" %02d:%02d", random.nextInt(24), random.nextInt(60))
+                    + (random.nextBoolean() ? String.format(":%02d", random.nextInt(60)) : "")
+                    + String.format(" %s%04d", random.nextBoolean() ? "+" : "-",
+                            random.nextInt(1500))
+                    + (random.nextBoolean() ? " (zone)" : "");
+            assertSameAsJavaCC(date);
+        }
+    }
+
+    public void testFormat() {
+        final Random random = new Random(2822);
+        final String[] zones = {
+            "UTC", "Europe/Berlin", "America/New_York", "Asia/Kolkata", "Australia/Lord_Howe",
+        };
+        for (int i = 0; i < 10000; i++) {
+            final Date date = new Date(random.nextLong() % (200L * 365 * 24 * 60 * 60 * 1000));
+            final TimeZone zone = TimeZone.getTimeZone(zones[random.nextInt(zones.length)]);
+            final SimpleDateFormat format =
+                    new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
+            format.setTimeZone(zone);
+            assertEquals(format.format(date), FastDateTime.format(date, zone));
+        }
+        assertEquals("Fri, 03 Jan 2014 09:05:07 +0100",
+                FastDateTime.format(new Date(1388736307000L), TimeZone.getTimeZone("CET")));
+    }
+
+    public void testParseTime() throws ParseException {
+        final int passes = 2000;
+        long sum = 0;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < passes; pass++) {
+            for (String header : HEADERS) {
+                sum += FastDateTime.parse(header).getDate().getTime();
+            }
+        }
+        final long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        long sumWithJavaCC = 0;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int pass = 0; pass < passes; pass++) {
+            for (String header : HEADERS) {
+                sumWithJavaCC += new DateTimeParser(new StringReader(header)).parseAll()
+                        .getDate().getTime();
+            }
+        }
+        final long elapsedWithJavaCC = SystemClock.elapsedRealtimeNanos() - start;
+        LogUtils.i(LOG_TAG, "Parsed a Date header in %d ns, and in %d ns with JavaCC",
+                elapsed / (passes * HEADERS.length),
+                elapsedWithJavaCC / (passes * HEADERS.length));
+
+        assertEquals(sumWithJavaCC, sum);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.james.mime4j.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+@SmallTest
+public class CharsetUtilTest extends AndroidTestCase {
+
+    /** Returns at most one byte per read, so that characters are split across reads. */
+    private static class SlowInputStream extends FilterInputStream {
+        SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            return super.read(buffer, offset, Math.min(count, 1));
+        }
+    }
+
+    public void testLookupJavaCharset() {
+        assertEquals(Charset.forName("UTF-8"), CharsetUtil.lookupJavaCharset("utf-8"));
+        assertEquals(Charset.forName("UTF-8"), CharsetUtil.lookupJavaCharset("UTF-8"));
+        assertEquals(Charset.forName("ISO-8859-1"), CharsetUtil.lookupJavaCharset("latin1"));
+        assertSame(CharsetUtil.lookupJavaCharset("Shift_JIS"),
+                CharsetUtil.lookupJavaCharset("Shift_JIS"));
+        assertNull(CharsetUtil.lookupJavaCharset("x-no-such-charset"));
+        assertNull(CharsetUtil.lookupJavaCharset("x-no-such-charset"));
+    }
+
+    public void testDecode() throws IOException {
+        final Charset utf8 = Charset.forName("UTF-8");
+        final byte[] bytes = "caf\u00e9 \u65e5\u672c \ud83d\ude00".getBytes("UTF-8");
+        assertEquals("caf\u00e9 \u65e5\u672c \ud83d\ude00",
+                CharsetUtil.decode(new ByteArrayInputStream(bytes), utf8, 0));
+        assertEquals("caf\u00e9 \u65e5\u672c \ud83d\ude00",
+                CharsetUtil.decode(new SlowInputStream(new ByteArrayInputStream(bytes)), utf8,
+                        bytes.length));
+        assertEquals("", CharsetUtil.decode(new ByteArrayInputStream(new byte[0]), utf8, 0));
+        // a wrong size doesn't allocate the whole of it up front
+        assertEquals("", CharsetUtil.decode(
+                new ByteArrayInputStream(new byte[0]), utf8, Integer.MAX_VALUE));
+        // a truncated character at the end is replaced
+        assertEquals("caf\ufffd", CharsetUtil.decode(
+                new ByteArrayInputStream(new byte[] {'c', 'a', 'f', (byte) 0xc3}), utf8, 0));
+    }
+
+    public void testDecodeMatchesString() throws IOException {
+        final Random random = new Random(25);
+        final String[] names = {"UTF-8", "US-ASCII", "ISO-8859-1", "Shift_JIS", "windows-1252"};
+        for (String name : names) {
+            final Charset charset = Charset.forName(name);
+            for (int i = 0; i < 20; i++) {
+                // long enough to need several buffers
+                final byte[] bytes = new byte[random.nextInt(40000)];
+                random.nextBytes(bytes);
+                final String expected = new String(bytes, name);
+                assertEquals(name, expected,
+                        CharsetUtil.decode(new ByteArrayInputStream(bytes), charset, 0));
+                assertEquals(name, expected, CharsetUtil.decode(
+                        new SlowInputStream(new ByteArrayInputStream(bytes)), charset, 100));
+                // the byte count is enough room for the characters
+                assertEquals(name, expected, CharsetUtil.decode(
+                        new ByteArrayInputStream(bytes), charset, bytes.length));
+            }
+        }
+    }
+}